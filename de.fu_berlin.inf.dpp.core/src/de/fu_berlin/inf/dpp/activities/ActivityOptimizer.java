@@ -1,5 +1,6 @@
 package de.fu_berlin.inf.dpp.activities;
 
+import de.fu_berlin.inf.dpp.session.User;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -72,4 +73,65 @@ public class ActivityOptimizer {
 
     return result;
   }
+
+  /**
+   * Merges two consecutive text edits into a single text edit, so that executing the merged text
+   * edit produces the same result as executing both text edits one after another. This is only
+   * possible if both text edits were made by the same user in the same document and the second text
+   * edit is contiguous to the text inserted by the first one, e.g. when typing or deleting several
+   * characters in a row.
+   *
+   * @param first the text edit that was made first
+   * @param second the text edit that was made afterwards
+   * @return the merged text edit or <code>null</code> if the text edits cannot be merged
+   */
+  public static TextEditActivity merge(TextEditActivity first, TextEditActivity second) {
+
+    final User source = first.getSource();
+    final SPath path = first.getPath();
+
+    if (!source.equals(second.getSource()) || !path.equals(second.getPath())) return null;
+
+    final String text = first.getText();
+    final String replacedText = second.getReplacedText();
+
+    // range of the inserted text of the first edit
+    final int start = first.getOffset();
+    final int end = start + text.length();
+
+    // range of the replaced text of the second edit
+    final int secondStart = second.getOffset();
+    final int secondEnd = secondStart + replacedText.length();
+
+    // e.g. typing, or deleting previously typed characters
+    if (start <= secondStart && secondEnd <= end) {
+      if (!text.regionMatches(secondStart - start, replacedText, 0, replacedText.length()))
+        return null;
+
+      return new TextEditActivity(
+          source,
+          start,
+          text.substring(0, secondStart - start)
+              + second.getText()
+              + text.substring(secondEnd - start),
+          first.getReplacedText(),
+          path);
+    }
+
+    // e.g. backspace
+    if (secondEnd == start)
+      return new TextEditActivity(
+          source,
+          secondStart,
+          second.getText() + text,
+          replacedText + first.getReplacedText(),
+          path);
+
+    // e.g. forward delete
+    if (secondStart == end)
+      return new TextEditActivity(
+          source, start, text + second.getText(), first.getReplacedText() + replacedText, path);
+
+    return null;
+  }
 }
@@ -8,7 +8,7 @@ import org.apache.commons.lang.ObjectUtils;
 
 @XStreamAlias("fileActivity")
 public class FileActivity extends AbstractResourceActivity
-    implements IFileSystemModificationActivity {
+    implements IFileSystemModificationActivity, Cloneable {
 
   /**
    * Enumeration used to distinguish file activities which are caused as part of a consistency
@@ -36,7 +36,20 @@ public class FileActivity extends AbstractResourceActivity
 
   @XStreamAsAttribute protected String encoding;
 
-  protected final byte[] content;
+  protected byte[] content;
+
+  /**
+   * Reference to the content if it is transferred separately from this activity, <code>null
+   * </code> otherwise
+   */
+  @XStreamAlias("ref")
+  @XStreamAsAttribute
+  protected String contentReference;
+
+  /** Adler32 checksum of the referenced content */
+  @XStreamAlias("crc")
+  @XStreamAsAttribute
+  protected Long contentChecksum;
 
   /**
    * Generic constructor for {@link FileActivity}s
@@ -107,6 +120,60 @@ public class FileActivity extends AbstractResourceActivity
     return content;
   }
 
+  /**
+   * Returns the reference to the content of this file if the content is transferred separately from
+   * this activity. The content of such an activity is <code>null</code> until it is replaced by
+   * {@link #withContent(byte[])}.
+   *
+   * @return the reference or <code>null</code> if the content is included in this activity
+   */
+  public String getContentReference() {
+    return contentReference;
+  }
+
+  /**
+   * Returns the Adler32 checksum of the referenced content.
+   *
+   * @return the checksum or <code>0</code> if the content is not referenced
+   */
+  public long getContentChecksum() {
+    return contentChecksum == null ? 0L : contentChecksum.longValue();
+  }
+
+  /**
+   * Returns a copy of this activity whose content is replaced by a reference so that the content
+   * can be transferred separately.
+   *
+   * @param reference the reference to the content
+   * @param checksum the Adler32 checksum of the content
+   * @return a copy of this activity without content
+   */
+  public FileActivity withContentReference(String reference, long checksum) {
+    if (reference == null) throw new IllegalArgumentException("reference must not be null");
+
+    final FileActivity copy = copy();
+    copy.content = null;
+    copy.contentReference = reference;
+    copy.contentChecksum = checksum;
+    return copy;
+  }
+
+  /**
+   * Returns a copy of this activity that includes the given content instead of a content reference.
+   *
+   * @param content the content of the file
+   * @return a copy of this activity with the given content
+   */
+  public FileActivity withContent(byte[] content) {
+    if (content == null) throw new IllegalArgumentException("content must not be null");
+
+    final FileActivity copy = copy();
+    copy.content = content;
+    copy.contentReference = null;
+    copy.contentChecksum = null;
+    return copy;
+  }
+
   /**
    * Returns the encoding the content is encoded with.
    *
@@ -128,7 +195,9 @@ public class FileActivity extends AbstractResourceActivity
         + (encoding == null ? "N/A" : encoding)
         + ", content="
         + (content == null ? "0" : content.length)
-        + " byte(s)]";
+        + " byte(s)"
+        + (contentReference == null ? "" : ", ref=" + contentReference)
+        + "]";
   }
 
   @Override
@@ -136,6 +205,7 @@ public class FileActivity extends AbstractResourceActivity
     final int prime = 31;
     int result = super.hashCode();
     result = prime * result + Arrays.hashCode(content);
+    result = prime * result + ObjectUtils.hashCode(contentReference);
     result = prime * result + ObjectUtils.hashCode(oldPath);
     result = prime * result + ObjectUtils.hashCode(type);
     result = prime * result + ObjectUtils.hashCode(purpose);
@@ -160,6 +230,10 @@ public class FileActivity extends AbstractResourceActivity
 
     if (!Arrays.equals(content, other.content)) return false;
 
+    if (!ObjectUtils.equals(contentReference, other.contentReference)) return false;
+
+    if (!ObjectUtils.equals(contentChecksum, other.contentChecksum)) return false;
+
     return ObjectUtils.equals(encoding, other.encoding);
   }
 
@@ -171,4 +245,12 @@ public class FileActivity extends AbstractResourceActivity
   public boolean isRecovery() {
     return Purpose.RECOVERY.equals(purpose);
   }
+
+  private FileActivity copy() {
+    try {
+      return (FileActivity) clone();
+    } catch (CloneNotSupportedException e) {
+      throw new AssertionError(e);
+    }
+  }
 }
@@ -3,8 +3,14 @@ package de.fu_berlin.inf.dpp.activities;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 import de.fu_berlin.inf.dpp.session.User;
 
-/** @deprecated not used at the moment */
-@Deprecated
+/**
+ * An activity that represents moving or renaming a folder including all contained resources made by
+ * a user during a session. It only carries the old and new path of the folder instead of an
+ * activity for every contained resource.
+ *
+ * <p>It must only be sent if the receiving users support it, see {@link
+ * de.fu_berlin.inf.dpp.session.FolderMoveNegotiationHook}.
+ */
 @XStreamAlias("folderMoved")
 public class FolderMovedActivity extends AbstractResourceActivity
     implements IFileSystemModificationActivity {
@@ -40,4 +46,9 @@ public class FolderMovedActivity extends AbstractResourceActivity
   public void dispatch(IActivityReceiver receiver) {
     receiver.receive(this);
   }
+
+  @Override
+  public String toString() {
+    return "FolderMovedActivity [path=" + getPath() + ", destination=" + destination + "]";
+  }
 }
@@ -58,6 +58,8 @@ public class ActivitiesExtension extends SarosSessionPacketExtension {
 
   public static final Provider PROVIDER = new Provider();
 
+  public static final ActivitiesExtensionCodec CODEC = new ActivitiesExtensionCodec(PROVIDER);
+
   @XStreamImplicit private final List<IActivity> activities;
 
   @XStreamAlias("seq")
@@ -114,6 +116,9 @@ public class ActivitiesExtension extends SarosSessionPacketExtension {
    *
    * <p>Since you now know about XStream annotations, you might want to go back to your new class
    * and add some of these? You can take a look at other activity classes for inspiration.
+   *
+   * <p>If your new activity type is sent at a high rate, consider adding it to the {@link
+   * ActivitiesExtensionCodec} as well. Otherwise every activity batch containing it is sent as XML.
    */
 
   /** */
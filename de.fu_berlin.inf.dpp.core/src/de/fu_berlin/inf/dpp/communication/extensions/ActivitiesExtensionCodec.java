@@ -0,0 +1,550 @@
+package de.fu_berlin.inf.dpp.communication.extensions;
+
+import de.fu_berlin.inf.dpp.activities.ChecksumActivity;
+import de.fu_berlin.inf.dpp.activities.IActivity;
+import de.fu_berlin.inf.dpp.activities.IActivityReceiver;
+import de.fu_berlin.inf.dpp.activities.JupiterActivity;
+import de.fu_berlin.inf.dpp.activities.NOPActivity;
+import de.fu_berlin.inf.dpp.activities.SPath;
+import de.fu_berlin.inf.dpp.activities.TextSelectionActivity;
+import de.fu_berlin.inf.dpp.activities.ViewportActivity;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.Operation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.Timestamp;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.JupiterVectorTime;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.DeleteOperation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.InsertOperation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.NoOperation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.SplitOperation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.TimestampOperation;
+import de.fu_berlin.inf.dpp.misc.binary.BinaryExtensionCodec;
+import de.fu_berlin.inf.dpp.session.User;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Logger;
+
+/**
+ * Binary codec for the {@link ActivitiesExtension}. It covers the activities that are sent at a
+ * high rate during concurrent editing. Extensions containing other activities (e.g {@linkplain
+ * de.fu_berlin.inf.dpp.activities.FileActivity file activities}) are still transferred as XML.
+ *
+ * <p>Wire format (version 1):
+ *
+ * <pre>
+ * extension := sessionID:string sequenceNumber:varint count:varint activity{count}
+ * activity  := type:byte source:user (fields depending on the type)
+ * user      := index:varint [jid:string]              (jid only on the first occurrence)
+ * path      := index:varint [projectID:string path:string] (0 = null, data only on first occurrence)
+ * </pre>
+ *
+ * Users and paths are referenced by their index in a per extension table so that the activities of
+ * a typing session only carry the path of the edited file once.
+ */
+public class ActivitiesExtensionCodec extends BinaryExtensionCodec<ActivitiesExtension> {
+
+  private static final Logger LOG = Logger.getLogger(ActivitiesExtensionCodec.class);
+
+  private static final int VERSION = 1;
+
+  private static final int JUPITER_ACTIVITY = 1;
+  private static final int TEXT_SELECTION_ACTIVITY = 2;
+  private static final int VIEWPORT_ACTIVITY = 3;
+  private static final int CHECKSUM_ACTIVITY = 4;
+  private static final int NOP_ACTIVITY = 5;
+
+  private static final int NO_OPERATION = 0;
+  private static final int TIMESTAMP_OPERATION = 1;
+  private static final int INSERT_OPERATION = 2;
+  private static final int DELETE_OPERATION = 3;
+  private static final int SPLIT_OPERATION = 4;
+
+  /**
+   * Converts session dependent objects to their session independent representations and vice versa.
+   * This is the binary counterpart of the session dependent XStream converters.
+   */
+  public interface ReferenceResolver {
+
+    /** Returns the session independent id of the user. */
+    public String toUserID(User user);
+
+    /** Returns the user for the given id or <code>null</code> if there is no such user. */
+    public User toUser(String userID);
+
+    /**
+     * Returns the id of the project of the given path or <code>null</code> if the project is not
+     * shared.
+     */
+    public String toProjectID(SPath path);
+
+    /** Returns the project relative path of the given path as string. */
+    public String toPathString(SPath path);
+
+    /**
+     * Returns the path for the given project id and project relative path or <code>null</code> if
+     * there is no shared project with the given id.
+     */
+    public SPath toPath(String projectID, String path);
+  }
+
+  /**
+   * Placeholder for activities whose session dependent references could no longer be resolved, e.g
+   * because the source left the session. It keeps the sequence numbers intact and is discarded like
+   * an activity with unresolved references unmarshalled by XStream.
+   */
+  private static final class UnresolvedActivity implements IActivity {
+
+    private final String reason;
+
+    private UnresolvedActivity(String reason) {
+      this.reason = reason;
+    }
+
+    @Override
+    public User getSource() {
+      return null;
+    }
+
+    @Override
+    public void dispatch(IActivityReceiver receiver) {
+      // NOP
+    }
+
+    @Override
+    public boolean isValid() {
+      return false;
+    }
+
+    @Override
+    public String toString() {
+      return "UnresolvedActivity(" + reason + ")";
+    }
+  }
+
+  private static class WriteContext {
+    private final Map<User, Integer> users = new HashMap<User, Integer>();
+    private final Map<SPath, Integer> paths = new HashMap<SPath, Integer>();
+  }
+
+  private static class ReadContext {
+    private final List<User> users = new ArrayList<User>();
+    private final List<SPath> paths = new ArrayList<SPath>();
+  }
+
+  private volatile ReferenceResolver resolver;
+
+  ActivitiesExtensionCodec(ActivitiesExtension.Provider provider) {
+    super(provider, VERSION);
+  }
+
+  /**
+   * Sets the resolver that is used to convert session dependent objects.
+   *
+   * @param resolver the resolver to use or <code>null</code> if there is no running session
+   */
+  public synchronized void setResolver(ReferenceResolver resolver) {
+    this.resolver = resolver;
+  }
+
+  /**
+   * Removes the given resolver if it is the current one.
+   *
+   * @param resolver the resolver to remove
+   */
+  public synchronized void removeResolver(ReferenceResolver resolver) {
+    if (this.resolver == resolver) this.resolver = null;
+  }
+
+  @Override
+  protected boolean write(ActivitiesExtension extension, DataOutput out) throws IOException {
+    final ReferenceResolver currentResolver = resolver;
+
+    if (currentResolver == null) return false;
+
+    final List<IActivity> activities = extension.getActivities();
+
+    for (IActivity activity : activities) if (!isSupported(activity)) return false;
+
+    final WriteContext context = new WriteContext();
+
+    writeString(out, extension.getSessionID());
+    writeVarInt(out, extension.getSequenceNumber());
+    writeVarInt(out, activities.size());
+
+    for (IActivity activity : activities) {
+      if (!writeActivity(currentResolver, context, activity, out)) return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  protected ActivitiesExtension read(DataInput in) throws IOException {
+    final ReferenceResolver currentResolver = resolver;
+
+    if (currentResolver == null)
+      throw new IOException("cannot decode activities, there is no running session");
+
+    final ReadContext context = new ReadContext();
+
+    final String sessionID = readString(in);
+    final int sequenceNumber = readVarInt(in);
+    final int count = readVarInt(in);
+
+    if (count < 0) throw new IOException("corrupted activity count: " + count);
+
+    final List<IActivity> activities = new ArrayList<IActivity>(Math.min(count, 1024));
+
+    for (int i = 0; i < count; i++) activities.add(readActivity(currentResolver, context, in));
+
+    return new ActivitiesExtension(sessionID, activities, sequenceNumber);
+  }
+
+  private static boolean isSupported(IActivity activity) {
+    final Class<?> clazz = activity.getClass();
+
+    return clazz == JupiterActivity.class
+        || clazz == TextSelectionActivity.class
+        || clazz == ViewportActivity.class
+        || clazz == ChecksumActivity.class
+        || clazz == NOPActivity.class;
+  }
+
+  private static boolean writeActivity(
+      ReferenceResolver resolver, WriteContext context, IActivity activity, DataOutput out)
+      throws IOException {
+
+    if (activity instanceof JupiterActivity) {
+      final JupiterActivity jupiterActivity = (JupiterActivity) activity;
+
+      out.writeByte(JUPITER_ACTIVITY);
+      writeUser(resolver, context, activity.getSource(), out);
+
+      if (!writePath(resolver, context, jupiterActivity.getPath(), out)) return false;
+
+      if (!writeTimestamp(jupiterActivity.getTimestamp(), out)) return false;
+
+      return writeOperation(jupiterActivity.getOperation(), out);
+
+    } else if (activity instanceof TextSelectionActivity) {
+      final TextSelectionActivity selection = (TextSelectionActivity) activity;
+
+      out.writeByte(TEXT_SELECTION_ACTIVITY);
+      writeUser(resolver, context, activity.getSource(), out);
+
+      if (!writePath(resolver, context, selection.getPath(), out)) return false;
+
+      writeVarInt(out, selection.getOffset());
+      writeVarInt(out, selection.getLength());
+      return true;
+
+    } else if (activity instanceof ViewportActivity) {
+      final ViewportActivity viewport = (ViewportActivity) activity;
+
+      out.writeByte(VIEWPORT_ACTIVITY);
+      writeUser(resolver, context, activity.getSource(), out);
+
+      if (!writePath(resolver, context, viewport.getPath(), out)) return false;
+
+      writeVarInt(out, viewport.getStartLine());
+      writeVarInt(out, viewport.getNumberOfLines());
+      return true;
+
+    } else if (activity instanceof ChecksumActivity) {
+      final ChecksumActivity checksum = (ChecksumActivity) activity;
+
+      out.writeByte(CHECKSUM_ACTIVITY);
+      writeUser(resolver, context, activity.getSource(), out);
+
+      if (!writePath(resolver, context, checksum.getPath(), out)) return false;
+
+      out.writeLong(checksum.getHash());
+      out.writeLong(checksum.getLength());
+
+      if (checksum.getTimestamp() == null) {
+        out.writeBoolean(false);
+        return true;
+      }
+
+      out.writeBoolean(true);
+      return writeTimestamp(checksum.getTimestamp(), out);
+
+    } else if (activity instanceof NOPActivity) {
+      final NOPActivity nop = (NOPActivity) activity;
+
+      out.writeByte(NOP_ACTIVITY);
+      writeUser(resolver, context, activity.getSource(), out);
+      writeUser(resolver, context, nop.getTarget(), out);
+      out.writeInt(nop.getID());
+      return true;
+    }
+
+    return false;
+  }
+
+  private static IActivity readActivity(
+      ReferenceResolver resolver, ReadContext context, DataInput in) throws IOException {
+
+    final int type = in.readUnsignedByte();
+    final User source = readUser(resolver, context, in);
+
+    final SPath path;
+
+    switch (type) {
+      case JUPITER_ACTIVITY:
+        path = readPath(resolver, context, in);
+
+        final Timestamp timestamp = readTimestamp(in);
+        final Operation operation = readOperation(in);
+
+        if (source == null) return unresolved("source");
+
+        return new JupiterActivity(timestamp, operation, source, path);
+
+      case TEXT_SELECTION_ACTIVITY:
+        path = readPath(resolver, context, in);
+
+        final int offset = readVarInt(in);
+        final int length = readVarInt(in);
+
+        if (source == null) return unresolved("source");
+
+        if (path == null) return unresolved("path");
+
+        return new TextSelectionActivity(source, offset, length, path);
+
+      case VIEWPORT_ACTIVITY:
+        path = readPath(resolver, context, in);
+
+        final int startLine = readVarInt(in);
+        final int numberOfLines = readVarInt(in);
+
+        if (source == null) return unresolved("source");
+
+        if (path == null) return unresolved("path");
+
+        return new ViewportActivity(source, startLine, numberOfLines, path);
+
+      case CHECKSUM_ACTIVITY:
+        path = readPath(resolver, context, in);
+
+        final long hash = in.readLong();
+        final long checksumLength = in.readLong();
+        final Timestamp jupiterTimestamp = in.readBoolean() ? readTimestamp(in) : null;
+
+        if (source == null) return unresolved("source");
+
+        return new ChecksumActivity(source, path, hash, checksumLength, jupiterTimestamp);
+
+      case NOP_ACTIVITY:
+        final User target = readUser(resolver, context, in);
+        final int id = in.readInt();
+
+        if (source == null) return unresolved("source");
+
+        if (target == null) return unresolved("target");
+
+        return new NOPActivity(source, target, id);
+
+      default:
+        throw new IOException("unknown activity type: " + type);
+    }
+  }
+
+  private static IActivity unresolved(String reference) {
+    return new UnresolvedActivity("unresolved " + reference);
+  }
+
+  private static void writeUser(
+      ReferenceResolver resolver, WriteContext context, User user, DataOutput out)
+      throws IOException {
+
+    final Integer index = context.users.get(user);
+
+    if (index != null) {
+      writeVarInt(out, index);
+      return;
+    }
+
+    final int newIndex = context.users.size();
+    context.users.put(user, newIndex);
+
+    writeVarInt(out, newIndex);
+    writeString(out, resolver.toUserID(user));
+  }
+
+  private static User readUser(ReferenceResolver resolver, ReadContext context, DataInput in)
+      throws IOException {
+
+    final int index = readVarInt(in);
+
+    if (index < context.users.size()) return context.users.get(index);
+
+    if (index != context.users.size()) throw new IOException("corrupted user index: " + index);
+
+    final String userID = readString(in);
+    final User user = resolver.toUser(userID);
+
+    if (user == null) LOG.warn("could not resolve user '" + userID + "'");
+
+    context.users.add(user);
+
+    return user;
+  }
+
+  private static boolean writePath(
+      ReferenceResolver resolver, WriteContext context, SPath path, DataOutput out)
+      throws IOException {
+
+    if (path == null) {
+      writeVarInt(out, 0);
+      return true;
+    }
+
+    final Integer index = context.paths.get(path);
+
+    if (index != null) {
+      writeVarInt(out, index + 1);
+      return true;
+    }
+
+    final String projectID = resolver.toProjectID(path);
+
+    if (projectID == null) {
+      LOG.error(
+          "could not retrieve project id for path '"
+              + path
+              + "'. Make sure you don't create activities for non-shared projects");
+      return false;
+    }
+
+    final int newIndex = context.paths.size();
+    context.paths.put(path, newIndex);
+
+    writeVarInt(out, newIndex + 1);
+    writeString(out, projectID);
+    writeString(out, resolver.toPathString(path));
+    return true;
+  }
+
+  private static SPath readPath(ReferenceResolver resolver, ReadContext context, DataInput in)
+      throws IOException {
+
+    final int index = readVarInt(in);
+
+    if (index == 0) return null;
+
+    if (index <= context.paths.size()) return context.paths.get(index - 1);
+
+    if (index != context.paths.size() + 1) throw new IOException("corrupted path index: " + index);
+
+    final String projectID = readString(in);
+    final String path = readString(in);
+
+    final SPath spath = resolver.toPath(projectID, path);
+
+    if (spath == null)
+      LOG.error(
+          "could not create SPath because there is no shared project for id '" + projectID + "'");
+
+    context.paths.add(spath);
+
+    return spath;
+  }
+
+  private static boolean writeTimestamp(Timestamp timestamp, DataOutput out) throws IOException {
+
+    if (!(timestamp instanceof JupiterVectorTime)) return false;
+
+    final JupiterVectorTime vectorTime = (JupiterVectorTime) timestamp;
+
+    writeVarInt(out, vectorTime.getLocalOperationCount());
+    writeVarInt(out, vectorTime.getRemoteOperationCount());
+    return true;
+  }
+
+  private static Timestamp readTimestamp(DataInput in) throws IOException {
+    final int localOperationCount = readVarInt(in);
+    final int remoteOperationCount = readVarInt(in);
+
+    try {
+      return new JupiterVectorTime(localOperationCount, remoteOperationCount);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("corrupted vector time: " + e.getMessage(), e);
+    }
+  }
+
+  private static boolean writeOperation(Operation operation, DataOutput out) throws IOException {
+
+    final Class<?> clazz = operation == null ? null : operation.getClass();
+
+    if (clazz == InsertOperation.class) {
+      final InsertOperation insert = (InsertOperation) operation;
+
+      out.writeByte(INSERT_OPERATION);
+      writeVarInt(out, insert.getPosition());
+      writeVarInt(out, insert.getOrigin());
+      writeString(out, insert.getText());
+      return true;
+
+    } else if (clazz == DeleteOperation.class) {
+      final DeleteOperation delete = (DeleteOperation) operation;
+
+      out.writeByte(DELETE_OPERATION);
+      writeVarInt(out, delete.getPosition());
+      writeString(out, delete.getText());
+      return true;
+
+    } else if (clazz == SplitOperation.class) {
+      final SplitOperation split = (SplitOperation) operation;
+
+      out.writeByte(SPLIT_OPERATION);
+      return writeOperation(split.getFirst(), out) && writeOperation(split.getSecond(), out);
+
+    } else if (clazz == NoOperation.class) {
+      out.writeByte(NO_OPERATION);
+      return true;
+
+    } else if (clazz == TimestampOperation.class) {
+      out.writeByte(TIMESTAMP_OPERATION);
+      return true;
+    }
+
+    return false;
+  }
+
+  private static Operation readOperation(DataInput in) throws IOException {
+    final int type = in.readUnsignedByte();
+
+    try {
+      switch (type) {
+        case INSERT_OPERATION:
+          final int position = readVarInt(in);
+          final int origin = readVarInt(in);
+          return new InsertOperation(position, readString(in), origin);
+
+        case DELETE_OPERATION:
+          final int deletePosition = readVarInt(in);
+          return new DeleteOperation(deletePosition, readString(in));
+
+        case SPLIT_OPERATION:
+          final Operation first = readOperation(in);
+          return new SplitOperation(first, readOperation(in));
+
+        case NO_OPERATION:
+          return new NoOperation();
+
+        case TIMESTAMP_OPERATION:
+          return new TimestampOperation();
+
+        default:
+          throw new IOException("unknown operation type: " + type);
+      }
+    } catch (IllegalArgumentException e) {
+      throw new IOException("corrupted operation: " + e.getMessage(), e);
+    }
+  }
+}
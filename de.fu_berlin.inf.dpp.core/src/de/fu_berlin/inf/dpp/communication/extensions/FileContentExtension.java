@@ -0,0 +1,82 @@
+package de.fu_berlin.inf.dpp.communication.extensions;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
+import de.fu_berlin.inf.dpp.activities.FileActivity;
+
+/**
+ * Carries a chunk of the content of a {@link FileActivity} whose content is not transferred as part
+ * of the activity itself but referenced by {@link FileActivity#getContentReference()}.
+ *
+ * <p>This extension is only sent to peers that support its {@linkplain FileContentExtensionCodec
+ * binary codec} so that the content is transferred as raw bytes.
+ */
+@XStreamAlias(/* FileContent */ "FCNT")
+public class FileContentExtension extends SarosSessionPacketExtension {
+
+  public static final Provider PROVIDER = new Provider();
+
+  public static final FileContentExtensionCodec CODEC = new FileContentExtensionCodec(PROVIDER);
+
+  @XStreamAlias("ref")
+  @XStreamAsAttribute
+  private final String reference;
+
+  @XStreamAlias("len")
+  @XStreamAsAttribute
+  private final int length;
+
+  @XStreamAlias("off")
+  @XStreamAsAttribute
+  private final int offset;
+
+  private final byte[] data;
+
+  /**
+   * Creates a new chunk of a file content.
+   *
+   * @param sessionID the session id the content belongs to
+   * @param reference the reference of the content as used in the file activity
+   * @param length the length of the whole content
+   * @param offset the offset of this chunk in the whole content
+   * @param data the data of this chunk, <b>must not</b> be changed afterwards
+   */
+  public FileContentExtension(
+      String sessionID, String reference, int length, int offset, byte[] data) {
+    super(sessionID);
+    this.reference = reference;
+    this.length = length;
+    this.offset = offset;
+    this.data = data;
+  }
+
+  public String getReference() {
+    return reference;
+  }
+
+  /** Returns the length of the whole content. */
+  public int getLength() {
+    return length;
+  }
+
+  /** Returns the offset of this chunk in the whole content. */
+  public int getOffset() {
+    return offset;
+  }
+
+  /**
+   * Returns the data of this chunk.
+   *
+   * <p><b>Important:</b> the content of the array must <b>not</b> be changed
+   */
+  public byte[] getData() {
+    return data;
+  }
+
+  public static class Provider extends SarosSessionPacketExtension.Provider<FileContentExtension> {
+
+    private Provider() {
+      super("fcnt", FileContentExtension.class);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package de.fu_berlin.inf.dpp.communication.extensions;
+
+import de.fu_berlin.inf.dpp.misc.binary.BinaryExtensionCodec;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Binary codec for the {@link FileContentExtension}. The data of a chunk is written as is instead
+ * of the Base64 encoding used by XStream.
+ *
+ * <p>Wire format (version 1):
+ *
+ * <pre>
+ * extension := sessionID:string reference:string length:varint offset:varint size:varint data{size}
+ * </pre>
+ */
+public class FileContentExtensionCodec extends BinaryExtensionCodec<FileContentExtension> {
+
+  private static final int VERSION = 1;
+
+  FileContentExtensionCodec(FileContentExtension.Provider provider) {
+    super(provider, VERSION);
+  }
+
+  @Override
+  protected boolean write(FileContentExtension extension, DataOutput out) throws IOException {
+    final byte[] data = extension.getData();
+
+    writeString(out, extension.getSessionID());
+    writeString(out, extension.getReference());
+    writeVarInt(out, extension.getLength());
+    writeVarInt(out, extension.getOffset());
+    writeVarInt(out, data.length);
+    out.write(data);
+    return true;
+  }
+
+  @Override
+  protected FileContentExtension read(DataInput in) throws IOException {
+    final String sessionID = readString(in);
+    final String reference = readString(in);
+    final int length = readVarInt(in);
+    final int offset = readVarInt(in);
+    final int size = readVarInt(in);
+
+    if (length < 0 || offset < 0 || size < 0 || size > length - offset)
+      throw new IOException(
+          "corrupted chunk: length=" + length + ", offset=" + offset + ", size=" + size);
+
+    final byte[] data = new byte[size];
+    in.readFully(data);
+
+    return new FileContentExtension(sessionID, reference, length, offset, data);
+  }
+}
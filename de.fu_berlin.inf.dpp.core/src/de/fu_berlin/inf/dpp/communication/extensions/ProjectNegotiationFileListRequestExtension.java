@@ -0,0 +1,46 @@
+package de.fu_berlin.inf.dpp.communication.extensions;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
+import java.util.List;
+
+/**
+ * Requests the content of collapsed folders of a file list that was sent with a {@link
+ * ProjectNegotiationOfferingExtension}. The answer is a {@link
+ * ProjectNegotiationFileListResponseExtension}.
+ */
+@XStreamAlias(/* ProjectNegotiationFileListRequest */ "PNFLRQ")
+public class ProjectNegotiationFileListRequestExtension extends ProjectNegotiationExtension {
+
+  public static final Provider PROVIDER = new Provider();
+
+  @XStreamAlias("pid")
+  @XStreamAsAttribute
+  private final String projectID;
+
+  @XStreamAlias("folders")
+  private final List<String> folders;
+
+  public ProjectNegotiationFileListRequestExtension(
+      String sessionID, String negotiationID, String projectID, List<String> folders) {
+    super(sessionID, negotiationID);
+    this.projectID = projectID;
+    this.folders = folders;
+  }
+
+  public String getProjectID() {
+    return projectID;
+  }
+
+  public List<String> getFolders() {
+    return folders;
+  }
+
+  public static class Provider
+      extends ProjectNegotiationExtension.Provider<ProjectNegotiationFileListRequestExtension> {
+
+    private Provider() {
+      super("pnflrq", ProjectNegotiationFileListRequestExtension.class);
+    }
+  }
+}
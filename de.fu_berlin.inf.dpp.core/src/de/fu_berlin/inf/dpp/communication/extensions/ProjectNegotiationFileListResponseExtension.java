@@ -0,0 +1,34 @@
+package de.fu_berlin.inf.dpp.communication.extensions;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import de.fu_berlin.inf.dpp.negotiation.FileList;
+
+/**
+ * Answers a {@link ProjectNegotiationFileListRequestExtension} with a file list that contains the
+ * requested folders.
+ */
+@XStreamAlias(/* ProjectNegotiationFileListResponse */ "PNFLRS")
+public class ProjectNegotiationFileListResponseExtension extends ProjectNegotiationExtension {
+
+  public static final Provider PROVIDER = new Provider();
+
+  private final FileList fileList;
+
+  public ProjectNegotiationFileListResponseExtension(
+      String sessionID, String negotiationID, FileList fileList) {
+    super(sessionID, negotiationID);
+    this.fileList = fileList;
+  }
+
+  public FileList getFileList() {
+    return fileList;
+  }
+
+  public static class Provider
+      extends ProjectNegotiationExtension.Provider<ProjectNegotiationFileListResponseExtension> {
+
+    private Provider() {
+      super("pnflrs", ProjectNegotiationFileListResponseExtension.class, FileList.class);
+    }
+  }
+}
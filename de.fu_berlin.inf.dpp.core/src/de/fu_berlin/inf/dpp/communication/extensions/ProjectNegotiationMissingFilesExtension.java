@@ -1,7 +1,9 @@
 package de.fu_berlin.inf.dpp.communication.extensions;
 
 import com.thoughtworks.xstream.annotations.XStreamAlias;
+import de.fu_berlin.inf.dpp.negotiation.ChunkSignature;
 import de.fu_berlin.inf.dpp.negotiation.FileList;
+import java.util.Collections;
 import java.util.List;
 
 @XStreamAlias(/* ProjectNegotiationMissingFiles */ "PNMF")
@@ -11,21 +13,50 @@ public class ProjectNegotiationMissingFilesExtension extends ProjectNegotiationE
 
   private final List<FileList> fileLists;
 
+  private final List<ChunkSignature> signatures;
+
   public ProjectNegotiationMissingFilesExtension(
       String sessionID, String negotiationID, List<FileList> fileLists) {
+    this(sessionID, negotiationID, fileLists, null);
+  }
+
+  /**
+   * @param fileLists the files that are missing or outdated, one file list for each project
+   * @param signatures the signatures of outdated files which should be transferred as delta, may be
+   *     <code>null</code>
+   */
+  public ProjectNegotiationMissingFilesExtension(
+      String sessionID,
+      String negotiationID,
+      List<FileList> fileLists,
+      List<ChunkSignature> signatures) {
     super(sessionID, negotiationID);
     this.fileLists = fileLists;
+    this.signatures = signatures == null || signatures.isEmpty() ? null : signatures;
   }
 
   public List<FileList> getFileLists() {
     return fileLists;
   }
 
+  /**
+   * Returns the signatures of the outdated files which should be transferred as delta.
+   *
+   * @return the signatures which may be empty
+   */
+  public List<ChunkSignature> getSignatures() {
+    return signatures == null ? Collections.<ChunkSignature>emptyList() : signatures;
+  }
+
   public static class Provider
       extends ProjectNegotiationExtension.Provider<ProjectNegotiationMissingFilesExtension> {
 
     private Provider() {
-      super("pnmf", ProjectNegotiationMissingFilesExtension.class, FileList.class);
+      super(
+          "pnmf",
+          ProjectNegotiationMissingFilesExtension.class,
+          FileList.class,
+          ChunkSignature.class);
     }
   }
 }
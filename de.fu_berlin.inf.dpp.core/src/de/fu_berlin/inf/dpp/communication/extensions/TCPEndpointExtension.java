@@ -0,0 +1,100 @@
+package de.fu_berlin.inf.dpp.communication.extensions;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
+import com.thoughtworks.xstream.annotations.XStreamImplicit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Packet used to negotiate the endpoint of a direct TCP connection. The connecting side requests
+ * the endpoint for a connection identifier, the remote side responds with the addresses and the
+ * port it accepts connections on and a token that the connecting side has to present once it is
+ * connected. A response without any addresses indicates that the remote side does not accept direct
+ * TCP connections.
+ */
+@XStreamAlias(/* TCPEndpointExtension */ "TCPEP")
+public class TCPEndpointExtension extends SarosPacketExtension {
+
+  public static final Provider PROVIDER = new Provider();
+
+  @XStreamAlias("id")
+  @XStreamAsAttribute
+  private final String requestID;
+
+  @XStreamAlias("cid")
+  @XStreamAsAttribute
+  private final String connectionID;
+
+  @XStreamAlias("token")
+  @XStreamAsAttribute
+  private final String token;
+
+  @XStreamAlias("port")
+  @XStreamAsAttribute
+  private final int port;
+
+  @XStreamImplicit(itemFieldName = "addr")
+  private final List<String> addresses;
+
+  /**
+   * Creates a request for the endpoint of a connection.
+   *
+   * @param requestID the id of the request that is included in the response
+   * @param connectionID the identifier of the connection to establish
+   */
+  public TCPEndpointExtension(String requestID, String connectionID) {
+    this(requestID, connectionID, null, 0, null);
+  }
+
+  /**
+   * Creates a response that contains the endpoint of a connection.
+   *
+   * @param requestID the id of the request
+   * @param connectionID the identifier of the connection to establish
+   * @param token the token the connecting side has to present or <code>null</code>
+   * @param port the port connections are accepted on
+   * @param addresses the addresses connections are accepted on or <code>null</code> if no
+   *     connections are accepted
+   */
+  public TCPEndpointExtension(
+      String requestID, String connectionID, String token, int port, List<String> addresses) {
+    this.requestID = requestID;
+    this.connectionID = connectionID;
+    this.token = token;
+    this.port = port;
+    this.addresses =
+        addresses == null || addresses.isEmpty() ? null : new ArrayList<String>(addresses);
+  }
+
+  public String getRequestID() {
+    return requestID;
+  }
+
+  public String getConnectionID() {
+    return connectionID;
+  }
+
+  public String getToken() {
+    return token;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  /** Returns the addresses connections are accepted on, the list is empty for a request. */
+  public List<String> getAddresses() {
+    if (addresses == null) return Collections.emptyList();
+
+    return Collections.unmodifiableList(addresses);
+  }
+
+  public static class Provider extends SarosPacketExtension.Provider<TCPEndpointExtension> {
+
+    private Provider() {
+      super("tcpep", TCPEndpointExtension.class);
+    }
+  }
+}
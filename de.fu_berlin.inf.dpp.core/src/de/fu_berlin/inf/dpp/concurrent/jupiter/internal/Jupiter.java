@@ -30,21 +30,30 @@ import de.fu_berlin.inf.dpp.concurrent.jupiter.Timestamp;
 import de.fu_berlin.inf.dpp.concurrent.jupiter.TransformationException;
 import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.GOTOInclusionTransformation;
 import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.NoOperation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.PackedOperationQueue;
 import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.TimestampOperation;
 import de.fu_berlin.inf.dpp.session.User;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
-import org.apache.log4j.Logger;
 
 /** This class implements the client-side core of the Jupiter control algorithm. */
 public class Jupiter implements Algorithm {
 
-  private static final Logger log = Logger.getLogger(Jupiter.class);
+  /**
+   * Number of received operations after which the other site must be informed that they were
+   * processed, if no local operation was generated in the meantime. This limits the number of
+   * operations the other site has to keep in its {@link #ackJupiterActivityList}.
+   */
+  public static final int ACKNOWLEDGEMENT_THRESHOLD =
+      Math.max(
+          1,
+          Integer.getInteger(
+              "de.fu_berlin.inf.dpp.concurrent.jupiter.ACKNOWLEDGEMENT_THRESHOLD", 32));
 
-  /** The inclusion transformation function used to transform operations. */
+  /**
+   * The inclusion transformation function used to transform indices. Operations are transformed by
+   * the {@link #ackJupiterActivityList} which implements the same transformation functions.
+   */
   protected InclusionTransformation inclusion;
 
   /** The vector time, representing the number of processed JupiterActivities, of this algorithm. */
@@ -60,8 +69,17 @@ public class Jupiter implements Algorithm {
    * A list that contains the JupiterActivities sent to the server which are to be acknowledged by
    * the server before they can be removed. This list corresponds to the 'outgoing' list in the
    * Jupiter pseudo code description.
+   *
+   * <p>Every operation is stored together with the local operation count at the time it was
+   * generated.
+   */
+  protected final PackedOperationQueue ackJupiterActivityList;
+
+  /**
+   * The remote operation count of the {@link #vectorTime} at the time the last JupiterActivity was
+   * generated. All remote operations up to this count are acknowledged to the other site.
    */
-  protected final List<OperationWrapper> ackJupiterActivityList;
+  protected int acknowledgedRemoteOperationCount;
 
   /**
    * Class constructor that creates a new Jupiter algorithm.
@@ -72,7 +90,7 @@ public class Jupiter implements Algorithm {
     this.inclusion = new GOTOInclusionTransformation();
     this.vectorTime = new JupiterVectorTime(0, 0);
     this.isClientSide = isClientSide;
-    this.ackJupiterActivityList = new ArrayList<OperationWrapper>();
+    this.ackJupiterActivityList = new PackedOperationQueue();
   }
 
   @Override
@@ -82,15 +100,51 @@ public class Jupiter implements Algorithm {
     JupiterActivity jupiterActivity = new JupiterActivity(this.vectorTime, op, source, editor);
 
     // add(op, myMsgs) to outgoing;
-    this.ackJupiterActivityList.add(
-        new OperationWrapper(op, this.vectorTime.getLocalOperationCount()));
+    this.ackJupiterActivityList.add(op, this.vectorTime.getLocalOperationCount());
 
     // myMsgs = myMsgs + 1;
     this.vectorTime = this.vectorTime.incrementLocalOperationCount();
 
+    this.acknowledgedRemoteOperationCount = this.vectorTime.getRemoteOperationCount();
+
     return jupiterActivity;
   }
 
+  /**
+   * Generates a JupiterActivity containing a {@link TimestampOperation} which informs the other
+   * site about all remote operations processed so far, so that the other site can discard them from
+   * its outgoing queue. In contrast to {@link #generateJupiterActivity} the vector time is not
+   * changed.
+   *
+   * @param source the user the acknowledgement is sent for
+   * @param editor the document the acknowledgement refers to
+   * @return the JupiterActivity acknowledging all processed remote operations
+   * @see #isAcknowledgementRequired()
+   */
+  public JupiterActivity generateAcknowledgement(User source, SPath editor) {
+    this.acknowledgedRemoteOperationCount = this.vectorTime.getRemoteOperationCount();
+
+    return new JupiterActivity(this.vectorTime, new TimestampOperation(), source, editor);
+  }
+
+  /**
+   * Returns whether at least {@link #ACKNOWLEDGEMENT_THRESHOLD} remote operations were processed
+   * since the last JupiterActivity was generated, i.e. the other site cannot shrink its outgoing
+   * queue unless an {@linkplain #generateAcknowledgement acknowledgement} is sent.
+   */
+  public boolean isAcknowledgementRequired() {
+    return this.vectorTime.getRemoteOperationCount() - this.acknowledgedRemoteOperationCount
+        >= ACKNOWLEDGEMENT_THRESHOLD;
+  }
+
+  /**
+   * Returns the number of local operations which were not yet acknowledged by the other site.
+   * Incoming operations have to be transformed against all of them.
+   */
+  public int getUnacknowledgedOperationCount() {
+    return this.ackJupiterActivityList.size();
+  }
+
   /**
    * Returns whether the local user represented by this Jupiter instance has not modified the
    * document locally.
@@ -142,19 +196,20 @@ public class Jupiter implements Algorithm {
   public Operation receiveJupiterActivity(JupiterActivity jupiterActivity)
       throws TransformationException {
 
-    if (jupiterActivity.getOperation() instanceof TimestampOperation) {
-
-      // TODO Use timestamps correctly!
-      log.warn("Timestamp operations are not tested at the moment");
-
-      updateVectorTime(jupiterActivity.getTimestamp());
-      return new NoOperation();
-    }
-
     Timestamp timestamp = jupiterActivity.getTimestamp();
     if (!(timestamp instanceof JupiterVectorTime)) {
       throw new IllegalArgumentException("Jupiter expects timestamps of type JupiterVectorTime");
     }
+
+    /*
+     * acknowledgements are not counted as operations, otherwise the other
+     * site would have to acknowledge them again
+     */
+    if (jupiterActivity.getOperation() instanceof TimestampOperation) {
+      acknowledge(0, timestamp);
+      return new NoOperation();
+    }
+
     checkPreconditions((JupiterVectorTime) timestamp);
     discardAcknowledgedOperations((JupiterVectorTime) timestamp);
 
@@ -165,6 +220,7 @@ public class Jupiter implements Algorithm {
 
   @Override
   public void acknowledge(int siteId, Timestamp timestamp) throws TransformationException {
+    checkPreconditions((JupiterVectorTime) timestamp);
     discardAcknowledgedOperations((JupiterVectorTime) timestamp);
   }
 
@@ -175,8 +231,7 @@ public class Jupiter implements Algorithm {
     int[] result = new int[indices.length];
     System.arraycopy(indices, 0, result, 0, indices.length);
     for (int i = 0; i < this.ackJupiterActivityList.size(); i++) {
-      OperationWrapper wrap = this.ackJupiterActivityList.get(i);
-      Operation ack = wrap.getOperation();
+      Operation ack = this.ackJupiterActivityList.getOperation(i);
       for (int k = 0; k < indices.length; k++) {
         result[k] = transformIndex(result[k], ack);
       }
@@ -205,13 +260,8 @@ public class Jupiter implements Algorithm {
    * @param time the remote JupiterVectorTime
    */
   protected void discardAcknowledgedOperations(JupiterVectorTime time) {
-    Iterator<OperationWrapper> iter = this.ackJupiterActivityList.iterator();
-    while (iter.hasNext()) {
-      OperationWrapper wrap = iter.next();
-      if (wrap.getLocalOperationCount() < time.getRemoteOperationCount()) {
-        iter.remove();
-      }
-    }
+    this.ackJupiterActivityList.removeAcknowledged(time.getRemoteOperationCount());
+
     // ASSERT msg.myMsgs == otherMsgs
     assert time.getLocalOperationCount() == this.vectorTime.getRemoteOperationCount()
         : "msg.myMsgs != otherMsgs !!";
@@ -226,28 +276,11 @@ public class Jupiter implements Algorithm {
    * @see #ackJupiterActivityList
    */
   protected Operation transform(Operation newOp) {
-    for (int ackJupiterActivityListCnt = 0;
-        ackJupiterActivityListCnt < this.ackJupiterActivityList.size();
-        ackJupiterActivityListCnt++) {
-      OperationWrapper wrap = this.ackJupiterActivityList.get(ackJupiterActivityListCnt);
-      Operation existingOp = wrap.getOperation();
-
-      Operation transformedOp;
-
-      if (isClientSide()) {
-        transformedOp = this.inclusion.transform(newOp, existingOp, Boolean.TRUE);
-        existingOp = this.inclusion.transform(existingOp, newOp, Boolean.FALSE);
-      } else {
-        transformedOp = this.inclusion.transform(newOp, existingOp, Boolean.FALSE);
-        existingOp = this.inclusion.transform(existingOp, newOp, Boolean.TRUE);
-      }
-      this.ackJupiterActivityList.set(
-          ackJupiterActivityListCnt,
-          new OperationWrapper(existingOp, wrap.getLocalOperationCount()));
-
-      newOp = transformedOp;
-    }
-    return newOp;
+    /*
+     * the operations of the client have a higher priority, the queue
+     * transforms its operations with the negated parameter
+     */
+    return this.ackJupiterActivityList.transform(newOp, isClientSide());
   }
 
   /**
@@ -259,7 +292,7 @@ public class Jupiter implements Algorithm {
   protected void checkPreconditions(JupiterVectorTime time) throws TransformationException {
     if (!this.ackJupiterActivityList.isEmpty()
         && (time.getRemoteOperationCount()
-            < this.ackJupiterActivityList.get(0).getLocalOperationCount())) {
+            < this.ackJupiterActivityList.getLocalOperationCount(0))) {
       throw new TransformationException("Precondition #1 violated.");
     } else if (time.getRemoteOperationCount() > this.vectorTime.getLocalOperationCount()) {
       throw new TransformationException(
@@ -273,42 +306,6 @@ public class Jupiter implements Algorithm {
     }
   }
 
-  /**
-   * This is a simple helper class used in the implementation of the Jupiter algorithm. A
-   * OperationWrapper instance is created with an operation and the current local operation count
-   * and inserted into the outgoing queue (see {@link Jupiter#ackJupiterActivityList}).
-   *
-   * @valueObject Instances of this class should be treated as value objects and should be treated
-   *     as immutable.
-   * @see Jupiter#generateJupiterActivity(Operation, User, SPath)
-   * @see Jupiter#receiveJupiterActivity(JupiterActivity)
-   */
-  protected static class OperationWrapper {
-
-    protected final Operation op;
-
-    protected final int count;
-
-    OperationWrapper(Operation op, int count) {
-      this.op = op;
-      this.count = count;
-    }
-
-    Operation getOperation() {
-      return this.op;
-    }
-
-    int getLocalOperationCount() {
-      return this.count;
-    }
-
-    /** {@inheritDoc} */
-    @Override
-    public String toString() {
-      return ("OperationWrapper(" + this.op + ", " + this.count + ")");
-    }
-  }
-
   /**
    * Throws a CannotUndoException because undo is not supported by this implementation.
    *
@@ -350,6 +347,7 @@ public class Jupiter implements Algorithm {
     int local = timestamp.getComponents()[0];
     int remote = timestamp.getComponents()[1];
     this.vectorTime = new JupiterVectorTime(local, remote);
+    this.acknowledgedRemoteOperationCount = remote;
   }
 
   public ChecksumActivity withTimestamp(ChecksumActivity checksumActivity) {
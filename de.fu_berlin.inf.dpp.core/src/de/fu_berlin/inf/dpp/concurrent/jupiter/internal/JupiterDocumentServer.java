@@ -6,6 +6,7 @@ import de.fu_berlin.inf.dpp.activities.SPath;
 import de.fu_berlin.inf.dpp.concurrent.jupiter.Operation;
 import de.fu_berlin.inf.dpp.concurrent.jupiter.Timestamp;
 import de.fu_berlin.inf.dpp.concurrent.jupiter.TransformationException;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.TimestampOperation;
 import de.fu_berlin.inf.dpp.session.User;
 import java.util.HashMap;
 import java.util.Map;
@@ -42,9 +43,19 @@ public class JupiterDocumentServer {
     return proxies.remove(user) != null;
   }
 
-  // FIXME why is this not synchronized ?!
-  public Map<User, JupiterActivity> transformJupiterActivity(final JupiterActivity activity)
-      throws TransformationException {
+  /**
+   * Transforms the given JupiterActivity for all other users of this document.
+   *
+   * <p>If the source of the activity sent many activities without receiving any in return, the
+   * result also contains an {@linkplain Jupiter#generateAcknowledgement acknowledgement} for the
+   * source. Received acknowledgements only update the proxy of their source and are not forwarded.
+   *
+   * @param activity the activity to transform
+   * @return the transformed activities for their recipients
+   * @throws TransformationException if the activity cannot be transformed
+   */
+  public synchronized Map<User, JupiterActivity> transformJupiterActivity(
+      final JupiterActivity activity) throws TransformationException {
 
     final Map<User, JupiterActivity> result = new HashMap<User, JupiterActivity>();
 
@@ -64,6 +75,8 @@ public class JupiterDocumentServer {
 
     final Operation op = sourceProxy.receiveJupiterActivity(activity);
 
+    if (activity.getOperation() instanceof TimestampOperation) return result;
+
     // 2. Generate outgoing JupiterActivities for all other clients and the
     // host
     for (final Entry<User, Jupiter> entry : proxies.entrySet()) {
@@ -80,9 +93,24 @@ public class JupiterDocumentServer {
       result.put(user, transformed);
     }
 
+    if (sourceProxy.isAcknowledgementRequired())
+      result.put(source, sourceProxy.generateAcknowledgement(source, editor));
+
     return result;
   }
 
+  /**
+   * Returns the number of operations sent to the users of this document which are not yet
+   * acknowledged by them.
+   */
+  public synchronized int getUnacknowledgedOperationCount() {
+    int count = 0;
+
+    for (final Jupiter proxy : proxies.values()) count += proxy.getUnacknowledgedOperationCount();
+
+    return count;
+  }
+
   public synchronized void updateVectorTime(final User source, final User dest) {
     final Jupiter proxy = proxies.get(source);
 
@@ -105,7 +133,7 @@ public class JupiterDocumentServer {
     if (removeProxyClient(user)) addProxyClient(user);
   }
 
-  public Map<User, ChecksumActivity> withTimestamp(final ChecksumActivity activity)
+  public synchronized Map<User, ChecksumActivity> withTimestamp(final ChecksumActivity activity)
       throws TransformationException {
 
     final Map<User, ChecksumActivity> result = new HashMap<User, ChecksumActivity>();
@@ -49,7 +49,8 @@ public class GOTOInclusionTransformation implements InclusionTransformation {
   @Override
   public Operation transform(Operation op1, Operation op2, Object param) {
 
-    log.trace("Transform " + op1 + " in the context of " + op2 + " (privileged==" + param + ")");
+    if (log.isTraceEnabled())
+      log.trace("Transform " + op1 + " in the context of " + op2 + " (privileged==" + param + ")");
 
     boolean privileged = (Boolean) param;
 
@@ -0,0 +1,421 @@
+package de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text;
+
+import de.fu_berlin.inf.dpp.concurrent.jupiter.InclusionTransformation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.Operation;
+
+/**
+ * Queue of operations which are transformed by the {@link GOTOInclusionTransformation} against
+ * every incoming operation, e.g. the outgoing queue of the Jupiter algorithm.
+ *
+ * <p>Insert and delete operations are stored in arrays as positions and ranges of their original
+ * text and are transformed in place. Transforming an operation against the queue therefore only
+ * creates a new object for the result and for entries that have to be accessed as an {@link
+ * Operation} afterwards. All other operations, e.g. {@link SplitOperation}s and deletes that have
+ * to be split by an insert, are transformed by the {@link GOTOInclusionTransformation} itself.
+ *
+ * <p>This class is not thread safe.
+ */
+public final class PackedOperationQueue {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private static final int INSERT = 0;
+  private static final int DELETE = 1;
+  private static final int NOOP = 2;
+  private static final int OTHER = 3;
+
+  private final InclusionTransformation inclusion = new GOTOInclusionTransformation();
+
+  /** Index of the first entry in the arrays */
+  private int head;
+
+  private int size;
+
+  private int[] kinds = new int[INITIAL_CAPACITY];
+  private int[] positions = new int[INITIAL_CAPACITY];
+  private int[] origins = new int[INITIAL_CAPACITY];
+  private int[] counts = new int[INITIAL_CAPACITY];
+
+  /** The text of an entry is the range [start, end) of this string */
+  private String[] texts = new String[INITIAL_CAPACITY];
+
+  private int[] starts = new int[INITIAL_CAPACITY];
+  private int[] ends = new int[INITIAL_CAPACITY];
+
+  /**
+   * The operation object of an entry, <code>null</code> if it has to be created from the packed
+   * values
+   */
+  private Operation[] operations = new Operation[INITIAL_CAPACITY];
+
+  /*
+   * The operation which is currently transformed against the queue, it
+   * only has to be created as an object if it was changed.
+   */
+  private int kind;
+  private int position;
+  private int origin;
+  private String text;
+  private int start;
+  private int end;
+  private Operation operation;
+  private boolean changed;
+
+  /* Result of transformPacked */
+  private int resultKind;
+  private int resultPosition;
+  private String resultText;
+  private int resultStart;
+  private int resultEnd;
+
+  /**
+   * Appends an operation to the queue.
+   *
+   * @param op the operation
+   * @param count the local operation count of the operation
+   */
+  public void add(Operation op, int count) {
+    if (head + size == kinds.length) ensureCapacity();
+
+    final int index = head + size;
+
+    counts[index] = count;
+    set(index, op);
+    size++;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Returns the operation at the given position of the queue. */
+  public Operation getOperation(int index) {
+    checkIndex(index);
+
+    final int i = head + index;
+
+    if (operations[i] == null)
+      operations[i] =
+          toOperation(kinds[i], positions[i], origins[i], texts[i], starts[i], ends[i], null);
+
+    return operations[i];
+  }
+
+  /** Returns the local operation count of the operation at the given position of the queue. */
+  public int getLocalOperationCount(int index) {
+    checkIndex(index);
+
+    return counts[head + index];
+  }
+
+  /**
+   * Removes all operations from the head of the queue whose local operation count is lower than the
+   * given count.
+   */
+  public void removeAcknowledged(int count) {
+    while (size > 0 && counts[head] < count) {
+      texts[head] = null;
+      operations[head] = null;
+      head++;
+      size--;
+    }
+
+    if (size == 0) head = 0;
+  }
+
+  /**
+   * Transforms the given operation against all operations of the queue and every operation of the
+   * queue against the given operation transformed so far.
+   *
+   * @param op the operation to transform
+   * @param privileged the parameter to use for the transformation of the given operation, the
+   *     operations of the queue are transformed with the negated parameter
+   * @return the transformed operation, which is <code>op</code> itself if it was not changed
+   */
+  public Operation transform(Operation op, boolean privileged) {
+    load(op);
+
+    for (int i = head; i < head + size; i++) {
+      if (kind == OTHER || kinds[i] == OTHER || !transformPacked(i, privileged))
+        transformObjects(i, privileged);
+    }
+
+    final Operation result =
+        changed ? toOperation(kind, position, origin, text, start, end, operation) : operation;
+
+    text = null;
+    operation = null;
+    resultText = null;
+
+    return result;
+  }
+
+  /**
+   * Transforms the current operation and the entry at the given index against each other using
+   * their packed values.
+   *
+   * @return <code>false</code> if the result cannot be packed, nothing is changed in this case
+   */
+  private boolean transformPacked(int i, boolean privileged) {
+    if (!transformPacked(
+        kinds[i],
+        positions[i],
+        origins[i],
+        texts[i],
+        starts[i],
+        ends[i],
+        kind,
+        position,
+        origin,
+        end - start,
+        !privileged)) return false;
+
+    final int entryKind = resultKind;
+    final int entryPosition = resultPosition;
+    final String entryText = resultText;
+    final int entryStart = resultStart;
+    final int entryEnd = resultEnd;
+
+    if (!transformPacked(
+        kind,
+        position,
+        origin,
+        text,
+        start,
+        end,
+        kinds[i],
+        positions[i],
+        origins[i],
+        ends[i] - starts[i],
+        privileged)) return false;
+
+    if (entryKind != kinds[i]
+        || entryPosition != positions[i]
+        || entryText != texts[i]
+        || entryStart != starts[i]
+        || entryEnd != ends[i]) {
+
+      kinds[i] = entryKind;
+      positions[i] = entryPosition;
+      texts[i] = entryText;
+      starts[i] = entryStart;
+      ends[i] = entryEnd;
+      operations[i] = null;
+    }
+
+    if (resultKind != kind
+        || resultPosition != position
+        || resultText != text
+        || resultStart != start
+        || resultEnd != end) {
+
+      kind = resultKind;
+      position = resultPosition;
+      text = resultText;
+      start = resultStart;
+      end = resultEnd;
+      changed = true;
+    }
+
+    return true;
+  }
+
+  /**
+   * Transforms the operation x in the context of the operation y. This is the same transformation
+   * as in {@link GOTOInclusionTransformation} for inserts and deletes, the result is stored in the
+   * result fields.
+   *
+   * @return <code>false</code> if the result has to be split
+   */
+  private boolean transformPacked(
+      int xKind,
+      int xPosition,
+      int xOrigin,
+      String xText,
+      int xStart,
+      int xEnd,
+      int yKind,
+      int yPosition,
+      int yOrigin,
+      int yLength,
+      boolean privileged) {
+
+    resultKind = xKind;
+    resultPosition = xPosition;
+    resultText = xText;
+    resultStart = xStart;
+    resultEnd = xEnd;
+
+    if (xKind == NOOP || yKind == NOOP) return true;
+
+    final int xLength = xEnd - xStart;
+
+    if (xKind == INSERT) {
+      if (yKind == INSERT) {
+        if (xPosition > yPosition
+            || (xPosition == yPosition
+                && (xOrigin > yOrigin || (xOrigin == yOrigin && !privileged))))
+          resultPosition = xPosition + yLength;
+
+      } else if (xPosition > yPosition + yLength) {
+        resultPosition = xPosition - yLength;
+      } else if (xPosition > yPosition) {
+        resultPosition = yPosition;
+      }
+
+      return true;
+    }
+
+    if (yKind == INSERT) {
+      if (yPosition >= xPosition + xLength) return true;
+
+      if (yPosition > xPosition) return false;
+
+      resultPosition = xPosition + yLength;
+      return true;
+    }
+
+    if (yPosition >= xPosition + xLength) return true;
+
+    if (xPosition >= yPosition + yLength) {
+      resultPosition = xPosition - yLength;
+      return true;
+    }
+
+    // overlapping deletes
+
+    if (yPosition <= xPosition && xPosition + xLength <= yPosition + yLength) {
+      resultKind = NOOP;
+    } else if (yPosition <= xPosition) {
+      resultPosition = yPosition;
+      resultStart = xStart + yPosition + yLength - xPosition;
+    } else if (yPosition + yLength >= xPosition + xLength) {
+      resultEnd = xStart + yPosition - xPosition;
+    } else {
+      resultText =
+          xText.substring(xStart, xStart + yPosition - xPosition)
+              + xText.substring(xStart + yPosition + yLength - xPosition, xEnd);
+      resultStart = 0;
+      resultEnd = resultText.length();
+    }
+
+    return true;
+  }
+
+  private void transformObjects(int i, boolean privileged) {
+    final Operation current =
+        changed ? toOperation(kind, position, origin, text, start, end, operation) : operation;
+
+    final Operation entry = getOperation(i - head);
+
+    final Operation transformed = inclusion.transform(current, entry, privileged);
+
+    set(i, inclusion.transform(entry, current, !privileged));
+
+    load(transformed);
+  }
+
+  /** Makes the given operation the operation which is currently transformed. */
+  private void load(Operation op) {
+    operation = op;
+    changed = false;
+    start = 0;
+    origin = 0;
+    position = 0;
+
+    if (op instanceof InsertOperation) {
+      final InsertOperation insert = (InsertOperation) op;
+      kind = INSERT;
+      position = insert.getPosition();
+      origin = insert.getOrigin();
+      text = insert.getText();
+    } else if (op instanceof DeleteOperation) {
+      final DeleteOperation delete = (DeleteOperation) op;
+      kind = DELETE;
+      position = delete.getPosition();
+      text = delete.getText();
+    } else {
+      kind = op instanceof NoOperation ? NOOP : OTHER;
+      text = "";
+    }
+
+    end = text.length();
+  }
+
+  private void set(int i, Operation op) {
+    operations[i] = op;
+    starts[i] = 0;
+    origins[i] = 0;
+    positions[i] = 0;
+
+    if (op instanceof InsertOperation) {
+      final InsertOperation insert = (InsertOperation) op;
+      kinds[i] = INSERT;
+      positions[i] = insert.getPosition();
+      origins[i] = insert.getOrigin();
+      texts[i] = insert.getText();
+    } else if (op instanceof DeleteOperation) {
+      final DeleteOperation delete = (DeleteOperation) op;
+      kinds[i] = DELETE;
+      positions[i] = delete.getPosition();
+      texts[i] = delete.getText();
+    } else {
+      kinds[i] = op instanceof NoOperation ? NOOP : OTHER;
+      texts[i] = "";
+    }
+
+    ends[i] = texts[i].length();
+  }
+
+  private static Operation toOperation(
+      int kind, int position, int origin, String text, int start, int end, Operation other) {
+
+    switch (kind) {
+      case INSERT:
+        return new InsertOperation(position, text.substring(start, end), origin);
+      case DELETE:
+        return new DeleteOperation(position, text.substring(start, end));
+      case NOOP:
+        return new NoOperation();
+      default:
+        return other;
+    }
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+  }
+
+  /** Moves the entries to the beginning of the arrays or grows them if they are full. */
+  private void ensureCapacity() {
+    final int capacity = head > kinds.length / 2 ? kinds.length : kinds.length * 2;
+
+    kinds = copy(kinds, capacity);
+    positions = copy(positions, capacity);
+    origins = copy(origins, capacity);
+    counts = copy(counts, capacity);
+    starts = copy(starts, capacity);
+    ends = copy(ends, capacity);
+
+    final String[] newTexts = new String[capacity];
+    System.arraycopy(texts, head, newTexts, 0, size);
+    texts = newTexts;
+
+    final Operation[] newOperations = new Operation[capacity];
+    System.arraycopy(operations, head, newOperations, 0, size);
+    operations = newOperations;
+
+    head = 0;
+  }
+
+  private int[] copy(int[] array, int capacity) {
+    final int[] result = new int[capacity];
+    System.arraycopy(array, head, result, 0, size);
+    return result;
+  }
+}
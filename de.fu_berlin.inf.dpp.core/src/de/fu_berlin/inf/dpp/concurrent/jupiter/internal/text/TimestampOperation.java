@@ -11,8 +11,12 @@ import java.util.List;
 /**
  * This operation contains a new vector time for the algorithm.
  *
- * <p>TODO TimestampOperations are never used.
+ * <p>A JupiterActivity containing this operation acknowledges all operations the sending site has
+ * received so far without modifying the document. It is sent if a site only receives operations for
+ * a longer time, so that the other site can discard the acknowledged operations from its outgoing
+ * queue.
  *
+ * @see de.fu_berlin.inf.dpp.concurrent.jupiter.internal.Jupiter#generateAcknowledgement
  * @author orieger
  */
 @XStreamAlias("timestampOp")
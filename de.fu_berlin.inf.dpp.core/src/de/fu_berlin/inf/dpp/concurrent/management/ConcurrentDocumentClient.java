@@ -109,6 +109,30 @@ public class ConcurrentDocumentClient {
     return activities;
   }
 
+  /**
+   * Returns an acknowledgement which has to be sent to the host after the given activity was
+   * transformed by {@link #transformFromJupiter(IActivity)}. Acknowledgements are only required if
+   * many JupiterActivities were received for a document without generating one locally. Otherwise
+   * the host would have to keep all operations sent to this client.
+   *
+   * @host and @client
+   * @param activity the activity which was transformed
+   * @return the acknowledgement or <code>null</code> if no acknowledgement is required
+   */
+  public JupiterActivity generateAcknowledgement(IActivity activity) {
+    if (!(activity instanceof JupiterActivity)) return null;
+
+    return jupiterClient.generateAcknowledgement(((JupiterActivity) activity).getPath());
+  }
+
+  /**
+   * Returns the number of local operations for the given document which are not yet acknowledged by
+   * the host.
+   */
+  public int getUnacknowledgedOperationCount(SPath path) {
+    return jupiterClient.getUnacknowledgedOperationCount(path);
+  }
+
   /**
    * Will receive an incoming ChecksumActivity and discard it if it is not valid within the current
    * local Jupiter timestamp
@@ -167,6 +167,17 @@ public class ConcurrentDocumentServer implements Startable {
     server.reset(path, user);
   }
 
+  /**
+   * Returns the number of transformed operations which are not yet acknowledged by their recipients
+   * for every document. The host has to keep these operations in memory and has to transform every
+   * incoming operation against them.
+   *
+   * @host
+   */
+  public Map<SPath, Integer> getUnacknowledgedOperationCounts() {
+    return server.getUnacknowledgedOperationCounts();
+  }
+
   /** Does the actual work of transforming a ChecksumActivity. */
   private List<QueueItem> withTimestamp(final ChecksumActivity activity) {
 
@@ -63,6 +63,27 @@ public class JupiterClient {
         .generateJupiterActivity(textEdit.toOperation(), sarosSession.getLocalUser(), path);
   }
 
+  /**
+   * Returns an acknowledgement for the remote operations received for the given path if the host
+   * has to be informed about them.
+   *
+   * @return the acknowledgement or <code>null</code> if no acknowledgement is required
+   * @see Jupiter#isAcknowledgementRequired()
+   */
+  public synchronized JupiterActivity generateAcknowledgement(SPath path) {
+    final Jupiter clientDoc = clientDocs.get(path);
+
+    if (clientDoc == null || !clientDoc.isAcknowledgementRequired()) return null;
+
+    return clientDoc.generateAcknowledgement(sarosSession.getLocalUser(), path);
+  }
+
+  public synchronized int getUnacknowledgedOperationCount(SPath path) {
+    final Jupiter clientDoc = clientDocs.get(path);
+
+    return clientDoc == null ? 0 : clientDoc.getUnacknowledgedOperationCount();
+  }
+
   /**
    * Given a checksum, this method will return a new ChecksumActivity with the timestamp set to the
    * VectorTime of the Jupiter algorithm used for managing the document addressed by the checksum.
@@ -10,12 +10,17 @@ import de.fu_berlin.inf.dpp.session.User;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A JupiterServer manages Jupiter server instances for a number of users AND number of paths.
  *
  * <p>(in contrast to a JupiterDocumentServer which only handles a single path)
+ *
+ * <p>Activities for different paths can be transformed concurrently, the transformation of
+ * activities for the same path is serialized by the corresponding JupiterDocumentServer.
  */
 public class JupiterServer {
 
@@ -24,9 +29,10 @@ public class JupiterServer {
    *
    * @host
    */
-  private final HashMap<SPath, JupiterDocumentServer> concurrentDocuments =
-      new HashMap<SPath, JupiterDocumentServer>();
+  private final Map<SPath, JupiterDocumentServer> concurrentDocuments =
+      new ConcurrentHashMap<SPath, JupiterDocumentServer>();
 
+  /** Guarded by this JupiterServer, which also guards the creation of new documents */
   private final Set<User> currentClients = new HashSet<User>();
 
   private final ISarosSession sarosSession;
@@ -66,11 +72,16 @@ public class JupiterServer {
    * SarosSessionMapper to also track the resources and not just the projects
    * that are already shared for every user individually.
    */
-  private synchronized JupiterDocumentServer getServer(final SPath path) {
+  private JupiterDocumentServer getServer(final SPath path) {
 
     JupiterDocumentServer docServer = concurrentDocuments.get(path);
 
-    if (docServer == null) {
+    if (docServer != null) return docServer;
+
+    synchronized (this) {
+      docServer = concurrentDocuments.get(path);
+
+      if (docServer != null) return docServer;
 
       docServer = new JupiterDocumentServer(path);
 
@@ -92,11 +103,11 @@ public class JupiterServer {
     return docServer;
   }
 
-  public synchronized void reset(final SPath path, final User user) {
+  public void reset(final SPath path, final User user) {
     getServer(path).reset(user);
   }
 
-  public synchronized Map<User, JupiterActivity> transform(final JupiterActivity activity)
+  public Map<User, JupiterActivity> transform(final JupiterActivity activity)
       throws TransformationException {
 
     final JupiterDocumentServer docServer = getServer(activity.getPath());
@@ -104,11 +115,24 @@ public class JupiterServer {
     return docServer.transformJupiterActivity(activity);
   }
 
-  public synchronized Map<User, ChecksumActivity> withTimestamp(final ChecksumActivity activity)
+  public Map<User, ChecksumActivity> withTimestamp(final ChecksumActivity activity)
       throws TransformationException {
 
     final JupiterDocumentServer docServer = getServer(activity.getPath());
 
     return docServer.withTimestamp(activity);
   }
+
+  /**
+   * Returns the number of operations which are not yet acknowledged by the receiving users for
+   * every document.
+   */
+  public Map<SPath, Integer> getUnacknowledgedOperationCounts() {
+    final Map<SPath, Integer> result = new HashMap<SPath, Integer>();
+
+    for (final Entry<SPath, JupiterDocumentServer> entry : concurrentDocuments.entrySet())
+      result.put(entry.getKey(), entry.getValue().getUnacknowledgedOperationCount());
+
+    return result;
+  }
 }
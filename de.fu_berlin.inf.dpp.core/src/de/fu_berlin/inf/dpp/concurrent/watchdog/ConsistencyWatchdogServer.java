@@ -1,6 +1,7 @@
 package de.fu_berlin.inf.dpp.concurrent.watchdog;
 
 import de.fu_berlin.inf.dpp.activities.ChecksumActivity;
+import de.fu_berlin.inf.dpp.activities.ChecksumErrorActivity;
 import de.fu_berlin.inf.dpp.activities.SPath;
 import de.fu_berlin.inf.dpp.activities.TextEditActivity;
 import de.fu_berlin.inf.dpp.annotations.Component;
@@ -8,7 +9,10 @@ import de.fu_berlin.inf.dpp.editor.AbstractSharedEditorListener;
 import de.fu_berlin.inf.dpp.editor.IEditorManager;
 import de.fu_berlin.inf.dpp.editor.ISharedEditorListener;
 import de.fu_berlin.inf.dpp.editor.remote.UserEditorStateManager;
+import de.fu_berlin.inf.dpp.session.AbstractActivityConsumer;
 import de.fu_berlin.inf.dpp.session.AbstractActivityProducer;
+import de.fu_berlin.inf.dpp.session.IActivityConsumer;
+import de.fu_berlin.inf.dpp.session.IActivityConsumer.Priority;
 import de.fu_berlin.inf.dpp.session.ISarosSession;
 import de.fu_berlin.inf.dpp.synchronize.Blockable;
 import de.fu_berlin.inf.dpp.synchronize.StopManager;
@@ -33,6 +37,12 @@ import org.picocontainer.Startable;
  * session. It then sends these checksums to all watchdog clients, which can compare them with their
  * own checksum calculations to detect inconsistencies and request file recovery if needed.
  *
+ * <p>The checksum of a document is only calculated from its content when the document is opened.
+ * Afterwards, it is kept up-to-date by applying the text edits of the document, so the cost of a
+ * checksum calculation cycle does not depend on the size of the open documents. The checksums of
+ * documents which a client reports to be inconsistent are calculated from the content again, in
+ * case the host's checksum lost track of the document.
+ *
  * <p>This component is only run on the session's host.
  */
 @Component(module = "consistency")
@@ -84,15 +94,37 @@ public class ConsistencyWatchdogServer extends AbstractActivityProducer
   private ISharedEditorListener sharedEditorListener =
       new AbstractSharedEditorListener() {
         /**
-         * Marks checksums as dirty as soon as their associated documents are modified. With this
-         * information, checksum calculation can be avoided when the document hasn't changed between
-         * checksum iterations.
+         * Updates checksums as soon as their associated documents are modified. Checksums which
+         * cannot be updated are marked as dirty and calculated from the document's content in the
+         * next checksum iteration.
          */
         @Override
         public void textEdited(TextEditActivity textEdit) {
           DocumentChecksum checksum = documentChecksums.get(textEdit.getPath());
 
-          if (checksum != null) checksum.markDirty();
+          if (checksum == null) return;
+
+          if (!checksum.update(
+              textEdit.getOffset(), textEdit.getReplacedText(), textEdit.getText()))
+            LOG.debug("checksum must be recalculated after text edit: " + checksum);
+        }
+      };
+
+  private final IActivityConsumer consumer =
+      new AbstractActivityConsumer() {
+        /**
+         * Marks the checksums of the documents a client reports to be inconsistent as dirty, so
+         * they are calculated from the document's content in the next checksum iteration.
+         */
+        @Override
+        public void receive(ChecksumErrorActivity checksumError) {
+          if (checksumError.getPaths() == null) return;
+
+          for (SPath path : checksumError.getPaths()) {
+            DocumentChecksum checksum = documentChecksums.get(path);
+
+            if (checksum != null) checksum.markDirty();
+          }
         }
       };
 
@@ -124,6 +156,7 @@ public class ConsistencyWatchdogServer extends AbstractActivityProducer
       throw new IllegalStateException("Component can only be run on the session's host");
 
     session.addActivityProducer(this);
+    session.addActivityConsumer(consumer, Priority.PASSIVE);
     stopManager.addBlockable(this);
     editorManager.addSharedEditorListener(sharedEditorListener);
 
@@ -141,6 +174,7 @@ public class ConsistencyWatchdogServer extends AbstractActivityProducer
   @Override
   public void stop() {
     session.removeActivityProducer(this);
+    session.removeActivityConsumer(consumer);
     stopManager.removeBlockable(this);
     editorManager.removeSharedEditorListener(sharedEditorListener);
 
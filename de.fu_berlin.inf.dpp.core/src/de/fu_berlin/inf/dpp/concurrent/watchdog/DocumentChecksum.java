@@ -5,6 +5,12 @@ import de.fu_berlin.inf.dpp.activities.SPath;
 /**
  * Represents a checksum of a document in the workspace. It consists of the document's
  * project-relative path, the content length and the content's string hash code.
+ *
+ * <p>After the checksum has been calculated from the document's content once, it can be kept
+ * up-to-date by {@link #update(int, String, String) applying} the edits of the document, which only
+ * costs time proportional to the size of the edits. If an edit does not fit the content the
+ * checksum was calculated for, the checksum is marked as dirty and has to be calculated from the
+ * content again.
  */
 public class DocumentChecksum {
 
@@ -19,6 +25,8 @@ public class DocumentChecksum {
   private int hash;
   private boolean dirty;
 
+  private IncrementalHash incrementalHash;
+
   /**
    * Creates a new DocumentChecksum.
    *
@@ -47,6 +55,8 @@ public class DocumentChecksum {
    * @return document content length, or {@link #NOT_AVAILABLE} if the document doesn't exist
    */
   public int getLength() {
+    if (incrementalHash != null) return incrementalHash.getLength();
+
     return length;
   }
 
@@ -60,6 +70,8 @@ public class DocumentChecksum {
    *     #NOT_AVAILABLE} if not available
    */
   public int getHash() {
+    if (incrementalHash != null) return incrementalHash.getHash();
+
     return hash;
   }
 
@@ -87,6 +99,13 @@ public class DocumentChecksum {
    */
   public void markDirty() {
     dirty = true;
+
+    if (incrementalHash == null) return;
+
+    // keep the last known values until the checksum is recalculated
+    length = incrementalHash.getLength();
+    hash = incrementalHash.getHash();
+    incrementalHash = null;
   }
 
   /**
@@ -103,14 +122,32 @@ public class DocumentChecksum {
 
     if (documentContent == null) {
       length = hash = NOT_AVAILABLE;
+      incrementalHash = null;
     } else {
-      length = documentContent.length();
-      hash = documentContent.hashCode();
+      incrementalHash = new IncrementalHash(documentContent);
     }
 
     dirty = false;
   }
 
+  /**
+   * Updates the checksum with an edit of the associated document. If the checksum is {@link
+   * #isDirty() dirty} or the edit does not fit the content the checksum was calculated for, the
+   * checksum is marked as dirty instead.
+   *
+   * @param offset the offset of the edit
+   * @param replacedText the text that was replaced by the edit
+   * @param text the text that was inserted by the edit
+   * @return <code>true</code> if the checksum is up-to-date, <code>false</code> if it is dirty and
+   *     must be recalculated with {@link #update(String)}
+   */
+  public boolean update(int offset, String replacedText, String text) {
+    if (incrementalHash == null || !incrementalHash.replace(offset, replacedText, text))
+      markDirty();
+
+    return !dirty;
+  }
+
   @Override
   public String toString() {
     return path.toString() + " [" + this.length + "," + this.hash + "]";
@@ -0,0 +1,206 @@
+package de.fu_berlin.inf.dpp.concurrent.watchdog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maintains the {@link String#hashCode() string hash code} of a document while the document is
+ * being edited, without the need to hash the whole content again after each edit.
+ *
+ * <p>The string hash code is a polynomial over the characters of the string, so the hash code of a
+ * concatenation can be computed from the hash codes of its parts: <code>
+ * hash(a + b) = hash(a) * 31^length(b) + hash(b)</code>. The content is therefore stored in blocks
+ * of limited size which cache their own hash code. An edit only rehashes the blocks it touches and
+ * the hash code of the document is obtained by combining the hash codes of all blocks.
+ *
+ * <p>This class is not thread safe.
+ */
+final class IncrementalHash {
+
+  /** Blocks are split when they would get larger than this */
+  static final int MAX_BLOCK_LENGTH = 2048;
+
+  /** Blocks are merged with their successor when they get smaller than this */
+  static final int MIN_BLOCK_LENGTH = MAX_BLOCK_LENGTH / 4;
+
+  private static final class Block {
+    final String text;
+    final int hash;
+    final int power;
+
+    Block(String text) {
+      int h = 0;
+      int p = 1;
+
+      for (int i = 0; i < text.length(); i++) {
+        h = 31 * h + text.charAt(i);
+        p *= 31;
+      }
+
+      this.text = text;
+      this.hash = h;
+      this.power = p;
+    }
+  }
+
+  private final List<Block> blocks = new ArrayList<Block>();
+
+  private int length;
+
+  private int hash;
+  private boolean hashValid;
+
+  /*
+   * Index and start offset of the block that was edited last. As edits
+   * usually happen near each other, the search for the affected blocks
+   * starts there instead of at the beginning of the document.
+   */
+  private int cachedIndex;
+  private int cachedStart;
+
+  /**
+   * Creates a hash for the given document content.
+   *
+   * @param content the current content of the document
+   */
+  IncrementalHash(String content) {
+    blocks.addAll(split(content));
+    length = content.length();
+  }
+
+  /**
+   * Returns the length of the document.
+   *
+   * @return the number of characters of the document
+   */
+  int getLength() {
+    return length;
+  }
+
+  /**
+   * Returns the hash code of the document. The result is the same as calling {@link
+   * String#hashCode()} on the content of the document.
+   *
+   * @return the hash code of the document
+   */
+  int getHash() {
+    if (hashValid) return hash;
+
+    int h = 0;
+
+    for (Block block : blocks) h = h * block.power + block.hash;
+
+    hash = h;
+    hashValid = true;
+
+    return hash;
+  }
+
+  /**
+   * Replaces a range of the document. The edit is rejected if the given replaced text does not
+   * match the text currently stored in the range, i.e. the hash lost track of the document.
+   *
+   * @param offset the offset of the range
+   * @param replacedText the text that is currently stored in the range
+   * @param text the text to replace the range with
+   * @return <code>true</code> if the edit was applied, <code>false</code> if it was rejected, in
+   *     which case this hash must not be used anymore
+   */
+  boolean replace(int offset, String replacedText, String text) {
+    final int end = offset + replacedText.length();
+
+    if (offset < 0 || end > length) return false;
+
+    if (blocks.isEmpty()) {
+      blocks.addAll(split(text));
+      length = text.length();
+      hashValid = false;
+      return true;
+    }
+
+    seek(offset);
+
+    final int first = cachedIndex;
+    final int firstStart = cachedStart;
+
+    // find the block containing the end of the range and check the replaced text on the way
+    int last = first;
+    int lastStart = firstStart;
+
+    while (true) {
+      final String blockText = blocks.get(last).text;
+
+      final int from = Math.max(offset, lastStart);
+      final int to = Math.min(end, lastStart + blockText.length());
+
+      if (from < to
+          && !blockText.regionMatches(from - lastStart, replacedText, from - offset, to - from))
+        return false;
+
+      if (end <= lastStart + blockText.length() || last == blocks.size() - 1) break;
+
+      lastStart += blockText.length();
+      last++;
+    }
+
+    final StringBuilder builder = new StringBuilder();
+
+    builder.append(blocks.get(first).text, 0, offset - firstStart);
+    builder.append(text);
+    builder.append(blocks.get(last).text, end - lastStart, blocks.get(last).text.length());
+
+    // avoid fragmentation by merging small blocks with their successor
+    if (builder.length() < MIN_BLOCK_LENGTH && last < blocks.size() - 1) {
+      last++;
+      builder.append(blocks.get(last).text);
+    }
+
+    final List<Block> affected = blocks.subList(first, last + 1);
+
+    affected.clear();
+    affected.addAll(split(builder));
+
+    length += text.length() - replacedText.length();
+    hashValid = false;
+
+    if (first >= blocks.size()) {
+      cachedIndex = 0;
+      cachedStart = 0;
+    }
+
+    return true;
+  }
+
+  /**
+   * Moves the cached block position to the block containing the given offset. An offset at the
+   * border of two blocks belongs to the first one.
+   */
+  private void seek(int offset) {
+    while (cachedIndex > 0 && offset <= cachedStart) {
+      cachedIndex--;
+      cachedStart -= blocks.get(cachedIndex).text.length();
+    }
+
+    while (cachedIndex < blocks.size() - 1
+        && offset > cachedStart + blocks.get(cachedIndex).text.length()) {
+      cachedStart += blocks.get(cachedIndex).text.length();
+      cachedIndex++;
+    }
+  }
+
+  /** Splits the text into blocks of nearly equal size. */
+  private static List<Block> split(CharSequence text) {
+    final int count = (text.length() + MAX_BLOCK_LENGTH - 1) / MAX_BLOCK_LENGTH;
+
+    final List<Block> result = new ArrayList<Block>(count);
+
+    for (int i = 0; i < count; i++) {
+      final int start = (int) ((long) text.length() * i / count);
+      final int end = (int) ((long) text.length() * (i + 1) / count);
+
+      result.add(new Block(text.subSequence(start, end).toString()));
+    }
+
+    return result;
+  }
+}
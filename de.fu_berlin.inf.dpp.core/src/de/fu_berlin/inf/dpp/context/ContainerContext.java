@@ -16,6 +16,8 @@ import de.fu_berlin.inf.dpp.communication.extensions.KickUserExtension;
 import de.fu_berlin.inf.dpp.communication.extensions.LeaveSessionExtension;
 import de.fu_berlin.inf.dpp.communication.extensions.PingExtension;
 import de.fu_berlin.inf.dpp.communication.extensions.PongExtension;
+import de.fu_berlin.inf.dpp.communication.extensions.ProjectNegotiationFileListRequestExtension;
+import de.fu_berlin.inf.dpp.communication.extensions.ProjectNegotiationFileListResponseExtension;
 import de.fu_berlin.inf.dpp.communication.extensions.ProjectNegotiationMissingFilesExtension;
 import de.fu_berlin.inf.dpp.communication.extensions.ProjectNegotiationOfferingExtension;
 import de.fu_berlin.inf.dpp.communication.extensions.SessionStatusRequestExtension;
@@ -131,6 +133,8 @@ public class ContainerContext implements IContainerContext {
       Class.forName(CancelProjectNegotiationExtension.class.getName());
       Class.forName(ProjectNegotiationOfferingExtension.class.getName());
       Class.forName(ProjectNegotiationMissingFilesExtension.class.getName());
+      Class.forName(ProjectNegotiationFileListRequestExtension.class.getName());
+      Class.forName(ProjectNegotiationFileListResponseExtension.class.getName());
 
       // General session extensions
       Class.forName(ActivitiesExtension.class.getName());
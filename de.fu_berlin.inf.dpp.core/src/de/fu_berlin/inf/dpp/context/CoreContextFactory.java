@@ -6,6 +6,7 @@ import de.fu_berlin.inf.dpp.communication.chat.single.SingleUserChatService;
 import de.fu_berlin.inf.dpp.communication.connection.ConnectionHandler;
 import de.fu_berlin.inf.dpp.concurrent.watchdog.IsInconsistentObservable;
 import de.fu_berlin.inf.dpp.editor.colorstorage.ColorIDSetStorage;
+import de.fu_berlin.inf.dpp.misc.binary.BinaryCodecManager;
 import de.fu_berlin.inf.dpp.monitoring.remote.RemoteProgressManager;
 import de.fu_berlin.inf.dpp.negotiation.NegotiationFactory;
 import de.fu_berlin.inf.dpp.negotiation.hooks.SessionNegotiationHookManager;
@@ -21,6 +22,7 @@ import de.fu_berlin.inf.dpp.net.mdns.MDNSService;
 import de.fu_berlin.inf.dpp.net.stream.IBBStreamService;
 import de.fu_berlin.inf.dpp.net.stream.IStreamService;
 import de.fu_berlin.inf.dpp.net.stream.Socks5StreamService;
+import de.fu_berlin.inf.dpp.net.stream.TCPTransport;
 import de.fu_berlin.inf.dpp.net.stun.IStunService;
 import de.fu_berlin.inf.dpp.net.stun.internal.StunServiceImpl;
 import de.fu_berlin.inf.dpp.net.upnp.IUPnPAccess;
@@ -33,6 +35,7 @@ import de.fu_berlin.inf.dpp.net.xmpp.roster.RosterTracker;
 import de.fu_berlin.inf.dpp.net.xmpp.subscription.SubscriptionHandler;
 import de.fu_berlin.inf.dpp.observables.FileReplacementInProgressObservable;
 import de.fu_berlin.inf.dpp.session.ColorNegotiationHook;
+import de.fu_berlin.inf.dpp.session.FolderMoveNegotiationHook;
 import de.fu_berlin.inf.dpp.session.ProjectNegotiationTypeHook;
 import de.fu_berlin.inf.dpp.session.SarosSessionManager;
 import de.fu_berlin.inf.dpp.versioning.VersionManager;
@@ -74,6 +77,7 @@ public class CoreContextFactory extends AbstractContextFactory {
       Component.create(SessionNegotiationHookManager.class),
       Component.create(ColorNegotiationHook.class),
       Component.create(ProjectNegotiationTypeHook.class),
+      Component.create(FolderMoveNegotiationHook.class),
 
       // Network
       Component.create(DispatchThreadContext.class),
@@ -95,6 +99,7 @@ public class CoreContextFactory extends AbstractContextFactory {
       Component.create(IUPnPAccess.class, UPnPAccessImpl.class),
       Component.create(IReceiver.class, XMPPReceiver.class),
       Component.create(ITransmitter.class, XMPPTransmitter.class),
+      Component.create(BinaryCodecManager.class),
       Component.create(RemoteProgressManager.class),
 
       // Observables
@@ -107,5 +112,11 @@ public class CoreContextFactory extends AbstractContextFactory {
   public void createComponents(MutablePicoContainer container) {
     for (Component component : Arrays.asList(getContextComponents()))
       container.addComponent(component.getBindKey(), component.getImplementation());
+
+    // direct TCP connections only work if the peers can reach each other
+    if (TCPTransport.ENABLED)
+      container.addComponent(
+          BindKey.bindKey(IStreamService.class, IContextKeyBindings.TCPStreamService.class),
+          TCPTransport.class);
   }
 }
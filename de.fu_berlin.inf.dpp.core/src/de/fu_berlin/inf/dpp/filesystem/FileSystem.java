@@ -1,7 +1,11 @@
 package de.fu_berlin.inf.dpp.filesystem;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -17,18 +21,48 @@ public class FileSystem {
 
   private static final int BUFFER_SIZE = 32 * 1024;
 
+  /** Files of at least this size are read through a file channel if possible */
+  private static final long CHANNEL_THRESHOLD = 1024 * 1024;
+
+  private static final int CHANNEL_BUFFER_SIZE = 256 * 1024;
+
+  /*
+   * Checksums are calculated by several threads at once, so every thread
+   * gets its own buffer. A direct buffer avoids copying the data between
+   * the channel and the checksum calculation.
+   */
+  private static final ThreadLocal<ByteBuffer> CHANNEL_BUFFER =
+      new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+          return ByteBuffer.allocateDirect(CHANNEL_BUFFER_SIZE);
+        }
+      };
+
   private FileSystem() {
     // NOP
   }
 
   /**
-   * Calculate Adler32 checksum for given file.
+   * Calculate Adler32 checksum for given file. Large files which are located in the local file
+   * system are read through a {@link FileChannel} instead of the file's input stream.
    *
    * @return checksum of file
    * @throws IOException if an I/O error occurred
    */
   public static long checksum(IFile file) throws IOException {
 
+    final IPath location = file.getLocation();
+    final File localFile = location == null ? null : location.toFile();
+
+    if (localFile != null && localFile.length() >= CHANNEL_THRESHOLD) {
+      try {
+        return checksum(localFile);
+      } catch (IOException e) {
+        throw new IOException("failed to calculate checksum", e);
+      }
+    }
+
     InputStream in;
 
     try {
@@ -52,6 +86,28 @@ public class FileSystem {
     return adler.getValue();
   }
 
+  private static long checksum(File file) throws IOException {
+    final ByteBuffer buffer = CHANNEL_BUFFER.get();
+
+    final Adler32 adler = new Adler32();
+
+    final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+    try {
+      buffer.clear();
+
+      while (channel.read(buffer) != -1) {
+        buffer.flip();
+        adler.update(buffer);
+        buffer.clear();
+      }
+    } finally {
+      IOUtils.closeQuietly(channel);
+    }
+
+    return adler.getValue();
+  }
+
   /**
    * Creates the folder for the given file, including any necessary but nonexistent parent folders.
    * Note that if this operation fails it may have succeeded in creating some of the necessary
@@ -30,7 +30,7 @@ public final class FileSystemChecksumCache implements IChecksumCache {
 
   private static final int SEED = 0xDEADBEEF;
 
-  private static class Murmur3Hash<T> {
+  static class Murmur3Hash<T> {
 
     long h1;
     long h2;
@@ -204,7 +204,7 @@ public final class FileSystemChecksumCache implements IChecksumCache {
     return list.get(index);
   }
 
-  private Murmur3Hash<Long> create128BitMurmur3Hash(String path) {
+  static <T> Murmur3Hash<T> create128BitMurmur3Hash(String path) {
     try {
       return create128BitMurmur3Hash(path.getBytes("UTF-8"), SEED);
     } catch (UnsupportedEncodingException e) {
@@ -223,7 +223,7 @@ public final class FileSystemChecksumCache implements IChecksumCache {
    * License: http://www.apache.org/licenses/LICENSE-2.0
    */
 
-  private Murmur3Hash<Long> create128BitMurmur3Hash(byte[] bytes, int seed) {
+  private static <T> Murmur3Hash<T> create128BitMurmur3Hash(byte[] bytes, int seed) {
     long h1 = seed;
     long h2 = seed;
     long c1 = 0x87c37b91114253d5L;
@@ -337,10 +337,10 @@ public final class FileSystemChecksumCache implements IChecksumCache {
     h1 += h2;
     h2 += h1;
 
-    return new Murmur3Hash<Long>(h1, h2);
+    return new Murmur3Hash<T>(h1, h2);
   }
 
-  private int toInt(byte b) {
+  private static int toInt(byte b) {
     return b & 0xFF;
   }
 
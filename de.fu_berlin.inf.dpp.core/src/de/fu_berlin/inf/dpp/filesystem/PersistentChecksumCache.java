@@ -0,0 +1,312 @@
+package de.fu_berlin.inf.dpp.filesystem;
+
+import de.fu_berlin.inf.dpp.filesystem.FileSystemChecksumCache.Murmur3Hash;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.picocontainer.Startable;
+
+/**
+ * Checksum cache {@link IChecksumCache implementation} that stores the checksums in an index file,
+ * so they are still available after a restart of the application. It delegates to another checksum
+ * cache and only consults the index file for checksums the other cache does not know.
+ *
+ * <p>A stored checksum is only used if the size and the modification time of the file did not
+ * change since the checksum was stored. In addition, stored checksums are removed as soon as the
+ * given {@link IFileContentChangedNotifier notifier} reports a change of the file. Files which were
+ * modified very recently are not stored, because a further modification might change neither their
+ * size nor their modification time.
+ *
+ * <p>The index file is an append-only log of small binary records. A record either adds or removes
+ * the checksum of a file, which is identified by a 128 bit hash of its location. The index file is
+ * loaded on first use and compacted while loading if it contains too many obsolete records.
+ */
+public final class PersistentChecksumCache implements IChecksumCache, Startable {
+
+  private static final Logger LOG = Logger.getLogger(PersistentChecksumCache.class);
+
+  private static final int MAGIC = 0x53434931;
+
+  private static final int ADD = 1;
+  private static final int REMOVE = 2;
+
+  /** Files modified within this period are not stored. */
+  private static final long MODIFICATION_TIME_RESOLUTION = 2000;
+
+  /** Minimum number of obsolete records in the index file before it gets compacted. */
+  private static final int MIN_OBSOLETE_RECORDS = 1024;
+
+  private static class Entry {
+    final long size;
+    final long modified;
+    final long checksum;
+
+    Entry(long size, long modified, long checksum) {
+      this.size = size;
+      this.modified = modified;
+      this.checksum = checksum;
+    }
+  }
+
+  private final IFileContentChangedListener fileContentChangedListener =
+      new IFileContentChangedListener() {
+
+        @Override
+        public void fileContentChanged(IFile file) {
+          final IPath location = file.getLocation();
+
+          if (location == null) return;
+
+          final Murmur3Hash<Void> key = createKey(location);
+
+          synchronized (PersistentChecksumCache.this) {
+            load();
+
+            if (entries.remove(key) != null) write(REMOVE, key, null);
+          }
+        }
+      };
+
+  private final IChecksumCache cache;
+  private final File indexFile;
+
+  private final Map<Murmur3Hash<Void>, Entry> entries = new HashMap<Murmur3Hash<Void>, Entry>();
+
+  private boolean loaded;
+  private DataOutputStream out;
+
+  /**
+   * Creates a new persistent checksum cache.
+   *
+   * @param cache the checksum cache to delegate to
+   * @param fileContentChangedNotifier the notifier reporting modifications of files
+   * @param indexFile the file to store the checksums in
+   */
+  public PersistentChecksumCache(
+      IChecksumCache cache,
+      IFileContentChangedNotifier fileContentChangedNotifier,
+      File indexFile) {
+    this.cache = cache;
+    this.indexFile = indexFile;
+
+    fileContentChangedNotifier.addFileContentChangedListener(fileContentChangedListener);
+  }
+
+  @Override
+  public void start() {
+    // NOP, the index file is loaded on first use
+  }
+
+  @Override
+  public synchronized void stop() {
+    IOUtils.closeQuietly(out);
+    out = null;
+  }
+
+  @Override
+  public Long getChecksum(IFile file) {
+    final Long checksum = cache.getChecksum(file);
+
+    if (checksum != null) return checksum;
+
+    final IPath location = file.getLocation();
+
+    if (location == null) return null;
+
+    final File localFile = location.toFile();
+
+    final long size = localFile.length();
+    final long modified = localFile.lastModified();
+
+    final Murmur3Hash<Void> key = createKey(location);
+
+    synchronized (this) {
+      load();
+
+      final Entry entry = entries.get(key);
+
+      if (entry == null || entry.size != size || entry.modified != modified) return null;
+
+      if (LOG.isTraceEnabled())
+        LOG.trace("found stored checksum for file: " + location.toOSString() + " [" + key + "]");
+
+      return entry.checksum;
+    }
+  }
+
+  @Override
+  public boolean addChecksum(IFile file, long checksum) {
+    final boolean isInvalid = cache.addChecksum(file, checksum);
+
+    /*
+     * The file was modified since the last checksum calculation, so the
+     * file may have been modified during this calculation, too. The
+     * checksum is stored with the next calculation instead.
+     */
+    if (isInvalid) return isInvalid;
+
+    final IPath location = file.getLocation();
+
+    if (location == null) return isInvalid;
+
+    final File localFile = location.toFile();
+
+    final long size = localFile.length();
+    final long modified = localFile.lastModified();
+
+    if (modified == 0 || System.currentTimeMillis() - modified < MODIFICATION_TIME_RESOLUTION)
+      return isInvalid;
+
+    final Murmur3Hash<Void> key = createKey(location);
+
+    synchronized (this) {
+      load();
+
+      final Entry entry = entries.get(key);
+
+      if (entry != null
+          && entry.size == size
+          && entry.modified == modified
+          && entry.checksum == checksum) return isInvalid;
+
+      final Entry newEntry = new Entry(size, modified, checksum);
+
+      entries.put(key, newEntry);
+      write(ADD, key, newEntry);
+    }
+
+    return isInvalid;
+  }
+
+  private static Murmur3Hash<Void> createKey(IPath location) {
+    return FileSystemChecksumCache.create128BitMurmur3Hash(location.toOSString());
+  }
+
+  /** Loads the index file if this was not done yet. Must be called while holding the lock. */
+  private void load() {
+    if (loaded) return;
+
+    loaded = true;
+
+    int records = 0;
+    boolean isCorrupted = false;
+
+    if (indexFile.exists()) {
+      DataInputStream in = null;
+
+      try {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+
+        if (in.readInt() != MAGIC) throw new IOException("invalid header");
+
+        int type;
+
+        while ((type = in.read()) != -1) {
+          final Murmur3Hash<Void> key = new Murmur3Hash<Void>(in.readLong(), in.readLong());
+
+          if (type == ADD) {
+            entries.put(key, new Entry(in.readLong(), in.readLong(), in.readLong()));
+          } else if (type == REMOVE) {
+            entries.remove(key);
+          } else {
+            throw new IOException("invalid record type: " + type);
+          }
+
+          records++;
+        }
+      } catch (EOFException e) {
+        LOG.warn("checksum index " + indexFile + " is truncated, ignoring last record");
+        isCorrupted = true;
+      } catch (IOException e) {
+        LOG.warn("checksum index " + indexFile + " is corrupted: " + e.getMessage());
+        isCorrupted = true;
+      } finally {
+        IOUtils.closeQuietly(in);
+      }
+    }
+
+    LOG.debug("loaded " + entries.size() + " checksums from " + indexFile);
+
+    try {
+      if (!indexFile.exists()
+          || isCorrupted
+          || records - entries.size() > Math.max(entries.size(), MIN_OBSOLETE_RECORDS)) compact();
+      else out = openIndexFile(true);
+    } catch (IOException e) {
+      LOG.warn("cannot write checksum index " + indexFile + ", checksums will not be stored", e);
+      IOUtils.closeQuietly(out);
+      out = null;
+    }
+  }
+
+  /** Rewrites the index file with the current entries only and opens it for appending. */
+  private void compact() throws IOException {
+    final File parent = indexFile.getAbsoluteFile().getParentFile();
+
+    if (!parent.exists() && !parent.mkdirs())
+      throw new IOException("could not create directory: " + parent);
+
+    final File tempFile = new File(parent, indexFile.getName() + ".tmp");
+
+    final DataOutputStream tempOut =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+    try {
+      tempOut.writeInt(MAGIC);
+
+      for (Map.Entry<Murmur3Hash<Void>, Entry> entry : entries.entrySet())
+        writeRecord(tempOut, ADD, entry.getKey(), entry.getValue());
+
+      tempOut.close();
+    } finally {
+      IOUtils.closeQuietly(tempOut);
+    }
+
+    Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+    out = openIndexFile(true);
+  }
+
+  private DataOutputStream openIndexFile(boolean append) throws FileNotFoundException {
+    return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, append)));
+  }
+
+  /** Appends a record to the index file. Must be called while holding the lock. */
+  private void write(int type, Murmur3Hash<Void> key, Entry entry) {
+    if (out == null) return;
+
+    try {
+      writeRecord(out, type, key, entry);
+    } catch (IOException e) {
+      LOG.warn("cannot write checksum index " + indexFile + ", checksums will not be stored", e);
+      IOUtils.closeQuietly(out);
+      out = null;
+    }
+  }
+
+  private static void writeRecord(
+      DataOutputStream out, int type, Murmur3Hash<Void> key, Entry entry) throws IOException {
+    out.writeByte(type);
+    out.writeLong(key.h1);
+    out.writeLong(key.h2);
+
+    if (type == ADD) {
+      out.writeLong(entry.size);
+      out.writeLong(entry.modified);
+      out.writeLong(entry.checksum);
+    }
+  }
+}
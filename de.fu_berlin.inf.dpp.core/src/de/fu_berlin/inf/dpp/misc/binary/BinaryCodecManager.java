@@ -0,0 +1,128 @@
+package de.fu_berlin.inf.dpp.misc.binary;
+
+import de.fu_berlin.inf.dpp.annotations.Component;
+import de.fu_berlin.inf.dpp.communication.extensions.ActivitiesExtension;
+import de.fu_berlin.inf.dpp.communication.extensions.FileContentExtension;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.log4j.Logger;
+import org.jivesoftware.smack.packet.PacketExtension;
+
+/**
+ * Keeps track of the {@linkplain BinaryExtensionCodec binary codecs} that are supported by remote
+ * peers. The supported codecs are exchanged during the version exchange so that a binary codec is
+ * only used if both sides are able to handle it. For all other peers extensions are still sent as
+ * XML.
+ */
+@Component(module = "net")
+public class BinaryCodecManager {
+
+  private static final Logger LOG = Logger.getLogger(BinaryCodecManager.class);
+
+  /** Allows to disable the usage of binary codecs for debugging purposes */
+  private static final boolean ENABLED =
+      Boolean.valueOf(System.getProperty("de.fu_berlin.inf.dpp.net.codec.BINARY_ENABLED", "true"));
+
+  private static final String SEPARATOR = ",";
+
+  /**
+   * The codecs that are announced to remote peers. Referencing them here also ensures that they are
+   * registered before the first version exchange takes place.
+   */
+  private static final List<BinaryExtensionCodec<?>> CODECS =
+      Arrays.<BinaryExtensionCodec<?>>asList(ActivitiesExtension.CODEC, FileContentExtension.CODEC);
+
+  /**
+   * Announced along with the codecs to signal that recipient specific sequence numbers can be
+   * received in the header of a packet, see {@link
+   * de.fu_berlin.inf.dpp.net.ITransmitter#send(String, Map, PacketExtension)}.
+   */
+  private static final String SEQUENCE_NUMBERS = "seq/1";
+
+  private final Map<JID, Set<String>> remoteCodecs = new ConcurrentHashMap<JID, Set<String>>();
+
+  /**
+   * Returns the names of all locally supported codecs in a form that can be passed to {@link
+   * #setRemoteCodecs} on the remote side.
+   */
+  public String getLocalCodecs() {
+    if (!ENABLED) return SEQUENCE_NUMBERS;
+
+    final StringBuilder builder = new StringBuilder(SEQUENCE_NUMBERS);
+
+    for (BinaryExtensionCodec<?> codec : CODECS) builder.append(SEPARATOR).append(codec.getName());
+
+    return builder.toString();
+  }
+
+  /**
+   * Sets the codecs the given peer supports.
+   *
+   * @param jid the resource qualified JID of the peer
+   * @param codecs the codecs the peer announced or <code>null</code> if the peer did not announce
+   *     any codecs
+   */
+  public void setRemoteCodecs(JID jid, String codecs) {
+    if (codecs == null || codecs.isEmpty()) {
+      remoteCodecs.remove(jid);
+      return;
+    }
+
+    final Set<String> names = new HashSet<String>(Arrays.asList(codecs.split(SEPARATOR)));
+
+    LOG.debug("peer " + jid + " supports binary codecs: " + names);
+
+    remoteCodecs.put(jid, Collections.unmodifiableSet(names));
+  }
+
+  /**
+   * Returns the codecs the given peer supports.
+   *
+   * @param jid the resource qualified JID of the peer
+   * @return the names of the supported codecs, the collection is empty if the peer does not support
+   *     any codec
+   */
+  public Collection<String> getRemoteCodecs(JID jid) {
+    final Set<String> names = remoteCodecs.get(jid);
+    return names == null ? Collections.<String>emptySet() : names;
+  }
+
+  /**
+   * Returns whether the given peer is able to receive recipient specific sequence numbers in the
+   * header of a packet.
+   *
+   * @param jid the resource qualified JID of the peer
+   * @return <code>true</code> if the peer supports sequence numbers, <code>false</code> otherwise
+   */
+  public boolean supportsSequenceNumbers(JID jid) {
+    return getRemoteCodecs(jid).contains(SEQUENCE_NUMBERS);
+  }
+
+  /**
+   * Encodes the given extension with a binary codec if possible.
+   *
+   * @param recipient the resource qualified JID of the recipient
+   * @param extension the extension to encode
+   * @return the encoded extension or <code>null</code> if there is no codec for the extension, the
+   *     recipient does not support the codec or the codec is not able to encode the extension
+   * @throws IOException if an I/O error occurs
+   */
+  public byte[] encode(JID recipient, PacketExtension extension) throws IOException {
+    if (!ENABLED) return null;
+
+    final BinaryExtensionCodec<?> codec =
+        BinaryExtensionCodec.getCodec(extension.getElementName(), extension.getNamespace());
+
+    if (codec == null || !getRemoteCodecs(recipient).contains(codec.getName())) return null;
+
+    return codec.encode(extension);
+  }
+}
@@ -0,0 +1,195 @@
+package de.fu_berlin.inf.dpp.misc.binary;
+
+import de.fu_berlin.inf.dpp.misc.xstream.XStreamExtensionProvider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jivesoftware.smack.packet.PacketExtension;
+
+/**
+ * Compact binary alternative to the XML representation created by a {@link
+ * XStreamExtensionProvider}. A codec is bound to exactly one provider and can only be used if the
+ * remote side announced support for it, see {@link BinaryCodecManager}. Payloads the codec cannot
+ * represent are still transferred as XML.
+ *
+ * <p>Every encoded payload starts with the {@linkplain #getVersion() version} of the wire format.
+ * The wire format of a given version <b>must never</b> be changed, increase the version instead.
+ *
+ * <p>Implementations <b>must</b> be thread safe.
+ *
+ * @param <T> the payload type of the provider
+ */
+public abstract class BinaryExtensionCodec<T> {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final Map<String, BinaryExtensionCodec<?>> codecs =
+      new ConcurrentHashMap<String, BinaryExtensionCodec<?>>();
+
+  protected final XStreamExtensionProvider<T> provider;
+
+  private final int version;
+
+  /**
+   * Creates a new codec for the given provider and registers it so that it can be found with {@link
+   * #getCodec(String, String)}.
+   *
+   * @param provider the provider whose payloads this codec is able to encode
+   * @param version the version of the wire format, must be in the range of 1 to 255
+   */
+  protected BinaryExtensionCodec(XStreamExtensionProvider<T> provider, int version) {
+    if (version < 1 || version > 255)
+      throw new IllegalArgumentException("version must be in the range of 1 to 255: " + version);
+
+    this.provider = provider;
+    this.version = version;
+
+    codecs.put(toKey(provider.getElementName(), provider.getNamespace()), this);
+  }
+
+  /**
+   * Returns the codec that is registered for the given element name and namespace.
+   *
+   * @return the codec or <code>null</code> if no codec is registered
+   */
+  public static BinaryExtensionCodec<?> getCodec(String elementName, String namespace) {
+    return codecs.get(toKey(elementName, namespace));
+  }
+
+  /**
+   * Returns the name of this codec which identifies the element name and wire format version, e.g
+   * <code>ados/1</code>.
+   */
+  public String getName() {
+    return provider.getElementName() + "/" + version;
+  }
+
+  /** Returns the version of the wire format. */
+  public int getVersion() {
+    return version;
+  }
+
+  /**
+   * Encodes the payload of the given extension.
+   *
+   * @param extension an extension created by the provider of this codec
+   * @return the encoded payload or <code>null</code> if the extension does not belong to the
+   *     provider of this codec or if the payload cannot be represented in the binary format
+   * @throws IOException if an I/O error occurs
+   */
+  public byte[] encode(PacketExtension extension) throws IOException {
+    final T payload = provider.getPayload(extension);
+
+    if (payload == null) return null;
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+    final DataOutputStream out = new DataOutputStream(bytes);
+
+    out.writeByte(version);
+
+    if (!write(payload, out)) return null;
+
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decodes the given data back to an extension that is understood by the provider of this codec.
+   *
+   * @param data the data created by {@link #encode(PacketExtension)}
+   * @return the decoded extension
+   * @throws IOException if the data is malformed or uses an unknown wire format version
+   */
+  public PacketExtension decode(byte[] data) throws IOException {
+    return decode(new ByteArrayInputStream(data));
+  }
+
+  /**
+   * Decodes the data of the given stream back to an extension that is understood by the provider of
+   * this codec.
+   *
+   * @param stream a stream that contains the data created by {@link #encode(PacketExtension)}
+   * @return the decoded extension
+   * @throws IOException if the data is malformed or uses an unknown wire format version
+   */
+  public PacketExtension decode(InputStream stream) throws IOException {
+    final DataInputStream in = new DataInputStream(stream);
+
+    final int dataVersion = in.readUnsignedByte();
+
+    if (dataVersion != version)
+      throw new IOException(
+          "unsupported wire format version " + dataVersion + " for codec " + getName());
+
+    return provider.create(read(in));
+  }
+
+  /**
+   * Writes the payload to the given output.
+   *
+   * @return <code>true</code> if the payload was written, <code>false</code> if the payload cannot
+   *     be represented by this codec
+   */
+  protected abstract boolean write(T payload, DataOutput out) throws IOException;
+
+  /** Reads a payload that was written by {@link #write}. */
+  protected abstract T read(DataInput in) throws IOException;
+
+  /** Writes an int using 1 to 5 bytes, small non negative values use less bytes. */
+  protected static void writeVarInt(DataOutput out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+
+    out.writeByte(value);
+  }
+
+  /** Reads an int that was written by {@link #writeVarInt}. */
+  protected static int readVarInt(DataInput in) throws IOException {
+    int value = 0;
+
+    for (int shift = 0; shift < 35; shift += 7) {
+      final int b = in.readUnsignedByte();
+
+      value |= (b & 0x7F) << shift;
+
+      if ((b & 0x80) == 0) return value;
+    }
+
+    throw new IOException("malformed variable length integer");
+  }
+
+  /**
+   * Writes a string as length prefixed UTF-8 sequence. Unlike {@link DataOutput#writeUTF} there is
+   * no length limitation.
+   */
+  protected static void writeString(DataOutput out, String value) throws IOException {
+    final byte[] bytes = value.getBytes(UTF_8);
+    writeVarInt(out, bytes.length);
+    out.write(bytes);
+  }
+
+  /** Reads a string that was written by {@link #writeString}. */
+  protected static String readString(DataInput in) throws IOException {
+    final int length = readVarInt(in);
+
+    if (length < 0) throw new IOException("malformed string length: " + length);
+
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  private static String toKey(String elementName, String namespace) {
+    return namespace + ":" + elementName;
+  }
+}
@@ -0,0 +1,68 @@
+package de.fu_berlin.inf.dpp.misc.binary;
+
+import de.fu_berlin.inf.dpp.activities.SPath;
+import de.fu_berlin.inf.dpp.annotations.Component;
+import de.fu_berlin.inf.dpp.communication.extensions.ActivitiesExtension;
+import de.fu_berlin.inf.dpp.communication.extensions.ActivitiesExtensionCodec;
+import de.fu_berlin.inf.dpp.filesystem.IPathFactory;
+import de.fu_berlin.inf.dpp.filesystem.IProject;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import de.fu_berlin.inf.dpp.session.ISarosSession;
+import de.fu_berlin.inf.dpp.session.User;
+import org.picocontainer.Startable;
+
+/**
+ * Converts session-dependent User and SPath objects for the {@link ActivitiesExtensionCodec}. This
+ * is the binary counterpart of the UserConverter and SPathConverter.
+ */
+@Component
+public class SessionReferenceResolver
+    implements ActivitiesExtensionCodec.ReferenceResolver, Startable {
+
+  private final ISarosSession session;
+  private final IPathFactory pathFactory;
+
+  public SessionReferenceResolver(ISarosSession session, IPathFactory pathFactory) {
+    this.session = session;
+    this.pathFactory = pathFactory;
+  }
+
+  @Override
+  public void start() {
+    ActivitiesExtension.CODEC.setResolver(this);
+  }
+
+  @Override
+  public void stop() {
+    ActivitiesExtension.CODEC.removeResolver(this);
+  }
+
+  @Override
+  public String toUserID(User user) {
+    return user.getJID().toString();
+  }
+
+  @Override
+  public User toUser(String userID) {
+    return session.getUser(new JID(userID));
+  }
+
+  @Override
+  public String toProjectID(SPath path) {
+    return session.getProjectID(path.getProject());
+  }
+
+  @Override
+  public String toPathString(SPath path) {
+    return pathFactory.fromPath(path.getProjectRelativePath());
+  }
+
+  @Override
+  public SPath toPath(String projectID, String path) {
+    final IProject project = session.getProject(projectID);
+
+    if (project == null) return null;
+
+    return new SPath(project, pathFactory.fromString(path));
+  }
+}
@@ -1,5 +1,7 @@
 package de.fu_berlin.inf.dpp.negotiation;
 
+import de.fu_berlin.inf.dpp.communication.extensions.ProjectNegotiationFileListRequestExtension;
+import de.fu_berlin.inf.dpp.communication.extensions.ProjectNegotiationFileListResponseExtension;
 import de.fu_berlin.inf.dpp.communication.extensions.ProjectNegotiationMissingFilesExtension;
 import de.fu_berlin.inf.dpp.communication.extensions.StartActivityQueuingRequest;
 import de.fu_berlin.inf.dpp.exceptions.LocalCancellationException;
@@ -29,6 +31,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.log4j.Logger;
 import org.jivesoftware.smack.packet.Packet;
 import org.jivesoftware.smackx.filetransfer.FileTransferListener;
@@ -56,6 +59,9 @@ public abstract class AbstractIncomingProjectNegotiation extends ProjectNegotiat
 
   private PacketCollector startActivityQueuingRequestCollector;
 
+  /** Guards the expansion of the remote file lists */
+  private final Object fileListLock = new Object();
+
   /** used to handle file transmissions * */
   protected TransferListener transferListener = null;
 
@@ -85,7 +91,7 @@ public abstract class AbstractIncomingProjectNegotiation extends ProjectNegotiat
         transmitter,
         receiver);
 
-    this.projectNegotiationData = new HashMap<String, ProjectNegotiationData>();
+    this.projectNegotiationData = new ConcurrentHashMap<String, ProjectNegotiationData>();
 
     for (final ProjectNegotiationData data : projectNegotiationData)
       this.projectNegotiationData.put(data.getProjectID(), data);
@@ -123,9 +129,11 @@ public abstract class AbstractIncomingProjectNegotiation extends ProjectNegotiat
       checkCancellation(CancelOption.NOTIFY_PEER);
       setup(monitor);
 
-      List<FileList> missingFiles =
-          synchronizeProjectStructures(
-              projectMapping, computeLocalVsRemoteDiff(projectMapping, monitor));
+      final Map<String, FileListDiff> diffs = computeLocalVsRemoteDiff(projectMapping, monitor);
+
+      final List<ChunkSignature> signatures = createChunkSignatures(projectMapping, diffs, monitor);
+
+      List<FileList> missingFiles = synchronizeProjectStructures(projectMapping, diffs);
 
       monitor.subTask("");
 
@@ -133,7 +141,8 @@ public abstract class AbstractIncomingProjectNegotiation extends ProjectNegotiat
           ISarosSession.SESSION_CONNECTION_ID,
           getPeer(),
           ProjectNegotiationMissingFilesExtension.PROVIDER.create(
-              new ProjectNegotiationMissingFilesExtension(getSessionID(), getID(), missingFiles)));
+              new ProjectNegotiationMissingFilesExtension(
+                  getSessionID(), getID(), missingFiles, signatures)));
 
       transfer(monitor, projectMapping, missingFiles);
 
@@ -248,6 +257,86 @@ public abstract class AbstractIncomingProjectNegotiation extends ProjectNegotiat
     return projectNegotiationData.get(id);
   }
 
+  /**
+   * Returns the complete file list of the given remote project. The remote side sends the file
+   * lists of large projects with {@linkplain FileList#collapse(int) collapsed} folders. These
+   * folders are taken from the given local file list if their content is equal, the content of all
+   * other folders is requested from the remote side. The result is stored in the {@link
+   * ProjectNegotiationData negotiation data} of the project, so the remote side is only asked once
+   * for each folder.
+   *
+   * @param id the id of the remote project
+   * @param localFileList the file list of the local project the remote project will be mapped to
+   * @param monitor monitor to show progress to the user
+   * @return the complete file list of the remote project
+   * @throws IOException if the remote file list could not be requested
+   * @throws SarosCancellationException if the negotiation was canceled or the remote side did not
+   *     respond
+   */
+  public FileList getRemoteFileList(
+      final String id, final FileList localFileList, final IProgressMonitor monitor)
+      throws IOException, SarosCancellationException {
+
+    synchronized (fileListLock) {
+      final ProjectNegotiationData data = getProjectNegotiationData(id);
+
+      if (data == null) throw new IllegalArgumentException("invalid project id: " + id);
+
+      if (data.getFileList().getCollapsedFolders().isEmpty()) return data.getFileList();
+
+      monitor.subTask("Receiving file list...");
+
+      final FileList remoteFileList = data.getFileList().collapse(Integer.MAX_VALUE);
+
+      remoteFileList.expand(localFileList);
+
+      final PacketCollector collector =
+          receiver.createCollector(
+              ProjectNegotiationFileListResponseExtension.PROVIDER.getPacketFilter(
+                  getSessionID(), getID()));
+
+      try {
+        List<String> folders;
+
+        while (!(folders = remoteFileList.getCollapsedFolders()).isEmpty()) {
+
+          LOG.debug(this + " : requesting content of " + folders.size() + " folder(s)");
+
+          transmitter.send(
+              ISarosSession.SESSION_CONNECTION_ID,
+              getPeer(),
+              ProjectNegotiationFileListRequestExtension.PROVIDER.create(
+                  new ProjectNegotiationFileListRequestExtension(
+                      getSessionID(), getID(), id, folders)));
+
+          final Packet packet = collectPacket(collector, PACKET_TIMEOUT);
+
+          if (packet == null)
+            throw new LocalCancellationException(
+                "received no response from " + getPeer() + " while waiting for the file list",
+                CancelOption.DO_NOT_NOTIFY_PEER);
+
+          final FileList subtrees =
+              ProjectNegotiationFileListResponseExtension.PROVIDER.getPayload(packet).getFileList();
+
+          if (remoteFileList.expand(subtrees) == 0)
+            throw new IOException("received invalid file list for project: " + id);
+
+          // the received folders may contain collapsed folders which exist locally
+          remoteFileList.expand(localFileList);
+        }
+      } finally {
+        collector.cancel();
+      }
+
+      projectNegotiationData.put(
+          id,
+          new ProjectNegotiationData(id, data.getProjectName(), data.isPartial(), remoteFileList));
+
+      return remoteFileList;
+    }
+  }
+
   @Override
   protected void executeCancellation() {
 
@@ -330,8 +419,10 @@ public abstract class AbstractIncomingProjectNegotiation extends ProjectNegotiat
 
       final ProjectNegotiationData data = getProjectNegotiationData(id);
 
+      final FileList remoteProjectFileList = getRemoteFileList(id, localProjectFileList, monitor);
+
       final FileListDiff diff =
-          FileListDiff.diff(localProjectFileList, data.getFileList(), data.isPartial());
+          FileListDiff.diff(localProjectFileList, remoteProjectFileList, data.isPartial());
 
       checkCancellation(CancelOption.NOTIFY_PEER);
 
@@ -347,6 +438,26 @@ public abstract class AbstractIncomingProjectNegotiation extends ProjectNegotiat
     return result;
   }
 
+  /**
+   * Creates the signatures of the local files that are outdated, so the remote side can transfer
+   * them as delta. This implementation returns no signatures, i.e. all files are transferred
+   * completely. Implementations that support delta transfer should override this method.
+   *
+   * @param localProjectMapping the local project mapping to use
+   * @param diffs the differences between the local and the remote side
+   * @param monitor monitor to show progress to the user
+   * @return the signatures of the outdated files which should be transferred as delta
+   * @throws IOException
+   * @throws SarosCancellationException
+   */
+  protected List<ChunkSignature> createChunkSignatures(
+      final Map<String, IProject> localProjectMapping,
+      final Map<String, FileListDiff> diffs,
+      final IProgressMonitor monitor)
+      throws IOException, SarosCancellationException {
+    return Collections.emptyList();
+  }
+
   /**
    * Synchronize the project structures, deleting files and folders that are not present on the
    * remote side and creating empty folders that do not exists and the local side.
@@ -1,5 +1,7 @@
 package de.fu_berlin.inf.dpp.negotiation;
 
+import de.fu_berlin.inf.dpp.communication.extensions.ProjectNegotiationFileListRequestExtension;
+import de.fu_berlin.inf.dpp.communication.extensions.ProjectNegotiationFileListResponseExtension;
 import de.fu_berlin.inf.dpp.communication.extensions.ProjectNegotiationMissingFilesExtension;
 import de.fu_berlin.inf.dpp.communication.extensions.ProjectNegotiationOfferingExtension;
 import de.fu_berlin.inf.dpp.communication.extensions.StartActivityQueuingRequest;
@@ -25,10 +27,14 @@ import de.fu_berlin.inf.dpp.session.User;
 import de.fu_berlin.inf.dpp.synchronize.StartHandle;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.log4j.Logger;
+import org.jivesoftware.smack.PacketListener;
 import org.jivesoftware.smack.packet.Packet;
 
 /**
@@ -45,12 +51,37 @@ public abstract class AbstractOutgoingProjectNegotiation extends ProjectNegotiat
 
   private static final Random NEGOTIATION_ID_GENERATOR = new Random();
 
+  /**
+   * Minimum number of files a project must contain before its file list is sent with collapsed
+   * folders. The remote side has to request the content of the folders it does not have already, so
+   * this only pays off for larger projects.
+   */
+  private static final int MIN_FILES_FOR_COLLAPSING = 1000;
+
+  /** Number of folder levels that are sent at once before the remaining folders are collapsed */
+  private static final int COLLAPSE_DEPTH = 2;
+
   protected final IEditorManager editorManager;
 
   private PacketCollector remoteFileListResponseCollector;
 
   private PacketCollector startActivityQueuingResponseCollector;
 
+  private List<ChunkSignature> remoteSignatures = Collections.emptyList();
+
+  /** The complete file lists of the offered projects, used to answer file list requests */
+  private final Map<String, FileList> offeredFileLists = new ConcurrentHashMap<String, FileList>();
+
+  private final PacketListener fileListRequestListener =
+      new PacketListener() {
+
+        @Override
+        public void processPacket(Packet packet) {
+          sendFileListResponse(
+              ProjectNegotiationFileListRequestExtension.PROVIDER.getPayload(packet));
+        }
+      };
+
   protected AbstractOutgoingProjectNegotiation( //
       final JID peer, //
       final TransferType transferType, //
@@ -185,9 +216,35 @@ public abstract class AbstractOutgoingProjectNegotiation extends ProjectNegotiat
      * instance and pass it to the installed callback handler (which in the
      * current implementation opens a wizard on the remote side)
      */
+    /*
+     * Send large file lists with collapsed folders. The remote side
+     * reconstructs the folders it already has from its local files and only
+     * requests the content of the folders that differ.
+     */
+    final List<ProjectNegotiationData> offeredProjectInfos =
+        new ArrayList<ProjectNegotiationData>(projectInfos.size());
+
+    for (final ProjectNegotiationData data : projectInfos) {
+      final FileList fileList = data.getFileList();
+
+      offeredFileLists.put(data.getProjectID(), fileList);
+
+      if (fileList.getFileCount() < MIN_FILES_FOR_COLLAPSING) {
+        offeredProjectInfos.add(data);
+        continue;
+      }
+
+      offeredProjectInfos.add(
+          new ProjectNegotiationData(
+              data.getProjectID(),
+              data.getProjectName(),
+              data.isPartial(),
+              fileList.collapse(COLLAPSE_DEPTH)));
+    }
+
     ProjectNegotiationOfferingExtension offering =
         new ProjectNegotiationOfferingExtension(
-            getSessionID(), getID(), projectInfos, getTransferType());
+            getSessionID(), getID(), offeredProjectInfos, getTransferType());
 
     transmitter.send(
         ISarosSession.SESSION_CONNECTION_ID,
@@ -195,6 +252,40 @@ public abstract class AbstractOutgoingProjectNegotiation extends ProjectNegotiat
         ProjectNegotiationOfferingExtension.PROVIDER.create(offering));
   }
 
+  /**
+   * Answers a request for the content of collapsed folders of an offered file list.
+   *
+   * @param request the request of the remote side
+   */
+  private void sendFileListResponse(final ProjectNegotiationFileListRequestExtension request) {
+    final FileList fileList = offeredFileLists.get(request.getProjectID());
+
+    if (fileList == null) {
+      LOG.warn(
+          this + " : received file list request for unknown project " + request.getProjectID());
+      return;
+    }
+
+    LOG.debug(
+        this
+            + " : sending content of "
+            + request.getFolders().size()
+            + " folder(s) of project "
+            + request.getProjectID());
+
+    final FileList subtrees = fileList.getSubtrees(request.getFolders(), COLLAPSE_DEPTH);
+
+    try {
+      transmitter.send(
+          ISarosSession.SESSION_CONNECTION_ID,
+          getPeer(),
+          ProjectNegotiationFileListResponseExtension.PROVIDER.create(
+              new ProjectNegotiationFileListResponseExtension(getSessionID(), getID(), subtrees)));
+    } catch (IOException e) {
+      LOG.error(this + " : failed to send file list response", e);
+    }
+  }
+
   /**
    * Retrieve the peer's partial file list and remember which files need to be sent to that user
    *
@@ -220,8 +311,12 @@ public abstract class AbstractOutgoingProjectNegotiation extends ProjectNegotiat
           "received no response from " + getPeer() + " while waiting for the file list",
           CancelOption.DO_NOT_NOTIFY_PEER);
 
-    List<FileList> remoteFileLists =
-        ProjectNegotiationMissingFilesExtension.PROVIDER.getPayload(packet).getFileLists();
+    final ProjectNegotiationMissingFilesExtension missingFiles =
+        ProjectNegotiationMissingFilesExtension.PROVIDER.getPayload(packet);
+
+    List<FileList> remoteFileLists = missingFiles.getFileLists();
+
+    remoteSignatures = missingFiles.getSignatures();
 
     LOG.debug(this + " : remote file list has been received");
 
@@ -232,6 +327,16 @@ public abstract class AbstractOutgoingProjectNegotiation extends ProjectNegotiat
     return remoteFileLists;
   }
 
+  /**
+   * Returns the signatures of the outdated files the remote side already has. These files may be
+   * transferred as delta. Only available after the remote file list was received.
+   *
+   * @return the signatures of the outdated files of the remote side
+   */
+  protected List<ChunkSignature> getRemoteSignatures() {
+    return remoteSignatures;
+  }
+
   @Override
   protected void executeCancellation() {
     if (session.getRemoteUsers().isEmpty())
@@ -285,11 +390,17 @@ public abstract class AbstractOutgoingProjectNegotiation extends ProjectNegotiat
     startActivityQueuingResponseCollector =
         receiver.createCollector(
             StartActivityQueuingResponse.PROVIDER.getPacketFilter(getSessionID(), getID()));
+
+    receiver.addPacketListener(
+        fileListRequestListener,
+        ProjectNegotiationFileListRequestExtension.PROVIDER.getPacketFilter(
+            getSessionID(), getID()));
   }
 
   protected void deleteCollectors() {
     remoteFileListResponseCollector.cancel();
     startActivityQueuingResponseCollector.cancel();
+    receiver.removePacketListener(fileListRequestListener);
   }
 
   protected List<ProjectNegotiationData> createProjectNegotiationDataList(
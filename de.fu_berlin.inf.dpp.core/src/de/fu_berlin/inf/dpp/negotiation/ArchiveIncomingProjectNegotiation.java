@@ -4,6 +4,7 @@ import de.fu_berlin.inf.dpp.communication.extensions.StartActivityQueuingRespons
 import de.fu_berlin.inf.dpp.exceptions.LocalCancellationException;
 import de.fu_berlin.inf.dpp.exceptions.SarosCancellationException;
 import de.fu_berlin.inf.dpp.filesystem.IChecksumCache;
+import de.fu_berlin.inf.dpp.filesystem.IFile;
 import de.fu_berlin.inf.dpp.filesystem.IProject;
 import de.fu_berlin.inf.dpp.filesystem.IResource;
 import de.fu_berlin.inf.dpp.filesystem.IWorkspace;
@@ -20,10 +21,13 @@ import de.fu_berlin.inf.dpp.session.ISarosSessionManager;
 import de.fu_berlin.inf.dpp.util.CoreUtils;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 import org.jivesoftware.smack.XMPPException;
 import org.jivesoftware.smackx.filetransfer.IncomingFileTransfer;
@@ -108,6 +112,58 @@ public class ArchiveIncomingProjectNegotiation extends AbstractIncomingProjectNe
     }
   }
 
+  /**
+   * Creates the signatures of all outdated local files which are large enough, so the host only
+   * needs to send the parts of these files that changed.
+   */
+  @Override
+  protected List<ChunkSignature> createChunkSignatures(
+      final Map<String, IProject> localProjectMapping,
+      final Map<String, FileListDiff> diffs,
+      final IProgressMonitor monitor)
+      throws IOException, SarosCancellationException {
+
+    final List<ChunkSignature> signatures = new ArrayList<ChunkSignature>();
+
+    long size = 0;
+
+    for (final Entry<String, IProject> entry : localProjectMapping.entrySet()) {
+
+      final String projectID = entry.getKey();
+      final IProject project = entry.getValue();
+
+      for (final String path : diffs.get(projectID).getAlteredFiles()) {
+        final IFile file = project.getFile(path);
+
+        // the delta is applied to the file on disk
+        if (file.getLocation() == null || file.getSize() < DeltaCodec.MIN_FILE_SIZE) continue;
+
+        checkCancellation(CancelOption.NOTIFY_PEER);
+
+        monitor.subTask("Computing signature of file: " + path);
+
+        final InputStream in = file.getContents();
+
+        try {
+          signatures.add(new ChunkSignature(projectID, path, DeltaCodec.createSignature(in)));
+        } finally {
+          IOUtils.closeQuietly(in);
+        }
+
+        size += file.getSize();
+      }
+    }
+
+    LOG.debug(
+        this
+            + " : created signatures of "
+            + signatures.size()
+            + " outdated file(s), total size: "
+            + CoreUtils.formatByte(size));
+
+    return signatures;
+  }
+
   /** Receives the archive with all missing files and unpacks it. */
   private void receiveAndUnpackArchive(
       final Map<String, IProject> localProjectMapping,
@@ -22,7 +22,9 @@ import de.fu_berlin.inf.dpp.synchronize.StartHandle;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.apache.log4j.Logger;
 import org.jivesoftware.smack.XMPPException;
 import org.jivesoftware.smackx.filetransfer.OutgoingFileTransfer;
@@ -143,6 +145,12 @@ public class ArchiveOutgoingProjectNegotiation extends AbstractOutgoingProjectNe
 
     final List<IResource> projectsToLock = new ArrayList<IResource>();
 
+    final Map<String, byte[]> signatures = new HashMap<String, byte[]>();
+
+    for (final ChunkSignature signature : getRemoteSignatures())
+      signatures.put(
+          signature.getProjectID() + PATH_DELIMITER + signature.getPath(), signature.getHashes());
+
     for (final FileList list : fileLists) {
       final String projectID = list.getProjectID();
 
@@ -184,7 +192,7 @@ public class ArchiveOutgoingProjectNegotiation extends AbstractOutgoingProjectNe
     try {
       tempArchive = File.createTempFile("saros_" + getID(), ".zip");
       workspace.run(
-          new CreateArchiveTask(tempArchive, filesToCompress, fileAlias, monitor),
+          new CreateArchiveTask(tempArchive, filesToCompress, fileAlias, signatures, monitor),
           projectsToLock.toArray(new IResource[0]));
     } catch (OperationCanceledException e) {
       LocalCancellationException canceled = new LocalCancellationException();
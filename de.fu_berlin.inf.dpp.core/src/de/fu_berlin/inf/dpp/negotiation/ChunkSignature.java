@@ -0,0 +1,48 @@
+package de.fu_berlin.inf.dpp.negotiation;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
+
+/**
+ * Signature of a file the remote side already has in an outdated version. It allows to transfer
+ * only the changed parts of the file instead of its whole content.
+ *
+ * @see DeltaCodec
+ */
+@XStreamAlias("CSIG")
+public class ChunkSignature {
+
+  @XStreamAlias("pid")
+  @XStreamAsAttribute
+  private final String projectID;
+
+  @XStreamAlias("p")
+  @XStreamAsAttribute
+  private final String path;
+
+  @XStreamAlias("h")
+  private final byte[] hashes;
+
+  /**
+   * @param projectID the session wide id of the project the file belongs to
+   * @param path the project relative path of the file
+   * @param hashes the hashes of the chunks of the file
+   */
+  public ChunkSignature(String projectID, String path, byte[] hashes) {
+    this.projectID = projectID;
+    this.path = path;
+    this.hashes = hashes;
+  }
+
+  public String getProjectID() {
+    return projectID;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  byte[] getHashes() {
+    return hashes;
+  }
+}
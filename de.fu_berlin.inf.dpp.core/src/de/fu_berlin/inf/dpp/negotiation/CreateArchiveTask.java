@@ -3,6 +3,7 @@ package de.fu_berlin.inf.dpp.negotiation;
 import de.fu_berlin.inf.dpp.exceptions.OperationCanceledException;
 import de.fu_berlin.inf.dpp.filesystem.IFile;
 import de.fu_berlin.inf.dpp.filesystem.IWorkspaceRunnable;
+import de.fu_berlin.inf.dpp.monitoring.CancelableInputStream;
 import de.fu_berlin.inf.dpp.monitoring.IProgressMonitor;
 import de.fu_berlin.inf.dpp.monitoring.NullProgressMonitor;
 import de.fu_berlin.inf.dpp.util.CoreUtils;
@@ -12,8 +13,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 import org.apache.commons.io.IOUtils;
@@ -30,6 +33,7 @@ public class CreateArchiveTask implements IWorkspaceRunnable {
   private final File archive;
   private final List<IFile> files;
   private final List<String> alias;
+  private final Map<String, byte[]> signatures;
   private final IProgressMonitor monitor;
 
   public CreateArchiveTask(
@@ -37,9 +41,24 @@ public class CreateArchiveTask implements IWorkspaceRunnable {
       final List<IFile> files,
       final List<String> alias,
       final IProgressMonitor monitor) {
+    this(archive, files, alias, null, monitor);
+  }
+
+  /**
+   * @param signatures the {@linkplain DeltaCodec#createSignature signatures} of the outdated
+   *     versions the receiver already has, identified by their entry name. These files are stored
+   *     as delta. May be <code>null</code>.
+   */
+  public CreateArchiveTask(
+      final File archive,
+      final List<IFile> files,
+      final List<String> alias,
+      final Map<String, byte[]> signatures,
+      final IProgressMonitor monitor) {
     this.archive = archive;
     this.files = files;
     this.alias = alias;
+    this.signatures = signatures == null ? Collections.<String, byte[]>emptyMap() : signatures;
     this.monitor = monitor;
   }
 
@@ -61,6 +80,10 @@ public class CreateArchiveTask implements IWorkspaceRunnable {
 
     long totalRead = 0L;
 
+    int deltaCount = 0;
+    long deltaSize = 0L;
+    long deltaLiteralSize = 0L;
+
     boolean cleanup = true;
 
     byte[] buffer = new byte[BUFFER_SIZE];
@@ -89,12 +112,42 @@ public class CreateArchiveTask implements IWorkspaceRunnable {
 
         monitor.subTask("compressing file: " + originalEntryName);
 
-        zipStream.putNextEntry(new ZipEntry(entryName));
+        final ZipEntry entry = new ZipEntry(entryName);
+
+        final byte[] signature = signatures.get(entryName);
+
+        if (signature != null) entry.setComment(DeltaCodec.ZIP_ENTRY_COMMENT);
+
+        zipStream.putNextEntry(entry);
 
         InputStream in = null;
 
         try {
 
+          if (signature != null) {
+            in = new CancelableInputStream(file.getContents(), monitor);
+
+            try {
+              deltaLiteralSize += DeltaCodec.writeDelta(in, signature, zipStream);
+            } catch (IOException e) {
+              if (monitor.isCanceled())
+                throw new OperationCanceledException(
+                    "compressing of file '" + originalEntryName + "' was canceled");
+
+              throw e;
+            }
+
+            final long size = file.getSize();
+
+            deltaCount++;
+            deltaSize += size;
+            totalRead += size;
+
+            updateMonitor(monitor, totalRead, totalSize);
+            zipStream.closeEntry();
+            continue;
+          }
+
           int read = 0;
 
           in = file.getContents();
@@ -129,6 +182,12 @@ public class CreateArchiveTask implements IWorkspaceRunnable {
 
     stopWatch.stop();
 
+    if (deltaCount > 0)
+      LOG.debug(
+          String.format(
+              "stored %d file(s) as delta, %s of %s had to be included",
+              deltaCount, CoreUtils.formatByte(deltaLiteralSize), CoreUtils.formatByte(deltaSize)));
+
     LOG.debug(
         String.format(
             "created archive %s I/O: [%s]",
@@ -3,19 +3,25 @@ package de.fu_berlin.inf.dpp.negotiation;
 import de.fu_berlin.inf.dpp.exceptions.OperationCanceledException;
 import de.fu_berlin.inf.dpp.filesystem.FileSystem;
 import de.fu_berlin.inf.dpp.filesystem.IFile;
+import de.fu_berlin.inf.dpp.filesystem.IPath;
 import de.fu_berlin.inf.dpp.filesystem.IProject;
 import de.fu_berlin.inf.dpp.filesystem.IWorkspace;
 import de.fu_berlin.inf.dpp.filesystem.IWorkspaceRunnable;
 import de.fu_berlin.inf.dpp.monitoring.CancelableInputStream;
 import de.fu_berlin.inf.dpp.monitoring.IProgressMonitor;
 import de.fu_berlin.inf.dpp.session.ISarosSession;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Enumeration;
 import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 
 public class DecompressArchiveTask implements IWorkspaceRunnable {
@@ -109,7 +115,9 @@ public class DecompressArchiveTask implements IWorkspaceRunnable {
         in = new CancelableInputStream(inZip, monitor);
 
         try {
-          if (!decompressedFile.exists()) decompressedFile.create(in, false);
+          if (DeltaCodec.ZIP_ENTRY_COMMENT.equals(entry.getComment()))
+            applyDelta(decompressedFile, in);
+          else if (!decompressedFile.exists()) decompressedFile.create(in, false);
           else decompressedFile.setContents(in, false, true);
         } catch (IOException e) {
           /* if triggered by check in CancelableInputStream */
@@ -134,4 +142,39 @@ public class DecompressArchiveTask implements IWorkspaceRunnable {
       }
     }
   }
+
+  /**
+   * Replaces the content of the given file with the result of applying the given delta to its
+   * current content. The new content is written to a temporary file first as the current content is
+   * needed until the delta is applied completely.
+   */
+  private void applyDelta(final IFile file, final InputStream delta) throws IOException {
+    final IPath location = file.getLocation();
+
+    if (location == null || !file.exists())
+      throw new IOException("cannot apply delta to file: " + file);
+
+    final File tempFile = File.createTempFile("saros_delta_", null);
+
+    try {
+      final OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile));
+
+      try {
+        DeltaCodec.applyDelta(location.toFile(), delta, out);
+        out.close();
+      } finally {
+        IOUtils.closeQuietly(out);
+      }
+
+      final InputStream in = new FileInputStream(tempFile);
+
+      try {
+        file.setContents(in, false, true);
+      } finally {
+        IOUtils.closeQuietly(in);
+      }
+    } finally {
+      if (!tempFile.delete()) LOG.warn("could not delete temporary file: " + tempFile);
+    }
+  }
 }
@@ -0,0 +1,324 @@
+package de.fu_berlin.inf.dpp.negotiation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.Adler32;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Encodes the content of a file as a delta against an older version of the file which is only
+ * available on the remote side, similar to rsync.
+ *
+ * <p>Both versions are cut into chunks with content-defined boundaries, i.e. a boundary is placed
+ * wherever a rolling hash over the last bytes matches a pattern. Unlike fixed-size blocks, an
+ * insertion or deletion therefore only changes the chunks it touches. The remote side sends a
+ * {@linkplain #createSignature signature} with the hashes of its chunks, the local side then
+ * {@linkplain #writeDelta writes a delta} which references all chunks the remote side already has
+ * and only contains the content of the other ones. The remote side {@linkplain #applyDelta applies
+ * the delta} to its older version.
+ */
+final class DeltaCodec {
+
+  /** Comment of zip entries that contain a delta instead of the file content */
+  static final String ZIP_ENTRY_COMMENT = "delta";
+
+  /** Files smaller than this are always transferred completely */
+  static final long MIN_FILE_SIZE = 256 * 1024;
+
+  static final int MIN_CHUNK_SIZE = 2 * 1024;
+
+  static final int MAX_CHUNK_SIZE = 64 * 1024;
+
+  /** Selects the 13 most significant bits of the rolling hash, i.e. an average of 8 KiB + min */
+  private static final long BOUNDARY_MASK = ((1L << 13) - 1) << (64 - 13);
+
+  /** Number of bytes of a chunk hash */
+  private static final int HASH_LENGTH = 8;
+
+  private static final int END = 0;
+  private static final int COPY = 1;
+  private static final int LITERAL = 2;
+
+  private static final long[] GEAR = new long[256];
+
+  static {
+    // must never change, otherwise both sides compute different chunks
+    final Random random = new Random(0x5A2053L);
+
+    for (int i = 0; i < GEAR.length; i++) GEAR[i] = random.nextLong();
+  }
+
+  /** Cuts a stream into chunks. */
+  private static final class Chunker {
+
+    private final InputStream in;
+
+    final byte[] buffer = new byte[2 * MAX_CHUNK_SIZE];
+
+    /** Start of the current chunk in the buffer */
+    int offset;
+
+    /** Length of the current chunk */
+    int length;
+
+    private int limit;
+
+    Chunker(InputStream in) {
+      this.in = in;
+    }
+
+    /**
+     * Advances to the next chunk.
+     *
+     * @return the length of the next chunk or <code>0</code> if the end of the stream is reached
+     */
+    int next() throws IOException {
+      offset += length;
+
+      if (limit - offset < MAX_CHUNK_SIZE) {
+        System.arraycopy(buffer, offset, buffer, 0, limit - offset);
+        limit -= offset;
+        offset = 0;
+
+        int read;
+
+        while (limit < buffer.length
+            && (read = in.read(buffer, limit, buffer.length - limit)) != -1) limit += read;
+      }
+
+      final int available = limit - offset;
+
+      if (available <= MIN_CHUNK_SIZE) return length = available;
+
+      final int end = offset + Math.min(available, MAX_CHUNK_SIZE);
+
+      long hash = 0;
+      int i = offset + MIN_CHUNK_SIZE;
+
+      while (i < end) {
+        hash = (hash << 1) + GEAR[buffer[i++] & 0xFF];
+
+        if ((hash & BOUNDARY_MASK) == 0) break;
+      }
+
+      return length = i - offset;
+    }
+  }
+
+  private DeltaCodec() {
+    // NOP
+  }
+
+  /**
+   * Creates the signature of the given content.
+   *
+   * @param in the content, the stream is not closed
+   * @return the hashes of all chunks of the content
+   */
+  static byte[] createSignature(InputStream in) throws IOException {
+    final MessageDigest digest = createDigest();
+    final Chunker chunker = new Chunker(in);
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    while (chunker.next() > 0) out.write(hash(digest, chunker), 0, HASH_LENGTH);
+
+    return out.toByteArray();
+  }
+
+  /**
+   * Writes the delta that transforms the content with the given signature to the given content.
+   *
+   * @param in the new content, the stream is not closed
+   * @param signature the signature of the old content
+   * @param out the stream to write the delta to, the stream is not closed
+   * @return the number of bytes of the new content that had to be included in the delta
+   */
+  static long writeDelta(InputStream in, byte[] signature, OutputStream out) throws IOException {
+    final Map<Long, Integer> chunks = new HashMap<Long, Integer>(signature.length / 4);
+
+    for (int i = signature.length / HASH_LENGTH - 1; i >= 0; i--)
+      chunks.put(toLong(signature, i * HASH_LENGTH), i);
+
+    final MessageDigest digest = createDigest();
+    final Adler32 checksum = new Adler32();
+    final Chunker chunker = new Chunker(in);
+    final DataOutputStream data = new DataOutputStream(out);
+
+    long literalBytes = 0;
+
+    // pending run of consecutive chunks of the old content
+    int copyStart = -1;
+    int copyCount = 0;
+
+    while (chunker.next() > 0) {
+      checksum.update(chunker.buffer, chunker.offset, chunker.length);
+
+      final Integer index = chunks.get(toLong(hash(digest, chunker), 0));
+
+      if (index != null && copyStart + copyCount == index) {
+        copyCount++;
+        continue;
+      }
+
+      if (copyCount > 0) {
+        data.writeByte(COPY);
+        data.writeInt(copyStart);
+        data.writeInt(copyCount);
+        copyCount = 0;
+      }
+
+      if (index != null) {
+        copyStart = index;
+        copyCount = 1;
+        continue;
+      }
+
+      data.writeByte(LITERAL);
+      data.writeInt(chunker.length);
+      data.write(chunker.buffer, chunker.offset, chunker.length);
+
+      literalBytes += chunker.length;
+    }
+
+    if (copyCount > 0) {
+      data.writeByte(COPY);
+      data.writeInt(copyStart);
+      data.writeInt(copyCount);
+    }
+
+    data.writeByte(END);
+    data.writeLong(checksum.getValue());
+    data.flush();
+
+    return literalBytes;
+  }
+
+  /**
+   * Applies a delta to the old content.
+   *
+   * @param oldFile the file with the old content the signature was created from
+   * @param in the delta, the stream is not closed
+   * @param out the stream to write the new content to, the stream is not closed
+   * @throws IOException if an I/O error occurs or the delta does not fit to the old content, e.g.
+   *     because the file was modified after the signature was created
+   */
+  static void applyDelta(File oldFile, InputStream in, OutputStream out) throws IOException {
+    final long[] offsets = getChunkOffsets(oldFile);
+
+    final Adler32 checksum = new Adler32();
+    final DataInputStream data = new DataInputStream(in);
+    final byte[] buffer = new byte[MAX_CHUNK_SIZE];
+
+    final RandomAccessFile oldContent = new RandomAccessFile(oldFile, "r");
+
+    try {
+      int type;
+
+      while ((type = data.readByte()) != END) {
+        if (type == COPY) {
+          final int start = data.readInt();
+          final int end = start + data.readInt();
+
+          if (start < 0 || end < start || end >= offsets.length)
+            throw new IOException("invalid chunk range: " + start + " - " + end);
+
+          oldContent.seek(offsets[start]);
+
+          for (long remaining = offsets[end] - offsets[start]; remaining > 0; ) {
+            final int length = (int) Math.min(remaining, buffer.length);
+
+            oldContent.readFully(buffer, 0, length);
+            checksum.update(buffer, 0, length);
+            out.write(buffer, 0, length);
+
+            remaining -= length;
+          }
+        } else if (type == LITERAL) {
+          final int length = data.readInt();
+
+          if (length < 0 || length > buffer.length)
+            throw new IOException("invalid literal length: " + length);
+
+          data.readFully(buffer, 0, length);
+          checksum.update(buffer, 0, length);
+          out.write(buffer, 0, length);
+        } else {
+          throw new IOException("invalid record type: " + type);
+        }
+      }
+    } catch (EOFException e) {
+      throw new IOException("delta is truncated", e);
+    } finally {
+      IOUtils.closeQuietly(oldContent);
+    }
+
+    if (data.readLong() != checksum.getValue())
+      throw new IOException("checksum mismatch, the file was modified in the meantime");
+  }
+
+  /** Returns the start offsets of all chunks of the given file followed by the file length. */
+  private static long[] getChunkOffsets(File file) throws IOException {
+    final InputStream in = new FileInputStream(file);
+
+    try {
+      final Chunker chunker = new Chunker(in);
+
+      long[] offsets = new long[1024];
+      int count = 1;
+
+      while (chunker.next() > 0) {
+        if (count == offsets.length) {
+          final long[] newOffsets = new long[offsets.length * 2];
+          System.arraycopy(offsets, 0, newOffsets, 0, offsets.length);
+          offsets = newOffsets;
+        }
+
+        offsets[count] = offsets[count - 1] + chunker.length;
+        count++;
+      }
+
+      final long[] result = new long[count];
+      System.arraycopy(offsets, 0, result, 0, count);
+
+      return result;
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+  }
+
+  private static byte[] hash(MessageDigest digest, Chunker chunker) {
+    digest.update(chunker.buffer, chunker.offset, chunker.length);
+    return digest.digest();
+  }
+
+  private static long toLong(byte[] bytes, int offset) {
+    long value = 0;
+
+    for (int i = 0; i < HASH_LENGTH; i++) value = (value << 8) | (bytes[offset + i] & 0xFF);
+
+    return value;
+  }
+
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform must support MD5
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -23,9 +23,12 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
 import com.thoughtworks.xstream.annotations.XStreamOmitField;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.apache.commons.lang.ObjectUtils;
 
@@ -34,6 +37,12 @@ import org.apache.commons.lang.ObjectUtils;
  * FileLists can be compared to other FileLists. Folders are denoted by a trailing separator.
  * Instances of this class are immutable. No further modification is allowed after creation.
  * Instances should be created using the methods provided by the {@link FileListFactory}.
+ *
+ * <p>Each folder has a Merkle hash which is computed from the names, checksums and hashes of its
+ * sub nodes. Two folders with the same hash have the same content. This allows to {@linkplain
+ * #collapse(int) collapse} large folders to their hash before a file list is sent to a remote side.
+ * The remote side {@linkplain #expand(FileList) expands} the collapsed folders again, either with
+ * its local folders if the hashes match or with the subtrees it requests from the sending side.
  */
 
 // FIXME remove the projectID stuff, as it is mutable !
@@ -52,6 +61,12 @@ public class FileList {
    */
   public static final char DIR_SEPARATOR_CHAR = '/';
 
+  /** Minimum number of sub nodes a node needs to get an index for looking them up */
+  private static final int INDEX_THRESHOLD = 8;
+
+  /** Minimum number of files a folder must contain to be worth collapsing */
+  private static final int COLLAPSE_THRESHOLD = 16;
+
   /*
    * Do NOT optimize this code in regards to understandability. This class IS
    * optimized in regards to memory consumption, i.e serializing / marshaling
@@ -77,6 +92,23 @@ public class FileList {
     @XStreamAsAttribute
     boolean isDirectory;
 
+    /** Merkle hash of a collapsed directory, <code>null</code> for all other nodes */
+    @XStreamAlias("h")
+    @XStreamAsAttribute
+    Long hash;
+
+    /** Lookup table for the sub nodes, created on demand */
+    @XStreamOmitField private transient Map<String, File> index;
+
+    /*
+     * Merkle hash of this node, the number of files below it and whether all
+     * these files have a checksum, computed on demand
+     */
+    @XStreamOmitField private transient boolean isHashed;
+    @XStreamOmitField private transient long treeHash;
+    @XStreamOmitField private transient int fileCount;
+    @XStreamOmitField private transient boolean isVerifiable;
+
     private File(String path, MetaData metaData, boolean isDirectory) {
       this.path = path;
       this.metaData = metaData;
@@ -156,39 +188,171 @@ public class FileList {
 
     /** Retrieves the file for the given path, <code>null</code> if it does not exist. */
     private File getFile(String path) {
-      for (File file : files) {
-        File foundFile = file.getFile(segments(path), 0);
-        if (foundFile != null) return foundFile;
+      File file = this;
+
+      for (String segment : segments(path)) {
+        file = file.getChild(segment);
+
+        if (file == null) return null;
       }
 
-      return null;
+      return file == this ? null : file;
     }
 
-    /** Will be called recursively to find the file represented by the given path segments. */
-    private File getFile(String[] segments, int segmentIndex) {
-      if (segmentIndex >= segments.length) return null;
+    /**
+     * Returns the direct sub node with the given path segment, <code>null</code> if it does not
+     * exist. Large directories are searched with the help of an index.
+     */
+    private File getChild(String segment) {
+      if (files.size() < INDEX_THRESHOLD) {
+        for (File file : files) if (file.path.equals(segment)) return file;
+
+        return null;
+      }
 
-      // _________ 0 1 2 3 : segment.length = 4
-      // _search : a/b/c/d : segmentIndex = 3
-      // current : a/b/c/d : return this
+      if (index == null) {
+        index = new HashMap<String, File>(files.size() * 2);
 
-      if (path.equals(segments[segmentIndex]) && segmentIndex + 1 == segments.length) {
-        return this;
+        for (File file : files) if (!index.containsKey(file.path)) index.put(file.path, file);
       }
 
-      /*
-       * only continue if we are still on a valid path segment e.g we
-       * search for a/b/c/d but are now in a/b/a
-       */
-      if (!path.equals(segments[segmentIndex])) {
-        return null;
+      return index.get(segment);
+    }
+
+    private void addChild(File file) {
+      files.add(file);
+
+      if (index != null) index.put(file.path, file);
+    }
+
+    /** Replaces the direct sub node with the same path segment as the given node. */
+    private void replaceChild(File file) {
+      for (int i = 0; i < files.size(); i++) {
+        if (!files.get(i).path.equals(file.path)) continue;
+
+        files.set(i, file);
+
+        if (index != null) index.put(file.path, file);
+
+        return;
       }
 
+      addChild(file);
+    }
+
+    /**
+     * Computes the Merkle hash of this node if this was not done yet. The hash of a file is its
+     * checksum, the hash of a directory is computed from the path segments and hashes of its sub
+     * nodes regardless of their order. A collapsed directory has the hash of the directory it
+     * replaces.
+     */
+    private void computeTreeHash() {
+      if (isHashed) return;
+
+      if (hash != null) {
+        treeHash = hash;
+        fileCount = 0;
+        isVerifiable = true;
+      } else if (!isDirectory) {
+        treeHash = metaData == null ? 0 : metaData.checksum;
+        fileCount = 1;
+        isVerifiable = metaData != null;
+      } else {
+        long sum = 0;
+
+        fileCount = 0;
+        isVerifiable = true;
+
+        for (File file : files) {
+          file.computeTreeHash();
+
+          final long key = ((long) file.path.hashCode() << 1) | (file.isDirectory ? 1 : 0);
+
+          sum += mix(mix(key) + file.treeHash);
+          fileCount += file.fileCount;
+          isVerifiable &= file.isVerifiable;
+        }
+
+        treeHash = mix(sum + files.size());
+      }
+
+      isHashed = true;
+    }
+
+    /** True, if this node is a directory that can and should be replaced by its hash. */
+    private boolean isCollapsible() {
+      if (!isDirectory || hash != null) return false;
+
+      computeTreeHash();
+
+      return isVerifiable && fileCount >= COLLAPSE_THRESHOLD;
+    }
+
+    /**
+     * Creates a copy of this node. Sub directories which are located <code>depth</code> or more
+     * levels below this node are collapsed if they contain enough files.
+     */
+    private File copy(int depth) {
+      final File copy = new File(path, metaData, isDirectory);
+      copy.hash = hash;
+
       for (File file : files) {
-        File foundFile = file.getFile(segments, segmentIndex + 1);
-        if (foundFile != null) return foundFile;
+        if (depth > 1 || !file.isCollapsible()) {
+          copy.addChild(file.copy(depth - 1));
+          continue;
+        }
+
+        final File collapsed = new File(file.path, null, true);
+        collapsed.hash = file.treeHash;
+        copy.addChild(collapsed);
+      }
+
+      return copy;
+    }
+
+    /**
+     * Will be called recursively to collect the paths of all collapsed directories below this node.
+     */
+    private void getCollapsed(String base, List<String> paths) {
+      for (File sub : files) {
+        if (sub.hash != null) paths.add(sub.appendTo(base));
+        else sub.getCollapsed(sub.appendTo(base), paths);
       }
-      return null;
+    }
+
+    /**
+     * Will be called recursively to replace the collapsed directories below this node with the
+     * directories of the given node which have the same hash.
+     *
+     * @return the number of replaced directories
+     */
+    private int expand(File source) {
+      int count = 0;
+
+      for (int i = 0; i < files.size(); i++) {
+        final File sub = files.get(i);
+
+        final File other = source.getChild(sub.path);
+
+        if (other == null || !other.isDirectory) continue;
+
+        if (sub.hash == null) {
+          count += sub.expand(other);
+          continue;
+        }
+
+        other.computeTreeHash();
+
+        if (other.treeHash != sub.hash) continue;
+
+        replaceChild(other);
+        count++;
+      }
+
+      // the hash stays the same but the number of files changes
+      if (count > 0) isHashed = false;
+
+      return count;
     }
 
     /**
@@ -199,39 +363,39 @@ public class FileList {
      * @param metaData can be <code>null</code>
      */
     public void addPath(String path, MetaData metaData, boolean isDirectory) {
-      addPath(segments(path), 0, metaData, isDirectory);
-    }
+      final String[] segments = segments(path);
 
-    /**
-     * Will be called recursively to create the entry for the path given by its segments including
-     * all folder hierarchy levels.
-     */
-    private void addPath(
-        String[] segments, int segmentIndex, MetaData metaData, boolean isDirectory) {
+      File parent = this;
 
-      if (segmentIndex >= segments.length) return;
+      for (int i = 0; i < segments.length; i++) {
+        final boolean isLast = i + 1 == segments.length;
 
-      for (File file : files) {
-        if (file.path.equals(segments[segmentIndex])) {
-          if (segmentIndex + 1 == segments.length) {
-            file.metaData = metaData;
-            file.isDirectory = isDirectory;
-            return;
-          } else {
-            file.addPath(segments, segmentIndex + 1, metaData, isDirectory);
-            return;
-          }
+        File file = parent.getChild(segments[i]);
+
+        if (file == null) {
+          file =
+              isLast
+                  ? new File(segments[i], metaData, isDirectory)
+                  : new File(segments[i], null, true);
+          parent.addChild(file);
+        } else if (isLast) {
+          file.metaData = metaData;
+          file.isDirectory = isDirectory;
         }
-      }
 
-      if (segmentIndex + 1 == segments.length) {
-        files.add(new File(segments[segmentIndex], metaData, isDirectory));
-        return;
+        parent.isHashed = false;
+        parent = file;
       }
+    }
 
-      File file = new File(segments[segmentIndex], null, true);
-      files.add(file);
-      file.addPath(segments, segmentIndex + 1, metaData, isDirectory);
+    /** Finalization step of the 64 bit MurmurHash3 */
+    private static long mix(long k) {
+      k ^= k >>> 33;
+      k *= 0xff51afd7ed558ccdL;
+      k ^= k >>> 33;
+      k *= 0xc4ceb9fe1a85ec53L;
+      k ^= k >>> 33;
+      return k;
     }
 
     @Override
@@ -240,6 +404,7 @@ public class FileList {
       int result = 1;
       result = prime * result + ObjectUtils.hashCode(files);
       result = prime * result + (isDirectory ? 1231 : 1237);
+      result = prime * result + ObjectUtils.hashCode(hash);
       result = prime * result + ObjectUtils.hashCode(metaData);
       result = prime * result + ObjectUtils.hashCode(path);
       return result;
@@ -257,6 +422,7 @@ public class FileList {
 
       if (!ObjectUtils.equals(path, other.path)) return false;
       if (!ObjectUtils.equals(metaData, other.metaData)) return false;
+      if (!ObjectUtils.equals(hash, other.hash)) return false;
       if (!ObjectUtils.equals(files, other.files)) return false;
 
       return true;
@@ -337,6 +503,99 @@ public class FileList {
     return root.contains(path);
   }
 
+  /**
+   * Returns the number of files in this file list. Files in collapsed folders are not counted.
+   *
+   * @return the number of files
+   */
+  int getFileCount() {
+    root.computeTreeHash();
+    return root.fileCount;
+  }
+
+  /**
+   * Returns a copy of this file list in which all folders that are located <code>depth</code> or
+   * more levels below the project root are collapsed, i.e. they are replaced by their Merkle hash.
+   * Folders are only collapsed if they contain a reasonable number of files which all have a
+   * checksum.
+   *
+   * @param depth the minimum depth of a collapsed folder, e.g. <code>1</code> to collapse the
+   *     folders in the project root
+   * @return a (partially) collapsed copy of this file list
+   */
+  FileList collapse(int depth) {
+    final FileList result = new FileList();
+
+    result.root = root.copy(depth);
+    result.projectID = projectID;
+    result.encodings.addAll(encodings);
+
+    return result;
+  }
+
+  /**
+   * Returns a file list which only contains the given folders. The content of the folders is
+   * {@linkplain #collapse(int) collapsed} with the given depth relative to the folders. Folders
+   * that do not exist in this file list are ignored.
+   *
+   * @param folders the paths of the folders without a trailing separator
+   * @param depth the minimum depth of a collapsed sub folder relative to its requested folder
+   * @return a file list containing the given folders
+   */
+  FileList getSubtrees(Collection<String> folders, int depth) {
+    final FileList result = new FileList();
+
+    for (String folder : folders) {
+      final File file = root.getFile(folder);
+
+      if (file == null || !file.isDirectory) continue;
+
+      result.root.addPath(folder, null, true);
+
+      final int index = folder.lastIndexOf(DIR_SEPARATOR_CHAR);
+
+      final File parent =
+          index == -1 ? result.root : result.root.getFile(folder.substring(0, index));
+
+      parent.replaceChild(file.copy(depth));
+    }
+
+    result.projectID = projectID;
+
+    return result;
+  }
+
+  /**
+   * Returns the paths of all collapsed folders in this file list.
+   *
+   * @return the paths of the collapsed folders without a trailing separator
+   */
+  List<String> getCollapsedFolders() {
+    final List<String> paths = new ArrayList<String>();
+    root.getCollapsed(root.path, paths);
+    return paths;
+  }
+
+  /**
+   * Replaces the collapsed folders of this file list with the folders of the given file list which
+   * have the same Merkle hash. The nodes of the given file list are reused, i.e. it must not be
+   * modified afterwards.
+   *
+   * <p><b>Note:</b> Unlike all other methods this method modifies the file list, so it must only be
+   * called on file lists which were not passed to other components yet.
+   *
+   * @param source a file list of the same project, e.g. the local one or a file list that contains
+   *     the {@linkplain #getSubtrees(Collection, int) subtrees} of the collapsed folders
+   * @return the number of folders that were replaced
+   */
+  int expand(FileList source) {
+    final int count = root.expand(source.root);
+
+    if (count > 0) cachedList = null;
+
+    return count;
+  }
+
   @XStreamOmitField private volatile List<String> cachedList = null;
 
   /**
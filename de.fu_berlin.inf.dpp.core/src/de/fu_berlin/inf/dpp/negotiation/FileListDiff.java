@@ -61,14 +61,15 @@ public class FileListDiff {
     final List<String> targetPaths = target.getPaths();
 
     /*
-     * TODO find better values to avoid multiple rehashing for larger file
-     * lists
+     * Size the sets for the number of paths to avoid multiple rehashing for
+     * larger file lists. The number of folders is unknown but usually much
+     * smaller than the number of files.
      */
-    final Set<String> baseFolders = new HashSet<String>(1024);
-    final Set<String> baseFiles = new HashSet<String>(1024);
+    final Set<String> baseFolders = new HashSet<String>(capacity(basePaths.size() / 4));
+    final Set<String> baseFiles = new HashSet<String>(capacity(basePaths.size()));
 
-    final Set<String> targetFolders = new HashSet<String>(1024);
-    final Set<String> targetFiles = new HashSet<String>(1024);
+    final Set<String> targetFolders = new HashSet<String>(capacity(targetPaths.size() / 4));
+    final Set<String> targetFiles = new HashSet<String>(capacity(targetPaths.size()));
 
     for (final String path : basePaths) {
 
@@ -290,6 +291,11 @@ public class FileListDiff {
     }
   }
 
+  /** Returns the capacity of a hash set that can hold the given number of elements. */
+  private static int capacity(int elements) {
+    return Math.max(elements * 4 / 3 + 1, 16);
+  }
+
   private static int max(int a, int... others) {
     int max = a;
 
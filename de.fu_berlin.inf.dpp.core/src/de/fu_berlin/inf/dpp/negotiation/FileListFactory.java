@@ -9,11 +9,22 @@ import de.fu_berlin.inf.dpp.filesystem.IResource;
 import de.fu_berlin.inf.dpp.monitoring.IProgressMonitor;
 import de.fu_berlin.inf.dpp.monitoring.NullProgressMonitor;
 import de.fu_berlin.inf.dpp.negotiation.FileList.MetaData;
+import de.fu_berlin.inf.dpp.util.NamedThreadFactory;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.log4j.Logger;
 
 /**
@@ -29,12 +40,23 @@ public class FileListFactory {
 
   private static final Logger LOG = Logger.getLogger(FileListFactory.class);
 
+  /** Maximum number of threads used to calculate checksums */
+  private static final int MAX_THREADS = Math.min(Runtime.getRuntime().availableProcessors(), 8);
+
+  /** Minimum number of files each checksum calculation thread has to process */
+  private static final int MIN_FILES_PER_THREAD = 64;
+
   private IChecksumCache checksumCache;
   private IProgressMonitor monitor;
+  private final int threads;
+
+  private final AtomicInteger hashedFiles = new AtomicInteger();
+  private final AtomicLong hashedBytes = new AtomicLong();
 
-  private FileListFactory(IChecksumCache checksumCache, IProgressMonitor monitor) {
+  private FileListFactory(IChecksumCache checksumCache, IProgressMonitor monitor, int threads) {
     this.checksumCache = checksumCache;
     this.monitor = monitor;
+    this.threads = threads;
 
     if (this.monitor == null) this.monitor = new NullProgressMonitor();
   }
@@ -46,7 +68,25 @@ public class FileListFactory {
       IProgressMonitor monitor)
       throws IOException {
 
-    FileListFactory fact = new FileListFactory(checksumCache, monitor);
+    return createFileList(project, resources, checksumCache, monitor, MAX_THREADS);
+  }
+
+  /**
+   * Creates a new file list for the given resources of the project. The checksums of the files are
+   * calculated by up to the given number of threads. Small file lists are always processed by the
+   * calling thread.
+   *
+   * @param threads the maximum number of threads to use, <code>1</code> to use the calling thread
+   */
+  static FileList createFileList(
+      IProject project,
+      List<IResource> resources,
+      IChecksumCache checksumCache,
+      IProgressMonitor monitor,
+      int threads)
+      throws IOException {
+
+    FileListFactory fact = new FileListFactory(checksumCache, monitor, threads);
     return fact.build(project, resources);
   }
 
@@ -95,7 +135,7 @@ public class FileListFactory {
 
     stack.addAll(resources);
 
-    List<IFile> files = new LinkedList<IFile>();
+    List<IFile> files = new ArrayList<IFile>();
 
     while (!stack.isEmpty()) {
       IResource resource = stack.pop();
@@ -124,30 +164,120 @@ public class FileListFactory {
 
     monitor.beginTask("Calculating checksums...", files.size());
 
+    final long startTime = System.nanoTime();
+
+    final int threadCount = Math.min(threads, files.size() / MIN_FILES_PER_THREAD);
+
+    if (threadCount > 1) calculateChecksumsInParallel(list, files, threadCount);
+    else calculateChecksums(list, files);
+
+    final long duration = Math.max(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), 1);
+
+    final double megabytes = hashedBytes.get() / (1024D * 1024D);
+
+    LOG.info(
+        String.format(
+            "calculated checksums of %d files (%d cached) in %d ms using %d thread(s), "
+                + "read %.1f MB at %.1f MB/s",
+            files.size(),
+            files.size() - hashedFiles.get(),
+            duration,
+            Math.max(threadCount, 1),
+            megabytes,
+            megabytes * 1000 / duration));
+  }
+
+  private void calculateChecksums(final FileList list, final List<IFile> files) {
     for (IFile file : files) {
+      monitor.subTask(file.getProject().getName() + ": " + file.getProjectRelativePath());
+
       try {
+        setChecksum(list, file, calculateChecksum(file));
+      } catch (IOException e) {
+        LOG.error(e);
+      }
+
+      monitor.worked(1);
+    }
+  }
+
+  /**
+   * Calculates the checksums of the files using the given number of threads. The file list and the
+   * progress monitor are only accessed by the calling thread.
+   */
+  private void calculateChecksumsInParallel(
+      final FileList list, final List<IFile> files, final int threadCount)
+      throws InterruptedIOException {
+
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(threadCount, new NamedThreadFactory("FileList-Checksum-"));
+
+    try {
+      final List<Future<Long>> checksums = new ArrayList<Future<Long>>(files.size());
+
+      for (final IFile file : files) {
+        checksums.add(
+            executor.submit(
+                new Callable<Long>() {
+                  @Override
+                  public Long call() throws IOException {
+                    return calculateChecksum(file);
+                  }
+                }));
+      }
+
+      for (int i = 0; i < files.size(); i++) {
+        final IFile file = files.get(i);
+
         monitor.subTask(file.getProject().getName() + ": " + file.getProjectRelativePath());
 
-        MetaData data = list.getMetaData(file.getProjectRelativePath().toPortableString());
+        try {
+          setChecksum(list, file, checksums.get(i).get());
+        } catch (ExecutionException e) {
+          LOG.error(e.getCause());
+        }
 
-        Long checksum = null;
+        monitor.worked(1);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while calculating checksums");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 
-        if (checksumCache != null) checksum = checksumCache.getChecksum(file);
+  private long calculateChecksum(final IFile file) throws IOException {
+    Long checksum = null;
 
-        data.checksum = checksum == null ? FileSystem.checksum(file) : checksum;
+    if (checksumCache != null) checksum = checksumCache.getChecksum(file);
 
-        if (checksumCache != null) {
-          boolean isInvalid = checksumCache.addChecksum(file, data.checksum);
+    final long result;
 
-          if (isInvalid && checksum != null)
-            LOG.warn("calculated checksum on dirty data: " + file.getFullPath());
-        }
+    if (checksum != null) {
+      result = checksum;
+    } else {
+      result = FileSystem.checksum(file);
+      hashedFiles.incrementAndGet();
 
+      try {
+        hashedBytes.addAndGet(file.getSize());
       } catch (IOException e) {
-        LOG.error(e);
+        // only used for statistics
       }
+    }
 
-      monitor.worked(1);
+    if (checksumCache != null) {
+      boolean isInvalid = checksumCache.addChecksum(file, result);
+
+      if (isInvalid && checksum != null)
+        LOG.warn("calculated checksum on dirty data: " + file.getFullPath());
     }
+
+    return result;
+  }
+
+  private static void setChecksum(final FileList list, final IFile file, final long checksum) {
+    list.getMetaData(file.getProjectRelativePath().toPortableString()).checksum = checksum;
   }
 }
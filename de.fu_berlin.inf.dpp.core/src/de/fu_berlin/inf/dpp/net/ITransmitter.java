@@ -21,6 +21,8 @@ package de.fu_berlin.inf.dpp.net;
 import de.fu_berlin.inf.dpp.annotations.Component;
 import de.fu_berlin.inf.dpp.net.xmpp.JID;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
 import org.jivesoftware.smack.packet.Packet;
 import org.jivesoftware.smack.packet.PacketExtension;
 
@@ -34,6 +36,13 @@ import org.jivesoftware.smack.packet.PacketExtension;
 @Component(module = "net")
 public interface ITransmitter {
 
+  /**
+   * Name of the {@linkplain Packet#getProperty(String) packet property} that contains the recipient
+   * specific sequence number of a packet sent with {@link #send(String, Map, PacketExtension)}. The
+   * value is an {@link Integer}.
+   */
+  public static final String SEQUENCE_NUMBER_PROPERTY = "de.fu_berlin.inf.dpp.net.SEQUENCE_NUMBER";
+
   /**
    * @JTourBusStop 4, Architecture Overview, Network Layer - Transmitter:
    *
@@ -73,4 +82,48 @@ public interface ITransmitter {
    */
   public void send(String connectionID, JID recipient, PacketExtension extension)
       throws IOException;
+
+  /**
+   * Sends the given {@link PacketExtension} to all given recipients using direct stream
+   * connections. Unlike calling {@link #send(String, JID, PacketExtension)} for every recipient,
+   * the extension is only serialized and compressed once for all recipients that support the same
+   * encoding.
+   *
+   * @param connectionID the id of the connection or <code>null</code> to use the default connection
+   *     which is established on demand
+   * @param recipients the recipients of the extension
+   * @param extension the extension to send
+   * @return the recipients the extension could not be sent to and the corresponding errors, the map
+   *     is empty if the extension was sent to all recipients
+   */
+  public Map<JID, IOException> send(
+      String connectionID, Collection<JID> recipients, PacketExtension extension);
+
+  /**
+   * Sends the given {@link PacketExtension} to all given recipients like {@link #send(String,
+   * Collection, PacketExtension)}. The sequence number of every recipient is transmitted in the
+   * header of its packet so that the serialized extension can be shared. The receiving side can
+   * obtain it from the {@link #SEQUENCE_NUMBER_PROPERTY} of the received packet.
+   *
+   * <p>All recipients must {@linkplain #supportsSequenceNumbers(JID) support} sequence numbers.
+   *
+   * @param connectionID the id of the connection or <code>null</code> to use the default connection
+   *     which is established on demand
+   * @param sequenceNumbers the recipients of the extension and their sequence numbers
+   * @param extension the extension to send
+   * @return the recipients the extension could not be sent to and the corresponding errors, the map
+   *     is empty if the extension was sent to all recipients
+   */
+  public Map<JID, IOException> send(
+      String connectionID, Map<JID, Integer> sequenceNumbers, PacketExtension extension);
+
+  /**
+   * Returns whether the given recipient is able to receive sequence numbers sent with {@link
+   * #send(String, Map, PacketExtension)}.
+   *
+   * @param recipient the resource qualified JID of the recipient
+   * @return <code>true</code> if the recipient supports sequence numbers, <code>false</code>
+   *     otherwise
+   */
+  public boolean supportsSequenceNumbers(JID recipient);
 }
@@ -5,7 +5,6 @@ import de.fu_berlin.inf.dpp.net.stream.StreamMode;
 import de.fu_berlin.inf.dpp.net.xmpp.JID;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
@@ -13,6 +12,7 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.net.ProtocolException;
 import java.net.SocketException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import org.apache.log4j.Logger;
@@ -26,6 +26,12 @@ import org.apache.log4j.Logger;
  * <p>send() is a reentrant method for sending data. Any number of threads can call it in parallel.
  * <b>Note:</b> The maximum number of concurrent threads is 32 !
  *
+ * <p>The chunks of concurrently sent packets are interleaved on the stream and reassembled by their
+ * fragment id. Small packets, e.g activities created while typing, are sent with {@linkplain
+ * Priority#HIGH high priority}: they are written as soon as the current chunk is written, even if a
+ * large packet is currently sent. The time packets have to wait for the stream is recorded for each
+ * priority and logged when the connection is closed.
+ *
  * @author sszuecs
  * @author coezbek
  * @author srossbach
@@ -46,9 +52,40 @@ public class BinaryChannelConnection implements IByteStreamConnection {
     private static final int ELEMENT_NAME_UPDATE = 0x65;
   }
 
+  private static class Flag {
+    /*
+     * older versions only know the values 0 and 1 for the compression
+     * field, so only set additional bits if the remote side supports them
+     */
+
+    private static final int COMPRESSED = 0x01;
+    private static final int BINARY_CONTENT = 0x02;
+    private static final int SEQUENCE_NUMBER = 0x04;
+  }
+
   /** Max size of data chunks */
   private static final int CHUNKSIZE = 32 * 1024 - 1;
 
+  /**
+   * Maximum number of bytes that are allocated in advance for a fragmented packet, larger packets
+   * grow their buffer while they are received
+   */
+  private static final int MAX_PREALLOCATED_SIZE = 16 * 1024 * 1024;
+
+  /** Packets up to this size in bytes are sent with high priority */
+  private static final int HIGH_PRIORITY_THRESHOLD =
+      Math.min(
+          CHUNKSIZE,
+          Integer.getInteger("de.fu_berlin.inf.dpp.net.internal.HIGH_PRIORITY_THRESHOLD", 4096));
+
+  /** Priority classes of outgoing packets */
+  enum Priority {
+    /** Small latency sensitive packets which are written in one piece */
+    HIGH,
+    /** Large packets which are written chunk by chunk and yield to high priority packets */
+    BULK
+  }
+
   private IByteStreamConnectionListener listener;
   private ReceiverThread receiveThread;
 
@@ -62,8 +99,8 @@ public class BinaryChannelConnection implements IByteStreamConnection {
   private boolean connected;
   private boolean initialized;
 
-  private Map<Integer, ByteArrayOutputStream> pendingFragmentedPackets =
-      new HashMap<Integer, ByteArrayOutputStream>();
+  private Map<Integer, PayloadBuffer> pendingFragmentedPackets =
+      new HashMap<Integer, PayloadBuffer>();
   private Map<Integer, BinaryXMPPExtension> pendingXMPPExtensions =
       new HashMap<Integer, BinaryXMPPExtension>();
 
@@ -82,6 +119,23 @@ public class BinaryChannelConnection implements IByteStreamConnection {
   private int nextNamespaceId = 0;
   private int nextElementNameId = 0;
 
+  /*
+   * The output stream and the outgoing caches are owned by the thread that
+   * set the writing flag, see acquireOutputStream. The following fields are
+   * guarded by this connection.
+   */
+
+  private boolean writing;
+
+  private final int[] waitingWrites = new int[Priority.values().length];
+
+  private final long[] writes = new long[Priority.values().length];
+
+  /** queueing delays in nanoseconds */
+  private final long[] totalQueueingDelay = new long[Priority.values().length];
+
+  private final long[] maxQueueingDelay = new long[Priority.values().length];
+
   private class ReceiverThread extends Thread {
 
     @Override
@@ -162,7 +216,11 @@ public class BinaryChannelConnection implements IByteStreamConnection {
         LOG.error("failed to gracefully close connection " + this, e);
       } finally {
         connected = false;
+        // wake up all threads that wait for the output stream
+        notifyAll();
       }
+
+      if (LOG.isDebugEnabled()) LOG.debug(this + " queueing delays: " + getQueueingDelays());
     }
 
     assert receiveThread != null;
@@ -203,68 +261,40 @@ public class BinaryChannelConnection implements IByteStreamConnection {
     if (fragmentId < 0) throw new IOException("concurrent access threshold exceeded");
 
     try {
+      assert content.length > 0;
 
-      Integer namespaceId;
-      Integer elementNameId;
+      final int chunks = ((content.length - 1) / CHUNKSIZE) + 1;
 
-      synchronized (this) {
-        boolean sendUpdate = false;
+      int flags = 0;
 
-        final String namespace = data.getNamespace();
-        namespaceId = outNamespaceCache.get(namespace);
+      if (data.compressContent()) flags |= Flag.COMPRESSED;
 
-        if (namespaceId == null) {
-          if (nextNamespaceId > 255) throw new IOException("namespace cache limit exceeded");
+      if (data.binaryContent()) flags |= Flag.BINARY_CONTENT;
 
-          namespaceId = Integer.valueOf(nextNamespaceId++);
-          outNamespaceCache.put(namespace, namespaceId);
+      if (data.hasSequenceNumber()) flags |= Flag.SEQUENCE_NUMBER;
 
-          if (LOG.isTraceEnabled())
-            LOG.trace(
-                "updated outgoing namespace cache, id: "
-                    + namespaceId
-                    + " , namespace: "
-                    + namespace);
+      final Priority priority =
+          content.length <= HIGH_PRIORITY_THRESHOLD ? Priority.HIGH : Priority.BULK;
 
-          outputStream.write(Opcode.NAMESPACE_UPDATE);
-          outputStream.write(namespaceId);
-          outputStream.writeUTF(namespace);
-          sendUpdate = true;
-        }
+      acquireOutputStream(priority);
 
-        final String elementName = data.getElementName();
-        elementNameId = outElementNameCache.get(elementName);
+      try {
+        final int namespaceId = getNamespaceId(data.getNamespace());
+        final int elementNameId = getElementNameId(data.getElementName());
 
-        if (elementNameId == null) {
-          if (nextElementNameId > 65535) throw new IOException("element name cache limit exceeded");
+        sendTransferDescription(
+            fragmentId, chunks, namespaceId, elementNameId, flags, data.getSequenceNumber());
 
-          elementNameId = Integer.valueOf(nextElementNameId++);
-          outElementNameCache.put(elementName, elementNameId);
+        // high priority packets always consist of exactly one chunk
+        if (priority == Priority.HIGH) sendData(fragmentId, content, 0, content.length);
 
-          if (LOG.isTraceEnabled())
-            LOG.trace(
-                "updated outgoing element name cache, id: "
-                    + elementNameId
-                    + " , element name: "
-                    + elementName);
-
-          outputStream.write(Opcode.ELEMENT_NAME_UPDATE);
-          outputStream.writeShort(elementNameId);
-          outputStream.writeUTF(elementName);
-          sendUpdate = true;
-        }
-
-        if (sendUpdate) outputStream.flush();
+        outputStream.flush();
+      } finally {
+        releaseOutputStream();
       }
 
-      assert content.length > 0;
+      if (priority == Priority.BULK) splitAndSend(content, chunks, fragmentId);
 
-      int chunks = ((content.length - 1) / CHUNKSIZE) + 1;
-
-      sendTransferDescription(
-          fragmentId, chunks, namespaceId, elementNameId, data.compressContent());
-
-      splitAndSend(content, chunks, fragmentId);
     } catch (IOException e) {
       close();
       throw e;
@@ -273,6 +303,145 @@ public class BinaryChannelConnection implements IByteStreamConnection {
     }
   }
 
+  /**
+   * Returns the id of the given namespace and announces it to the remote side if it is not cached
+   * yet. Must only be called by the owner of the output stream.
+   */
+  private int getNamespaceId(final String namespace) throws IOException {
+    Integer namespaceId = outNamespaceCache.get(namespace);
+
+    if (namespaceId != null) return namespaceId;
+
+    if (nextNamespaceId > 255) throw new IOException("namespace cache limit exceeded");
+
+    namespaceId = Integer.valueOf(nextNamespaceId++);
+    outNamespaceCache.put(namespace, namespaceId);
+
+    if (LOG.isTraceEnabled())
+      LOG.trace(
+          "updated outgoing namespace cache, id: " + namespaceId + " , namespace: " + namespace);
+
+    outputStream.write(Opcode.NAMESPACE_UPDATE);
+    outputStream.write(namespaceId);
+    outputStream.writeUTF(namespace);
+
+    return namespaceId;
+  }
+
+  /**
+   * Returns the id of the given element name and announces it to the remote side if it is not
+   * cached yet. Must only be called by the owner of the output stream.
+   */
+  private int getElementNameId(final String elementName) throws IOException {
+    Integer elementNameId = outElementNameCache.get(elementName);
+
+    if (elementNameId != null) return elementNameId;
+
+    if (nextElementNameId > 65535) throw new IOException("element name cache limit exceeded");
+
+    elementNameId = Integer.valueOf(nextElementNameId++);
+    outElementNameCache.put(elementName, elementNameId);
+
+    if (LOG.isTraceEnabled())
+      LOG.trace(
+          "updated outgoing element name cache, id: "
+              + elementNameId
+              + " , element name: "
+              + elementName);
+
+    outputStream.write(Opcode.ELEMENT_NAME_UPDATE);
+    outputStream.writeShort(elementNameId);
+    outputStream.writeUTF(elementName);
+
+    return elementNameId;
+  }
+
+  /**
+   * Waits until the calling thread owns the output stream. Bulk writes have to wait until all
+   * waiting high priority writes are done.
+   *
+   * @throws IOException if the connection is closed or the thread is interrupted while waiting
+   */
+  private synchronized void acquireOutputStream(Priority priority) throws IOException {
+    final long start = System.nanoTime();
+
+    final int index = priority.ordinal();
+
+    waitingWrites[index]++;
+
+    try {
+      while (writing || (priority == Priority.BULK && waitingWrites[Priority.HIGH.ordinal()] > 0)) {
+
+        if (!connected) throw new EOFException("connection is closed");
+
+        wait();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while waiting for the output stream");
+    } finally {
+      waitingWrites[index]--;
+    }
+
+    writing = true;
+
+    final long delay = System.nanoTime() - start;
+
+    writes[index]++;
+    totalQueueingDelay[index] += delay;
+    maxQueueingDelay[index] = Math.max(maxQueueingDelay[index], delay);
+  }
+
+  private synchronized void releaseOutputStream() {
+    writing = false;
+    notifyAll();
+  }
+
+  /** Returns the number of writes of the given priority that currently wait for the stream. */
+  synchronized int getWaitingWrites(Priority priority) {
+    return waitingWrites[priority.ordinal()];
+  }
+
+  /**
+   * Returns the number of writes of the given priority so far. A high priority packet is written at
+   * once, a bulk packet is written chunk by chunk.
+   */
+  synchronized long getWrites(Priority priority) {
+    return writes[priority.ordinal()];
+  }
+
+  /** Returns the sum of the queueing delays in nanoseconds of all writes of the given priority. */
+  synchronized long getTotalQueueingDelay(Priority priority) {
+    return totalQueueingDelay[priority.ordinal()];
+  }
+
+  /** Returns the maximum queueing delay in nanoseconds of the writes of the given priority. */
+  synchronized long getMaxQueueingDelay(Priority priority) {
+    return maxQueueingDelay[priority.ordinal()];
+  }
+
+  private synchronized String getQueueingDelays() {
+    final StringBuilder builder = new StringBuilder();
+
+    for (final Priority priority : Priority.values()) {
+      final int index = priority.ordinal();
+
+      if (builder.length() > 0) builder.append(", ");
+
+      builder
+          .append(priority)
+          .append(": writes=")
+          .append(writes[index])
+          .append(", avg=")
+          .append(writes[index] == 0 ? 0 : totalQueueingDelay[index] / writes[index] / 1000)
+          .append(" us, max=")
+          .append(maxQueueingDelay[index] / 1000)
+          .append(" us");
+    }
+
+    return builder.toString();
+  }
+
   /**
    * Reads the next XMPP extension.
    *
@@ -310,7 +479,7 @@ public class BinaryChannelConnection implements IByteStreamConnection {
 
           final int namespaceId = inputStream.readUnsignedByte();
           final int elementNameId = inputStream.readUnsignedShort();
-          final int compressed = inputStream.readUnsignedByte();
+          final int flags = inputStream.readUnsignedByte();
 
           final String namespace = inNamespaceCache.get(Integer.valueOf(namespaceId));
 
@@ -322,7 +491,11 @@ public class BinaryChannelConnection implements IByteStreamConnection {
           transferDescription.setRecipient(localAddress);
           transferDescription.setNamespace(namespace);
           transferDescription.setElementName(elementName);
-          transferDescription.setCompressContent(compressed == 1);
+          transferDescription.setCompressContent((flags & Flag.COMPRESSED) != 0);
+          transferDescription.setBinaryContent((flags & Flag.BINARY_CONTENT) != 0);
+
+          if ((flags & Flag.SEQUENCE_NUMBER) != 0)
+            transferDescription.setSequenceNumber(inputStream.readInt());
 
           BinaryXMPPExtension oldTransferObject =
               pendingXMPPExtensions.put(
@@ -330,6 +503,8 @@ public class BinaryChannelConnection implements IByteStreamConnection {
 
           if (oldTransferObject != null)
             throw new IOException("replaced a XMPP extension that is still transmitted");
+
+          pendingFragmentedPackets.put(fragmentId, new PayloadBuffer(chunks));
           break;
 
         case Opcode.DATA:
@@ -354,18 +529,12 @@ public class BinaryChannelConnection implements IByteStreamConnection {
                     + " <= "
                     + CHUNKSIZE);
 
-          byte[] payload = new byte[payloadLength];
-          inputStream.readFully(payload);
+          final PayloadBuffer buffer = pendingFragmentedPackets.get(fragmentId);
 
-          ByteArrayOutputStream out = pendingFragmentedPackets.get(fragmentId);
+          if (buffer == null)
+            throw new ProtocolException("received data for unknown id: " + fragmentId);
 
-          if (out == null) {
-            out = new ByteArrayOutputStream(payloadLength * 2);
-            pendingFragmentedPackets.put(fragmentId, out);
-          }
-
-          out.write(payload);
-          out.flush();
+          buffer.read(inputStream, payloadLength);
 
           if (!pendingXMPPExtensions.get(fragmentId).isLastChunk()) break;
 
@@ -374,10 +543,7 @@ public class BinaryChannelConnection implements IByteStreamConnection {
           BinaryXMPPExtension fullyReceivedTransferObject =
               pendingXMPPExtensions.remove(fragmentId);
 
-          payload = out.toByteArray();
-          out = null; // help GC
-
-          fullyReceivedTransferObject.setPayload(payload.length, payload);
+          fullyReceivedTransferObject.setPayload(buffer.length, buffer.data, buffer.length);
 
           return fullyReceivedTransferObject;
 
@@ -424,8 +590,7 @@ public class BinaryChannelConnection implements IByteStreamConnection {
     throw new InterruptedIOException("interrupted while reading stream data");
   }
 
-  private synchronized void sendData(int fragmentId, byte[] data, int offset, int length)
-      throws IOException {
+  private void sendData(int fragmentId, byte[] data, int offset, int length) throws IOException {
 
     if (LOG.isTraceEnabled()) {
       LOG.trace("sending data: id=" + fragmentId + ", len=" + length + " bytes");
@@ -435,11 +600,10 @@ public class BinaryChannelConnection implements IByteStreamConnection {
     outputStream.writeShort(fragmentId);
     outputStream.writeInt(length);
     outputStream.write(data, offset, length);
-    outputStream.flush();
   }
 
-  private synchronized void sendTransferDescription(
-      int fragmentId, int chunks, int namespaceId, int elementNameId, boolean compress)
+  private void sendTransferDescription(
+      int fragmentId, int chunks, int namespaceId, int elementNameId, int flags, int sequenceNumber)
       throws IOException {
 
     if (LOG.isTraceEnabled()) {
@@ -451,11 +615,15 @@ public class BinaryChannelConnection implements IByteStreamConnection {
     outputStream.writeInt(chunks);
     outputStream.write(namespaceId);
     outputStream.writeShort(elementNameId);
-    outputStream.write(compress ? 1 : 0);
-    outputStream.flush();
+    outputStream.write(flags);
+
+    if ((flags & Flag.SEQUENCE_NUMBER) != 0) outputStream.writeInt(sequenceNumber);
   }
 
-  /** Splits the given data into chunks of CHUNKSIZE to send the BinaryPackets. */
+  /**
+   * Splits the given data into chunks of CHUNKSIZE to send the BinaryPackets. The output stream is
+   * released after every chunk so that high priority packets can be sent in between.
+   */
   private void splitAndSend(byte[] data, int chunks, int fragmentId) throws IOException {
 
     int offset = 0;
@@ -465,7 +633,14 @@ public class BinaryChannelConnection implements IByteStreamConnection {
 
       length = Math.min(data.length - offset, CHUNKSIZE);
 
-      sendData(fragmentId, data, offset, length);
+      acquireOutputStream(Priority.BULK);
+
+      try {
+        sendData(fragmentId, data, offset, length);
+        outputStream.flush();
+      } finally {
+        releaseOutputStream();
+      }
 
       offset += length;
     }
@@ -476,6 +651,41 @@ public class BinaryChannelConnection implements IByteStreamConnection {
     return "[mode=" + getMode() + ", id=" + connectionID + "]" + " " + remoteAddress;
   }
 
+  /**
+   * Buffer the chunks of a packet are read into. As all chunks but the last one are full, the
+   * buffer is allocated once with the maximum size of the packet and the chunks are read directly
+   * into their final position.
+   */
+  private static final class PayloadBuffer {
+
+    private byte[] data = new byte[0];
+    private int length;
+    private int remainingChunks;
+
+    private PayloadBuffer(int chunks) {
+      remainingChunks = chunks;
+    }
+
+    private void read(DataInputStream in, int chunkLength) throws IOException {
+      if (data.length - length < chunkLength) {
+        // the current chunk is followed by chunks of at most CHUNKSIZE bytes
+        final long maxSize =
+            length + chunkLength + (long) Math.max(remainingChunks - 1, 0) * CHUNKSIZE;
+
+        final long capacity = Math.min(maxSize, Math.max(MAX_PREALLOCATED_SIZE, data.length * 2L));
+
+        if (capacity > Integer.MAX_VALUE - 8)
+          throw new ProtocolException("packet is too large: " + capacity + " bytes");
+
+        data = Arrays.copyOf(data, (int) Math.max(capacity, length + chunkLength));
+      }
+
+      in.readFully(data, length, chunkLength);
+      length += chunkLength;
+      remainingChunks--;
+    }
+  }
+
   static class IDPool {
 
     private final int MAX_ID = 32;
@@ -1,6 +1,10 @@
 package de.fu_berlin.inf.dpp.net.internal;
 
 import de.fu_berlin.inf.dpp.net.stream.StreamMode;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public final class BinaryXMPPExtension {
 
@@ -10,6 +14,7 @@ public final class BinaryXMPPExtension {
   private long transferredSize;
   private long uncompressedSize;
   private byte[] payload;
+  private int payloadLength;
   private long transferDuration;
   private StreamMode transferMode;
 
@@ -26,11 +31,36 @@ public final class BinaryXMPPExtension {
   /**
    * Returns the XMPP packet extension in binary form. <b>Note:</b>The returned byte array <b>must
    * not</b> be modified directly.
+   *
+   * <p>The payload may have been received into a larger buffer, in that case it is copied once.
+   * Prefer {@link #getPayloadInputStream} or {@link #getPayloadBuffer} which never copy it.
    */
   byte[] getPayload() {
+    if (payload != null && payload.length != payloadLength) {
+      payload = Arrays.copyOf(payload, payloadLength);
+    }
+
     return payload;
   }
 
+  /** Returns the length of the XMPP packet extension in binary form. */
+  int getPayloadLength() {
+    return payloadLength;
+  }
+
+  /** Returns a stream that reads the XMPP packet extension in binary form. */
+  InputStream getPayloadInputStream() {
+    return new ByteArrayInputStream(payload, 0, payloadLength);
+  }
+
+  /**
+   * Returns a buffer that wraps the XMPP packet extension in binary form. <b>Note:</b>The content
+   * of the returned buffer <b>must not</b> be modified.
+   */
+  ByteBuffer getPayloadBuffer() {
+    return ByteBuffer.wrap(payload, 0, payloadLength);
+  }
+
   /** Returns the transfer description of this transfer object. */
   // public for STF
   public TransferDescription getTransferDescription() {
@@ -65,13 +95,30 @@ public final class BinaryXMPPExtension {
    * @throws IllegalStateException if there are still missing chunks, see also {@link #isLastChunk}
    */
   void setPayload(long originalSize, byte[] data) {
+    setPayload(originalSize, data, data.length);
+  }
+
+  /**
+   * Sets the data for this XMPP packet extension.
+   *
+   * @param originalSize the original size of the received data
+   * @param data the buffer that contains the binary form of the XMPP packet extension, starting at
+   *     offset 0
+   * @param length the length of the binary form in the buffer
+   * @throws IllegalStateException if there are still missing chunks, see also {@link #isLastChunk}
+   */
+  void setPayload(long originalSize, byte[] data, int length) {
 
     if (chunkCount > 0)
       throw new IllegalStateException("there are chunks missing: " + chunkCount + " > 0");
 
+    if (length < 0 || length > data.length)
+      throw new IllegalArgumentException("invalid payload length: " + length);
+
     payload = data;
+    payloadLength = length;
     transferredSize = originalSize;
-    uncompressedSize = data.length;
+    uncompressedSize = length;
   }
 
   /**
@@ -3,6 +3,7 @@ package de.fu_berlin.inf.dpp.net.internal;
 import de.fu_berlin.inf.dpp.annotations.Component;
 import de.fu_berlin.inf.dpp.context.IContextKeyBindings.IBBStreamService;
 import de.fu_berlin.inf.dpp.context.IContextKeyBindings.Socks5StreamService;
+import de.fu_berlin.inf.dpp.context.IContextKeyBindings.TCPStreamService;
 import de.fu_berlin.inf.dpp.net.ConnectionState;
 import de.fu_berlin.inf.dpp.net.IConnectionManager;
 import de.fu_berlin.inf.dpp.net.IPacketInterceptor;
@@ -13,21 +14,20 @@ import de.fu_berlin.inf.dpp.net.stream.StreamMode;
 import de.fu_berlin.inf.dpp.net.xmpp.IConnectionListener;
 import de.fu_berlin.inf.dpp.net.xmpp.JID;
 import de.fu_berlin.inf.dpp.net.xmpp.XMPPConnectionService;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.zip.DataFormatException;
-import java.util.zip.Deflater;
-import java.util.zip.Inflater;
 import org.apache.log4j.Logger;
 import org.jivesoftware.smack.Connection;
 import org.picocontainer.annotations.Nullable;
@@ -45,8 +45,6 @@ public class DataTransferManager implements IConnectionListener, IConnectionMana
 
   private static final Logger LOG = Logger.getLogger(DataTransferManager.class);
 
-  private static final int CHUNKSIZE = 16 * 1024;
-
   private static final String DEFAULT_CONNECTION_ID = "default";
 
   private static final String IN = "in";
@@ -67,6 +65,8 @@ public class DataTransferManager implements IConnectionListener, IConnectionMana
 
   private final IReceiver receiver;
 
+  private final IStreamService directService;
+
   private final IStreamService mainService;
 
   private final IStreamService fallbackService;
@@ -75,6 +75,8 @@ public class DataTransferManager implements IConnectionListener, IConnectionMana
 
   private final ConnectionPool connectionPool = new ConnectionPool();
 
+  private final PayloadCompressor compressor = new PayloadCompressor();
+
   private final Set<String> currentOutgoingConnectionEstablishments = new HashSet<String>();
 
   private final List<IStreamService> streamServices = new CopyOnWriteArrayList<IStreamService>();
@@ -105,11 +107,11 @@ public class DataTransferManager implements IConnectionListener, IConnectionMana
                     + "]");
 
           if (extension.getTransferDescription().compressContent()) {
-            byte[] payload = extension.getPayload();
-            long compressedPayloadLength = payload.length;
+            final long compressedPayloadLength = extension.getPayloadLength();
+            final byte[] payload;
 
             try {
-              payload = inflate(payload);
+              payload = compressor.decompress(extension.getPayloadBuffer());
             } catch (IOException e) {
               LOG.error("could not decompress extension payload", e);
               return;
@@ -191,8 +193,18 @@ public class DataTransferManager implements IConnectionListener, IConnectionMana
       IReceiver receiver,
       @Nullable @Socks5StreamService IStreamService mainService,
       @Nullable @IBBStreamService IStreamService fallbackService) {
+    this(connectionService, receiver, null, mainService, fallbackService);
+  }
+
+  public DataTransferManager(
+      XMPPConnectionService connectionService,
+      IReceiver receiver,
+      @Nullable @TCPStreamService IStreamService directService,
+      @Nullable @Socks5StreamService IStreamService mainService,
+      @Nullable @IBBStreamService IStreamService fallbackService) {
 
     this.receiver = receiver;
+    this.directService = directService;
     this.fallbackService = fallbackService;
     this.mainService = mainService;
     this.setStreamServices();
@@ -270,6 +282,82 @@ public class DataTransferManager implements IConnectionListener, IConnectionMana
         payload);
   }
 
+  /**
+   * Sends the given data to the recipients of the given transfer descriptions. The data is only
+   * compressed once, so all descriptions must describe the same data and may only differ in their
+   * recipient and sequence number.
+   *
+   * @param connectionID the id of the connections to use or <code>null</code> to use the default
+   *     connections which are established on demand
+   * @param descriptions the transfer descriptions, one per recipient
+   * @param data the data to send
+   * @return the recipients the data could not be sent to and the corresponding errors
+   */
+  public Map<JID, IOException> sendData(
+      final String connectionID, final List<TransferDescription> descriptions, final byte[] data) {
+
+    final Map<JID, IOException> errors = new HashMap<JID, IOException>();
+
+    final JID connectionJID = currentLocalJID;
+
+    if (connectionJID == null) {
+      for (final TransferDescription description : descriptions)
+        errors.put(description.getRecipient(), new IOException("not connected to a XMPP server"));
+
+      return errors;
+    }
+
+    final String interceptedConnectionID =
+        connectionID == null ? DEFAULT_CONNECTION_ID : connectionID;
+
+    final List<TransferDescription> descriptionsToSend =
+        new ArrayList<TransferDescription>(descriptions.size());
+
+    for (final TransferDescription description : descriptions) {
+      description.setSender(connectionJID);
+
+      if (!isDropped(interceptedConnectionID, description, data))
+        descriptionsToSend.add(description);
+    }
+
+    if (descriptionsToSend.isEmpty()) return errors;
+
+    final byte[] payload = compress(descriptionsToSend, data);
+
+    for (final TransferDescription description : descriptionsToSend) {
+      final JID recipient = description.getRecipient();
+
+      try {
+        final IByteStreamConnection connection;
+
+        if (connectionID == null) {
+          connection = connectInternal(DEFAULT_CONNECTION_ID, recipient);
+        } else {
+          connection = getCurrentConnection(connectionID, recipient);
+
+          if (connection == null)
+            throw new IOException(
+                "not connected to " + recipient + " [connection identifier=" + connectionID + "]");
+        }
+
+        if (LOG.isTraceEnabled())
+          LOG.trace(
+              "send "
+                  + description
+                  + ", data len="
+                  + payload.length
+                  + " byte(s), connection="
+                  + connection);
+
+        transmit(connection, description, payload, data.length);
+      } catch (IOException e) {
+        errors.put(recipient, e);
+      }
+    }
+
+    return errors;
+  }
+
   private void sendInternal(
       final String connectionID,
       final IByteStreamConnection connection,
@@ -277,16 +365,54 @@ public class DataTransferManager implements IConnectionListener, IConnectionMana
       byte[] payload)
       throws IOException {
 
+    if (isDropped(connectionID, description, payload)) return;
+
+    final long sizeUncompressed = payload.length;
+
+    payload = compress(Collections.singletonList(description), payload);
+
+    transmit(connection, description, payload, sizeUncompressed);
+  }
+
+  /** Returns whether one of the packet interceptors dropped the given packet. */
+  private boolean isDropped(
+      final String connectionID, final TransferDescription description, final byte[] payload) {
+
     boolean sendPacket = true;
 
     for (IPacketInterceptor packetInterceptor : packetInterceptors)
       sendPacket &= packetInterceptor.sendPacket(connectionID, description, payload);
 
-    if (!sendPacket) return;
+    return !sendPacket;
+  }
+
+  /**
+   * Compresses the given payload if the descriptions request it. If compression does not pay off,
+   * the payload is returned as is and the descriptions are updated accordingly.
+   */
+  private byte[] compress(final List<TransferDescription> descriptions, final byte[] payload) {
 
-    long sizeUncompressed = payload.length;
+    final TransferDescription description = descriptions.get(0);
 
-    if (description.compressContent()) payload = deflate(payload);
+    if (!description.compressContent()) return payload;
+
+    final byte[] compressed =
+        compressor.compress(description.getElementName(), payload, !description.binaryContent());
+
+    if (compressed != null) return compressed;
+
+    for (final TransferDescription uncompressed : descriptions)
+      uncompressed.setCompressContent(false);
+
+    return payload;
+  }
+
+  private void transmit(
+      final IByteStreamConnection connection,
+      final TransferDescription description,
+      final byte[] payload,
+      final long sizeUncompressed)
+      throws IOException {
 
     final long transferStartTime = System.currentTimeMillis();
 
@@ -467,14 +593,18 @@ public class DataTransferManager implements IConnectionListener, IConnectionMana
   private void setStreamServices() {
     boolean useIBB;
     boolean useSocks5;
+    boolean useTCP;
 
     synchronized (this) {
       useIBB = (serviceMask & IBB_SERVICE) != 0;
       useSocks5 = (serviceMask & SOCKS5_SERVICE) != 0;
+      useTCP = (serviceMask & TCP_SERVICE) != 0;
     }
 
     streamServices.clear();
 
+    if (useTCP && directService != null) streamServices.add(directService);
+
     if (useSocks5 && mainService != null) streamServices.add(mainService);
 
     if (useIBB && fallbackService != null) streamServices.add(fallbackService);
@@ -517,6 +647,8 @@ public class DataTransferManager implements IConnectionListener, IConnectionMana
 
     connectionPool.close();
     xmppConnection = null;
+
+    compressor.logStatistics();
   }
 
   @Override
@@ -603,43 +735,4 @@ public class DataTransferManager implements IConnectionListener, IConnectionMana
       }
     }
   }
-
-  private static byte[] deflate(byte[] input) {
-
-    Deflater compressor = new Deflater(Deflater.DEFLATED);
-    compressor.setInput(input);
-    compressor.finish();
-
-    ByteArrayOutputStream bos = new ByteArrayOutputStream(input.length);
-
-    byte[] buf = new byte[CHUNKSIZE];
-
-    while (!compressor.finished()) {
-      int count = compressor.deflate(buf);
-      bos.write(buf, 0, count);
-    }
-
-    return bos.toByteArray();
-  }
-
-  private static byte[] inflate(byte[] input) throws IOException {
-
-    ByteArrayOutputStream bos;
-    Inflater decompressor = new Inflater();
-
-    decompressor.setInput(input, 0, input.length);
-    bos = new ByteArrayOutputStream(input.length);
-
-    byte[] buf = new byte[CHUNKSIZE];
-
-    try {
-      while (!decompressor.finished()) {
-        int count = decompressor.inflate(buf);
-        bos.write(buf, 0, count);
-      }
-      return bos.toByteArray();
-    } catch (DataFormatException e) {
-      throw new IOException("failed to inflate data", e);
-    }
-  }
 }
@@ -0,0 +1,383 @@
+package de.fu_berlin.inf.dpp.net.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.apache.log4j.Logger;
+
+/**
+ * Compresses and decompresses the payloads that are sent over {@linkplain IByteStreamConnection
+ * byte stream connections}. The {@link Deflater} and {@link Inflater} instances and their buffers
+ * are pooled, as allocating them (and their native memory) for every packet is expensive.
+ *
+ * <p>Whether a payload is worth compressing is decided per element name. The achieved compression
+ * ratio is tracked and payloads of elements that do not compress well, e.g already compressed file
+ * contents, are sent uncompressed. Such elements are still sampled from time to time to notice
+ * changes in their content.
+ *
+ * <p>Small XML payloads are compressed with a preset dictionary that contains the markup of the
+ * activities. The dictionary is part of the compressed data format so payloads compressed without
+ * it can still be decompressed.
+ *
+ * <p>This class is thread safe.
+ */
+final class PayloadCompressor {
+
+  private static final Logger LOG = Logger.getLogger(PayloadCompressor.class);
+
+  /**
+   * Minimum size reduction in percent the compression of an element must achieve on average to be
+   * worth the CPU time.
+   */
+  private static final int MIN_SAVING_PERCENT =
+      Integer.getInteger("de.fu_berlin.inf.dpp.net.compression.MIN_SAVING_PERCENT", 10);
+
+  /** Every n-th payload of an element that is not worth compressing is compressed nevertheless. */
+  private static final int SAMPLE_INTERVAL =
+      Integer.getInteger("de.fu_berlin.inf.dpp.net.compression.SAMPLE_INTERVAL", 32);
+
+  /** XML payloads up to this size in bytes are compressed with the preset dictionary. */
+  private static final int DICTIONARY_THRESHOLD = 4 * 1024;
+
+  private static final int MAX_POOLED_CONTEXTS = Runtime.getRuntime().availableProcessors();
+
+  private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+  /** Buffers that grew beyond this size are not kept in the pool. */
+  private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+  /**
+   * The preset dictionary for small XML payloads. It contains the markup of the common activities,
+   * with the most frequent strings at the end as they can be referenced with shorter distances.
+   */
+  static final byte[] DICTIONARY =
+      ("<checksumActivity source=\"\"><p i=\"\" p=\"\"/></checksumActivity>"
+              + "<editorActivity source=\"\" type=\"ACTIVATED\"><p i=\"\" p=\"\"/></editorActivity>"
+              + "<o class=\"deleteOp\" position=\"\" origin=\"\"><text></text></o>"
+              + "<o class=\"splitOp\"><first class=\"insertOp\"/><second class=\"deleteOp\"/></o>"
+              + "<o class=\"noOp\"/><o class=\"timestamp\"/>"
+              + "<viewportActivity source=\"\" o=\"\" l=\"\"><p reference=\"\"/></viewportActivity>"
+              + "<textSelectionActivity source=\"\" o=\"\" l=\"\"><p i=\"\" p=\"\"/>"
+              + "</textSelectionActivity>"
+              + "<ados xmlns=\"de.fu_berlin.inf.dpp\"><payload class=\"ADOS\" v=\"\" sid=\"\" seq=\"\">"
+              + "<jupiterActivity source=\"\"><p reference=\"../../jupiterActivity/p\"/>"
+              + "<t class=\"vectorTime\" local=\"\" remote=\"\"/>"
+              + "<o class=\"insertOp\" position=\"\" origin=\"\"><text></text></o>"
+              + "</jupiterActivity></payload></ados>")
+          .getBytes(Charset.forName("UTF-8"));
+
+  private static final int DICTIONARY_ID;
+
+  static {
+    final Adler32 adler = new Adler32();
+    adler.update(DICTIONARY);
+    DICTIONARY_ID = (int) adler.getValue();
+  }
+
+  /** Compression statistics of the payloads of one element. */
+  static final class Statistics {
+
+    // weight of a new sample in the moving average of the compression ratio
+    private static final double SAMPLE_WEIGHT = 0.125;
+
+    private long packets;
+    private long compressedPackets;
+    private long uncompressedBytes;
+    private long compressedBytes;
+    private long compressionTime;
+
+    private double ratio = Double.NaN;
+
+    private long skipped;
+
+    private synchronized boolean isWorthCompressing() {
+      packets++;
+
+      if (Double.isNaN(ratio) || ratio * 100 <= 100 - MIN_SAVING_PERCENT) return true;
+
+      return ++skipped % SAMPLE_INTERVAL == 0;
+    }
+
+    private synchronized void update(long uncompressedSize, long compressedSize, long nanos) {
+      compressedPackets++;
+      uncompressedBytes += uncompressedSize;
+      compressedBytes += compressedSize;
+      compressionTime += nanos;
+
+      final double sample = uncompressedSize == 0 ? 1D : (double) compressedSize / uncompressedSize;
+
+      ratio = Double.isNaN(ratio) ? sample : ratio + (sample - ratio) * SAMPLE_WEIGHT;
+    }
+
+    /** Returns the number of payloads that were offered for compression. */
+    synchronized long getPackets() {
+      return packets;
+    }
+
+    /** Returns the number of payloads that were compressed. */
+    synchronized long getCompressedPackets() {
+      return compressedPackets;
+    }
+
+    /** Returns the size of the compressed payloads in bytes before the compression. */
+    synchronized long getUncompressedBytes() {
+      return uncompressedBytes;
+    }
+
+    /**
+     * Returns the size of the compressed payloads in bytes after the compression. Payloads that did
+     * not shrink are accounted with their uncompressed size.
+     */
+    synchronized long getCompressedBytes() {
+      return compressedBytes;
+    }
+
+    /** Returns the time spent compressing the payloads in nanoseconds. */
+    synchronized long getCompressionTime() {
+      return compressionTime;
+    }
+
+    /**
+     * Returns the moving average of the compressed to uncompressed size ratio or {@link Double#NaN}
+     * if no payload was compressed yet.
+     */
+    synchronized double getRatio() {
+      return ratio;
+    }
+
+    @Override
+    public synchronized String toString() {
+      return "packets="
+          + packets
+          + ", compressed="
+          + compressedPackets
+          + ", bytes="
+          + uncompressedBytes
+          + " -> "
+          + compressedBytes
+          + ", ratio="
+          + String.format("%.2f", ratio)
+          + ", time="
+          + TimeUnit.NANOSECONDS.toMillis(compressionTime)
+          + " ms";
+    }
+  }
+
+  private static final class DeflateContext {
+    private final Deflater deflater = new Deflater(Deflater.DEFLATED);
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+  }
+
+  private static final class InflateContext {
+    private final Inflater inflater = new Inflater();
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+  }
+
+  private final BlockingQueue<DeflateContext> deflateContexts =
+      new ArrayBlockingQueue<DeflateContext>(MAX_POOLED_CONTEXTS);
+
+  private final BlockingQueue<InflateContext> inflateContexts =
+      new ArrayBlockingQueue<InflateContext>(MAX_POOLED_CONTEXTS);
+
+  private final ConcurrentMap<String, Statistics> statistics =
+      new ConcurrentHashMap<String, Statistics>();
+
+  /**
+   * Compresses the given payload if this is worth the effort.
+   *
+   * @param elementName the element name of the packet extension the payload belongs to
+   * @param payload the payload to compress
+   * @param xml <code>true</code> if the payload contains XML
+   * @return the compressed payload or <code>null</code> if the payload should be sent uncompressed
+   */
+  byte[] compress(String elementName, byte[] payload, boolean xml) {
+    final Statistics elementStatistics = getStatistics(elementName);
+
+    if (!elementStatistics.isWorthCompressing()) return null;
+
+    final long start = System.nanoTime();
+
+    DeflateContext context = deflateContexts.poll();
+
+    if (context == null) context = new DeflateContext();
+
+    final byte[] compressed;
+
+    try {
+      compressed = deflate(context, payload, xml && payload.length <= DICTIONARY_THRESHOLD);
+    } finally {
+      release(context);
+    }
+
+    elementStatistics.update(
+        payload.length,
+        compressed == null ? payload.length : compressed.length,
+        System.nanoTime() - start);
+
+    return compressed;
+  }
+
+  /**
+   * Decompresses a payload that was compressed by {@link #compress}.
+   *
+   * @param payload the compressed payload
+   * @return the decompressed payload
+   * @throws IOException if the payload is corrupted
+   */
+  byte[] decompress(byte[] payload) throws IOException {
+    return decompress(ByteBuffer.wrap(payload));
+  }
+
+  /**
+   * Decompresses a payload that was compressed by {@link #compress}. The remaining bytes of the
+   * buffer are decompressed without copying them if the buffer is backed by an array.
+   *
+   * @param payload the compressed payload
+   * @return the decompressed payload
+   * @throws IOException if the payload is corrupted
+   */
+  byte[] decompress(ByteBuffer payload) throws IOException {
+    final byte[] input;
+    final int offset;
+    final int length = payload.remaining();
+
+    if (payload.hasArray()) {
+      input = payload.array();
+      offset = payload.arrayOffset() + payload.position();
+    } else {
+      input = new byte[length];
+      offset = 0;
+      payload.duplicate().get(input);
+    }
+
+    InflateContext context = inflateContexts.poll();
+
+    if (context == null) context = new InflateContext();
+
+    try {
+      return inflate(context, input, offset, length);
+    } finally {
+      release(context);
+    }
+  }
+
+  /**
+   * Returns the compression statistics of the given element.
+   *
+   * @param elementName the element name of a packet extension
+   */
+  Statistics getStatistics(String elementName) {
+    if (elementName == null) elementName = "";
+
+    Statistics elementStatistics = statistics.get(elementName);
+
+    if (elementStatistics != null) return elementStatistics;
+
+    elementStatistics = new Statistics();
+
+    final Statistics current = statistics.putIfAbsent(elementName, elementStatistics);
+
+    return current != null ? current : elementStatistics;
+  }
+
+  /** Logs the compression statistics of all elements. */
+  void logStatistics() {
+    if (!LOG.isDebugEnabled()) return;
+
+    for (Map.Entry<String, Statistics> entry :
+        new TreeMap<String, Statistics>(statistics).entrySet())
+      LOG.debug("compression statistics for '" + entry.getKey() + "': " + entry.getValue());
+  }
+
+  private void release(DeflateContext context) {
+    if (context.buffer.length > MAX_POOLED_BUFFER_SIZE)
+      context.buffer = new byte[INITIAL_BUFFER_SIZE];
+
+    if (!deflateContexts.offer(context)) context.deflater.end();
+  }
+
+  private void release(InflateContext context) {
+    if (context.buffer.length > MAX_POOLED_BUFFER_SIZE)
+      context.buffer = new byte[INITIAL_BUFFER_SIZE];
+
+    if (!inflateContexts.offer(context)) context.inflater.end();
+  }
+
+  private static byte[] deflate(DeflateContext context, byte[] input, boolean useDictionary) {
+    final Deflater deflater = context.deflater;
+
+    deflater.reset();
+
+    if (useDictionary) deflater.setDictionary(DICTIONARY);
+
+    deflater.setInput(input);
+    deflater.finish();
+
+    // the output must be smaller than the input, otherwise sending the input is cheaper
+    if (context.buffer.length < input.length) context.buffer = new byte[input.length];
+
+    final byte[] buffer = context.buffer;
+
+    int length = 0;
+
+    while (!deflater.finished()) {
+      if (length == input.length) return null;
+
+      length += deflater.deflate(buffer, length, input.length - length);
+    }
+
+    return Arrays.copyOf(buffer, length);
+  }
+
+  private static byte[] inflate(InflateContext context, byte[] input, int offset, int length)
+      throws IOException {
+    final Inflater inflater = context.inflater;
+
+    inflater.reset();
+    inflater.setInput(input, offset, length);
+
+    byte[] buffer = context.buffer;
+
+    int size = 0;
+
+    try {
+      while (!inflater.finished()) {
+        if (size == buffer.length) {
+          buffer = Arrays.copyOf(buffer, buffer.length * 2);
+          context.buffer = buffer;
+        }
+
+        final int count = inflater.inflate(buffer, size, buffer.length - size);
+
+        size += count;
+
+        if (count > 0) continue;
+
+        if (inflater.needsDictionary()) {
+          if (inflater.getAdler() != DICTIONARY_ID)
+            throw new IOException("data was compressed with an unknown dictionary");
+
+          inflater.setDictionary(DICTIONARY);
+        } else if (inflater.needsInput()) {
+          throw new IOException("compressed data is truncated");
+        }
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("failed to inflate data", e);
+    }
+
+    return Arrays.copyOf(buffer, size);
+  }
+}
@@ -25,6 +25,17 @@ public class TransferDescription {
   /** Field used to indicate that the payload may be compressed. */
   private boolean compress;
 
+  /** Field used to indicate that the payload was encoded by a binary codec instead of XML. */
+  private boolean binaryContent;
+
+  /**
+   * Field used to indicate that a recipient specific sequence number is transmitted along with the
+   * payload, see {@link de.fu_berlin.inf.dpp.net.ITransmitter#SEQUENCE_NUMBER_PROPERTY}.
+   */
+  private boolean hasSequenceNumber;
+
+  private int sequenceNumber;
+
   public static TransferDescription newDescription() {
     return new TransferDescription();
   }
@@ -74,6 +85,29 @@ public class TransferDescription {
     return compress;
   }
 
+  TransferDescription setBinaryContent(boolean binaryContent) {
+    this.binaryContent = binaryContent;
+    return this;
+  }
+
+  public boolean binaryContent() {
+    return binaryContent;
+  }
+
+  TransferDescription setSequenceNumber(int sequenceNumber) {
+    this.sequenceNumber = sequenceNumber;
+    this.hasSequenceNumber = true;
+    return this;
+  }
+
+  public boolean hasSequenceNumber() {
+    return hasSequenceNumber;
+  }
+
+  public int getSequenceNumber() {
+    return sequenceNumber;
+  }
+
   @Override
   public String toString() {
     return "TransferDescription [elementName="
@@ -86,6 +120,9 @@ public class TransferDescription {
         + sender
         + ", compress="
         + compress
+        + ", binary="
+        + binaryContent
+        + (hasSequenceNumber ? ", sequenceNumber=" + sequenceNumber : "")
         + "]";
   }
 }
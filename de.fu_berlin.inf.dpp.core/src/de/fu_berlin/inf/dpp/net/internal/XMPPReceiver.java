@@ -1,18 +1,28 @@
 package de.fu_berlin.inf.dpp.net.internal;
 
 import de.fu_berlin.inf.dpp.annotations.Component;
+import de.fu_berlin.inf.dpp.misc.binary.BinaryExtensionCodec;
 import de.fu_berlin.inf.dpp.net.ConnectionState;
 import de.fu_berlin.inf.dpp.net.DispatchThreadContext;
 import de.fu_berlin.inf.dpp.net.IReceiver;
+import de.fu_berlin.inf.dpp.net.ITransmitter;
 import de.fu_berlin.inf.dpp.net.PacketCollector;
 import de.fu_berlin.inf.dpp.net.PacketCollector.CancelHook;
 import de.fu_berlin.inf.dpp.net.xmpp.IConnectionListener;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
 import de.fu_berlin.inf.dpp.net.xmpp.XMPPConnectionService;
-import java.io.ByteArrayInputStream;
+import de.fu_berlin.inf.dpp.util.NamedThreadFactory;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Logger;
 import org.jivesoftware.smack.Connection;
 import org.jivesoftware.smack.PacketListener;
@@ -22,20 +32,80 @@ import org.jivesoftware.smack.packet.Packet;
 import org.jivesoftware.smack.packet.PacketExtension;
 import org.jivesoftware.smack.provider.PacketExtensionProvider;
 import org.jivesoftware.smack.provider.ProviderManager;
+import org.picocontainer.Disposable;
 import org.xmlpull.mxp1.MXParser;
 import org.xmlpull.v1.XmlPullParser;
 
+/**
+ * Forwards incoming packets to the registered listeners in the dispatch thread.
+ *
+ * <p>The payloads of {@linkplain BinaryXMPPExtension binary XMPP extensions} are deserialized by a
+ * pool of worker threads before they are forwarded, so a large payload of one user does not delay
+ * the packets of other users. The packets of each sender are still forwarded in the order they were
+ * received.
+ */
 @Component(module = "net")
-public class XMPPReceiver implements IReceiver {
+public class XMPPReceiver implements IReceiver, Disposable {
 
   private static final Logger LOG = Logger.getLogger(XMPPReceiver.class);
 
+  /** Maximum number of threads deserializing incoming payloads */
+  private static final int DESERIALIZATION_THREADS =
+      Math.max(
+          1,
+          Integer.getInteger(
+              "de.fu_berlin.inf.dpp.net.DESERIALIZATION_THREADS",
+              Runtime.getRuntime().availableProcessors()));
+
+  /** Time in seconds after which idle deserialization threads terminate */
+  private static final long DESERIALIZATION_KEEP_ALIVE_TIME = 60;
+
   private final DispatchThreadContext dispatchThreadContext;
 
-  private Map<PacketListener, PacketFilter> listeners =
-      Collections.synchronizedMap(new HashMap<PacketListener, PacketFilter>());
+  /**
+   * The registered listeners, the map is never modified but replaced on every change so it can be
+   * iterated without copying it. Writes are guarded by this receiver.
+   */
+  private volatile Map<PacketListener, PacketFilter> listeners = Collections.emptyMap();
+
+  private final ThreadPoolExecutor deserializationExecutor;
+
+  /** The parser of each deserialization thread */
+  private final ThreadLocal<XmlPullParser> parser =
+      new ThreadLocal<XmlPullParser>() {
+        @Override
+        protected XmlPullParser initialValue() {
+          return new MXParser();
+        }
+      };
+
+  /**
+   * The packets that were not yet forwarded for every sender, in the order they were received. A
+   * packet is only added if it has to wait for the deserialization of an earlier packet of the same
+   * sender. Guarded by itself.
+   */
+  private final Map<JID, Queue<Deserialization>> pendingDeserializations =
+      new HashMap<JID, Queue<Deserialization>>();
 
-  private XmlPullParser parser;
+  private static final class Deserialization {
+    private final BinaryXMPPExtension extension;
+
+    /** The deserialized packet, may be <code>null</code> if the deserialization failed */
+    private Packet packet;
+
+    private volatile boolean done;
+
+    private Deserialization(BinaryXMPPExtension extension) {
+      this.extension = extension;
+    }
+
+    /** Creates an already completed deserialization for a packet that needs no deserialization */
+    private Deserialization(Packet packet) {
+      this.extension = null;
+      this.packet = packet;
+      this.done = true;
+    }
+  }
 
   private final PacketListener smackPacketListener =
       new PacketListener() {
@@ -66,25 +136,74 @@ public class XMPPReceiver implements IReceiver {
 
   public XMPPReceiver(
       DispatchThreadContext dispatchThreadContext, XMPPConnectionService connectionService) {
+    this(dispatchThreadContext, connectionService, DESERIALIZATION_THREADS);
+  }
+
+  XMPPReceiver(
+      DispatchThreadContext dispatchThreadContext,
+      XMPPConnectionService connectionService,
+      int deserializationThreads) {
 
     this.dispatchThreadContext = dispatchThreadContext;
-    this.parser = new MXParser();
+
+    deserializationExecutor =
+        new ThreadPoolExecutor(
+            deserializationThreads,
+            deserializationThreads,
+            DESERIALIZATION_KEEP_ALIVE_TIME,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new NamedThreadFactory("dpp-packet-deserializer-"));
+
+    deserializationExecutor.allowCoreThreadTimeOut(true);
 
     connectionService.addListener(connectionListener);
   }
 
   @Override
-  public void addPacketListener(PacketListener listener, PacketFilter filter) {
-    listeners.put(listener, filter);
+  public void dispose() {
+    deserializationExecutor.shutdownNow();
   }
 
   @Override
-  public void removePacketListener(PacketListener listener) {
-    listeners.remove(listener);
+  public synchronized void addPacketListener(PacketListener listener, PacketFilter filter) {
+    final Map<PacketListener, PacketFilter> copy =
+        new HashMap<PacketListener, PacketFilter>(listeners);
+
+    copy.put(listener, filter);
+    listeners = copy;
+  }
+
+  @Override
+  public synchronized void removePacketListener(PacketListener listener) {
+    if (!listeners.containsKey(listener)) return;
+
+    final Map<PacketListener, PacketFilter> copy =
+        new HashMap<PacketListener, PacketFilter>(listeners);
+
+    copy.remove(listener);
+    listeners = copy;
   }
 
   @Override
   public void processPacket(final Packet packet) {
+    final String from = packet.getFrom();
+
+    if (from != null) {
+      synchronized (pendingDeserializations) {
+        final Queue<Deserialization> queue = pendingDeserializations.get(new JID(from));
+
+        /*
+         * Do not overtake the packets of the sender that are still
+         * deserialized, the packet is forwarded once they are done.
+         */
+        if (queue != null) {
+          queue.add(new Deserialization(packet));
+          return;
+        }
+      }
+    }
+
     dispatchThreadContext.executeAsDispatch(
         new Runnable() {
           @Override
@@ -113,31 +232,88 @@ public class XMPPReceiver implements IReceiver {
   @Override
   public void processBinaryXMPPExtension(final BinaryXMPPExtension extension) {
 
+    final JID sender = extension.getTransferDescription().getSender();
+    final Deserialization deserialization = new Deserialization(extension);
+
+    synchronized (pendingDeserializations) {
+      Queue<Deserialization> queue = pendingDeserializations.get(sender);
+
+      if (queue == null) {
+        queue = new ArrayDeque<Deserialization>();
+        pendingDeserializations.put(sender, queue);
+      }
+
+      queue.add(deserialization);
+    }
+
+    try {
+      deserializationExecutor.execute(
+          new Runnable() {
+
+            @Override
+            public void run() {
+              deserialize(sender, deserialization);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      LOG.warn("discarding packet of " + sender + ", receiver is already disposed");
+    }
+  }
+
+  /**
+   * Deserializes the payload and forwards the packets of the sender whose deserialization is
+   * completed.
+   */
+  private void deserialize(final JID sender, final Deserialization deserialization) {
+    try {
+      deserialization.packet = convertBinaryXMPPExtension(deserialization.extension);
+    } catch (RuntimeException e) {
+      LOG.error("could not deserialize transfer object: " + e.getMessage(), e);
+    } finally {
+      deserialization.done = true;
+    }
+
     dispatchThreadContext.executeAsDispatch(
         new Runnable() {
 
           @Override
           public void run() {
-
-            Packet packet = convertBinaryXMPPExtension(extension);
-
-            if (packet != null) forwardPacket(packet);
+            forwardDeserializedPackets(sender);
           }
         });
   }
 
   /**
-   * Dispatches the packet to all registered listeners.
+   * Forwards the deserialized packets of the given sender until a packet is reached that is not yet
+   * deserialized.
    *
    * @sarosThread must be called from the Dispatch Thread
    */
-  private void forwardPacket(Packet packet) {
-    Map<PacketListener, PacketFilter> copy;
+  private void forwardDeserializedPackets(final JID sender) {
+    while (true) {
+      final Deserialization deserialization;
+
+      synchronized (pendingDeserializations) {
+        final Queue<Deserialization> queue = pendingDeserializations.get(sender);
+
+        if (queue == null || !queue.peek().done) return;
+
+        deserialization = queue.poll();
+
+        if (queue.isEmpty()) pendingDeserializations.remove(sender);
+      }
 
-    synchronized (listeners) {
-      copy = new HashMap<PacketListener, PacketFilter>(listeners);
+      if (deserialization.packet != null) forwardPacket(deserialization.packet);
     }
-    for (Entry<PacketListener, PacketFilter> entry : copy.entrySet()) {
+  }
+
+  /**
+   * Dispatches the packet to all registered listeners.
+   *
+   * @sarosThread must be called from the Dispatch Thread
+   */
+  private void forwardPacket(Packet packet) {
+    for (Entry<PacketListener, PacketFilter> entry : listeners.entrySet()) {
       PacketListener listener = entry.getKey();
       PacketFilter filter = entry.getValue();
 
@@ -151,13 +327,15 @@ public class XMPPReceiver implements IReceiver {
    * Deserializes the payload of an {@link BinaryXMPPExtension} back to its original {@link
    * PacketExtension} and returns a new packet containing the deserialized packet extension.
    *
-   * <p>This method is <b>not</b> thread safe and <b>must not</b> accessed by multiple threads
+   * <p>Every thread uses its own parser, so this method may be called by multiple threads
    * concurrently.
    */
   private Packet convertBinaryXMPPExtension(BinaryXMPPExtension transferObject) {
 
     TransferDescription description = transferObject.getTransferDescription();
 
+    if (description.binaryContent()) return decodeBinaryXMPPExtension(transferObject);
+
     String name = description.getElementName();
     String namespace = description.getNamespace();
     // IQ provider?
@@ -178,8 +356,10 @@ public class XMPPReceiver implements IReceiver {
 
     PacketExtension extension = null;
 
+    final XmlPullParser parser = this.parser.get();
+
     try {
-      parser.setInput(new ByteArrayInputStream(transferObject.getPayload()), "UTF-8");
+      parser.setInput(transferObject.getPayloadInputStream(), "UTF-8");
       /*
        * We have to skip the empty start tag because Smack expects a
        * parser that already has started parsing.
@@ -190,16 +370,57 @@ public class XMPPReceiver implements IReceiver {
       LOG.error("could not deserialize transfer object payload: " + e.getMessage(), e);
 
       // just to be safe
-      parser = new MXParser();
+      this.parser.remove();
       return null;
     }
 
+    return createPacket(description, extension);
+  }
+
+  /**
+   * Decodes the payload of an {@link BinaryXMPPExtension} that was encoded with a {@link
+   * BinaryExtensionCodec} and returns a new packet containing the decoded packet extension.
+   */
+  private Packet decodeBinaryXMPPExtension(BinaryXMPPExtension transferObject) {
+
+    TransferDescription description = transferObject.getTransferDescription();
+
+    BinaryExtensionCodec<?> codec =
+        BinaryExtensionCodec.getCodec(description.getElementName(), description.getNamespace());
+
+    if (codec == null) {
+      LOG.warn(
+          "could not decode transfer object because no binary codec with namespace '"
+              + description.getNamespace()
+              + "' and element name '"
+              + description.getElementName()
+              + "' is installed");
+      return null;
+    }
+
+    PacketExtension extension;
+
+    try {
+      extension = codec.decode(transferObject.getPayloadInputStream());
+    } catch (IOException e) {
+      LOG.error("could not decode transfer object payload: " + e.getMessage(), e);
+      return null;
+    }
+
+    return createPacket(description, extension);
+  }
+
+  private static Packet createPacket(TransferDescription description, PacketExtension extension) {
     Packet packet = new Message();
     packet.setPacketID(Packet.ID_NOT_AVAILABLE);
     packet.setFrom(description.getSender().toString());
     packet.setTo(description.getRecipient().toString());
     packet.addExtension(extension);
 
+    if (description.hasSequenceNumber())
+      packet.setProperty(
+          ITransmitter.SEQUENCE_NUMBER_PROPERTY, Integer.valueOf(description.getSequenceNumber()));
+
     return packet;
   }
 }
@@ -20,12 +20,20 @@
 package de.fu_berlin.inf.dpp.net.internal;
 
 import de.fu_berlin.inf.dpp.annotations.Component;
+import de.fu_berlin.inf.dpp.misc.binary.BinaryCodecManager;
 import de.fu_berlin.inf.dpp.net.ConnectionState;
 import de.fu_berlin.inf.dpp.net.ITransmitter;
 import de.fu_berlin.inf.dpp.net.xmpp.IConnectionListener;
 import de.fu_berlin.inf.dpp.net.xmpp.JID;
 import de.fu_berlin.inf.dpp.net.xmpp.XMPPConnectionService;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.apache.log4j.Logger;
 import org.jivesoftware.smack.Connection;
 import org.jivesoftware.smack.packet.Message;
@@ -41,18 +49,27 @@ public class XMPPTransmitter implements ITransmitter, IConnectionListener {
 
   private static final Logger log = Logger.getLogger(XMPPTransmitter.class);
 
-  /** size in bytes that a packet extension must exceed to be compressed */
+  /**
+   * size in bytes that a packet extension must exceed to be compressed, the {@link
+   * DataTransferManager} may still send it uncompressed if it does not compress well
+   */
   private static final int PACKET_EXTENSION_COMPRESS_THRESHOLD =
       Integer.getInteger(
           "de.fu_berlin.inf.dpp.net.transmitter.PACKET_EXTENSION_COMPRESS_THRESHOLD", 32);
 
   private final DataTransferManager dataManager;
 
+  private final BinaryCodecManager codecManager;
+
   private Connection connection;
 
-  public XMPPTransmitter(DataTransferManager dataManager, XMPPConnectionService connectionService) {
+  public XMPPTransmitter(
+      DataTransferManager dataManager,
+      XMPPConnectionService connectionService,
+      BinaryCodecManager codecManager) {
     connectionService.addListener(this);
     this.dataManager = dataManager;
+    this.codecManager = codecManager;
   }
 
   @Override
@@ -75,7 +92,10 @@ public class XMPPTransmitter implements ITransmitter, IConnectionListener {
             .setElementName(extension.getElementName())
             .setNamespace(extension.getNamespace());
 
-    byte[] data = extension.toXML().getBytes("UTF-8");
+    byte[] data = codecManager.encode(recipient, extension);
+
+    if (data != null) transferDescription.setBinaryContent(true);
+    else data = extension.toXML().getBytes("UTF-8");
 
     if (data.length > PACKET_EXTENSION_COMPRESS_THRESHOLD)
       transferDescription.setCompressContent(true);
@@ -85,6 +105,98 @@ public class XMPPTransmitter implements ITransmitter, IConnectionListener {
     else dataManager.sendData(connectionID, transferDescription, data);
   }
 
+  @Override
+  public Map<JID, IOException> send(
+      String connectionID, Collection<JID> recipients, PacketExtension extension) {
+    return sendToAll(connectionID, recipients, null, extension);
+  }
+
+  @Override
+  public Map<JID, IOException> send(
+      String connectionID, Map<JID, Integer> sequenceNumbers, PacketExtension extension) {
+    return sendToAll(connectionID, sequenceNumbers.keySet(), sequenceNumbers, extension);
+  }
+
+  @Override
+  public boolean supportsSequenceNumbers(JID recipient) {
+    return codecManager.supportsSequenceNumbers(recipient);
+  }
+
+  /**
+   * Serializes the extension once per set of codecs the recipients support and hands the result
+   * over to the {@link DataTransferManager} which compresses it once and writes it to every
+   * recipient.
+   */
+  private Map<JID, IOException> sendToAll(
+      final String connectionID,
+      final Collection<JID> recipients,
+      final Map<JID, Integer> sequenceNumbers,
+      final PacketExtension extension) {
+
+    final Map<JID, IOException> errors = new HashMap<JID, IOException>();
+
+    final Map<Set<String>, List<JID>> recipientsByCodecs = new HashMap<Set<String>, List<JID>>();
+
+    for (final JID recipient : recipients) {
+      final Set<String> codecs = new HashSet<String>(codecManager.getRemoteCodecs(recipient));
+
+      List<JID> group = recipientsByCodecs.get(codecs);
+
+      if (group == null) {
+        group = new ArrayList<JID>();
+        recipientsByCodecs.put(codecs, group);
+      }
+
+      group.add(recipient);
+    }
+
+    byte[] xml = null;
+
+    for (final List<JID> group : recipientsByCodecs.values()) {
+      byte[] data;
+
+      try {
+        data = codecManager.encode(group.get(0), extension);
+
+        if (data == null) {
+          if (xml == null) xml = extension.toXML().getBytes("UTF-8");
+
+          data = xml;
+        }
+      } catch (IOException e) {
+        log.error("failed to encode " + extension + ": " + e.getMessage(), e);
+
+        for (final JID recipient : group) errors.put(recipient, e);
+
+        continue;
+      }
+
+      final boolean binary = data != xml;
+
+      final List<TransferDescription> transferDescriptions =
+          new ArrayList<TransferDescription>(group.size());
+
+      for (final JID recipient : group) {
+        final TransferDescription transferDescription =
+            TransferDescription.newDescription()
+                .setRecipient(recipient)
+                .setElementName(extension.getElementName())
+                .setNamespace(extension.getNamespace())
+                .setBinaryContent(binary)
+                .setCompressContent(data.length > PACKET_EXTENSION_COMPRESS_THRESHOLD);
+
+        if (sequenceNumbers != null)
+          transferDescription.setSequenceNumber(sequenceNumbers.get(recipient));
+
+        transferDescriptions.add(transferDescription);
+      }
+
+      errors.putAll(dataManager.sendData(connectionID, transferDescriptions, data));
+    }
+
+    return errors;
+  }
+
   @Override
   public void sendPacketExtension(JID recipient, PacketExtension extension) {
     Message message = new Message();
@@ -0,0 +1,67 @@
+package de.fu_berlin.inf.dpp.net.stream;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of direct {@link ByteBuffer byte buffers} of the same size. Allocating direct buffers is
+ * expensive, so the buffers that are used to read from and write to socket channels are reused
+ * instead.
+ *
+ * <p>This class is thread safe.
+ */
+final class DirectBufferPool {
+
+  private final int bufferSize;
+
+  private final int maxPooledBuffers;
+
+  private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+  private final AtomicInteger pooledBuffers = new AtomicInteger();
+
+  /**
+   * @param bufferSize the size in bytes of the buffers
+   * @param maxPooledBuffers the maximum number of buffers that are kept in the pool, further
+   *     released buffers are left to the garbage collector
+   */
+  DirectBufferPool(int bufferSize, int maxPooledBuffers) {
+    if (bufferSize <= 0) throw new IllegalArgumentException("invalid buffer size: " + bufferSize);
+
+    this.bufferSize = bufferSize;
+    this.maxPooledBuffers = maxPooledBuffers;
+  }
+
+  /** Returns the size in bytes of the buffers of this pool. */
+  int getBufferSize() {
+    return bufferSize;
+  }
+
+  /** Returns a cleared buffer, either a pooled one or a newly allocated one. */
+  ByteBuffer acquire() {
+    final ByteBuffer buffer = buffers.poll();
+
+    if (buffer == null) return ByteBuffer.allocateDirect(bufferSize);
+
+    pooledBuffers.decrementAndGet();
+    buffer.clear();
+    return buffer;
+  }
+
+  /**
+   * Returns the buffer to the pool. The buffer <b>must not</b> be used by the caller afterwards.
+   *
+   * @param buffer a buffer that was acquired from this pool
+   */
+  void release(ByteBuffer buffer) {
+    if (buffer.capacity() != bufferSize || !buffer.isDirect()) return;
+
+    if (pooledBuffers.incrementAndGet() > maxPooledBuffers) {
+      pooledBuffers.decrementAndGet();
+      return;
+    }
+
+    buffers.offer(buffer);
+  }
+}
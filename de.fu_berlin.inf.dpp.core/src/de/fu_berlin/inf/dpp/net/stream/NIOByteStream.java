@@ -0,0 +1,503 @@
+package de.fu_berlin.inf.dpp.net.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import org.apache.log4j.Logger;
+
+/**
+ * A {@link ByteStream} over a non-blocking {@link SocketChannel} whose I/O is performed by a thread
+ * of a {@link SelectorPool}. The received data and the data to send are kept in pooled {@linkplain
+ * DirectBufferPool direct buffers}, so the socket is read and written without copying the data into
+ * intermediate heap buffers.
+ *
+ * <p>The streams of this byte stream are blocking. A write returns as soon as the data is queued,
+ * the data is written directly by the calling thread if the socket is able to take it and otherwise
+ * by the selector thread. Writers are blocked if too much data is queued and the selector thread
+ * stops reading from the socket if too much received data was not consumed yet, so a slow peer
+ * pushes back on the sender.
+ */
+final class NIOByteStream implements ByteStream {
+
+  private static final Logger LOG = Logger.getLogger(NIOByteStream.class);
+
+  /** Maximum number of buffers that are queued for each direction */
+  private static final int MAX_QUEUED_BUFFERS =
+      Math.max(2, Integer.getInteger("de.fu_berlin.inf.dpp.net.tcp.MAX_QUEUED_BUFFERS", 16));
+
+  /** Maximum number of buffers that are written with one gathering write */
+  private static final int MAX_GATHERED_BUFFERS = 16;
+
+  /** Time in milliseconds {@link #close()} waits for the queued data to be written */
+  private static final long CLOSE_TIMEOUT = 5000;
+
+  private final SocketChannel channel;
+
+  private final SelectorPool.SelectorThread selectorThread;
+
+  private final DirectBufferPool bufferPool;
+
+  private final Object readLock = new Object();
+
+  /** Received data, the buffers are ready to be read */
+  private final ArrayDeque<ByteBuffer> receivedBuffers = new ArrayDeque<ByteBuffer>();
+
+  private int receivedBytes;
+
+  private boolean readSuspended;
+
+  private boolean endOfStream;
+
+  private final Object writeLock = new Object();
+
+  /** Data to send, the buffers are ready to be written to the channel */
+  private final ArrayDeque<ByteBuffer> queuedBuffers = new ArrayDeque<ByteBuffer>();
+
+  private final ByteBuffer[] gatheredBuffers = new ByteBuffer[MAX_GATHERED_BUFFERS];
+
+  /** The buffer that is filled by the current writes */
+  private ByteBuffer currentBuffer;
+
+  private boolean writeRequested;
+
+  private volatile IOException error;
+
+  private volatile boolean closed;
+
+  private volatile int readTimeout;
+
+  private final SelectorPool.Handler handler =
+      new SelectorPool.Handler() {
+
+        @Override
+        public void ready(SelectionKey key) throws IOException {
+          if (key.isReadable()) readFromChannel();
+
+          if (key.isValid() && key.isWritable()) writeToChannel();
+        }
+
+        @Override
+        public void failed(IOException cause) {
+          fail(cause);
+        }
+      };
+
+  private final InputStream in =
+      new InputStream() {
+
+        private final byte[] singleByte = new byte[1];
+
+        @Override
+        public int read() throws IOException {
+          synchronized (readLock) {
+            return read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xFF;
+          }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+          return NIOByteStream.this.read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+          synchronized (readLock) {
+            return receivedBytes;
+          }
+        }
+
+        @Override
+        public void close() throws IOException {
+          NIOByteStream.this.close();
+        }
+      };
+
+  private final OutputStream out =
+      new OutputStream() {
+
+        private final byte[] singleByte = new byte[1];
+
+        @Override
+        public void write(int b) throws IOException {
+          synchronized (writeLock) {
+            singleByte[0] = (byte) b;
+            write(singleByte, 0, 1);
+          }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+          NIOByteStream.this.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+          NIOByteStream.this.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+          NIOByteStream.this.close();
+        }
+      };
+
+  /**
+   * Creates a byte stream over the given connected channel and registers the channel with the next
+   * thread of the selector pool.
+   *
+   * @param channel a connected socket channel, it is switched to non-blocking mode
+   * @param selectorPool the started selector pool that performs the I/O
+   * @param bufferPool the pool of the buffers for the received data and the data to send
+   * @throws IOException if the channel could not be switched to non-blocking mode or the selector
+   *     pool is not started
+   */
+  NIOByteStream(SocketChannel channel, SelectorPool selectorPool, DirectBufferPool bufferPool)
+      throws IOException {
+
+    this.channel = channel;
+    this.bufferPool = bufferPool;
+
+    channel.configureBlocking(false);
+
+    selectorThread = selectorPool.next();
+    selectorThread.register(channel, SelectionKey.OP_READ, handler);
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    return in;
+  }
+
+  @Override
+  public OutputStream getOutputStream() throws IOException {
+    return out;
+  }
+
+  /**
+   * Closes this stream. The data that is still queued is written before the channel is closed if
+   * this is possible within a few seconds.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (writeLock) {
+      if (closed) return;
+
+      try {
+        if (error == null) {
+          flush();
+          awaitQueuedBuffersWritten();
+        }
+      } catch (IOException e) {
+        LOG.debug("failed to write queued data of " + this + " before closing: " + e.getMessage());
+      } finally {
+        closed = true;
+        releaseWriteBuffers();
+        writeLock.notifyAll();
+      }
+    }
+
+    synchronized (readLock) {
+      releaseReadBuffers();
+      readLock.notifyAll();
+    }
+
+    selectorThread.close(channel);
+  }
+
+  @Override
+  public int getReadTimeout() throws IOException {
+    return readTimeout;
+  }
+
+  @Override
+  public void setReadTimeout(int timeout) throws IOException {
+    if (timeout < 0) throw new IllegalArgumentException("timeout is negative: " + timeout);
+
+    readTimeout = timeout;
+  }
+
+  @Override
+  public String toString() {
+    return "NIOByteStream [" + channel + "]";
+  }
+
+  private int read(byte[] b, int off, int len) throws IOException {
+    if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+
+    if (len == 0) return 0;
+
+    synchronized (readLock) {
+      final int timeout = readTimeout;
+      final long deadline = System.currentTimeMillis() + timeout;
+
+      while (receivedBuffers.isEmpty()) {
+        if (closed) throw new IOException("stream is closed");
+
+        if (error != null) throw new IOException("connection failed: " + error.getMessage(), error);
+
+        if (endOfStream) return -1;
+
+        final long remaining = timeout == 0 ? 0 : deadline - System.currentTimeMillis();
+
+        if (timeout != 0 && remaining <= 0)
+          throw new SocketTimeoutException("read timed out after " + timeout + " ms");
+
+        try {
+          readLock.wait(remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("interrupted while reading");
+        }
+      }
+
+      int copied = 0;
+
+      while (copied < len && !receivedBuffers.isEmpty()) {
+        final ByteBuffer buffer = receivedBuffers.peek();
+        final int count = Math.min(len - copied, buffer.remaining());
+
+        buffer.get(b, off + copied, count);
+        copied += count;
+
+        if (!buffer.hasRemaining()) bufferPool.release(receivedBuffers.poll());
+      }
+
+      receivedBytes -= copied;
+
+      if (readSuspended && receivedBuffers.size() <= MAX_QUEUED_BUFFERS / 2) {
+        readSuspended = false;
+        selectorThread.addInterest(channel, SelectionKey.OP_READ);
+      }
+
+      return copied;
+    }
+  }
+
+  private void write(byte[] b, int off, int len) throws IOException {
+    if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+
+    synchronized (writeLock) {
+      ensureWritable();
+
+      while (len > 0) {
+        if (currentBuffer == null) currentBuffer = bufferPool.acquire();
+
+        final int count = Math.min(len, currentBuffer.remaining());
+
+        currentBuffer.put(b, off, count);
+        off += count;
+        len -= count;
+
+        if (!currentBuffer.hasRemaining()) queueCurrentBuffer();
+      }
+    }
+  }
+
+  private void flush() throws IOException {
+    synchronized (writeLock) {
+      ensureWritable();
+
+      if (currentBuffer != null && currentBuffer.position() > 0) queueCurrentBuffer();
+    }
+  }
+
+  /** Queues the current buffer and writes as much queued data as possible. */
+  private void queueCurrentBuffer() throws IOException {
+    assert Thread.holdsLock(writeLock);
+
+    while (queuedBuffers.size() >= MAX_QUEUED_BUFFERS) {
+      try {
+        writeLock.wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted while writing");
+      }
+
+      ensureWritable();
+    }
+
+    final ByteBuffer buffer = currentBuffer;
+    currentBuffer = null;
+
+    buffer.flip();
+    queuedBuffers.add(buffer);
+
+    // the selector thread is already in charge of writing the queued data
+    if (writeRequested) return;
+
+    try {
+      writeQueuedBuffers();
+    } catch (IOException e) {
+      fail(e);
+      throw e;
+    }
+
+    if (queuedBuffers.isEmpty()) return;
+
+    writeRequested = true;
+    selectorThread.addInterest(channel, SelectionKey.OP_WRITE);
+  }
+
+  /** Writes the queued data until the channel is not able to take any more data. */
+  private void writeQueuedBuffers() throws IOException {
+    assert Thread.holdsLock(writeLock);
+
+    while (!queuedBuffers.isEmpty()) {
+      int count = 0;
+      long size = 0;
+
+      for (final ByteBuffer buffer : queuedBuffers) {
+        gatheredBuffers[count++] = buffer;
+        size += buffer.remaining();
+
+        if (count == gatheredBuffers.length) break;
+      }
+
+      final long written;
+
+      try {
+        written = channel.write(gatheredBuffers, 0, count);
+      } finally {
+        Arrays.fill(gatheredBuffers, 0, count, null);
+      }
+
+      while (!queuedBuffers.isEmpty() && !queuedBuffers.peek().hasRemaining())
+        bufferPool.release(queuedBuffers.poll());
+
+      if (written < size) break;
+    }
+
+    writeLock.notifyAll();
+  }
+
+  private void awaitQueuedBuffersWritten() throws IOException {
+    assert Thread.holdsLock(writeLock);
+
+    final long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT;
+
+    while (!queuedBuffers.isEmpty() && error == null) {
+      final long remaining = deadline - System.currentTimeMillis();
+
+      if (remaining <= 0) throw new IOException("timed out while writing queued data");
+
+      try {
+        writeLock.wait(remaining);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted while writing queued data");
+      }
+    }
+  }
+
+  private void ensureWritable() throws IOException {
+    if (closed) throw new IOException("stream is closed");
+
+    if (error != null) throw new IOException("connection failed: " + error.getMessage(), error);
+  }
+
+  /** Called by the selector thread if the channel is readable. */
+  private void readFromChannel() throws IOException {
+    while (true) {
+      synchronized (readLock) {
+        if (receivedBuffers.size() >= MAX_QUEUED_BUFFERS) {
+          readSuspended = true;
+          selectorThread.removeInterest(channel, SelectionKey.OP_READ);
+          return;
+        }
+      }
+
+      final ByteBuffer buffer = bufferPool.acquire();
+      final int read;
+
+      try {
+        read = channel.read(buffer);
+      } catch (IOException e) {
+        bufferPool.release(buffer);
+        throw e;
+      }
+
+      if (read <= 0) {
+        bufferPool.release(buffer);
+
+        if (read < 0) {
+          selectorThread.removeInterest(channel, SelectionKey.OP_READ);
+
+          synchronized (readLock) {
+            endOfStream = true;
+            readLock.notifyAll();
+          }
+        }
+
+        return;
+      }
+
+      buffer.flip();
+
+      synchronized (readLock) {
+        if (closed) {
+          bufferPool.release(buffer);
+          return;
+        }
+
+        receivedBuffers.add(buffer);
+        receivedBytes += read;
+        readLock.notifyAll();
+      }
+
+      // the socket has no more data available, avoid a needless read
+      if (buffer.limit() < buffer.capacity()) return;
+    }
+  }
+
+  /** Called by the selector thread if the channel is writable. */
+  private void writeToChannel() throws IOException {
+    synchronized (writeLock) {
+      if (closed) return;
+
+      writeQueuedBuffers();
+
+      if (!queuedBuffers.isEmpty()) return;
+
+      writeRequested = false;
+      selectorThread.removeInterest(channel, SelectionKey.OP_WRITE);
+    }
+  }
+
+  private void fail(IOException cause) {
+    if (closed) return;
+
+    if (error == null) {
+      error = cause;
+      LOG.debug(this + " failed: " + cause.getMessage());
+    }
+
+    synchronized (writeLock) {
+      writeLock.notifyAll();
+    }
+
+    synchronized (readLock) {
+      readLock.notifyAll();
+    }
+  }
+
+  private void releaseWriteBuffers() {
+    if (currentBuffer != null) bufferPool.release(currentBuffer);
+
+    currentBuffer = null;
+
+    while (!queuedBuffers.isEmpty()) bufferPool.release(queuedBuffers.poll());
+  }
+
+  private void releaseReadBuffers() {
+    while (!receivedBuffers.isEmpty()) bufferPool.release(receivedBuffers.poll());
+
+    receivedBytes = 0;
+  }
+}
@@ -0,0 +1,291 @@
+package de.fu_berlin.inf.dpp.net.stream;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+
+/**
+ * A fixed number of threads that each multiplex the I/O of many {@linkplain SelectableChannel
+ * channels} with a {@link Selector}. The channels of all peers share the threads of the pool, new
+ * channels are assigned to the threads in turn.
+ *
+ * <p>All changes of the registrations of a selector are performed by its thread, so the selector
+ * never has to be woken up to release its locks.
+ */
+final class SelectorPool {
+
+  private static final Logger LOG = Logger.getLogger(SelectorPool.class);
+
+  /** Handles the I/O events of a registered channel. Always called by the selector thread. */
+  interface Handler {
+
+    /**
+     * Called if the channel is ready for at least one of its interest operations.
+     *
+     * @param key the selection key of the channel
+     * @throws IOException if an I/O error occurs, the channel is closed afterwards
+     */
+    void ready(SelectionKey key) throws IOException;
+
+    /**
+     * Called if the channel could not be registered, an I/O error occurred or the pool is stopped.
+     * The channel is closed afterwards.
+     *
+     * @param cause the reason why the channel is no longer handled
+     */
+    void failed(IOException cause);
+  }
+
+  /** A thread of the pool along with its selector. */
+  final class SelectorThread implements Runnable {
+
+    private final Selector selector;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    private SelectorThread(String name) throws IOException {
+      selector = Selector.open();
+      thread = new Thread(this, name);
+      thread.setDaemon(true);
+    }
+
+    /**
+     * Registers the channel with the selector of this thread. The channel must be in non-blocking
+     * mode.
+     *
+     * @param channel the channel to register
+     * @param ops the initial interest operations
+     * @param handler the handler of the I/O events of the channel
+     */
+    void register(final SelectableChannel channel, final int ops, final Handler handler) {
+      if (!running) {
+        fail(channel, handler, new IOException("selector thread stopped"));
+        return;
+      }
+
+      execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              try {
+                channel.register(selector, ops, handler);
+              } catch (ClosedChannelException e) {
+                fail(channel, handler, e);
+              } catch (RuntimeException e) {
+                fail(channel, handler, new IOException("failed to register channel", e));
+              }
+            }
+          });
+    }
+
+    /** Adds the given operations to the interest operations of the channel. */
+    void addInterest(SelectableChannel channel, int ops) {
+      changeInterest(channel, ops, true);
+    }
+
+    /** Removes the given operations from the interest operations of the channel. */
+    void removeInterest(SelectableChannel channel, int ops) {
+      changeInterest(channel, ops, false);
+    }
+
+    private void changeInterest(final SelectableChannel channel, final int ops, final boolean add) {
+      final Runnable change =
+          new Runnable() {
+            @Override
+            public void run() {
+              final SelectionKey key = channel.keyFor(selector);
+
+              if (key == null || !key.isValid()) return;
+
+              try {
+                key.interestOps(add ? key.interestOps() | ops : key.interestOps() & ~ops);
+              } catch (CancelledKeyException e) {
+                // channel was closed concurrently
+              }
+            }
+          };
+
+      if (Thread.currentThread() == thread) change.run();
+      else execute(change);
+    }
+
+    /**
+     * Closes the channel. The selector is woken up so that the channel is deregistered and the
+     * underlying socket is closed immediately.
+     */
+    void close(SelectableChannel channel) throws IOException {
+      try {
+        channel.close();
+      } finally {
+        selector.wakeup();
+      }
+    }
+
+    private void execute(Runnable task) {
+      tasks.offer(task);
+      selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (running) {
+          selector.select();
+
+          Runnable task;
+
+          while ((task = tasks.poll()) != null) task.run();
+
+          final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+
+          while (it.hasNext()) {
+            final SelectionKey key = it.next();
+            it.remove();
+
+            if (!key.isValid()) continue;
+
+            final Handler handler = (Handler) key.attachment();
+
+            try {
+              handler.ready(key);
+            } catch (CancelledKeyException e) {
+              // channel was closed concurrently
+            } catch (IOException e) {
+              fail(key.channel(), handler, e);
+            } catch (RuntimeException e) {
+              LOG.error("internal error while handling channel " + key.channel(), e);
+              fail(key.channel(), handler, new IOException("internal error", e));
+            }
+          }
+        }
+      } catch (IOException e) {
+        LOG.error("selector failed, closing all channels of " + thread.getName(), e);
+      } finally {
+        closeAll();
+      }
+    }
+
+    private void stop() {
+      running = false;
+      selector.wakeup();
+
+      if (Thread.currentThread() == thread) return;
+
+      try {
+        thread.join(5000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void closeAll() {
+      final IOException cause = new IOException("selector thread stopped");
+
+      // register the channels that are still pending so they are closed as well
+      Runnable task;
+
+      while ((task = tasks.poll()) != null) task.run();
+
+      for (final SelectionKey key : selector.keys())
+        fail(key.channel(), (Handler) key.attachment(), cause);
+
+      try {
+        selector.close();
+      } catch (IOException e) {
+        LOG.warn("failed to close selector", e);
+      }
+    }
+
+    private void fail(SelectableChannel channel, Handler handler, IOException cause) {
+      try {
+        handler.failed(cause);
+      } finally {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          LOG.debug("failed to close channel " + channel, e);
+        }
+      }
+    }
+  }
+
+  private final String name;
+
+  private final int threadCount;
+
+  private final AtomicInteger nextThread = new AtomicInteger();
+
+  private volatile SelectorThread[] threads;
+
+  /**
+   * @param name the name prefix of the threads
+   * @param threadCount the number of threads
+   */
+  SelectorPool(String name, int threadCount) {
+    if (threadCount <= 0)
+      throw new IllegalArgumentException("invalid thread count: " + threadCount);
+
+    this.name = name;
+    this.threadCount = threadCount;
+  }
+
+  /**
+   * Starts the threads of the pool.
+   *
+   * @throws IOException if a selector could not be opened
+   */
+  synchronized void start() throws IOException {
+    if (threads != null) return;
+
+    final SelectorThread[] newThreads = new SelectorThread[threadCount];
+
+    try {
+      for (int i = 0; i < threadCount; i++) newThreads[i] = new SelectorThread(name + "-" + i);
+    } catch (IOException e) {
+      for (final SelectorThread thread : newThreads) if (thread != null) thread.closeAll();
+
+      throw e;
+    }
+
+    for (final SelectorThread thread : newThreads) thread.thread.start();
+
+    threads = newThreads;
+  }
+
+  /**
+   * Stops the threads of the pool. All channels that are registered with the pool are closed and
+   * their handlers are {@linkplain Handler#failed notified}.
+   */
+  synchronized void stop() {
+    if (threads == null) return;
+
+    for (final SelectorThread thread : threads) thread.stop();
+
+    threads = null;
+  }
+
+  /**
+   * Returns the thread the next channel should be registered with.
+   *
+   * @throws IOException if the pool is not started
+   */
+  SelectorThread next() throws IOException {
+    final SelectorThread[] currentThreads = threads;
+
+    if (currentThreads == null) throw new IOException("selector pool " + name + " is not started");
+
+    return currentThreads[(nextThread.getAndIncrement() & Integer.MAX_VALUE) % threadCount];
+  }
+}
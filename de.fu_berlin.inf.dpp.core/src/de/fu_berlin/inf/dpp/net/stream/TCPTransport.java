@@ -1,63 +1,594 @@
 package de.fu_berlin.inf.dpp.net.stream;
 
+import de.fu_berlin.inf.dpp.communication.extensions.TCPEndpointExtension;
 import de.fu_berlin.inf.dpp.net.internal.BinaryChannelConnection;
 import de.fu_berlin.inf.dpp.net.internal.IByteStreamConnection;
 import de.fu_berlin.inf.dpp.net.internal.IByteStreamConnectionListener;
+import de.fu_berlin.inf.dpp.net.util.NetworkingUtils;
 import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import de.fu_berlin.inf.dpp.util.NamedThreadFactory;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.Proxy;
-import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
 import org.jivesoftware.smack.Connection;
+import org.jivesoftware.smack.PacketListener;
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.Packet;
 
-// TODO rewrite IStreamService interface
-
+/**
+ * Stream service that establishes direct TCP connections. This is only useful if the peers are able
+ * to reach each other directly, e.g in on-premise deployments, and must therefore be {@linkplain
+ * #ENABLED enabled} explicitly.
+ *
+ * <p>The endpoint of a connection is negotiated over XMPP with a {@link TCPEndpointExtension}: the
+ * connecting side requests the endpoint, the remote side responds with the addresses and the port
+ * it accepts connections on and a one-time token. After the TCP connection is established the
+ * connecting side presents the token along with its JID, so the remote side knows which peer and
+ * which connection identifier the connection belongs to.
+ *
+ * <p>The connections use non-blocking socket channels. The I/O of all connections is performed by
+ * one shared {@linkplain SelectorPool pool of selector threads} and the data is buffered in pooled
+ * {@linkplain DirectBufferPool direct buffers}.
+ */
 public class TCPTransport implements IStreamService {
 
-  private volatile IByteStreamConnectionListener currentListener;
+  private static final Logger LOG = Logger.getLogger(TCPTransport.class);
+
+  /** Whether direct TCP connections should be used at all */
+  public static final boolean ENABLED = Boolean.getBoolean("de.fu_berlin.inf.dpp.net.tcp.ENABLED");
+
+  /** The port connections are accepted on, an ephemeral port is used by default */
+  private static final int PORT = Integer.getInteger("de.fu_berlin.inf.dpp.net.tcp.PORT", 0);
+
+  /**
+   * Comma separated list of the addresses that are announced to the peers, all non loopback
+   * addresses are announced by default
+   */
+  private static final String ADDRESSES =
+      System.getProperty("de.fu_berlin.inf.dpp.net.tcp.ADDRESSES");
+
+  private static final int SELECTOR_THREADS =
+      Math.max(
+          1,
+          Integer.getInteger(
+              "de.fu_berlin.inf.dpp.net.tcp.SELECTOR_THREADS",
+              Math.min(4, Runtime.getRuntime().availableProcessors())));
+
+  private static final int BUFFER_SIZE = 32 * 1024;
+
+  private static final int MAX_POOLED_BUFFERS = 256;
+
+  /** Timeout in milliseconds to wait for the endpoint of the remote side */
+  private static final int RESPONSE_TIMEOUT =
+      Integer.getInteger("de.fu_berlin.inf.dpp.net.tcp.RESPONSE_TIMEOUT", 10000);
+
+  /** Timeout in milliseconds to connect to one of the addresses of the remote side */
+  private static final int CONNECT_TIMEOUT =
+      Integer.getInteger("de.fu_berlin.inf.dpp.net.tcp.CONNECT_TIMEOUT", 5000);
+
+  /** Timeout in milliseconds for the handshake after the connection is established */
+  private static final int HANDSHAKE_TIMEOUT =
+      Integer.getInteger("de.fu_berlin.inf.dpp.net.tcp.HANDSHAKE_TIMEOUT", 10000);
+
+  /** Time in milliseconds a token can be presented after it was handed out */
+  private static final long TOKEN_TIMEOUT = 60000;
+
+  /** "SROS" */
+  private static final int HANDSHAKE_MAGIC = 0x53524F53;
+
+  private static final int HANDSHAKE_ACCEPTED = 1;
+
+  private static final int HANDSHAKE_REJECTED = 0;
+
+  private static final SecureRandom TOKEN_GENERATOR = new SecureRandom();
+
+  private static final class PendingAccept {
+    private final JID peer;
+    private final String connectionID;
+    private final long expirationTime;
+
+    private PendingAccept(JID peer, String connectionID, long expirationTime) {
+      this.peer = peer;
+      this.connectionID = connectionID;
+      this.expirationTime = expirationTime;
+    }
+  }
+
+  private static final class PendingRequest {
+    private final JID peer;
+    private final BlockingQueue<TCPEndpointExtension> response =
+        new ArrayBlockingQueue<TCPEndpointExtension>(1);
+
+    private PendingRequest(JID peer) {
+      this.peer = peer;
+    }
+  }
+
+  private final SelectorPool selectorPool =
+      new SelectorPool("TCP-Transport-Selector", SELECTOR_THREADS);
+
+  private final DirectBufferPool bufferPool = new DirectBufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+
+  /** Tokens that were handed out to the peers, guarded by this */
+  private final Map<String, PendingAccept> pendingAccepts = new HashMap<String, PendingAccept>();
+
+  private final Map<String, PendingRequest> pendingRequests =
+      new ConcurrentHashMap<String, PendingRequest>();
+
+  private volatile Connection connection;
+
+  private volatile IByteStreamConnectionListener connectionListener;
+
+  private volatile JID localAddress;
+
+  private ServerSocketChannel serverChannel;
+
+  private int serverPort;
+
+  private List<String> serverAddresses;
+
+  private ExecutorService handshakeExecutor;
+
+  private final PacketListener endpointListener =
+      new PacketListener() {
+
+        @Override
+        public void processPacket(Packet packet) {
+          final TCPEndpointExtension endpoint = TCPEndpointExtension.PROVIDER.getPayload(packet);
+
+          if (endpoint == null || packet.getFrom() == null) return;
+
+          final IQ.Type type = ((IQ) packet).getType();
+
+          if (type == IQ.Type.GET) {
+            handleEndpointRequest(new JID(packet.getFrom()), endpoint);
+            return;
+          }
+
+          if (type != IQ.Type.RESULT || endpoint.getRequestID() == null) return;
+
+          final PendingRequest request = pendingRequests.get(endpoint.getRequestID());
+
+          if (request != null && request.peer.strictlyEquals(new JID(packet.getFrom())))
+            request.response.offer(endpoint);
+        }
+      };
+
+  private final SelectorPool.Handler acceptHandler =
+      new SelectorPool.Handler() {
+
+        @Override
+        public void ready(SelectionKey key) throws IOException {
+          final ServerSocketChannel channel = (ServerSocketChannel) key.channel();
+
+          SocketChannel client;
+
+          while ((client = channel.accept()) != null) accepted(client);
+        }
+
+        @Override
+        public void failed(IOException cause) {
+          if (connection != null)
+            LOG.error("no longer accepting direct TCP connections: " + cause.getMessage(), cause);
+        }
+      };
 
   @Override
   public IByteStreamConnection connect(String connectionID, JID peer)
       throws IOException, InterruptedException {
 
-    if (true) throw new RuntimeException("NYI");
+    if (connectionID == null) throw new NullPointerException("connectionID is null");
 
-    // TODO this should be configurable;
+    if (peer == null) throw new NullPointerException("peer is null");
 
-    final Socket socket = new Socket(Proxy.NO_PROXY);
+    if (!isValidConnectionID(connectionID))
+      throw new IllegalArgumentException("invalid connectionID: " + connectionID);
 
-    final InetSocketAddress address = new InetSocketAddress("localhost", 4711);
+    final Connection currentConnection = connection;
+    final IByteStreamConnectionListener currentListener = connectionListener;
+    final JID currentLocalAddress = localAddress;
 
-    socket.connect(address, 30000);
-    socket.setTcpNoDelay(true);
+    if (currentConnection == null || currentListener == null)
+      throw new IOException(this + " is not initialized");
 
-    final IByteStreamConnectionListener listener = currentListener;
+    final TCPEndpointExtension endpoint = requestEndpoint(currentConnection, connectionID, peer);
 
-    if (listener == null) {
-      socket.close();
-      throw new IOException(this + " transport is not initialized");
-    }
+    if (endpoint.getAddresses().isEmpty())
+      throw new IOException(peer + " does not accept direct TCP connections");
+
+    IOException lastError = null;
+
+    for (final String address : endpoint.getAddresses()) {
+      final InetSocketAddress socketAddress = new InetSocketAddress(address, endpoint.getPort());
+
+      final NIOByteStream stream;
+
+      try {
+        stream = openStream(socketAddress, endpoint.getToken(), currentLocalAddress);
+      } catch (IOException e) {
+        if (Thread.interrupted()) throw new InterruptedException();
+
+        LOG.debug("failed to connect to " + peer + " via " + socketAddress + ": " + e.getMessage());
+        lastError = e;
+        continue;
+      }
 
-    final IByteStreamConnection connection =
-        new BinaryChannelConnection(
-            null, peer, connectionID, new TCPByteStream(socket), StreamMode.TCP, listener);
+      LOG.debug("established direct TCP connection to " + peer + " via " + socketAddress);
 
-    return connection;
+      try {
+        return new BinaryChannelConnection(
+            currentLocalAddress, peer, connectionID, stream, StreamMode.TCP, currentListener);
+      } catch (IOException e) {
+        closeQuietly(stream);
+        throw e;
+      }
+    }
+
+    throw new IOException(
+        "could not connect to " + peer + " via " + endpoint.getAddresses(), lastError);
   }
 
   @Override
-  public void initialize(Connection connection, IByteStreamConnectionListener listener) {
+  public synchronized void initialize(
+      Connection connection, IByteStreamConnectionListener listener) {
+
+    localAddress = new JID(connection.getUser());
+    connectionListener = listener;
+
+    handshakeExecutor =
+        Executors.newCachedThreadPool(new NamedThreadFactory("TCP-Transport-Handshake-"));
+
+    try {
+      selectorPool.start();
+      startServer();
+    } catch (IOException e) {
+      LOG.error("failed to accept direct TCP connections: " + e.getMessage(), e);
+    }
+
+    connection.addPacketListener(endpointListener, TCPEndpointExtension.PROVIDER.getIQFilter());
 
-    currentListener = listener;
+    this.connection = connection;
   }
 
   @Override
-  public void uninitialize() {
-    currentListener = null;
+  public synchronized void uninitialize() {
+    if (connection == null) return;
+
+    connection.removePacketListener(endpointListener);
+
+    connection = null;
+    connectionListener = null;
+
+    pendingAccepts.clear();
+
+    if (serverChannel != null) closeQuietly(serverChannel);
+
+    serverChannel = null;
+    serverAddresses = null;
+
+    handshakeExecutor.shutdownNow();
+    handshakeExecutor = null;
+
+    // closes all connections of this service
+    selectorPool.stop();
   }
 
   @Override
   public String toString() {
     return "TCP-Transport";
   }
+
+  /**
+   * Returns the port direct TCP connections are accepted on.
+   *
+   * @return the port or -1 if no connections are accepted
+   */
+  synchronized int getLocalPort() {
+    return serverChannel == null ? -1 : serverPort;
+  }
+
+  private void startServer() throws IOException {
+    final ServerSocketChannel channel = ServerSocketChannel.open();
+
+    try {
+      channel.socket().bind(new InetSocketAddress(PORT));
+      channel.configureBlocking(false);
+    } catch (IOException e) {
+      closeQuietly(channel);
+      throw e;
+    }
+
+    serverChannel = channel;
+    serverPort = channel.socket().getLocalPort();
+    serverAddresses = getAnnouncedAddresses();
+
+    selectorPool.next().register(channel, SelectionKey.OP_ACCEPT, acceptHandler);
+
+    LOG.info("accepting direct TCP connections on port " + serverPort + " via " + serverAddresses);
+  }
+
+  private TCPEndpointExtension requestEndpoint(
+      Connection currentConnection, String connectionID, JID peer)
+      throws IOException, InterruptedException {
+
+    final String requestID = createToken();
+    final PendingRequest request = new PendingRequest(peer);
+
+    pendingRequests.put(requestID, request);
+
+    try {
+      final IQ iq =
+          TCPEndpointExtension.PROVIDER.createIQ(new TCPEndpointExtension(requestID, connectionID));
+
+      iq.setType(IQ.Type.GET);
+      iq.setTo(peer.toString());
+
+      sendPacket(currentConnection, iq);
+
+      final TCPEndpointExtension endpoint =
+          request.response.poll(RESPONSE_TIMEOUT, TimeUnit.MILLISECONDS);
+
+      if (endpoint == null) throw new IOException("no direct TCP endpoint received from " + peer);
+
+      return endpoint;
+    } finally {
+      pendingRequests.remove(requestID);
+    }
+  }
+
+  private void handleEndpointRequest(JID peer, TCPEndpointExtension request) {
+    final String connectionID = request.getConnectionID();
+
+    final Connection currentConnection;
+    final TCPEndpointExtension response;
+
+    synchronized (this) {
+      currentConnection = connection;
+
+      if (currentConnection == null) return;
+
+      removeExpiredPendingAccepts();
+
+      if (serverChannel == null || connectionID == null || !isValidConnectionID(connectionID)) {
+        response = new TCPEndpointExtension(request.getRequestID(), connectionID, null, 0, null);
+      } else {
+        final String token = createToken();
+
+        pendingAccepts.put(
+            token,
+            new PendingAccept(peer, connectionID, System.currentTimeMillis() + TOKEN_TIMEOUT));
+
+        response =
+            new TCPEndpointExtension(
+                request.getRequestID(), connectionID, token, serverPort, serverAddresses);
+      }
+    }
+
+    final IQ iq = TCPEndpointExtension.PROVIDER.createIQ(response);
+
+    iq.setType(IQ.Type.RESULT);
+    iq.setTo(peer.toString());
+
+    try {
+      sendPacket(currentConnection, iq);
+    } catch (IOException e) {
+      LOG.error("could not send direct TCP endpoint to " + peer, e);
+    }
+  }
+
+  /** Called by the selector thread for every accepted connection. */
+  private void accepted(final SocketChannel client) {
+    final SocketAddress remoteAddress = client.socket().getRemoteSocketAddress();
+
+    final NIOByteStream stream;
+
+    try {
+      client.socket().setTcpNoDelay(true);
+      stream = new NIOByteStream(client, selectorPool, bufferPool);
+    } catch (IOException e) {
+      LOG.warn("failed to accept direct TCP connection from " + remoteAddress, e);
+      closeQuietly(client);
+      return;
+    }
+
+    final ExecutorService executor;
+
+    synchronized (this) {
+      executor = handshakeExecutor;
+    }
+
+    try {
+      if (executor == null) throw new RejectedExecutionException();
+
+      executor.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              acceptConnection(stream, remoteAddress);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      closeQuietly(stream);
+    }
+  }
+
+  private void acceptConnection(NIOByteStream stream, SocketAddress remoteAddress) {
+    final IByteStreamConnectionListener currentListener = connectionListener;
+    final JID currentLocalAddress = localAddress;
+
+    final PendingAccept pendingAccept;
+    final IByteStreamConnection connection;
+
+    try {
+      stream.setReadTimeout(HANDSHAKE_TIMEOUT);
+
+      final DataInputStream in = new DataInputStream(stream.getInputStream());
+      final OutputStream out = stream.getOutputStream();
+
+      if (in.readInt() != HANDSHAKE_MAGIC) throw new IOException("invalid handshake");
+
+      final String token = in.readUTF();
+      final String peer = in.readUTF();
+
+      synchronized (this) {
+        removeExpiredPendingAccepts();
+        pendingAccept = pendingAccepts.get(token);
+
+        if (pendingAccept != null && pendingAccept.peer.toString().equals(peer))
+          pendingAccepts.remove(token);
+      }
+
+      if (currentListener == null
+          || pendingAccept == null
+          || !pendingAccept.peer.toString().equals(peer)) {
+
+        LOG.warn(
+            "rejecting direct TCP connection from " + remoteAddress + " [" + peer + "]: bad token");
+
+        out.write(HANDSHAKE_REJECTED);
+        out.flush();
+        closeQuietly(stream);
+        return;
+      }
+
+      out.write(HANDSHAKE_ACCEPTED);
+      out.flush();
+
+      connection =
+          new BinaryChannelConnection(
+              currentLocalAddress,
+              pendingAccept.peer,
+              pendingAccept.connectionID,
+              stream,
+              StreamMode.TCP,
+              currentListener);
+
+    } catch (IOException e) {
+      LOG.warn("failed to accept direct TCP connection from " + remoteAddress, e);
+      closeQuietly(stream);
+      return;
+    }
+
+    LOG.debug(
+        "accepted direct TCP connection from " + pendingAccept.peer + " via " + remoteAddress);
+
+    currentListener.connectionChanged(pendingAccept.connectionID, connection, true);
+  }
+
+  private NIOByteStream openStream(InetSocketAddress address, String token, JID local)
+      throws IOException {
+
+    final SocketChannel channel = SocketChannel.open();
+
+    NIOByteStream stream = null;
+
+    try {
+      channel.socket().setTcpNoDelay(true);
+      channel.socket().connect(address, CONNECT_TIMEOUT);
+
+      stream = new NIOByteStream(channel, selectorPool, bufferPool);
+      stream.setReadTimeout(HANDSHAKE_TIMEOUT);
+
+      final DataOutputStream out = new DataOutputStream(stream.getOutputStream());
+
+      out.writeInt(HANDSHAKE_MAGIC);
+      out.writeUTF(token == null ? "" : token);
+      out.writeUTF(local.toString());
+      out.flush();
+
+      if (stream.getInputStream().read() != HANDSHAKE_ACCEPTED)
+        throw new IOException("connection was rejected by " + address);
+
+      return stream;
+    } catch (IOException e) {
+      if (stream != null) closeQuietly(stream);
+      else closeQuietly(channel);
+
+      throw e;
+    }
+  }
+
+  private void removeExpiredPendingAccepts() {
+    assert Thread.holdsLock(this);
+
+    final long now = System.currentTimeMillis();
+
+    for (final Iterator<PendingAccept> it = pendingAccepts.values().iterator(); it.hasNext(); )
+      if (it.next().expirationTime < now) it.remove();
+  }
+
+  private static List<String> getAnnouncedAddresses() {
+    final List<String> addresses = new ArrayList<String>();
+
+    if (ADDRESSES != null) {
+      for (final String address : ADDRESSES.split(","))
+        if (!address.trim().isEmpty()) addresses.add(address.trim());
+
+      return addresses;
+    }
+
+    for (final InetAddress address : NetworkingUtils.getAllNonLoopbackLocalIPAddresses(true))
+      addresses.add(address.getHostAddress());
+
+    // only local peers are able to connect
+    if (addresses.isEmpty()) addresses.add(InetAddress.getLoopbackAddress().getHostAddress());
+
+    return addresses;
+  }
+
+  private static boolean isValidConnectionID(String connectionID) {
+    return !connectionID.isEmpty()
+        && connectionID.indexOf(IStreamService.SESSION_ID_DELIMITER) == -1;
+  }
+
+  private static String createToken() {
+    return Long.toHexString(TOKEN_GENERATOR.nextLong());
+  }
+
+  private static void sendPacket(Connection connection, Packet packet) throws IOException {
+    try {
+      connection.sendPacket(packet);
+    } catch (RuntimeException e) {
+      // Smack throws an IllegalStateException if the connection is closed
+      throw new IOException("failed to send packet to " + packet.getTo(), e);
+    }
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      // ignore
+    }
+  }
+
+  private static void closeQuietly(NIOByteStream stream) {
+    try {
+      stream.close();
+    } catch (IOException e) {
+      // ignore
+    }
+  }
 }
@@ -0,0 +1,103 @@
+package de.fu_berlin.inf.dpp.session;
+
+import de.fu_berlin.inf.dpp.activities.FolderMovedActivity;
+import de.fu_berlin.inf.dpp.negotiation.hooks.ISessionNegotiationHook;
+import de.fu_berlin.inf.dpp.negotiation.hooks.SessionNegotiationHookManager;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import de.fu_berlin.inf.dpp.preferences.IPreferenceStore;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hook for negotiating whether a {@link User} is able to handle {@link FolderMovedActivity folder
+ * move activities}.
+ *
+ * <p>The host always supports them and replaces a folder move by the corresponding folder and file
+ * activities for every user that does not support them. Therefore a client may only send a folder
+ * move if the host supports it. Users of older Saros versions do not know this hook and are treated
+ * as not supporting folder moves.
+ */
+public class FolderMoveNegotiationHook implements ISessionNegotiationHook {
+  private static final String HOOK_IDENTIFIER = "folderMoveHook";
+  private static final String KEY_SUPPORTED = "folderMoveSupported";
+  private static final String KEY_CLIENT_SUPPORTED = "clientFolderMove";
+  private static final String KEY_HOST_SUPPORTED = "hostFolderMove";
+
+  /** Key of the boolean user property that tells whether the user supports folder moves */
+  public static final String KEY_FOLDER_MOVE = "folderMove";
+
+  /** Allows to disable folder moves for debugging purposes */
+  private static final boolean ENABLED =
+      Boolean.valueOf(
+          System.getProperty("de.fu_berlin.inf.dpp.session.FOLDER_MOVE_ENABLED", "true"));
+
+  public FolderMoveNegotiationHook(SessionNegotiationHookManager hookManager) {
+    hookManager.addHook(this);
+  }
+
+  /**
+   * Returns whether the given user is able to handle folder move activities.
+   *
+   * @param session the current session
+   * @param user a user of the session
+   * @return <code>true</code> if the user supports folder moves, <code>false</code> otherwise
+   */
+  public static boolean isSupported(ISarosSession session, User user) {
+    final IPreferenceStore properties = session.getUserProperties(user);
+    return properties != null && properties.getBoolean(KEY_FOLDER_MOVE);
+  }
+
+  /**
+   * Returns whether the local user may send folder move activities in the given session instead of
+   * an activity for every contained resource.
+   *
+   * @param session the current session
+   * @return <code>true</code> if the host of the session supports folder moves, <code>false
+   *     </code> otherwise
+   */
+  public static boolean canSendFolderMoves(ISarosSession session) {
+    return isSupported(session, session.getHost());
+  }
+
+  @Override
+  public String getIdentifier() {
+    return HOOK_IDENTIFIER;
+  }
+
+  @Override
+  public void setInitialHostPreferences(IPreferenceStore hostPreferences) {
+    hostPreferences.setValue(KEY_FOLDER_MOVE, ENABLED);
+  }
+
+  @Override
+  public Map<String, String> tellClientPreferences() {
+    return Collections.singletonMap(KEY_SUPPORTED, Boolean.toString(ENABLED));
+  }
+
+  @Override
+  public Map<String, String> considerClientPreferences(JID client, Map<String, String> input) {
+    final boolean supported =
+        ENABLED && input != null && Boolean.parseBoolean(input.get(KEY_SUPPORTED));
+
+    Map<String, String> defined = new HashMap<String, String>();
+    defined.put(KEY_CLIENT_SUPPORTED, Boolean.toString(supported));
+    defined.put(KEY_HOST_SUPPORTED, Boolean.toString(ENABLED));
+
+    return defined;
+  }
+
+  @Override
+  public void applyActualParameters(
+      Map<String, String> input,
+      IPreferenceStore hostPreferences,
+      IPreferenceStore clientPreferences) {
+
+    // an older host does not answer and is treated as not supporting folder moves
+    if (input == null) return;
+
+    hostPreferences.setValue(KEY_FOLDER_MOVE, Boolean.parseBoolean(input.get(KEY_HOST_SUPPORTED)));
+    clientPreferences.setValue(
+        KEY_FOLDER_MOVE, Boolean.parseBoolean(input.get(KEY_CLIENT_SUPPORTED)));
+  }
+}
@@ -7,6 +7,7 @@ import de.fu_berlin.inf.dpp.concurrent.watchdog.ConsistencyWatchdogHandler;
 import de.fu_berlin.inf.dpp.concurrent.watchdog.ConsistencyWatchdogServer;
 import de.fu_berlin.inf.dpp.editor.FollowModeManager;
 import de.fu_berlin.inf.dpp.editor.remote.UserEditorStateManager;
+import de.fu_berlin.inf.dpp.misc.binary.SessionReferenceResolver;
 import de.fu_berlin.inf.dpp.misc.xstream.SPathConverter;
 import de.fu_berlin.inf.dpp.misc.xstream.UserConverter;
 import de.fu_berlin.inf.dpp.session.internal.ActivityHandler;
@@ -55,6 +56,9 @@ public class SarosCoreSessionContextFactory implements ISarosSessionContextFacto
     container.addComponent(SPathConverter.class);
     container.addComponent(UserConverter.class);
 
+    // Session-dependent binary codec support
+    container.addComponent(SessionReferenceResolver.class);
+
     // Other
     container.addComponent(ActivityHandler.class);
     container.addComponent(ActivitySequencer.class);
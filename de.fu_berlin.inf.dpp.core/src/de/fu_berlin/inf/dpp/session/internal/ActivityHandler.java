@@ -2,23 +2,35 @@ package de.fu_berlin.inf.dpp.session.internal;
 
 import de.fu_berlin.inf.dpp.activities.ActivityOptimizer;
 import de.fu_berlin.inf.dpp.activities.ChecksumActivity;
+import de.fu_berlin.inf.dpp.activities.FolderMovedActivity;
 import de.fu_berlin.inf.dpp.activities.IActivity;
 import de.fu_berlin.inf.dpp.activities.IResourceActivity;
 import de.fu_berlin.inf.dpp.activities.ITargetedActivity;
 import de.fu_berlin.inf.dpp.activities.JupiterActivity;
 import de.fu_berlin.inf.dpp.activities.QueueItem;
+import de.fu_berlin.inf.dpp.activities.SPath;
+import de.fu_berlin.inf.dpp.activities.TextEditActivity;
+import de.fu_berlin.inf.dpp.activities.TextSelectionActivity;
+import de.fu_berlin.inf.dpp.activities.ViewportActivity;
 import de.fu_berlin.inf.dpp.concurrent.management.ConcurrentDocumentClient;
 import de.fu_berlin.inf.dpp.concurrent.management.ConcurrentDocumentServer;
 import de.fu_berlin.inf.dpp.concurrent.management.TransformationResult;
+import de.fu_berlin.inf.dpp.session.FolderMoveNegotiationHook;
 import de.fu_berlin.inf.dpp.session.IActivityHandlerCallback;
 import de.fu_berlin.inf.dpp.session.ISarosSession;
 import de.fu_berlin.inf.dpp.session.User;
 import de.fu_berlin.inf.dpp.synchronize.UISynchronizer;
+import de.fu_berlin.inf.dpp.util.NamedThreadFactory;
 import de.fu_berlin.inf.dpp.util.ThreadUtils;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Logger;
 import org.picocontainer.Startable;
 
@@ -53,6 +65,24 @@ public final class ActivityHandler implements Startable {
     DISPATCH_MODE = dispatchModeToUse;
   }
 
+  /**
+   * Number of threads which transform incoming activities on the host. If set to <code>0</code> all
+   * activities are transformed in the thread that receives them.
+   */
+  private static final int TRANSFORMATION_THREADS =
+      Math.max(
+          0,
+          Integer.getInteger(
+              "de.fu_berlin.inf.dpp.session.TRANSFORMATION_THREADS",
+              Runtime.getRuntime().availableProcessors()));
+
+  /**
+   * Time in milliseconds a local text edit is held back to merge it with further contiguous text
+   * edits of the local user. If set to <code>0</code> every text edit is sent immediately.
+   */
+  private static final long COALESCING_WINDOW =
+      Math.max(0, Long.getLong("de.fu_berlin.inf.dpp.session.TEXT_EDIT_COALESCING_WINDOW", 100));
+
   private final LinkedBlockingQueue<List<IActivity>> dispatchQueue =
       new LinkedBlockingQueue<List<IActivity>>();
 
@@ -66,6 +96,52 @@ public final class ActivityHandler implements Startable {
 
   private final UISynchronizer synchronizer;
 
+  private final int transformationThreads;
+
+  /**
+   * Transforms the activities of the different documents in parallel on the host, <code>null
+   * </code> if the activities are transformed in the receiving thread
+   */
+  private LaneExecutor transformationLanes;
+
+  private final long coalescingWindow;
+
+  /** Schedules the sending of held back text edits */
+  private ScheduledThreadPoolExecutor coalescingTimer;
+
+  /**
+   * The scheduled sending of the pending text edit, <code>null</code> if there is no pending text
+   * edit. Must only be accessed in the UI thread.
+   */
+  private ScheduledFuture<?> coalescingTimeout;
+
+  /**
+   * Counts the flushes of pending text edits, so a timeout that fired already can recognize whether
+   * it still belongs to the current pending text edit. Must only be accessed in the UI thread.
+   */
+  private int coalescingGeneration;
+
+  /**
+   * The merged local text edits which are not sent yet. Must only be accessed in the UI thread, as
+   * it has to be sent before any remote activity is transformed.
+   */
+  private TextEditActivity pendingTextEdit;
+
+  /**
+   * Selections and viewports of the local user which were made after the {@linkplain
+   * #pendingTextEdit pending text edit}, so they must not be sent before it. Must only be accessed
+   * in the UI thread.
+   */
+  private final List<IActivity> pendingActivities = new ArrayList<IActivity>();
+
+  private final Runnable flushPendingActivitiesRunnable =
+      new Runnable() {
+        @Override
+        public void run() {
+          flushPendingActivities();
+        }
+      };
+
   /*
    * We must use a thread for synchronous execution otherwise we would block
    * the DispatchThreadContext which handles the dispatching of all network
@@ -111,11 +187,31 @@ public final class ActivityHandler implements Startable {
       ConcurrentDocumentServer documentServer,
       ConcurrentDocumentClient documentClient,
       UISynchronizer synchronizer) {
+    this(
+        session,
+        callback,
+        documentServer,
+        documentClient,
+        synchronizer,
+        TRANSFORMATION_THREADS,
+        COALESCING_WINDOW);
+  }
+
+  ActivityHandler(
+      ISarosSession session,
+      IActivityHandlerCallback callback,
+      ConcurrentDocumentServer documentServer,
+      ConcurrentDocumentClient documentClient,
+      UISynchronizer synchronizer,
+      int transformationThreads,
+      long coalescingWindow) {
     this.session = session;
     this.callback = callback;
     this.documentServer = documentServer;
     this.documentClient = documentClient;
     this.synchronizer = synchronizer;
+    this.transformationThreads = transformationThreads;
+    this.coalescingWindow = coalescingWindow;
   }
 
   /**
@@ -133,16 +229,108 @@ public final class ActivityHandler implements Startable {
        * <p>This is where the server (or server-part of the host) receives activities. The Server
        * may transform activities again if necessary and afterward sends them to the correct
        * clients. (Note that the callback.send() methods get an actual list of recipients.)
+       *
+       * <p>The activities of each document are transformed in their own lane, so the documents do
+       * not have to wait for each other.
        */
-      TransformationResult result = directServerActivities(activities);
-      for (QueueItem item : result.getSendToPeers()) {
-        List<User> recipients = getRecipientsForQueueItem(item);
-        callback.send(recipients, item.activity);
+      if (transformationLanes == null) {
+        transformAndDistribute(activities);
+        return;
+      }
+
+      final Map<SPath, List<IActivity>> documentActivities =
+          new LinkedHashMap<SPath, List<IActivity>>();
+
+      for (final IActivity activity : activities) {
+        final SPath lane = getTransformationLane(activity);
+
+        if (lane != null) {
+          List<IActivity> laneActivities = documentActivities.get(lane);
+
+          if (laneActivities == null) {
+            laneActivities = new ArrayList<IActivity>();
+            documentActivities.put(lane, laneActivities);
+          }
+
+          laneActivities.add(activity);
+          continue;
+        }
+
+        submitTransformations(documentActivities);
+        documentActivities.clear();
+
+        awaitTransformations();
+        transformAndDistribute(Collections.singletonList(activity));
       }
 
-      activities = result.getLocalActivities();
+      submitTransformations(documentActivities);
+      return;
     }
 
+    dispatchLocally(activities);
+  }
+
+  /**
+   * Returns the lane in which the given activity is transformed on the host.
+   *
+   * <p>Only activities which solely concern a single document may overtake the activities of other
+   * documents. All other activities, e.g file or folder operations, are transformed after all
+   * previously received activities.
+   *
+   * @return the path of the document or <code>null</code> if the activity has to be transformed
+   *     after all previously received activities
+   */
+  private static SPath getTransformationLane(IActivity activity) {
+    if (activity instanceof JupiterActivity
+        || activity instanceof ChecksumActivity
+        || activity instanceof TextSelectionActivity
+        || activity instanceof ViewportActivity) return ((IResourceActivity) activity).getPath();
+
+    return null;
+  }
+
+  private void submitTransformations(Map<SPath, List<IActivity>> documentActivities) {
+    for (final Map.Entry<SPath, List<IActivity>> entry : documentActivities.entrySet()) {
+      final List<IActivity> laneActivities = entry.getValue();
+
+      transformationLanes.execute(
+          entry.getKey(),
+          new Runnable() {
+            @Override
+            public void run() {
+              transformAndDistribute(laneActivities);
+            }
+          });
+    }
+  }
+
+  private void awaitTransformations() {
+    try {
+      transformationLanes.awaitIdle();
+    } catch (InterruptedException e) {
+      LOG.warn("interrupted while waiting for pending transformations");
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Transforms the activities on the host, sends the results to the clients and dispatches the
+   * results for the local user.
+   *
+   * @param activities an <b>immutable</b> list containing the activities
+   */
+  private void transformAndDistribute(List<IActivity> activities) {
+    final TransformationResult result = directServerActivities(activities);
+
+    for (QueueItem item : result.getSendToPeers()) {
+      List<User> recipients = getRecipientsForQueueItem(item);
+      callback.send(recipients, item.activity);
+    }
+
+    dispatchLocally(result.getLocalActivities());
+  }
+
+  private void dispatchLocally(List<IActivity> activities) {
     /**
      * @JTourBusStop 9, Activity sending, Client Receiver:
      *
@@ -217,6 +405,9 @@ public final class ActivityHandler implements Startable {
      * located at the Host, this is why the only recipient of the result is the session's host.
      * Please note: The Host itself has both client and server part, so even his activities will be
      * "sent" to himself first.
+     *
+     * <p>Contiguous text edits, e.g. typed characters, are merged for a short time before they are
+     * transformed, so they only cause a single JupiterActivity.
      */
     synchronizer.syncExec(
         ThreadUtils.wrapSafe(
@@ -227,16 +418,106 @@ public final class ActivityHandler implements Startable {
               public void run() {
                 for (IActivity activity : activities) {
 
-                  IActivity transformationResult = documentClient.transformToJupiter(activity);
-
-                  callback.send(Collections.singletonList(session.getHost()), transformationResult);
+                  if (coalescingTimer == null) {
+                    transformAndSend(activity);
+                    continue;
+                  }
+
+                  if (activity instanceof TextEditActivity) {
+                    coalesce((TextEditActivity) activity);
+                  } else if (pendingTextEdit != null
+                      && (activity instanceof TextSelectionActivity
+                          || activity instanceof ViewportActivity)) {
+                    pendingActivities.add(activity);
+                  } else {
+                    flushPendingActivities();
+                    transformAndSend(activity);
+                  }
                 }
               }
             }));
   }
 
+  /** Merges the local text edit with the pending text edit. Must be called in the UI thread. */
+  private void coalesce(TextEditActivity textEdit) {
+    if (pendingTextEdit != null) {
+      final TextEditActivity merged = ActivityOptimizer.merge(pendingTextEdit, textEdit);
+
+      if (merged != null) {
+        pendingTextEdit = merged;
+        return;
+      }
+
+      flushPendingActivities();
+    }
+
+    pendingTextEdit = textEdit;
+
+    final int generation = coalescingGeneration;
+
+    final Runnable flushTimedOutActivities =
+        new Runnable() {
+          @Override
+          public void run() {
+            // the text edit this timeout was scheduled for was already sent
+            if (generation != coalescingGeneration) return;
+
+            flushPendingActivities();
+          }
+        };
+
+    coalescingTimeout =
+        coalescingTimer.schedule(
+            new Runnable() {
+              @Override
+              public void run() {
+                synchronizer.asyncExec(ThreadUtils.wrapSafe(LOG, flushTimedOutActivities));
+              }
+            },
+            coalescingWindow,
+            TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Sends the pending text edit followed by the activities made after it. Must be called in the UI
+   * thread.
+   */
+  private void flushPendingActivities() {
+    if (pendingTextEdit == null) return;
+
+    final TextEditActivity textEdit = pendingTextEdit;
+    pendingTextEdit = null;
+
+    coalescingTimeout.cancel(false);
+    coalescingTimeout = null;
+    coalescingGeneration++;
+
+    // the merged text edits may cancel each other out, e.g. typing and deleting a character
+    if (!textEdit.getText().isEmpty() || !textEdit.getReplacedText().isEmpty())
+      transformAndSend(textEdit);
+
+    for (final IActivity activity : ActivityOptimizer.optimize(pendingActivities))
+      transformAndSend(activity);
+
+    pendingActivities.clear();
+  }
+
+  private void transformAndSend(IActivity activity) {
+    IActivity transformationResult = documentClient.transformToJupiter(activity);
+
+    callback.send(Collections.singletonList(session.getHost()), transformationResult);
+  }
+
   @Override
   public void start() {
+    if (transformationThreads > 0)
+      transformationLanes = new LaneExecutor("dpp-activity-transformer-", transformationThreads);
+
+    if (coalescingWindow > 0)
+      coalescingTimer =
+          new ScheduledThreadPoolExecutor(
+              1, new NamedThreadFactory("dpp-activity-coalescer", false));
+
     if (DISPATCH_MODE == DISPATCH_MODE_ASYNC) return;
 
     dispatchThread =
@@ -245,6 +526,14 @@ public final class ActivityHandler implements Startable {
 
   @Override
   public void stop() {
+    if (coalescingTimer != null) {
+      // text edits that are still held back must reach the other users
+      synchronizer.syncExec(ThreadUtils.wrapSafe(LOG, flushPendingActivitiesRunnable));
+      coalescingTimer.shutdownNow();
+    }
+
+    if (transformationLanes != null) stopTransformationLanes();
+
     if (DISPATCH_MODE == DISPATCH_MODE_ASYNC) return;
 
     dispatchThread.interrupt();
@@ -260,6 +549,17 @@ public final class ActivityHandler implements Startable {
     if (dispatchThread.isAlive()) LOG.error(dispatchThread.getName() + " thread is still running");
   }
 
+  private void stopTransformationLanes() {
+    try {
+      if (!transformationLanes.shutdown(TIMEOUT))
+        LOG.error("activity transformer threads are still running");
+    } catch (InterruptedException e) {
+      LOG.warn("interrupted while waiting for activity transformer threads to terminate");
+
+      Thread.currentThread().interrupt();
+    }
+  }
+
   /**
    * Executes the current activities by dispatching the received activities to the SWT EDT.
    *
@@ -310,6 +610,12 @@ public final class ActivityHandler implements Startable {
           @Override
           public void run() {
 
+            /*
+             * the remote activities must be transformed against all
+             * local text edits which were already executed
+             */
+            flushPendingActivities();
+
             for (IActivity activity : optimizedActivities) {
 
               User source = activity.getSource();
@@ -341,6 +647,15 @@ public final class ActivityHandler implements Startable {
                   LOG.error("failed to execute activity: " + activity, e);
                 }
               }
+
+              /*
+               * inform the host about the processed operations if we are
+               * only reading, so it can release them
+               */
+              final IActivity acknowledgement = documentClient.generateAcknowledgement(activity);
+
+              if (acknowledgement != null)
+                callback.send(Collections.singletonList(session.getHost()), acknowledgement);
             }
           }
         };
@@ -398,7 +713,10 @@ public final class ActivityHandler implements Startable {
             receivers.add(user);
           }
         }
-        result.add(new QueueItem(receivers, activity));
+
+        if (activity instanceof FolderMovedActivity)
+          directFolderMove(result, receivers, (FolderMovedActivity) activity);
+        else result.add(new QueueItem(receivers, activity));
 
         /*
          * should we really execute an activity from a user that is
@@ -410,4 +728,30 @@ public final class ActivityHandler implements Startable {
     }
     return result;
   }
+
+  /**
+   * Directs the folder move to all receivers supporting it. All other receivers get the folder and
+   * file activities replicating the move instead.
+   */
+  private void directFolderMove(
+      TransformationResult result, List<User> receivers, FolderMovedActivity activity) {
+
+    final List<User> folderMoveReceivers = new ArrayList<User>();
+    final List<User> fallbackReceivers = new ArrayList<User>();
+
+    for (User user : receivers) {
+      if (user.isLocal() || FolderMoveNegotiationHook.isSupported(session, user))
+        folderMoveReceivers.add(user);
+      else fallbackReceivers.add(user);
+    }
+
+    if (!fallbackReceivers.isEmpty()) {
+      LOG.debug("replacing folder move for users not supporting it: " + fallbackReceivers);
+
+      for (IActivity fallback : FolderMoveFallback.createActivities(activity))
+        result.add(new QueueItem(fallbackReceivers, fallback));
+    }
+
+    if (!folderMoveReceivers.isEmpty()) result.add(new QueueItem(folderMoveReceivers, activity));
+  }
 }
@@ -23,6 +23,8 @@ import de.fu_berlin.inf.dpp.activities.ActivityOptimizer;
 import de.fu_berlin.inf.dpp.activities.FileActivity;
 import de.fu_berlin.inf.dpp.activities.IActivity;
 import de.fu_berlin.inf.dpp.communication.extensions.ActivitiesExtension;
+import de.fu_berlin.inf.dpp.communication.extensions.FileContentExtension;
+import de.fu_berlin.inf.dpp.misc.binary.BinaryCodecManager;
 import de.fu_berlin.inf.dpp.net.DispatchThreadContext;
 import de.fu_berlin.inf.dpp.net.IReceiver;
 import de.fu_berlin.inf.dpp.net.ITransmitter;
@@ -50,6 +52,9 @@ import org.picocontainer.Startable;
  * The ActivitySequencer is responsible for making sure that transformed {@linkplain IActivity
  * activities} are sent and received in the right order.
  *
+ * <p>The content of large {@linkplain FileActivity file activities} is transferred separately by a
+ * {@link FileContentChannel} whenever there are no pending activities to send.
+ *
  * @author rdjemili
  * @author coezbek
  * @author marrin
@@ -64,6 +69,12 @@ public class ActivitySequencer implements Startable {
   /** Sequence numbers for outgoing and incoming activities start with this value. */
   private static final int FIRST_SEQUENCE_NUMBER = 0;
 
+  /** Upper bound in bytes for the approximated size of the activities marshalled at once. */
+  private static final int MAX_MARSHALLED_SIZE = 256 * 1024; // 256 kB
+
+  /** Approximated size in bytes of every activity besides the content of file activities. */
+  private static final int MIN_ACTIVITY_SIZE = 512; // bytes
+
   private static class SequencedActivities {
     private final int sequenceNumber;
     private final List<IActivity> activites;
@@ -98,6 +109,15 @@ public class ActivitySequencer implements Startable {
         }
       };
 
+  private final PacketListener fileContentPacketListener =
+      new PacketListener() {
+
+        @Override
+        public void processPacket(Packet packet) {
+          receiveFileContent(packet);
+        }
+      };
+
   private final Runnable activitySender =
       new Runnable() {
 
@@ -110,6 +130,8 @@ public class ActivitySequencer implements Startable {
           while (true) {
             activitiesToSend.clear();
 
+            FileContentChannel.Chunk chunk = null;
+
             synchronized (bufferedOutgoingActivities) {
               if (stopSending) return;
 
@@ -133,7 +155,20 @@ public class ActivitySequencer implements Startable {
                     new SequencedActivities(optimizedActivities, currentSequenceNumber));
               }
 
-              if (activitiesToSend.isEmpty()) {
+              /*
+               * file contents are only sent if there are no pending
+               * activities, so activities never have to wait for more than
+               * one chunk
+               */
+              if (activitiesToSend.isEmpty()) chunk = contentChannel.nextChunk();
+
+              if (chunk != null) {
+                ActivityBuffer<IActivity> buffer = bufferedOutgoingActivities.get(chunk.recipient);
+
+                if (buffer != null) buffer.isInTransmission = true;
+              }
+
+              if (activitiesToSend.isEmpty() && chunk == null) {
                 try {
                   bufferedOutgoingActivities.wait();
                   continue send;
@@ -143,9 +178,9 @@ public class ActivitySequencer implements Startable {
               }
             }
 
-            for (Entry<JID, SequencedActivities> e : activitiesToSend.entrySet()) {
-              sendActivities(e.getKey(), e.getValue().activites, e.getValue().sequenceNumber);
-            }
+            sendActivities(activitiesToSend);
+
+            if (chunk != null) sendFileContent(chunk.recipient, chunk.extension);
 
             synchronized (bufferedOutgoingActivities) {
               for (Entry<JID, ActivityBuffer<IActivity>> entry :
@@ -187,17 +222,33 @@ public class ActivitySequencer implements Startable {
 
   private final Map<JID, ActivityBuffer<IActivity>> bufferedOutgoingActivities;
 
+  private final FileContentChannel contentChannel;
+
   public ActivitySequencer(
       final ISarosSession sarosSession,
       final ITransmitter transmitter,
       final IReceiver receiver,
       final DispatchThreadContext threadContext) {
+    this(sarosSession, transmitter, receiver, threadContext, null);
+  }
+
+  /**
+   * @param codecManager the codec manager to look up if the content of file activities can be
+   *     transferred separately or <code>null</code> to always include the content in the activities
+   */
+  public ActivitySequencer(
+      final ISarosSession sarosSession,
+      final ITransmitter transmitter,
+      final IReceiver receiver,
+      final DispatchThreadContext threadContext,
+      final BinaryCodecManager codecManager) {
 
     this.dispatchThread = threadContext;
     this.sarosSession = sarosSession;
     this.transmitter = transmitter;
     this.receiver = receiver;
     this.currentSessionID = sarosSession.getID();
+    this.contentChannel = new FileContentChannel(currentSessionID, codecManager);
 
     this.bufferedIncomingActivities = new HashMap<JID, ActivityBuffer<IActivity>>();
     this.bufferedOutgoingActivities = new HashMap<JID, ActivityBuffer<IActivity>>();
@@ -249,6 +300,9 @@ public class ActivitySequencer implements Startable {
     receiver.addPacketListener(
         activitiesPacketListener, ActivitiesExtension.PROVIDER.getPacketFilter(currentSessionID));
 
+    receiver.addPacketListener(
+        fileContentPacketListener, FileContentExtension.PROVIDER.getPacketFilter(currentSessionID));
+
     activitySendThread = ThreadUtils.runSafeAsync("dpp-activity-sender", LOG, activitySender);
   }
 
@@ -271,6 +325,7 @@ public class ActivitySequencer implements Startable {
     }
 
     receiver.removePacketListener(activitiesPacketListener);
+    receiver.removePacketListener(fileContentPacketListener);
 
     synchronized (bufferedOutgoingActivities) {
       stopSending = true;
@@ -300,6 +355,8 @@ public class ActivitySequencer implements Startable {
       bufferedIncomingActivities.clear();
     }
 
+    contentChannel.clear();
+
     activitySendThread = null;
 
     if (isStoppingInterrupted) Thread.currentThread().interrupt();
@@ -339,7 +396,10 @@ public class ActivitySequencer implements Startable {
       return;
     }
 
-    sarosSession.exec(activities);
+    final List<IActivity> executableActivities =
+        contentChannel.receiveActivities(sender, activities);
+
+    if (!executableActivities.isEmpty()) sarosSession.exec(executableActivities);
   }
 
   /** Sends an activity to the given recipients. */
@@ -418,8 +478,8 @@ public class ActivitySequencer implements Startable {
   }
 
   /**
-   * Waits until all buffered activities for the specific user are sent. Calling {@link
-   * #sendActivity} at the same time may or may not ignore those new activities.
+   * Waits until all buffered activities and file contents for the specific user are sent. Calling
+   * {@link #sendActivity} at the same time may or may not ignore those new activities.
    *
    * @param user
    */
@@ -429,7 +489,10 @@ public class ActivitySequencer implements Startable {
       while (true) {
         ActivityBuffer<IActivity> buffer = bufferedOutgoingActivities.get(user.getJID());
 
-        if (buffer == null || (buffer.activities.size() == 0 && !buffer.isInTransmission)) break;
+        if (buffer == null
+            || (buffer.activities.size() == 0
+                && !buffer.isInTransmission
+                && !contentChannel.hasPendingContent(user.getJID()))) break;
 
         try {
           bufferedOutgoingActivities.wait();
@@ -456,6 +519,56 @@ public class ActivitySequencer implements Startable {
     synchronized (bufferedIncomingActivities) {
       bufferedIncomingActivities.put(jid, null);
     }
+
+    contentChannel.removeUser(jid);
+  }
+
+  /**
+   * Sends the given activities to their recipients. Recipients which are about to receive exactly
+   * the same activities are served by one multicast so the activities are only marshalled once.
+   * This requires that the recipients are able to receive their sequence number in the packet
+   * header and that there are no file activities as their content is handled per recipient.
+   */
+  private void sendActivities(final Map<JID, SequencedActivities> activitiesToSend) {
+
+    final List<JID> multicastRecipients = new ArrayList<JID>();
+
+    for (Entry<JID, SequencedActivities> entry : activitiesToSend.entrySet()) {
+      final JID recipient = entry.getKey();
+      final SequencedActivities sequencedActivities = entry.getValue();
+
+      if (activitiesToSend.size() > 1
+          && transmitter.supportsSequenceNumbers(recipient)
+          && !containsFileActivity(sequencedActivities.activites)) {
+        multicastRecipients.add(recipient);
+        continue;
+      }
+
+      sendActivities(recipient, sequencedActivities.activites, sequencedActivities.sequenceNumber);
+    }
+
+    while (!multicastRecipients.isEmpty()) {
+      final JID recipient = multicastRecipients.remove(multicastRecipients.size() - 1);
+      final SequencedActivities sequencedActivities = activitiesToSend.get(recipient);
+
+      final Map<JID, Integer> sequenceNumbers = new HashMap<JID, Integer>();
+      sequenceNumbers.put(recipient, sequencedActivities.sequenceNumber);
+
+      for (final Iterator<JID> it = multicastRecipients.iterator(); it.hasNext(); ) {
+        final JID other = it.next();
+        final SequencedActivities otherActivities = activitiesToSend.get(other);
+
+        if (!isSame(sequencedActivities.activites, otherActivities.activites)) continue;
+
+        sequenceNumbers.put(other, otherActivities.sequenceNumber);
+        it.remove();
+      }
+
+      if (sequenceNumbers.size() == 1)
+        sendActivities(
+            recipient, sequencedActivities.activites, sequencedActivities.sequenceNumber);
+      else sendActivities(sequenceNumbers, sequencedActivities.activites);
+    }
   }
 
   private void sendActivities(JID recipient, List<IActivity> activities, int sequenceNumber) {
@@ -476,8 +589,6 @@ public class ActivitySequencer implements Startable {
      * how large a file activity is.
      */
 
-    final int maxFileActivitySize = 256 * 1024; // 256 kB
-    final int minActivitySize = 512; // bytes
     int currentFileActivitySize = 0;
 
     final List<IActivity> activitiesToMarshall = new ArrayList<IActivity>();
@@ -485,7 +596,7 @@ public class ActivitySequencer implements Startable {
 
     while (it.hasNext()) {
 
-      final IActivity activity = it.next();
+      final IActivity activity = contentChannel.offer(recipient, it.next());
 
       if (activity instanceof FileActivity) {
         final byte[] fileContent = ((FileActivity) (activity)).getContent();
@@ -493,11 +604,11 @@ public class ActivitySequencer implements Startable {
         if (fileContent != null) currentFileActivitySize += fileContent.length;
       }
 
-      currentFileActivitySize += minActivitySize;
+      currentFileActivitySize += MIN_ACTIVITY_SIZE;
 
       activitiesToMarshall.add(activity);
 
-      if (it.hasNext() && currentFileActivitySize < maxFileActivitySize) continue;
+      if (it.hasNext() && currentFileActivitySize < MAX_MARSHALLED_SIZE) continue;
 
       final PacketExtension activityPacketExtension =
           ActivitiesExtension.PROVIDER.create(
@@ -537,6 +648,132 @@ public class ActivitySequencer implements Startable {
     }
   }
 
+  /**
+   * Multicasts the given activities. The given sequence numbers are updated while sending and
+   * recipients the activities could not be sent to are removed.
+   */
+  private void sendActivities(
+      final Map<JID, Integer> sequenceNumbers, final List<IActivity> activities) {
+
+    final int maxActivities = MAX_MARSHALLED_SIZE / MIN_ACTIVITY_SIZE;
+
+    for (int offset = 0;
+        offset < activities.size() && !sequenceNumbers.isEmpty();
+        offset += maxActivities) {
+
+      final List<IActivity> activitiesToMarshall =
+          activities.subList(offset, Math.min(activities.size(), offset + maxActivities));
+
+      // the sequence number of every recipient is part of the packet header
+      final PacketExtension activityPacketExtension =
+          ActivitiesExtension.PROVIDER.create(
+              new ActivitiesExtension(
+                  currentSessionID, activitiesToMarshall, FIRST_SEQUENCE_NUMBER));
+
+      if (LOG.isTraceEnabled()) {
+        LOG.trace(
+            "send ("
+                + String.format("%03d", activitiesToMarshall.size())
+                + ") "
+                + sequenceNumbers.keySet()
+                + " -> "
+                + activitiesToMarshall);
+      } else if (LOG.isDebugEnabled()) {
+        LOG.debug(
+            "send ("
+                + String.format("%03d", activitiesToMarshall.size())
+                + ") "
+                + sequenceNumbers.keySet());
+      }
+
+      final Map<JID, IOException> errors =
+          transmitter.send(
+              ISarosSession.SESSION_CONNECTION_ID, sequenceNumbers, activityPacketExtension);
+
+      for (Entry<JID, IOException> error : errors.entrySet()) {
+        final JID recipient = error.getKey();
+
+        LOG.error(
+            "failed to sent activities to " + recipient + ": " + activities, error.getValue());
+
+        sequenceNumbers.remove(recipient);
+        unregisterUser(recipient);
+        notifyTransmissionError(recipient);
+      }
+
+      for (Entry<JID, Integer> entry : sequenceNumbers.entrySet())
+        entry.setValue(entry.getValue() + activitiesToMarshall.size());
+    }
+  }
+
+  private static boolean containsFileActivity(final List<IActivity> activities) {
+    for (final IActivity activity : activities) if (activity instanceof FileActivity) return true;
+
+    return false;
+  }
+
+  /** Returns whether both lists contain the identical activities in the same order. */
+  private static boolean isSame(final List<IActivity> a, final List<IActivity> b) {
+    if (a.size() != b.size()) return false;
+
+    final Iterator<IActivity> itA = a.iterator();
+    final Iterator<IActivity> itB = b.iterator();
+
+    while (itA.hasNext()) if (itA.next() != itB.next()) return false;
+
+    return true;
+  }
+
+  private void sendFileContent(JID recipient, FileContentExtension chunk) {
+    if (LOG.isTraceEnabled())
+      LOG.trace(
+          "send file content "
+              + chunk.getReference()
+              + " ["
+              + chunk.getOffset()
+              + "/"
+              + chunk.getLength()
+              + "] "
+              + recipient);
+
+    try {
+      transmitter.send(
+          ISarosSession.SESSION_CONNECTION_ID,
+          recipient,
+          FileContentExtension.PROVIDER.create(chunk));
+    } catch (IOException e) {
+      LOG.error("failed to sent file content " + chunk.getReference(), e);
+
+      unregisterUser(recipient);
+      notifyTransmissionError(recipient);
+    }
+  }
+
+  private void receiveFileContent(Packet contentPacket) {
+    FileContentExtension payload = FileContentExtension.PROVIDER.getPayload(contentPacket);
+
+    if (payload == null) {
+      LOG.warn("file content packet payload is corrupted");
+      return;
+    }
+
+    JID from = new JID(contentPacket.getFrom());
+
+    synchronized (bufferedIncomingActivities) {
+      if (bufferedIncomingActivities.get(from) == null) {
+        LOG.warn(
+            "dropping received file content from "
+                + from
+                + " because it is currently not registered");
+        return;
+      }
+    }
+
+    List<IActivity> activities = contentChannel.receiveContent(from, payload);
+
+    if (!activities.isEmpty()) sarosSession.exec(activities);
+  }
+
   private void receiveActivities(Packet activityPacket) {
 
     /* *
@@ -574,7 +811,15 @@ public class ActivitySequencer implements Startable {
       LOG.debug("rcvd (" + String.format("%03d", activities.size()) + ") " + from);
     }
 
-    executeActivities(from, activities, payload.getSequenceNumber());
+    int sequenceNumber = payload.getSequenceNumber();
+
+    // multicast activities carry the sequence number of the recipient in the packet header
+    final Object headerSequenceNumber =
+        activityPacket.getProperty(ITransmitter.SEQUENCE_NUMBER_PROPERTY);
+
+    if (headerSequenceNumber instanceof Integer) sequenceNumber = (Integer) headerSequenceNumber;
+
+    executeActivities(from, activities, sequenceNumber);
   }
 
   /**
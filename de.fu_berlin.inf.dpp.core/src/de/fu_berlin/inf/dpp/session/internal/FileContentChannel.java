@@ -0,0 +1,391 @@
+package de.fu_berlin.inf.dpp.session.internal;
+
+import de.fu_berlin.inf.dpp.activities.FileActivity;
+import de.fu_berlin.inf.dpp.activities.IActivity;
+import de.fu_berlin.inf.dpp.activities.IFileSystemModificationActivity;
+import de.fu_berlin.inf.dpp.activities.IResourceActivity;
+import de.fu_berlin.inf.dpp.activities.SPath;
+import de.fu_berlin.inf.dpp.communication.extensions.FileContentExtension;
+import de.fu_berlin.inf.dpp.misc.binary.BinaryCodecManager;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Adler32;
+import org.apache.log4j.Logger;
+
+/**
+ * Transfers the content of large {@linkplain FileActivity file activities} separately from the
+ * activities themselves.
+ *
+ * <p>On the sending side the content of such an activity is replaced by a reference and the
+ * checksum of the content. The content is split into chunks which are sent as {@linkplain
+ * FileContentExtension raw binary packets} by the activity sender of the {@link ActivitySequencer}
+ * only if there are no pending activities for the recipient. So saving a large file does not delay
+ * the activities that are sent afterwards, e.g the Jupiter activities of concurrent edits. The
+ * content is only transferred separately if the recipient supports the binary codec of the {@link
+ * FileContentExtension}.
+ *
+ * <p>On the receiving side a file activity is held back until its content was received completely
+ * and verified. All activities received afterwards are held back as well, except activities
+ * concerning the editors of other files which are not affected by the held activities.
+ *
+ * <p>This class is thread safe.
+ */
+final class FileContentChannel {
+
+  private static final Logger LOG = Logger.getLogger(FileContentChannel.class);
+
+  /** Minimum size in bytes of a file content that is transferred separately */
+  static final int CONTENT_THRESHOLD =
+      Math.max(
+          1, Integer.getInteger("de.fu_berlin.inf.dpp.session.FILE_CONTENT_THRESHOLD", 64 * 1024));
+
+  /** Size in bytes of the chunks a separately transferred content is split into */
+  static final int CHUNK_SIZE =
+      Math.max(
+          1, Integer.getInteger("de.fu_berlin.inf.dpp.session.FILE_CONTENT_CHUNK_SIZE", 16 * 1024));
+
+  /** A chunk that has to be sent to a recipient. */
+  static final class Chunk {
+    final JID recipient;
+    final FileContentExtension extension;
+
+    private Chunk(JID recipient, FileContentExtension extension) {
+      this.recipient = recipient;
+      this.extension = extension;
+    }
+  }
+
+  private static final class OutgoingContent {
+    private final String reference;
+    private final byte[] content;
+    private int offset;
+
+    private OutgoingContent(String reference, byte[] content) {
+      this.reference = reference;
+      this.content = content;
+    }
+  }
+
+  private static final class IncomingContent {
+    private final byte[] content;
+    private int received;
+    private boolean corrupted;
+
+    private IncomingContent(int length) {
+      content = new byte[length];
+    }
+
+    private boolean isComplete() {
+      return corrupted || received == content.length;
+    }
+  }
+
+  private final String sessionID;
+
+  private final BinaryCodecManager codecManager;
+
+  /** Contents that are not sent completely yet, the recipients are served round robin */
+  private final Map<JID, Deque<OutgoingContent>> outgoingContents =
+      new LinkedHashMap<JID, Deque<OutgoingContent>>();
+
+  private final Map<JID, Map<String, IncomingContent>> incomingContents =
+      new HashMap<JID, Map<String, IncomingContent>>();
+
+  /** Activities that wait for the content of a preceding file activity */
+  private final Map<JID, Deque<IActivity>> heldActivities = new HashMap<JID, Deque<IActivity>>();
+
+  private int nextReference;
+
+  /**
+   * @param sessionID the id of the current session
+   * @param codecManager the codec manager to look up if a recipient supports separately transferred
+   *     contents or <code>null</code> to always include the content in the activity
+   */
+  FileContentChannel(String sessionID, BinaryCodecManager codecManager) {
+    this.sessionID = sessionID;
+    this.codecManager = codecManager;
+  }
+
+  /**
+   * Returns the activity that has to be sent to the recipient instead of the given activity. If the
+   * content of the activity is transferred separately its chunks are queued for {@link
+   * #nextChunk()}.
+   *
+   * @param recipient the recipient of the activity
+   * @param activity the activity to send
+   * @return a copy of the activity which only references its content or the activity itself
+   */
+  synchronized IActivity offer(JID recipient, IActivity activity) {
+    if (codecManager == null || !(activity instanceof FileActivity)) return activity;
+
+    final FileActivity fileActivity = (FileActivity) activity;
+    final byte[] content = fileActivity.getContent();
+
+    if (content == null || content.length < CONTENT_THRESHOLD) return activity;
+
+    if (!codecManager.getRemoteCodecs(recipient).contains(FileContentExtension.CODEC.getName()))
+      return activity;
+
+    final String reference = Integer.toString(nextReference++);
+
+    Deque<OutgoingContent> contents = outgoingContents.get(recipient);
+
+    if (contents == null) {
+      contents = new ArrayDeque<OutgoingContent>();
+      outgoingContents.put(recipient, contents);
+    }
+
+    contents.add(new OutgoingContent(reference, content));
+
+    return fileActivity.withContentReference(reference, checksum(content));
+  }
+
+  /**
+   * Returns the next chunk that has to be sent. The chunks of different recipients are returned
+   * alternately.
+   *
+   * @return the next chunk or <code>null</code> if there are no contents to send
+   */
+  synchronized Chunk nextChunk() {
+    final Iterator<Map.Entry<JID, Deque<OutgoingContent>>> it =
+        outgoingContents.entrySet().iterator();
+
+    if (!it.hasNext()) return null;
+
+    final Map.Entry<JID, Deque<OutgoingContent>> entry = it.next();
+    final JID recipient = entry.getKey();
+    final Deque<OutgoingContent> contents = entry.getValue();
+
+    final OutgoingContent content = contents.peek();
+
+    final int offset = content.offset;
+    final int length = Math.min(CHUNK_SIZE, content.content.length - offset);
+
+    content.offset += length;
+
+    if (content.offset == content.content.length) contents.poll();
+
+    // move the recipient to the end of the round
+    it.remove();
+
+    if (!contents.isEmpty()) outgoingContents.put(recipient, contents);
+
+    return new Chunk(
+        recipient,
+        new FileContentExtension(
+            sessionID,
+            content.reference,
+            content.content.length,
+            offset,
+            Arrays.copyOfRange(content.content, offset, offset + length)));
+  }
+
+  /** Returns whether there are contents that are not sent completely to the given recipient. */
+  synchronized boolean hasPendingContent(JID recipient) {
+    return outgoingContents.containsKey(recipient);
+  }
+
+  /**
+   * Processes the received activities of the given sender.
+   *
+   * @param sender the sender of the activities
+   * @param activities the received activities in the order they were sent
+   * @return the activities that can be executed now in the order they have to be executed
+   */
+  synchronized List<IActivity> receiveActivities(JID sender, List<IActivity> activities) {
+    Deque<IActivity> held = heldActivities.get(sender);
+
+    final List<IActivity> result = new ArrayList<IActivity>(activities.size());
+
+    for (final IActivity activity : activities) {
+      if (held != null) {
+        if (canOvertake(held, activity)) result.add(activity);
+        else held.add(activity);
+
+        continue;
+      }
+
+      if (!isContentMissing(sender, activity)) {
+        addResolved(sender, activity, result);
+        continue;
+      }
+
+      held = new ArrayDeque<IActivity>();
+      held.add(activity);
+      heldActivities.put(sender, held);
+    }
+
+    return result;
+  }
+
+  /**
+   * Processes a received chunk of a file content.
+   *
+   * @param sender the sender of the chunk
+   * @param chunk the received chunk
+   * @return the held activities that can be executed now in the order they have to be executed
+   */
+  synchronized List<IActivity> receiveContent(JID sender, FileContentExtension chunk) {
+    Map<String, IncomingContent> contents = incomingContents.get(sender);
+
+    if (contents == null) {
+      contents = new HashMap<String, IncomingContent>();
+      incomingContents.put(sender, contents);
+    }
+
+    IncomingContent content = contents.get(chunk.getReference());
+
+    if (content == null) {
+      content = new IncomingContent(chunk.getLength());
+      contents.put(chunk.getReference(), content);
+    }
+
+    final byte[] data = chunk.getData();
+
+    if (chunk.getLength() != content.content.length
+        || chunk.getOffset() != content.received
+        || data.length > content.content.length - content.received) {
+
+      LOG.error(
+          "received corrupted chunk of file content "
+              + chunk.getReference()
+              + " from "
+              + sender
+              + ": length="
+              + chunk.getLength()
+              + ", offset="
+              + chunk.getOffset()
+              + ", size="
+              + data.length
+              + ", received="
+              + content.received);
+
+      // the activity is discarded instead of holding back all following activities forever
+      content.corrupted = true;
+      return releaseHeldActivities(sender);
+    }
+
+    System.arraycopy(data, 0, content.content, content.received, data.length);
+    content.received += data.length;
+
+    if (!content.isComplete()) return Collections.emptyList();
+
+    return releaseHeldActivities(sender);
+  }
+
+  /** Discards all pending contents and held activities of the given user. */
+  synchronized void removeUser(JID jid) {
+    outgoingContents.remove(jid);
+    incomingContents.remove(jid);
+    heldActivities.remove(jid);
+  }
+
+  /** Discards all pending contents and held activities. */
+  synchronized void clear() {
+    outgoingContents.clear();
+    incomingContents.clear();
+    heldActivities.clear();
+  }
+
+  private List<IActivity> releaseHeldActivities(JID sender) {
+    final Deque<IActivity> held = heldActivities.get(sender);
+
+    if (held == null) return Collections.emptyList();
+
+    final List<IActivity> result = new ArrayList<IActivity>();
+
+    while (!held.isEmpty() && !isContentMissing(sender, held.peek()))
+      addResolved(sender, held.poll(), result);
+
+    if (held.isEmpty()) heldActivities.remove(sender);
+
+    return result;
+  }
+
+  private boolean isContentMissing(JID sender, IActivity activity) {
+    final String reference = getContentReference(activity);
+
+    if (reference == null) return false;
+
+    final Map<String, IncomingContent> contents = incomingContents.get(sender);
+
+    if (contents == null) return true;
+
+    final IncomingContent content = contents.get(reference);
+
+    return content == null || !content.isComplete();
+  }
+
+  /**
+   * Adds the activity to the result. The content of a file activity is replaced by the received
+   * content, the activity is discarded if the content is corrupted.
+   */
+  private void addResolved(JID sender, IActivity activity, List<IActivity> result) {
+    final String reference = getContentReference(activity);
+
+    if (reference == null) {
+      result.add(activity);
+      return;
+    }
+
+    final FileActivity fileActivity = (FileActivity) activity;
+    final IncomingContent content = incomingContents.get(sender).remove(reference);
+
+    if (content.corrupted || checksum(content.content) != fileActivity.getContentChecksum()) {
+      LOG.error(
+          "discarding " + fileActivity + " from " + sender + " because its content is corrupted");
+      return;
+    }
+
+    result.add(fileActivity.withContent(content.content));
+  }
+
+  /**
+   * Returns whether the activity can be executed before the held activities. This is only the case
+   * for activities concerning an editor of a file that is not affected by any held activity.
+   */
+  private static boolean canOvertake(Deque<IActivity> held, IActivity activity) {
+    if (!(activity instanceof IResourceActivity)
+        || activity instanceof IFileSystemModificationActivity) return false;
+
+    final SPath path = ((IResourceActivity) activity).getPath();
+
+    if (path == null) return false;
+
+    for (final IActivity heldActivity : held) {
+      if (!(heldActivity instanceof IResourceActivity)) return false;
+
+      // folder activities affect the files of the folder
+      if (heldActivity instanceof IFileSystemModificationActivity
+          && !(heldActivity instanceof FileActivity)) return false;
+
+      if (path.equals(((IResourceActivity) heldActivity).getPath())) return false;
+
+      if (heldActivity instanceof FileActivity
+          && path.equals(((FileActivity) heldActivity).getOldPath())) return false;
+    }
+
+    return true;
+  }
+
+  private static String getContentReference(IActivity activity) {
+    if (!(activity instanceof FileActivity)) return null;
+
+    return ((FileActivity) activity).getContentReference();
+  }
+
+  private static long checksum(byte[] content) {
+    final Adler32 checksum = new Adler32();
+    checksum.update(content, 0, content.length);
+    return checksum.getValue();
+  }
+}
@@ -0,0 +1,108 @@
+package de.fu_berlin.inf.dpp.session.internal;
+
+import de.fu_berlin.inf.dpp.activities.FileActivity;
+import de.fu_berlin.inf.dpp.activities.FolderCreatedActivity;
+import de.fu_berlin.inf.dpp.activities.FolderDeletedActivity;
+import de.fu_berlin.inf.dpp.activities.FolderMovedActivity;
+import de.fu_berlin.inf.dpp.activities.IActivity;
+import de.fu_berlin.inf.dpp.activities.SPath;
+import de.fu_berlin.inf.dpp.filesystem.IFile;
+import de.fu_berlin.inf.dpp.filesystem.IFolder;
+import de.fu_berlin.inf.dpp.filesystem.IPath;
+import de.fu_berlin.inf.dpp.filesystem.IResource;
+import de.fu_berlin.inf.dpp.session.User;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import org.apache.log4j.Logger;
+
+/**
+ * Replaces a {@link FolderMovedActivity} by the folder and file activities that are needed to
+ * replicate the move on users that do not support folder moves.
+ */
+final class FolderMoveFallback {
+
+  private static final Logger LOG = Logger.getLogger(FolderMoveFallback.class);
+
+  private final User source;
+  private final SPath origin;
+  private final SPath destination;
+
+  private final List<IActivity> activities = new ArrayList<IActivity>();
+  private final Deque<IActivity> deletions = new ArrayDeque<IActivity>();
+
+  private FolderMoveFallback(FolderMovedActivity activity) {
+    this.source = activity.getSource();
+    this.origin = activity.getPath();
+    this.destination = activity.getDestination();
+  }
+
+  /**
+   * Returns the activities replicating the given folder move. The new folders and the moves of the
+   * contained files are returned in increasing depth order, followed by the deletions of the old
+   * folders in decreasing depth order.
+   *
+   * <p>The contained resources are read from the old folder or, if the move was already performed
+   * locally, from the new folder.
+   *
+   * @param activity the folder move to replace
+   * @return the activities replicating the folder move
+   */
+  static List<IActivity> createActivities(FolderMovedActivity activity) {
+    final FolderMoveFallback fallback = new FolderMoveFallback(activity);
+
+    IFolder folder = fallback.origin.getFolder();
+
+    if (!folder.exists()) folder = fallback.destination.getFolder();
+
+    fallback.activities.add(new FolderCreatedActivity(fallback.source, fallback.destination));
+    fallback.deletions.add(new FolderDeletedActivity(fallback.source, fallback.origin));
+
+    try {
+      fallback.addMembers(folder, folder.getProjectRelativePath().segmentCount());
+    } catch (IOException e) {
+      LOG.error("could not read the members of the moved folder " + folder, e);
+    }
+
+    fallback.activities.addAll(fallback.deletions);
+
+    return fallback.activities;
+  }
+
+  private void addMembers(IFolder folder, int rootSegmentCount) throws IOException {
+    for (IResource member : folder.members()) {
+      if (member.isDerived()) continue;
+
+      final IPath relativePath =
+          member.getProjectRelativePath().removeFirstSegments(rootSegmentCount);
+
+      final SPath oldPath =
+          new SPath(origin.getProject(), origin.getProjectRelativePath().append(relativePath));
+
+      final SPath newPath =
+          new SPath(
+              destination.getProject(), destination.getProjectRelativePath().append(relativePath));
+
+      switch (member.getType()) {
+        case IResource.FILE:
+          activities.add(
+              new FileActivity(
+                  source,
+                  FileActivity.Type.MOVED,
+                  FileActivity.Purpose.ACTIVITY,
+                  newPath,
+                  oldPath,
+                  null,
+                  ((IFile) member).getCharset()));
+          break;
+        case IResource.FOLDER:
+          activities.add(new FolderCreatedActivity(source, newPath));
+          deletions.addFirst(new FolderDeletedActivity(source, oldPath));
+          addMembers((IFolder) member, rootSegmentCount);
+          break;
+      }
+    }
+  }
+}
@@ -0,0 +1,181 @@
+package de.fu_berlin.inf.dpp.session.internal;
+
+import de.fu_berlin.inf.dpp.util.NamedThreadFactory;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+
+/**
+ * Executes tasks on a pool of worker threads. Every task is submitted to a lane which is identified
+ * by a key. The tasks of a lane are executed one after another in the order they were submitted,
+ * tasks of different lanes are executed in parallel.
+ *
+ * <p>A lane only occupies a worker thread while it has pending tasks, so the number of lanes is not
+ * limited by the number of worker threads.
+ */
+final class LaneExecutor {
+
+  private static final Logger LOG = Logger.getLogger(LaneExecutor.class);
+
+  /** Number of tasks a lane executes before it yields its worker thread to other lanes */
+  private static final int MAX_TASKS_PER_RUN = 64;
+
+  /** Time after which idle worker threads terminate */
+  private static final long KEEP_ALIVE_TIME = 60;
+
+  private final class Lane implements Runnable {
+
+    private final Object key;
+
+    private final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+
+    private Lane(Object key) {
+      this.key = key;
+    }
+
+    @Override
+    public void run() {
+      for (int i = 0; i < MAX_TASKS_PER_RUN; i++) {
+        final Runnable task;
+
+        synchronized (LaneExecutor.this) {
+          // the remaining tasks are discarded by shutdown
+          if (executor.isShutdown()) return;
+
+          task = tasks.poll();
+
+          if (task == null) {
+            lanes.remove(key, this);
+            return;
+          }
+        }
+
+        try {
+          task.run();
+        } catch (RuntimeException e) {
+          LOG.error("task of lane " + key + " failed", e);
+        } finally {
+          taskFinished(1);
+        }
+      }
+
+      schedule(this);
+    }
+  }
+
+  private final ThreadPoolExecutor executor;
+
+  /** Lanes with pending tasks, guarded by this executor */
+  private final Map<Object, Lane> lanes = new HashMap<Object, Lane>();
+
+  /** Number of submitted but not yet finished tasks, guarded by this executor */
+  private int pendingTasks;
+
+  /**
+   * Creates a new lane executor.
+   *
+   * @param name the name of the worker threads
+   * @param threads the maximum number of worker threads
+   */
+  LaneExecutor(String name, int threads) {
+    executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            KEEP_ALIVE_TIME,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new NamedThreadFactory(name));
+
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Submits a task to the lane with the given key. The task is executed after all tasks that were
+   * previously submitted to the same lane.
+   *
+   * @param key the key of the lane
+   * @param task the task to execute
+   */
+  void execute(Object key, Runnable task) {
+    final Lane laneToSchedule;
+
+    synchronized (this) {
+      pendingTasks++;
+
+      Lane lane = lanes.get(key);
+
+      if (lane == null) {
+        lane = new Lane(key);
+        lanes.put(key, lane);
+        laneToSchedule = lane;
+      } else {
+        laneToSchedule = null;
+      }
+
+      lane.tasks.add(task);
+    }
+
+    if (laneToSchedule != null) schedule(laneToSchedule);
+  }
+
+  /**
+   * Waits until all submitted tasks are executed.
+   *
+   * @throws InterruptedException if the current thread is interrupted while waiting
+   */
+  synchronized void awaitIdle() throws InterruptedException {
+    while (pendingTasks > 0) wait();
+  }
+
+  /**
+   * Stops the execution of tasks. Tasks which are not already running are discarded.
+   *
+   * @param timeout the time in milliseconds to wait for running tasks to finish
+   * @return <code>true</code> if all worker threads terminated, <code>false</code> otherwise
+   * @throws InterruptedException if the current thread is interrupted while waiting
+   */
+  boolean shutdown(long timeout) throws InterruptedException {
+    executor.shutdownNow();
+
+    synchronized (this) {
+      int discardedTasks = 0;
+
+      for (final Lane lane : lanes.values()) {
+        discardedTasks += lane.tasks.size();
+        lane.tasks.clear();
+      }
+
+      lanes.clear();
+      taskFinished(discardedTasks);
+    }
+
+    return executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+  }
+
+  private void schedule(Lane lane) {
+    try {
+      executor.execute(lane);
+    } catch (RejectedExecutionException e) {
+      synchronized (this) {
+        if (!lanes.remove(lane.key, lane)) return;
+
+        LOG.warn("discarding " + lane.tasks.size() + " tasks of lane " + lane.key);
+        taskFinished(lane.tasks.size());
+        lane.tasks.clear();
+      }
+    }
+  }
+
+  private synchronized void taskFinished(int count) {
+    pendingTasks -= count;
+
+    if (pendingTasks == 0) notifyAll();
+  }
+}
@@ -22,6 +22,7 @@ package de.fu_berlin.inf.dpp.session.internal;
 import de.fu_berlin.inf.dpp.activities.FileActivity;
 import de.fu_berlin.inf.dpp.activities.FolderCreatedActivity;
 import de.fu_berlin.inf.dpp.activities.FolderDeletedActivity;
+import de.fu_berlin.inf.dpp.activities.FolderMovedActivity;
 import de.fu_berlin.inf.dpp.activities.IActivity;
 import de.fu_berlin.inf.dpp.activities.IFileSystemModificationActivity;
 import de.fu_berlin.inf.dpp.activities.IResourceActivity;
@@ -918,6 +919,11 @@ public final class SarosSession implements ISarosSession {
       }
 
       projectMapper.removeResources(project, Collections.singletonList(folder));
+
+    } else if (activity instanceof FolderMovedActivity) {
+      // folder moves are only announced for completely shared projects
+      log.error("PSFOM -" + " folder move detected in a partially shared project: " + activity);
+      return false;
     }
 
     return true;
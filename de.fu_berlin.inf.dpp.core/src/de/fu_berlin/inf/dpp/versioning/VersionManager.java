@@ -3,6 +3,7 @@ package de.fu_berlin.inf.dpp.versioning;
 import de.fu_berlin.inf.dpp.annotations.Component;
 import de.fu_berlin.inf.dpp.communication.extensions.VersionExchangeExtension;
 import de.fu_berlin.inf.dpp.context.IContextKeyBindings.SarosVersion;
+import de.fu_berlin.inf.dpp.misc.binary.BinaryCodecManager;
 import de.fu_berlin.inf.dpp.net.IReceiver;
 import de.fu_berlin.inf.dpp.net.ITransmitter;
 import de.fu_berlin.inf.dpp.net.PacketCollector;
@@ -36,6 +37,7 @@ public class VersionManager {
   private static final String VERSION_KEY = "version";
   private static final String COMPATIBILITY_KEY = "compatibility";
   private static final String ID_KEY = "id";
+  private static final String CODECS_KEY = "codecs";
 
   private static final Random ID_GENERATOR = new Random();
 
@@ -53,6 +55,7 @@ public class VersionManager {
   private final Version localVersion;
   private final ITransmitter transmitter;
   private final IReceiver receiver;
+  private final BinaryCodecManager codecManager;
 
   private final PacketListener versionRequestListener =
       new PacketListener() {
@@ -75,6 +78,9 @@ public class VersionManager {
 
           VersionExchangeExtension versionExchangeResponse = new VersionExchangeExtension();
 
+          exchangeCodecs(
+              new JID(packet.getFrom()), versionExchangeRequest, versionExchangeResponse);
+
           createResponseData:
           {
             versionExchangeResponse.set(VERSION_KEY, localVersion.toString());
@@ -118,6 +124,14 @@ public class VersionManager {
 
   public VersionManager(
       @SarosVersion String version, final IReceiver receiver, final ITransmitter transmitter) {
+    this(version, receiver, transmitter, null);
+  }
+
+  public VersionManager(
+      @SarosVersion String version,
+      final IReceiver receiver,
+      final ITransmitter transmitter,
+      final BinaryCodecManager codecManager) {
 
     this.localVersion = Version.parseVersion(version);
 
@@ -128,6 +142,7 @@ public class VersionManager {
 
     this.receiver = receiver;
     this.transmitter = transmitter;
+    this.codecManager = codecManager;
 
     receiver.addPacketListener(
         versionRequestListener,
@@ -161,6 +176,9 @@ public class VersionManager {
 
     if (versionExchangeResponse == null) return null;
 
+    if (codecManager != null)
+      codecManager.setRemoteCodecs(rqJID, versionExchangeResponse.get(CODECS_KEY));
+
     Compatibility remoteCompatibility = Compatibility.UNKNOWN;
     Compatibility compatibility = Compatibility.UNKNOWN;
     Version remoteVersion = Version.INVALID;
@@ -268,6 +286,8 @@ public class VersionManager {
     versionExchangeRequest.set(VERSION_KEY, localVersion.toString());
     versionExchangeRequest.set(ID_KEY, String.valueOf(exchangeID));
 
+    if (codecManager != null) versionExchangeRequest.set(CODECS_KEY, codecManager.getLocalCodecs());
+
     IQ request = VersionExchangeExtension.PROVIDER.createIQ(versionExchangeRequest);
 
     request.setType(IQ.Type.GET);
@@ -303,6 +323,19 @@ public class VersionManager {
     }
   }
 
+  /**
+   * Remembers the binary codecs the requesting peer supports and announces the local ones in the
+   * response.
+   */
+  private void exchangeCodecs(
+      JID from, VersionExchangeExtension request, VersionExchangeExtension response) {
+
+    if (codecManager == null) return;
+
+    codecManager.setRemoteCodecs(from, request.get(CODECS_KEY));
+    response.set(CODECS_KEY, codecManager.getLocalCodecs());
+  }
+
   /**
    * Compares the two given versions for compatibility. The result indicates whether the local
    * version is compatible with the remote version.
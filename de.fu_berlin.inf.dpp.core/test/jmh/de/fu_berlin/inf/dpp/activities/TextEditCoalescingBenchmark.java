@@ -0,0 +1,250 @@
+package de.fu_berlin.inf.dpp.activities;
+
+import de.fu_berlin.inf.dpp.concurrent.jupiter.TransformationException;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.Jupiter;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.JupiterDocumentServer;
+import de.fu_berlin.inf.dpp.filesystem.IPath;
+import de.fu_berlin.inf.dpp.filesystem.IProject;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import de.fu_berlin.inf.dpp.session.User;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.easymock.EasyMock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the Jupiter transformation cost of two users typing concurrently in the same document,
+ * depending on the time text edits are held back to {@linkplain ActivityOptimizer#merge merge}
+ * them. A window of <code>0</code> sends every keystroke as a separate operation.
+ *
+ * <p>Each benchmark invocation simulates the complete typing session: the operations of the users
+ * are generated by their Jupiter clients, transformed by the Jupiter server on the host and
+ * received by the Jupiter clients of the other participants, with a network latency of {@value
+ * #LATENCY} ms in each direction. The number of operations per second of typing is printed during
+ * the setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextEditCoalescingBenchmark {
+
+  private static final int KEYSTROKES = 10000;
+
+  private static final long LATENCY = 50;
+
+  @Param({"0", "50", "100", "200"})
+  public long window;
+
+  private final User host =
+      new User(new JID("host@saros-con.imp.fu-berlin.de/Saros"), true, true, 0, 0);
+
+  private final User alice =
+      new User(new JID("alice@saros-con.imp.fu-berlin.de/Saros"), false, false, 0, 0);
+
+  private final User bob =
+      new User(new JID("bob@saros-con.imp.fu-berlin.de/Saros"), false, false, 0, 0);
+
+  private SPath path;
+
+  private final List<Event> sentEdits = new ArrayList<Event>();
+
+  private static final int SEND = 0;
+  private static final int TRANSFORM = 1;
+  private static final int RECEIVE = 2;
+
+  private static final class Event implements Comparable<Event> {
+    private final long time;
+    private final long sequence;
+    private final int type;
+    private final User user;
+    private final IActivity activity;
+
+    private Event(long time, long sequence, int type, User user, IActivity activity) {
+      this.time = time;
+      this.sequence = sequence;
+      this.type = type;
+      this.user = user;
+      this.activity = activity;
+    }
+
+    @Override
+    public int compareTo(Event other) {
+      if (time != other.time) return time < other.time ? -1 : 1;
+
+      return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+    }
+  }
+
+  @Setup
+  public void setUp() {
+    final IProject project = EasyMock.createNiceMock(IProject.class);
+    final IPath projectRelativePath = EasyMock.createNiceMock(IPath.class);
+    EasyMock.replay(project, projectRelativePath);
+
+    path = new SPath(project, projectRelativePath);
+
+    sentEdits.clear();
+    sentEdits.addAll(coalesce(type(alice, new Random(1), 0)));
+    sentEdits.addAll(coalesce(type(bob, new Random(2), 100000)));
+
+    long duration = 0;
+
+    for (final Event event : sentEdits) duration = Math.max(duration, event.time);
+
+    System.out.println();
+    System.out.println(
+        "operations: "
+            + sentEdits.size()
+            + " for "
+            + 2 * KEYSTROKES
+            + " keystrokes ("
+            + sentEdits.size() * 1000L / duration
+            + " per second)");
+  }
+
+  @Benchmark
+  public int transform() throws TransformationException {
+    final JupiterDocumentServer server = new JupiterDocumentServer(path);
+    final Map<User, Jupiter> clients = new HashMap<User, Jupiter>();
+
+    for (final User user : new User[] {host, alice, bob}) {
+      server.addProxyClient(user);
+      clients.put(user, new Jupiter(true));
+    }
+
+    final PriorityQueue<Event> events = new PriorityQueue<Event>(sentEdits);
+
+    long sequence = sentEdits.size();
+    int transformations = 0;
+
+    Event event;
+
+    while ((event = events.poll()) != null) {
+      if (event.type == SEND) {
+        final JupiterActivity activity =
+            clients
+                .get(event.user)
+                .generateJupiterActivity(
+                    ((TextEditActivity) event.activity).toOperation(), event.user, path);
+
+        events.add(new Event(event.time + LATENCY, sequence++, TRANSFORM, null, activity));
+      } else if (event.type == TRANSFORM) {
+        for (final Map.Entry<User, JupiterActivity> entry :
+            server.transformJupiterActivity((JupiterActivity) event.activity).entrySet()) {
+
+          final long latency = entry.getKey().equals(host) ? 0 : LATENCY;
+
+          events.add(
+              new Event(
+                  event.time + latency, sequence++, RECEIVE, entry.getKey(), entry.getValue()));
+        }
+
+        transformations++;
+      } else {
+        clients.get(event.user).receiveJupiterActivity((JupiterActivity) event.activity);
+        transformations++;
+      }
+    }
+
+    return transformations;
+  }
+
+  /**
+   * Creates the keystrokes of a user typing into the document. The user mostly types characters
+   * after each other, sometimes deletes the last character and sometimes moves the cursor to
+   * another position.
+   */
+  private List<Event> type(User user, Random random, int offset) {
+    final List<Event> keystrokes = new ArrayList<Event>();
+
+    long time = 0;
+    int cursor = offset;
+    int typed = 0;
+
+    for (int i = 0; i < KEYSTROKES; i++) {
+      time += 60 + (long) (-90 * Math.log(1 - random.nextDouble()));
+
+      final double action = random.nextDouble();
+
+      final TextEditActivity edit;
+
+      if (action < 0.02) {
+        time += 500;
+        cursor = offset + random.nextInt(10000);
+        typed = 0;
+
+        edit = new TextEditActivity(user, cursor++, "x", "", path);
+        typed++;
+      } else if (action < 0.10 && typed > 0) {
+        edit = new TextEditActivity(user, --cursor, "", "x", path);
+        typed--;
+      } else {
+        edit = new TextEditActivity(user, cursor++, "x", "", path);
+        typed++;
+      }
+
+      keystrokes.add(new Event(time, 0, SEND, user, edit));
+    }
+
+    return keystrokes;
+  }
+
+  /** Merges the keystrokes the same way as the outgoing activity handling does. */
+  private List<Event> coalesce(List<Event> keystrokes) {
+    final List<Event> result = new ArrayList<Event>();
+
+    TextEditActivity pending = null;
+    long pendingSince = 0;
+
+    for (final Event keystroke : keystrokes) {
+      final TextEditActivity edit = (TextEditActivity) keystroke.activity;
+
+      if (pending != null && keystroke.time - pendingSince >= window) {
+        add(result, pendingSince + window, keystroke.user, pending);
+        pending = null;
+      }
+
+      if (pending != null) {
+        final TextEditActivity merged = ActivityOptimizer.merge(pending, edit);
+
+        if (merged != null) {
+          pending = merged;
+          continue;
+        }
+
+        add(result, keystroke.time, keystroke.user, pending);
+      }
+
+      pending = edit;
+      pendingSince = keystroke.time;
+    }
+
+    if (pending != null) add(result, pendingSince + window, pending.getSource(), pending);
+
+    return result;
+  }
+
+  private void add(List<Event> result, long time, User user, TextEditActivity edit) {
+    if (edit.getText().isEmpty() && edit.getReplacedText().isEmpty()) return;
+
+    result.add(new Event(time, result.size(), SEND, user, edit));
+  }
+}
@@ -0,0 +1,160 @@
+package de.fu_berlin.inf.dpp.communication.extensions;
+
+import static org.easymock.EasyMock.expect;
+
+import de.fu_berlin.inf.dpp.activities.IActivity;
+import de.fu_berlin.inf.dpp.activities.JupiterActivity;
+import de.fu_berlin.inf.dpp.activities.SPath;
+import de.fu_berlin.inf.dpp.activities.TextSelectionActivity;
+import de.fu_berlin.inf.dpp.activities.ViewportActivity;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.JupiterVectorTime;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.InsertOperation;
+import de.fu_berlin.inf.dpp.filesystem.IPath;
+import de.fu_berlin.inf.dpp.filesystem.IPathFactory;
+import de.fu_berlin.inf.dpp.filesystem.IProject;
+import de.fu_berlin.inf.dpp.misc.binary.SessionReferenceResolver;
+import de.fu_berlin.inf.dpp.misc.xstream.SPathConverter;
+import de.fu_berlin.inf.dpp.misc.xstream.UserConverter;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import de.fu_berlin.inf.dpp.session.ISarosSession;
+import de.fu_berlin.inf.dpp.session.User;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.easymock.EasyMock;
+import org.jivesoftware.smack.packet.PacketExtension;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlpull.mxp1.MXParser;
+import org.xmlpull.v1.XmlPullParser;
+
+/**
+ * Compares the XML serialization of the {@link ActivitiesExtension} with the {@link
+ * ActivitiesExtensionCodec} for the activities that dominate the traffic during a session, i.e
+ * keystrokes, selections and viewport changes. The payload size of both formats is printed during
+ * the setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActivitiesExtensionCodecBenchmark {
+
+  /** Number of activities per packet. */
+  @Param({"1", "10", "100"})
+  public int activities;
+
+  private UserConverter userConverter;
+  private SPathConverter pathConverter;
+  private SessionReferenceResolver resolver;
+
+  private ActivitiesExtension extension;
+
+  private byte[] xml;
+  private byte[] binary;
+
+  private final XmlPullParser parser = new MXParser();
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    final JID aliceJID = new JID("alice@saros-con.imp.fu-berlin.de/Saros");
+    final User alice = new User(aliceJID, true, true, 0, 0);
+
+    final IPath path = EasyMock.createNiceMock(IPath.class);
+    final IProject project = EasyMock.createNiceMock(IProject.class);
+
+    final IPathFactory pathFactory = EasyMock.createMock(IPathFactory.class);
+    expect(pathFactory.fromPath(path)).andStubReturn("src/de/fu_berlin/inf/dpp/Saros.java");
+    expect(pathFactory.fromString("src/de/fu_berlin/inf/dpp/Saros.java")).andStubReturn(path);
+
+    final ISarosSession session = EasyMock.createMock(ISarosSession.class);
+    expect(session.getUser(aliceJID)).andStubReturn(alice);
+    expect(session.getProjectID(project)).andStubReturn("1234567890");
+    expect(session.getProject("1234567890")).andStubReturn(project);
+
+    EasyMock.replay(path, project, pathFactory, session);
+
+    userConverter = new UserConverter(session);
+    pathConverter = new SPathConverter(session, pathFactory);
+    resolver = new SessionReferenceResolver(session, pathFactory);
+
+    userConverter.start();
+    pathConverter.start();
+    resolver.start();
+
+    final SPath spath = new SPath(project, path);
+    final List<IActivity> list = new ArrayList<IActivity>();
+
+    for (int i = 0; i < activities; i++) {
+      switch (i % 4) {
+        case 0:
+          list.add(new TextSelectionActivity(alice, 1000 + i, 0, spath));
+          break;
+        case 1:
+          list.add(new ViewportActivity(alice, 10, 60, spath));
+          break;
+        default:
+          list.add(
+              new JupiterActivity(
+                  new JupiterVectorTime(i, 42), new InsertOperation(1000 + i, "a"), alice, spath));
+      }
+    }
+
+    extension = new ActivitiesExtension("1234567890", list, 4711);
+
+    xml = toXML();
+    binary = toBinary();
+
+    System.out.println(
+        "\npayload size for "
+            + activities
+            + " activities: xml="
+            + xml.length
+            + " bytes, binary="
+            + binary.length
+            + " bytes");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    resolver.stop();
+    pathConverter.stop();
+    userConverter.stop();
+  }
+
+  @Benchmark
+  public byte[] toXML() throws Exception {
+    return ActivitiesExtension.PROVIDER.create(extension).toXML().getBytes("UTF-8");
+  }
+
+  @Benchmark
+  public byte[] toBinary() throws Exception {
+    return ActivitiesExtension.CODEC.encode(ActivitiesExtension.PROVIDER.create(extension));
+  }
+
+  @Benchmark
+  public PacketExtension fromXML() throws Exception {
+    parser.setInput(new ByteArrayInputStream(xml), "UTF-8");
+    parser.next();
+    return ActivitiesExtension.PROVIDER.parseExtension(parser);
+  }
+
+  @Benchmark
+  public PacketExtension fromBinary() throws Exception {
+    return ActivitiesExtension.CODEC.decode(binary);
+  }
+}
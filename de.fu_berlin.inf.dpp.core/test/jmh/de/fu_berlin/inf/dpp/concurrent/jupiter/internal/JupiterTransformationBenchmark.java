@@ -0,0 +1,150 @@
+package de.fu_berlin.inf.dpp.concurrent.jupiter.internal;
+
+import de.fu_berlin.inf.dpp.activities.JupiterActivity;
+import de.fu_berlin.inf.dpp.activities.SPath;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.Operation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.TransformationException;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.DeleteOperation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.InsertOperation;
+import de.fu_berlin.inf.dpp.filesystem.IPath;
+import de.fu_berlin.inf.dpp.filesystem.IProject;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import de.fu_berlin.inf.dpp.session.User;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.easymock.EasyMock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how many keystrokes per millisecond can be transformed by the Jupiter instances of the
+ * host and the clients if several users type concurrently into the same document.
+ *
+ * <p>The typing is simulated in rounds: in every round each user types <code>pending</code>
+ * characters (or deletes the last one) before the activities are transformed by the server and
+ * received by the other users. Therefore every operation has to be transformed against up to <code>
+ * pending</code> concurrent operations on each side. Use <code>-prof gc</code> to compare the
+ * allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JupiterTransformationBenchmark {
+
+  private static final int KEYSTROKES = 8192;
+
+  @Param({"2", "4", "8"})
+  public int users;
+
+  @Param({"1", "8", "32"})
+  public int pending;
+
+  private SPath path;
+
+  private final List<User> participants = new ArrayList<User>();
+
+  /** The keystrokes of every user */
+  private final List<List<Operation>> keystrokes = new ArrayList<List<Operation>>();
+
+  @Setup
+  public void setUp() {
+    final IProject project = EasyMock.createNiceMock(IProject.class);
+    final IPath projectRelativePath = EasyMock.createNiceMock(IPath.class);
+    EasyMock.replay(project, projectRelativePath);
+
+    path = new SPath(project, projectRelativePath);
+
+    participants.clear();
+    keystrokes.clear();
+
+    final Random random = new Random(42);
+
+    for (int i = 0; i < users; i++) {
+      participants.add(
+          new User(new JID("user" + i + "@saros-con.imp.fu-berlin.de/Saros"), i == 0, true, 0, 0));
+
+      final List<Operation> operations = new ArrayList<Operation>();
+
+      int cursor = i * 10000;
+
+      for (int j = 0; j < KEYSTROKES / users; j++) {
+        if (random.nextInt(10) == 0 && cursor > i * 10000)
+          operations.add(new DeleteOperation(--cursor, "x"));
+        else operations.add(new InsertOperation(cursor++, "x"));
+      }
+
+      keystrokes.add(operations);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(KEYSTROKES)
+  public int transform() throws TransformationException {
+    final JupiterDocumentServer server = new JupiterDocumentServer(path);
+    final List<Jupiter> clients = new ArrayList<Jupiter>();
+
+    for (final User user : participants) {
+      server.addProxyClient(user);
+      clients.add(new Jupiter(true));
+    }
+
+    final List<List<JupiterActivity>> incoming = new ArrayList<List<JupiterActivity>>();
+
+    for (int i = 0; i < users; i++) incoming.add(new ArrayList<JupiterActivity>());
+
+    final List<JupiterActivity> outgoing = new ArrayList<JupiterActivity>();
+
+    int transformations = 0;
+
+    for (int keystroke = 0; keystroke < KEYSTROKES / users; keystroke += pending) {
+      final int last = Math.min(keystroke + pending, KEYSTROKES / users);
+
+      for (int i = keystroke; i < last; i++) {
+        for (int user = 0; user < users; user++) {
+          outgoing.add(
+              clients
+                  .get(user)
+                  .generateJupiterActivity(
+                      keystrokes.get(user).get(i), participants.get(user), path));
+        }
+      }
+
+      for (final JupiterActivity activity : outgoing) {
+        for (final Map.Entry<User, JupiterActivity> entry :
+            server.transformJupiterActivity(activity).entrySet())
+          incoming.get(participants.indexOf(entry.getKey())).add(entry.getValue());
+
+        transformations++;
+      }
+
+      outgoing.clear();
+
+      for (int user = 0; user < users; user++) {
+        for (final JupiterActivity activity : incoming.get(user)) {
+          clients.get(user).receiveJupiterActivity(activity);
+          transformations++;
+        }
+
+        incoming.get(user).clear();
+      }
+    }
+
+    return transformations;
+  }
+}
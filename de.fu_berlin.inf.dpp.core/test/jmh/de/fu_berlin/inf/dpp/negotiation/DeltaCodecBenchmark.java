@@ -0,0 +1,221 @@
+package de.fu_berlin.inf.dpp.negotiation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the transfer of outdated files as {@link DeltaCodec delta} with the transfer of their
+ * complete content for a synthetic project of the given size. The project consists of files of 16
+ * MiB with random content. The given fraction of each file is modified by overwriting, inserting
+ * and deleting small ranges at random positions.
+ *
+ * <ul>
+ *   <li><i>full</i>: compresses the complete new content, as done without delta transfer
+ *   <li><i>delta</i>: creates the signatures of the old content (invitee), writes the compressed
+ *       deltas (host) and applies them (invitee)
+ * </ul>
+ *
+ * The size of the data that has to be transferred is printed after each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class DeltaCodecBenchmark {
+
+  private static final int FILE_SIZE = 16 * 1024 * 1024;
+
+  /** Number of modified ranges per file */
+  private static final int EDITS = 64;
+
+  @Param({"1073741824"})
+  public long size;
+
+  @Param({"0.01"})
+  public double modified;
+
+  private File directory;
+  private File[] oldFiles;
+  private File[] newFiles;
+
+  private long transferredBytes;
+
+  @Setup
+  public void setUp() throws IOException {
+    final Random random = new Random(4711);
+
+    directory = File.createTempFile("delta_benchmark", null);
+    directory.delete();
+    directory.mkdirs();
+
+    final int count = (int) Math.max(1, size / FILE_SIZE);
+
+    oldFiles = new File[count];
+    newFiles = new File[count];
+
+    final byte[] content = new byte[FILE_SIZE];
+
+    for (int i = 0; i < count; i++) {
+      random.nextBytes(content);
+
+      oldFiles[i] = new File(directory, "old" + i);
+      newFiles[i] = new File(directory, "new" + i);
+
+      FileUtils.writeByteArrayToFile(oldFiles[i], content);
+
+      final OutputStream out = new BufferedOutputStream(new FileOutputStream(newFiles[i]));
+
+      try {
+        writeModified(content, random, out);
+      } finally {
+        out.close();
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(directory);
+  }
+
+  @Setup(Level.Iteration)
+  public void resetTransferredBytes() {
+    transferredBytes = 0;
+  }
+
+  @TearDown(Level.Iteration)
+  public void printTransferredBytes() {
+    System.out.println();
+    System.out.println("transferred: " + transferredBytes / 1024 + " KiB");
+  }
+
+  @Benchmark
+  public void full() throws IOException {
+    for (final File file : newFiles) {
+      final CountingOutputStream out =
+          new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+      final OutputStream compressed = new DeflaterOutputStream(out);
+      final InputStream in = new FileInputStream(file);
+
+      try {
+        IOUtils.copy(in, compressed);
+        compressed.close();
+      } finally {
+        in.close();
+      }
+
+      transferredBytes += out.getByteCount();
+    }
+  }
+
+  @Benchmark
+  public void delta() throws IOException {
+    final File deltaFile = new File(directory, "delta");
+    final File resultFile = new File(directory, "result");
+
+    for (int i = 0; i < oldFiles.length; i++) {
+      InputStream in = new BufferedInputStream(new FileInputStream(oldFiles[i]));
+
+      final byte[] signature;
+
+      try {
+        signature = DeltaCodec.createSignature(in);
+      } finally {
+        in.close();
+      }
+
+      // the signature is sent as base64
+      transferredBytes += signature.length * 4 / 3;
+
+      in = new FileInputStream(newFiles[i]);
+
+      final CountingOutputStream out = new CountingOutputStream(new FileOutputStream(deltaFile));
+      final OutputStream compressed = new DeflaterOutputStream(out);
+
+      try {
+        DeltaCodec.writeDelta(in, signature, compressed);
+      } finally {
+        in.close();
+        compressed.close();
+      }
+
+      transferredBytes += out.getByteCount();
+
+      in = new InflaterInputStream(new FileInputStream(deltaFile));
+
+      final OutputStream result = new BufferedOutputStream(new FileOutputStream(resultFile));
+
+      try {
+        DeltaCodec.applyDelta(oldFiles[i], in, result);
+      } finally {
+        in.close();
+        result.close();
+      }
+    }
+  }
+
+  /**
+   * Writes the given content with the configured fraction of it being modified. A third of the
+   * modified ranges is overwritten, inserted and deleted each.
+   */
+  private void writeModified(byte[] content, Random random, OutputStream out) throws IOException {
+    final int length = (int) (content.length * modified / EDITS);
+
+    final byte[] replacement = new byte[length];
+
+    int position = 0;
+
+    for (int i = 0; i < EDITS; i++) {
+      final int start =
+          Math.max(position, (int) ((long) content.length * i / EDITS) + random.nextInt(4096));
+
+      out.write(content, position, start - position);
+
+      random.nextBytes(replacement);
+
+      switch (i % 3) {
+        case 0: // overwrite
+          out.write(replacement);
+          position = start + length;
+          break;
+        case 1: // insert
+          out.write(replacement);
+          position = start;
+          break;
+        default: // delete
+          position = start + length;
+      }
+    }
+
+    out.write(content, position, content.length - position);
+  }
+}
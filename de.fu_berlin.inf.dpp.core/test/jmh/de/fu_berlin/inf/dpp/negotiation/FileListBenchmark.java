@@ -0,0 +1,102 @@
+package de.fu_berlin.inf.dpp.negotiation;
+
+import de.fu_berlin.inf.dpp.negotiation.FileList.MetaData;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the creation of {@link FileList file lists} and their comparison with {@link
+ * FileListDiff#diff} for a project of 100.000 files. The files are distributed over folders of the
+ * given size, so small values describe deep and large values describe wide project layouts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileListBenchmark {
+
+  private static final int FILES = 100000;
+
+  /** Number of files per folder. */
+  @Param({"10", "1000", "10000"})
+  public int filesPerFolder;
+
+  private List<String> paths;
+  private long[] checksums;
+
+  private FileList base;
+  private FileList target;
+
+  @Setup
+  public void setUp() {
+    final Random random = new Random(4711);
+
+    paths = new ArrayList<String>(FILES);
+    checksums = new long[FILES];
+
+    for (int i = 0; i < FILES; i++) {
+      final int folder = i / filesPerFolder;
+
+      paths.add(
+          "src/de/fu_berlin/inf/dpp/folder" + (folder % 10) + "/" + folder + "/File" + i + ".java");
+      checksums[i] = random.nextLong();
+    }
+
+    base = createFileList(0);
+
+    // the target differs in one percent of the files
+    target = createFileList(FILES / 100);
+  }
+
+  @Benchmark
+  public FileList create() {
+    return createFileList(0);
+  }
+
+  @Benchmark
+  public FileListDiff diff() {
+    return FileListDiff.diff(base, target, false);
+  }
+
+  @Benchmark
+  public int lookup() {
+    int found = 0;
+
+    for (String path : paths) if (target.getMetaData(path) != null) found++;
+
+    return found;
+  }
+
+  /** Creates a file list the same way the {@link FileListFactory} does. */
+  private FileList createFileList(int modifiedFiles) {
+    final FileList list = new FileList();
+
+    for (int i = 0; i < FILES; i++) {
+      final String path = paths.get(i);
+
+      if (list.contains(path)) continue;
+
+      final MetaData data = new MetaData();
+      data.checksum = i < modifiedFiles ? ~checksums[i] : checksums[i];
+
+      list.addPath(path, data, false);
+    }
+
+    return list;
+  }
+}
@@ -0,0 +1,84 @@
+package de.fu_berlin.inf.dpp.net.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link PayloadCompressor} with allocating a new {@link Deflater} for every payload
+ * as it was done before. The payloads are a small activity packet, a large source file and a large
+ * incompressible (already compressed) file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadCompressorBenchmark {
+
+  private static final String ACTIVITY =
+      "<ados xmlns=\"de.fu_berlin.inf.dpp\"><payload class=\"ADOS\" v=\"SPXV1\" sid=\"1234567890\""
+          + " seq=\"4711\"><jupiterActivity source=\"alice%40saros-con.imp.fu-berlin.de%2FSaros\">"
+          + "<p i=\"1234567890\" p=\"src%2Fde%2Ffu_berlin%2Finf%2Fdpp%2FSaros.java\"/>"
+          + "<t class=\"vectorTime\" local=\"2\" remote=\"42\"/><o class=\"insertOp\""
+          + " position=\"1002\" origin=\"1002\"><text>a</text></o></jupiterActivity></payload>"
+          + "</ados>";
+
+  @Param({"activity", "source", "archive"})
+  public String content;
+
+  private final PayloadCompressor compressor = new PayloadCompressor();
+
+  private byte[] payload;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    if ("activity".equals(content)) {
+      payload = ACTIVITY.getBytes("UTF-8");
+    } else if ("source".equals(content)) {
+      final StringBuilder builder = new StringBuilder();
+
+      for (int i = 0; builder.length() < 256 * 1024; i++)
+        builder.append("  public void method").append(i).append("() {\n    return;\n  }\n\n");
+
+      payload = builder.toString().getBytes("UTF-8");
+    } else {
+      payload = new byte[256 * 1024];
+      new Random(4711).nextBytes(payload);
+    }
+  }
+
+  @Benchmark
+  public byte[] pooledAdaptive() {
+    final byte[] compressed = compressor.compress(content, payload, !"archive".equals(content));
+    return compressed != null ? compressed : payload;
+  }
+
+  @Benchmark
+  public byte[] newDeflaterPerPayload() {
+    final Deflater deflater = new Deflater(Deflater.DEFLATED);
+    deflater.setInput(payload);
+    deflater.finish();
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length);
+    final byte[] buffer = new byte[16 * 1024];
+
+    while (!deflater.finished()) out.write(buffer, 0, deflater.deflate(buffer));
+
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,193 @@
+package de.fu_berlin.inf.dpp.net.stream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the latency and the throughput of the {@link NIOByteStream} used by the {@link
+ * TCPTransport} with a blocking socket over loopback. A direct SOCKS5 bytestream of the {@link
+ * Socks5StreamService} is a plain blocking socket once the SOCKS5 negotiation is done, so the
+ * blocking socket stands in for it as establishing a SOCKS5 bytestream needs an XMPP server.
+ *
+ * <p>Each invocation sends a message of <code>messageSize</code> bytes through buffered streams, as
+ * the {@link de.fu_berlin.inf.dpp.net.internal.BinaryChannelConnection} does, and waits for the
+ * remote side to acknowledge it. Small messages measure the round trip latency, large messages the
+ * throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TCPTransportBenchmark {
+
+  @Param({"nio", "socket"})
+  public String transport;
+
+  @Param({"64", "16384", "1048576"})
+  public int messageSize;
+
+  private SelectorPool selectorPool;
+
+  private ByteStream localStream;
+  private ByteStream remoteStream;
+
+  private DataOutputStream out;
+  private DataInputStream in;
+
+  private byte[] message;
+
+  private Thread acknowledger;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    final ServerSocketChannel server = ServerSocketChannel.open();
+
+    try {
+      server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+      final SocketChannel local =
+          SocketChannel.open(
+              new InetSocketAddress(
+                  InetAddress.getLoopbackAddress(), server.socket().getLocalPort()));
+
+      final SocketChannel remote = server.accept();
+
+      local.socket().setTcpNoDelay(true);
+      remote.socket().setTcpNoDelay(true);
+
+      if ("nio".equals(transport)) {
+        selectorPool = new SelectorPool("TCPTransportBenchmark-Selector", 1);
+        selectorPool.start();
+
+        final DirectBufferPool bufferPool = new DirectBufferPool(32 * 1024, 256);
+
+        localStream = new NIOByteStream(local, selectorPool, bufferPool);
+        remoteStream = new NIOByteStream(remote, selectorPool, bufferPool);
+      } else {
+        localStream = new SocketByteStream(local.socket());
+        remoteStream = new SocketByteStream(remote.socket());
+      }
+    } finally {
+      server.close();
+    }
+
+    out = new DataOutputStream(new BufferedOutputStream(localStream.getOutputStream()));
+    in = new DataInputStream(new BufferedInputStream(localStream.getInputStream()));
+
+    message = new byte[messageSize];
+
+    acknowledger = new Thread(new Acknowledger(remoteStream), "TCPTransportBenchmark-Remote");
+    acknowledger.setDaemon(true);
+    acknowledger.start();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    localStream.close();
+    remoteStream.close();
+    acknowledger.join(5000);
+
+    if (selectorPool != null) selectorPool.stop();
+  }
+
+  @Benchmark
+  public int sendMessage() throws IOException {
+    out.writeInt(message.length);
+    out.write(message);
+    out.flush();
+    return in.read();
+  }
+
+  /** Reads the messages of the local side and acknowledges each of them with one byte. */
+  private static class Acknowledger implements Runnable {
+
+    private final ByteStream stream;
+
+    private Acknowledger(ByteStream stream) {
+      this.stream = stream;
+    }
+
+    @Override
+    public void run() {
+      try {
+        final DataInputStream in =
+            new DataInputStream(new BufferedInputStream(stream.getInputStream()));
+
+        final DataOutputStream out = new DataOutputStream(stream.getOutputStream());
+
+        byte[] message = new byte[0];
+
+        while (true) {
+          final int length = in.readInt();
+
+          if (message.length < length) message = new byte[length];
+
+          in.readFully(message, 0, length);
+          out.write(1);
+          out.flush();
+        }
+      } catch (IOException e) {
+        // closed
+      }
+    }
+  }
+
+  /** A byte stream over a blocking socket like the socket of a direct SOCKS5 bytestream. */
+  private static class SocketByteStream implements ByteStream {
+
+    private final Socket socket;
+
+    private SocketByteStream(Socket socket) {
+      this.socket = socket;
+    }
+
+    @Override
+    public java.io.InputStream getInputStream() throws IOException {
+      return socket.getInputStream();
+    }
+
+    @Override
+    public java.io.OutputStream getOutputStream() throws IOException {
+      return socket.getOutputStream();
+    }
+
+    @Override
+    public void close() throws IOException {
+      socket.close();
+    }
+
+    @Override
+    public int getReadTimeout() throws IOException {
+      return socket.getSoTimeout();
+    }
+
+    @Override
+    public void setReadTimeout(int timeout) throws IOException {
+      socket.setSoTimeout(timeout);
+    }
+  }
+}
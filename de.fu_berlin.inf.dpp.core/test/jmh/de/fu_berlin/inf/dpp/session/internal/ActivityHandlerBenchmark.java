@@ -0,0 +1,200 @@
+package de.fu_berlin.inf.dpp.session.internal;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.expect;
+
+import de.fu_berlin.inf.dpp.activities.IActivity;
+import de.fu_berlin.inf.dpp.activities.NOPActivity;
+import de.fu_berlin.inf.dpp.activities.SPath;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.Jupiter;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.InsertOperation;
+import de.fu_berlin.inf.dpp.concurrent.management.ConcurrentDocumentClient;
+import de.fu_berlin.inf.dpp.concurrent.management.ConcurrentDocumentServer;
+import de.fu_berlin.inf.dpp.filesystem.IPath;
+import de.fu_berlin.inf.dpp.filesystem.IProject;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import de.fu_berlin.inf.dpp.session.IActivityHandlerCallback;
+import de.fu_berlin.inf.dpp.session.ISarosSession;
+import de.fu_berlin.inf.dpp.session.ISessionListener;
+import de.fu_berlin.inf.dpp.session.User;
+import de.fu_berlin.inf.dpp.synchronize.UISynchronizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how many text edits of remote users the host can transform and distribute per
+ * millisecond. Every user types into a different document, the keystrokes of a user arrive in
+ * packets of {@value #ACTIVITIES_PER_PACKET} activities. Each invocation ends with an activity that
+ * has to wait for all pending transformations.
+ *
+ * <p>With <code>threads = 0</code> all activities are transformed in the receiving thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ActivityHandlerBenchmark {
+
+  private static final int ACTIVITIES = 20000;
+
+  private static final int ACTIVITIES_PER_PACKET = 10;
+
+  @Param({"1", "2", "4", "8", "16"})
+  public int users;
+
+  @Param({"0", "8"})
+  public int threads;
+
+  private User host;
+  private List<User> remoteUsers;
+  private List<User> allUsers;
+
+  private ISarosSession session;
+  private Capture<ISessionListener> sessionListener;
+
+  private ConcurrentDocumentServer documentServer;
+  private ActivityHandler handler;
+
+  private final List<List<IActivity>> packets = new ArrayList<List<IActivity>>();
+
+  private final IActivityHandlerCallback callback =
+      new IActivityHandlerCallback() {
+        @Override
+        public void send(List<User> recipients, IActivity activity) {
+          // NOP
+        }
+
+        @Override
+        public void execute(IActivity activity) {
+          // NOP
+        }
+      };
+
+  private final UISynchronizer synchronizer =
+      new UISynchronizer() {
+        @Override
+        public void syncExec(Runnable runnable) {
+          runnable.run();
+        }
+
+        @Override
+        public void asyncExec(Runnable runnable) {
+          runnable.run();
+        }
+
+        @Override
+        public boolean isUIThread() {
+          return true;
+        }
+      };
+
+  @Setup(Level.Trial)
+  public void setUpSession() {
+    host = new User(new JID("host@saros-con.imp.fu-berlin.de/Saros"), true, true, 0, 0);
+
+    remoteUsers = new ArrayList<User>();
+
+    for (int i = 0; i < users; i++)
+      remoteUsers.add(
+          new User(new JID("user" + i + "@saros-con.imp.fu-berlin.de/Saros"), false, false, 0, 0));
+
+    allUsers = new ArrayList<User>(remoteUsers);
+    allUsers.add(host);
+
+    sessionListener = new Capture<ISessionListener>();
+
+    session = EasyMock.createNiceMock(ISarosSession.class);
+    expect(session.isHost()).andStubReturn(true);
+    expect(session.getHost()).andStubReturn(host);
+    expect(session.getLocalUser()).andStubReturn(host);
+    expect(session.getUsers()).andStubReturn(allUsers);
+    expect(session.getRemoteUsers()).andStubReturn(remoteUsers);
+    expect(session.userHasProject(anyObject(User.class), anyObject(IProject.class)))
+        .andStubReturn(true);
+    session.addListener(capture(sessionListener));
+    EasyMock.expectLastCall().anyTimes();
+    EasyMock.replay(session);
+  }
+
+  @Setup(Level.Invocation)
+  public void setUp() {
+    documentServer = new ConcurrentDocumentServer(session);
+    documentServer.start();
+
+    for (final User user : remoteUsers) sessionListener.getValue().userStartedQueuing(user);
+
+    final ConcurrentDocumentClient documentClient =
+        EasyMock.createNiceMock(ConcurrentDocumentClient.class);
+    expect(documentClient.transformFromJupiter(anyObject(IActivity.class)))
+        .andStubReturn(Collections.<IActivity>emptyList());
+    EasyMock.replay(documentClient);
+
+    handler =
+        new ActivityHandler(
+            session, callback, documentServer, documentClient, synchronizer, threads, 0);
+    handler.start();
+
+    final IProject project = EasyMock.createNiceMock(IProject.class);
+
+    final List<SPath> paths = new ArrayList<SPath>();
+    final List<Jupiter> clients = new ArrayList<Jupiter>();
+
+    for (int i = 0; i < users; i++) {
+      paths.add(new SPath(project, EasyMock.createNiceMock(IPath.class)));
+      clients.add(new Jupiter(true));
+    }
+
+    packets.clear();
+
+    for (int i = 0; i < ACTIVITIES / ACTIVITIES_PER_PACKET; i++) {
+      final int user = i % users;
+      final List<IActivity> packet = new ArrayList<IActivity>();
+
+      for (int j = 0; j < ACTIVITIES_PER_PACKET; j++)
+        packet.add(
+            clients
+                .get(user)
+                .generateJupiterActivity(
+                    new InsertOperation(i, "x"), remoteUsers.get(user), paths.get(user)));
+
+      packets.add(packet);
+    }
+  }
+
+  @TearDown(Level.Invocation)
+  public void tearDown() {
+    handler.stop();
+    documentServer.stop();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ACTIVITIES)
+  public void transform() {
+    for (final List<IActivity> packet : packets) handler.handleIncomingActivities(packet);
+
+    // waits until all edits are transformed
+    handler.handleIncomingActivities(
+        Collections.<IActivity>singletonList(new NOPActivity(host, remoteUsers.get(0), 0)));
+  }
+}
@@ -18,6 +18,7 @@ import org.junit.runners.Suite;
   de.fu_berlin.inf.dpp.negotiation.TestSuite.class,
   de.fu_berlin.inf.dpp.net.TestSuite.class,
   de.fu_berlin.inf.dpp.net.internal.TestSuite.class,
+  de.fu_berlin.inf.dpp.net.stream.TestSuite.class,
   de.fu_berlin.inf.dpp.preferences.TestSuite.class,
   de.fu_berlin.inf.dpp.session.TestSuite.class,
   de.fu_berlin.inf.dpp.session.internal.TestSuite.class,
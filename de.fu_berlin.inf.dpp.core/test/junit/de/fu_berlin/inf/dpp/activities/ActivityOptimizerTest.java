@@ -1,7 +1,9 @@
 package de.fu_berlin.inf.dpp.activities;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import de.fu_berlin.inf.dpp.filesystem.IPath;
 import de.fu_berlin.inf.dpp.filesystem.IProject;
@@ -9,6 +11,7 @@ import de.fu_berlin.inf.dpp.net.xmpp.JID;
 import de.fu_berlin.inf.dpp.session.User;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import org.easymock.EasyMock;
 import org.junit.Before;
 import org.junit.Test;
@@ -144,6 +147,130 @@ public class ActivityOptimizerTest {
     assertRange(23, 23, optimized, nop);
   }
 
+  @Test
+  public void testMergeTyping() {
+    final SPath path = new SPath(fooProject, fooPath);
+
+    TextEditActivity merged =
+        ActivityOptimizer.merge(
+            new TextEditActivity(alice, 10, "a", "", path),
+            new TextEditActivity(alice, 11, "b", "", path));
+
+    merged = ActivityOptimizer.merge(merged, new TextEditActivity(alice, 12, "c", "", path));
+
+    assertEquals(new TextEditActivity(alice, 10, "abc", "", path), merged);
+
+    // correct a typo in the middle of the typed text
+    merged = ActivityOptimizer.merge(merged, new TextEditActivity(alice, 11, "x", "b", path));
+
+    assertEquals(new TextEditActivity(alice, 10, "axc", "", path), merged);
+  }
+
+  @Test
+  public void testMergeDeleting() {
+    final SPath path = new SPath(fooProject, fooPath);
+
+    // backspace
+    assertEquals(
+        new TextEditActivity(alice, 11, "", "bc", path),
+        ActivityOptimizer.merge(
+            new TextEditActivity(alice, 12, "", "c", path),
+            new TextEditActivity(alice, 11, "", "b", path)));
+
+    // forward delete
+    assertEquals(
+        new TextEditActivity(alice, 5, "", "xy", path),
+        ActivityOptimizer.merge(
+            new TextEditActivity(alice, 5, "", "x", path),
+            new TextEditActivity(alice, 5, "", "y", path)));
+
+    // delete the typed text again
+    assertEquals(
+        new TextEditActivity(alice, 10, "", "", path),
+        ActivityOptimizer.merge(
+            new TextEditActivity(alice, 10, "a", "", path),
+            new TextEditActivity(alice, 10, "", "a", path)));
+  }
+
+  @Test
+  public void testMergeNotContiguous() {
+    final SPath path = new SPath(fooProject, fooPath);
+
+    final TextEditActivity typed = new TextEditActivity(alice, 10, "abc", "", path);
+
+    assertNull(ActivityOptimizer.merge(typed, new TextEditActivity(alice, 14, "d", "", path)));
+    assertNull(ActivityOptimizer.merge(typed, new TextEditActivity(alice, 8, "", "x", path)));
+
+    // overlaps the inserted text only partially
+    assertNull(ActivityOptimizer.merge(typed, new TextEditActivity(alice, 12, "", "cd", path)));
+
+    assertNull(ActivityOptimizer.merge(typed, new TextEditActivity(bob, 13, "d", "", path)));
+
+    assertNull(
+        ActivityOptimizer.merge(
+            typed, new TextEditActivity(alice, 13, "d", "", new SPath(fooProject, barPath))));
+  }
+
+  @Test
+  public void testMergeProducesSameResult() {
+    final SPath path = new SPath(fooProject, fooPath);
+    final Random random = new Random(4711);
+
+    int mergedEdits = 0;
+
+    for (int run = 0; run < 1000; run++) {
+      final String document = randomText(random, 20);
+
+      final int offset = random.nextInt(document.length());
+      final TextEditActivity first =
+          new TextEditActivity(
+              alice,
+              offset,
+              randomText(random, random.nextInt(3)),
+              document.substring(offset, offset + random.nextInt(document.length() - offset + 1)),
+              path);
+
+      final String intermediate = apply(document, first);
+
+      final int secondOffset = random.nextInt(intermediate.length() + 1);
+      final TextEditActivity second =
+          new TextEditActivity(
+              alice,
+              secondOffset,
+              randomText(random, random.nextInt(3)),
+              intermediate.substring(
+                  secondOffset,
+                  secondOffset
+                      + random.nextInt(Math.min(3, intermediate.length() - secondOffset) + 1)),
+              path);
+
+      final TextEditActivity merged = ActivityOptimizer.merge(first, second);
+
+      if (merged == null) continue;
+
+      assertEquals(first + ", " + second, apply(intermediate, second), apply(document, merged));
+      mergedEdits++;
+    }
+
+    assertTrue("too few edits were merged: " + mergedEdits, mergedEdits > 100);
+  }
+
+  private static String apply(String document, TextEditActivity edit) {
+    final int end = edit.getOffset() + edit.getReplacedText().length();
+
+    assertEquals(edit.getReplacedText(), document.substring(edit.getOffset(), end));
+
+    return document.substring(0, edit.getOffset()) + edit.getText() + document.substring(end);
+  }
+
+  private static String randomText(Random random, int length) {
+    final StringBuilder text = new StringBuilder();
+
+    for (int i = 0; i < length; i++) text.append((char) ('a' + random.nextInt(3)));
+
+    return text.toString();
+  }
+
   private void assertRange(int l, int h, List<IActivity> activities, IActivity activity) {
     for (int i = l; i <= h; i++)
       assertSame("optimization resulted in wrong activity order", activity, activities.get(i));
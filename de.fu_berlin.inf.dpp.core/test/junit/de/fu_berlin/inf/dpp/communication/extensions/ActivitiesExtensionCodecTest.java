@@ -0,0 +1,213 @@
+package de.fu_berlin.inf.dpp.communication.extensions;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import de.fu_berlin.inf.dpp.activities.ChecksumActivity;
+import de.fu_berlin.inf.dpp.activities.EditorActivity;
+import de.fu_berlin.inf.dpp.activities.IActivity;
+import de.fu_berlin.inf.dpp.activities.JupiterActivity;
+import de.fu_berlin.inf.dpp.activities.NOPActivity;
+import de.fu_berlin.inf.dpp.activities.SPath;
+import de.fu_berlin.inf.dpp.activities.TextSelectionActivity;
+import de.fu_berlin.inf.dpp.activities.ViewportActivity;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.JupiterVectorTime;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.DeleteOperation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.InsertOperation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.NoOperation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.SplitOperation;
+import de.fu_berlin.inf.dpp.filesystem.IPath;
+import de.fu_berlin.inf.dpp.filesystem.IPathFactory;
+import de.fu_berlin.inf.dpp.filesystem.IProject;
+import de.fu_berlin.inf.dpp.misc.binary.BinaryExtensionCodec;
+import de.fu_berlin.inf.dpp.misc.binary.SessionReferenceResolver;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import de.fu_berlin.inf.dpp.session.ISarosSession;
+import de.fu_berlin.inf.dpp.session.User;
+import java.util.ArrayList;
+import java.util.List;
+import org.easymock.EasyMock;
+import org.jivesoftware.smack.packet.PacketExtension;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ActivitiesExtensionCodecTest {
+
+  private final JID aliceJID = new JID("alice@test/Saros");
+  private final JID bobJID = new JID("bob@test/Saros");
+  private final JID carlJID = new JID("carl@test/Saros");
+
+  private final User alice = new User(aliceJID, true, true, 0, 0);
+  private final User bob = new User(bobJID, false, false, 1, 1);
+  private final User carl = new User(carlJID, false, false, 2, 2);
+
+  private SPath mainPath;
+  private SPath testPath;
+
+  private SessionReferenceResolver resolver;
+
+  @Before
+  public void setUp() {
+    IPath main = EasyMock.createNiceMock(IPath.class);
+    IPath test = EasyMock.createNiceMock(IPath.class);
+
+    IPathFactory pathFactory = EasyMock.createMock(IPathFactory.class);
+    expect(pathFactory.fromPath(main)).andStubReturn("src/Main.java");
+    expect(pathFactory.fromString("src/Main.java")).andStubReturn(main);
+    expect(pathFactory.fromPath(test)).andStubReturn("test/Test.java");
+    expect(pathFactory.fromString("test/Test.java")).andStubReturn(test);
+
+    IProject project = EasyMock.createNiceMock(IProject.class);
+
+    ISarosSession session = EasyMock.createMock(ISarosSession.class);
+    expect(session.getUser(aliceJID)).andStubReturn(alice);
+    expect(session.getUser(bobJID)).andStubReturn(bob);
+    expect(session.getUser(carlJID)).andStubReturn(null);
+    expect(session.getProjectID(project)).andStubReturn("ABC");
+    expect(session.getProject("ABC")).andStubReturn(project);
+
+    EasyMock.replay(main, test, pathFactory, project, session);
+
+    mainPath = new SPath(project, main);
+    testPath = new SPath(project, test);
+
+    resolver = new SessionReferenceResolver(session, pathFactory);
+    resolver.start();
+  }
+
+  @After
+  public void tearDown() {
+    if (resolver != null) resolver.stop();
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    List<IActivity> activities = new ArrayList<IActivity>();
+
+    activities.add(
+        new JupiterActivity(
+            new JupiterVectorTime(5, 3), new InsertOperation(10, "foo\näöü", 8), alice, mainPath));
+    activities.add(
+        new JupiterActivity(
+            new JupiterVectorTime(6, 3), new DeleteOperation(42, "bar"), alice, testPath));
+    activities.add(
+        new JupiterActivity(
+            new JupiterVectorTime(7, 300),
+            new SplitOperation(new DeleteOperation(1, "a"), new InsertOperation(1, "b")),
+            bob,
+            mainPath));
+    activities.add(
+        new JupiterActivity(new JupiterVectorTime(0, 0), new NoOperation(), bob, mainPath));
+    activities.add(new TextSelectionActivity(alice, 4711, 3, mainPath));
+    activities.add(new ViewportActivity(bob, 100, 50, testPath));
+    activities.add(new ChecksumActivity(alice, mainPath, -12345, 1 << 20, null));
+    activities.add(
+        new ChecksumActivity(alice, testPath, 77, 9, new JupiterVectorTime(Integer.MAX_VALUE, 1)));
+    activities.add(new NOPActivity(alice, bob, -1));
+
+    ActivitiesExtension extension = roundTrip(new ActivitiesExtension("SID", activities, 1337));
+
+    assertEquals("SID", extension.getSessionID());
+    assertEquals(1337, extension.getSequenceNumber());
+    assertEquals(activities, extension.getActivities());
+  }
+
+  @Test
+  public void testLargeText() throws Exception {
+    StringBuilder builder = new StringBuilder();
+
+    for (int i = 0; i < 100000; i++) builder.append((char) ('a' + i % 26));
+
+    List<IActivity> activities = new ArrayList<IActivity>();
+
+    activities.add(
+        new JupiterActivity(
+            new JupiterVectorTime(1, 1),
+            new InsertOperation(0, builder.toString()),
+            alice,
+            mainPath));
+
+    assertEquals(
+        activities, roundTrip(new ActivitiesExtension("SID", activities, 0)).getActivities());
+  }
+
+  @Test
+  public void testUnsupportedActivityIsNotEncoded() throws Exception {
+    List<IActivity> activities = new ArrayList<IActivity>();
+
+    activities.add(new TextSelectionActivity(alice, 1, 1, mainPath));
+    activities.add(new EditorActivity(alice, EditorActivity.Type.ACTIVATED, mainPath));
+
+    assertNull(encode(new ActivitiesExtension("SID", activities, 0)));
+  }
+
+  @Test
+  public void testNoEncodingWithoutSession() throws Exception {
+    resolver.stop();
+
+    List<IActivity> activities = new ArrayList<IActivity>();
+    activities.add(new TextSelectionActivity(alice, 1, 1, mainPath));
+
+    assertNull(encode(new ActivitiesExtension("SID", activities, 0)));
+  }
+
+  @Test
+  public void testUnresolvedUserKeepsSequence() throws Exception {
+    List<IActivity> activities = new ArrayList<IActivity>();
+
+    activities.add(new TextSelectionActivity(carl, 1, 1, mainPath));
+    activities.add(new TextSelectionActivity(alice, 2, 2, mainPath));
+
+    List<IActivity> decoded =
+        roundTrip(new ActivitiesExtension("SID", activities, 0)).getActivities();
+
+    assertEquals(2, decoded.size());
+    assertFalse(decoded.get(0).isValid());
+    assertTrue(decoded.get(1).isValid());
+    assertEquals(activities.get(1), decoded.get(1));
+  }
+
+  @Test
+  public void testUsersAndPathsAreOnlyWrittenOnce() throws Exception {
+    List<IActivity> activities = new ArrayList<IActivity>();
+
+    activities.add(new TextSelectionActivity(alice, 1, 1, mainPath));
+
+    int single = encode(new ActivitiesExtension("SID", activities, 0)).length;
+
+    for (int i = 0; i < 9; i++) activities.add(new TextSelectionActivity(alice, 1, 1, mainPath));
+
+    int multiple = encode(new ActivitiesExtension("SID", activities, 0)).length;
+
+    assertTrue(
+        "single: " + single + ", multiple: " + multiple, multiple - single <= 9 * 5 /* bytes */);
+  }
+
+  @Test
+  public void testCodecName() {
+    assertEquals("ados/1", ActivitiesExtension.CODEC.getName());
+    assertSame(
+        ActivitiesExtension.CODEC,
+        BinaryExtensionCodec.getCodec("ados", SarosPacketExtension.EXTENSION_NAMESPACE));
+  }
+
+  private byte[] encode(ActivitiesExtension extension) throws Exception {
+    return ActivitiesExtension.CODEC.encode(ActivitiesExtension.PROVIDER.create(extension));
+  }
+
+  private ActivitiesExtension roundTrip(ActivitiesExtension extension) throws Exception {
+    byte[] data = encode(extension);
+
+    assertNotNull("extension could not be encoded", data);
+
+    PacketExtension decoded = ActivitiesExtension.CODEC.decode(data);
+
+    return ActivitiesExtension.PROVIDER.getPayload(decoded);
+  }
+}
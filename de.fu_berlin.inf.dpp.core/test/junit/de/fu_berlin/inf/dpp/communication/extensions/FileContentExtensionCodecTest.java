@@ -0,0 +1,57 @@
+package de.fu_berlin.inf.dpp.communication.extensions;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+import org.jivesoftware.smack.packet.PacketExtension;
+import org.junit.Test;
+
+public class FileContentExtensionCodecTest {
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    byte[] data = new byte[16 * 1024];
+    new Random(42).nextBytes(data);
+
+    FileContentExtension chunk =
+        roundTrip(new FileContentExtension("SID", "7", 65536, 32768, data));
+
+    assertEquals("SID", chunk.getSessionID());
+    assertEquals("7", chunk.getReference());
+    assertEquals(65536, chunk.getLength());
+    assertEquals(32768, chunk.getOffset());
+    assertArrayEquals(data, chunk.getData());
+  }
+
+  @Test
+  public void testDataIsNotEncoded() throws Exception {
+    byte[] data = new byte[16 * 1024];
+
+    byte[] encoded =
+        FileContentExtension.CODEC.encode(
+            FileContentExtension.PROVIDER.create(
+                new FileContentExtension("SID", "7", data.length, 0, data)));
+
+    assertTrue("size: " + encoded.length, encoded.length < data.length + 32);
+  }
+
+  @Test(expected = IOException.class)
+  public void testCorruptedChunkIsRejected() throws Exception {
+    roundTrip(new FileContentExtension("SID", "7", 10, 5, new byte[6]));
+  }
+
+  private FileContentExtension roundTrip(FileContentExtension extension) throws Exception {
+    byte[] data =
+        FileContentExtension.CODEC.encode(FileContentExtension.PROVIDER.create(extension));
+
+    assertNotNull("extension could not be encoded", data);
+
+    PacketExtension decoded = FileContentExtension.CODEC.decode(data);
+
+    return FileContentExtension.PROVIDER.getPayload(decoded);
+  }
+}
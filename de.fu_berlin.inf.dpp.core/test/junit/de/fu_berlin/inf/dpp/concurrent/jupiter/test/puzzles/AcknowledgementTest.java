@@ -0,0 +1,238 @@
+package de.fu_berlin.inf.dpp.concurrent.jupiter.test.puzzles;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import de.fu_berlin.inf.dpp.activities.JupiterActivity;
+import de.fu_berlin.inf.dpp.activities.SPath;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.Operation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.TransformationException;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.Jupiter;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.JupiterDocumentServer;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.DeleteOperation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.InsertOperation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.TimestampOperation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.test.util.Document;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.test.util.JupiterTestCase;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.test.util.PathFake;
+import de.fu_berlin.inf.dpp.filesystem.IProject;
+import de.fu_berlin.inf.dpp.session.User;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the outgoing queues of the Jupiter instances stay bounded if users only receive
+ * operations, and that acknowledgements do not affect the convergence of the documents.
+ */
+public class AcknowledgementTest extends JupiterTestCase {
+
+  private static final int THRESHOLD = Jupiter.ACKNOWLEDGEMENT_THRESHOLD;
+
+  private IProject project;
+  private SPath path;
+
+  private JupiterDocumentServer server;
+
+  private final Map<User, Jupiter> clients = new HashMap<User, Jupiter>();
+  private final Map<User, Document> documents = new HashMap<User, Document>();
+
+  /** JupiterActivities which were sent to the server but not yet transformed */
+  private final Map<User, Queue<JupiterActivity>> toServer =
+      new HashMap<User, Queue<JupiterActivity>>();
+
+  /** JupiterActivities which were sent by the server but not yet received */
+  private final Map<User, Queue<JupiterActivity>> fromServer =
+      new HashMap<User, Queue<JupiterActivity>>();
+
+  private int sentAcknowledgements;
+
+  @Before
+  public void setUpServer() {
+    project = createMock(IProject.class);
+    replay(project);
+
+    path = new SPath(project, new PathFake("dummy"));
+    server = new JupiterDocumentServer(path);
+
+    for (User user : new User[] {host, alice, bob}) {
+      server.addProxyClient(user);
+      clients.put(user, new Jupiter(true));
+      documents.put(user, new Document("", project, path.getProjectRelativePath()));
+      toServer.put(user, new ArrayDeque<JupiterActivity>());
+      fromServer.put(user, new ArrayDeque<JupiterActivity>());
+    }
+  }
+
+  @Test
+  public void testAcknowledgementIsNotForwarded() throws TransformationException {
+    generate(host, new InsertOperation(0, "a"));
+    transformAll();
+    receive(alice);
+
+    assertEquals(2, server.getUnacknowledgedOperationCount());
+
+    JupiterActivity acknowledgement = clients.get(alice).generateAcknowledgement(alice, path);
+
+    assertTrue(acknowledgement.getOperation() instanceof TimestampOperation);
+    assertTrue(server.transformJupiterActivity(acknowledgement).isEmpty());
+    assertEquals(1, server.getUnacknowledgedOperationCount());
+  }
+
+  @Test
+  public void testAcknowledgementDoesNotChangeVectorTime() throws TransformationException {
+    Jupiter jupiter = clients.get(alice);
+
+    generate(host, new InsertOperation(0, "a"));
+    transformAll();
+    receive(alice);
+
+    JupiterActivity first = jupiter.generateAcknowledgement(alice, path);
+    JupiterActivity second = jupiter.generateAcknowledgement(alice, path);
+
+    assertEquals(first.getTimestamp(), second.getTimestamp());
+    assertEquals(first.getTimestamp(), jupiter.getTimestamp());
+
+    toServer.get(alice).add(first);
+    toServer.get(alice).add(second);
+    generate(alice, new InsertOperation(1, "b"));
+
+    transformAll();
+    receiveAll();
+
+    assertEqualDocuments();
+    assertEquals("ab", documents.get(bob).getDocument());
+  }
+
+  @Test
+  public void testReadingClientsAcknowledgeOperations() throws TransformationException {
+    for (int i = 0; i < 10 * THRESHOLD; i++) {
+      generate(host, new InsertOperation(i, "x"));
+      transformAll();
+      receiveAll();
+
+      assertTrue(
+          "server keeps too many operations: " + server.getUnacknowledgedOperationCount(),
+          server.getUnacknowledgedOperationCount() <= 2 * THRESHOLD);
+    }
+
+    assertTrue(sentAcknowledgements > 0);
+    assertEqualDocuments();
+  }
+
+  @Test
+  public void testServerAcknowledgesOperationsOfWritingClient() throws TransformationException {
+    Jupiter jupiter = clients.get(alice);
+
+    for (int i = 0; i < 10 * THRESHOLD; i++) {
+      generate(alice, new InsertOperation(i, "x"));
+      transformAll();
+      receiveAll();
+
+      assertTrue(
+          "client keeps too many operations: " + jupiter.getUnacknowledgedOperationCount(),
+          jupiter.getUnacknowledgedOperationCount() <= THRESHOLD);
+    }
+
+    assertEqualDocuments();
+  }
+
+  @Test
+  public void testConcurrentEditingWithAcknowledgementsConverges() throws TransformationException {
+    Random random = new Random(42);
+    User[] users = new User[] {host, alice, bob};
+
+    for (int step = 0; step < 5000; step++) {
+      User user = users[random.nextInt(users.length)];
+      int action = random.nextInt(10);
+
+      if (action < 3) {
+        String text = documents.get(user).getDocument();
+        int position = random.nextInt(text.length() + 1);
+
+        if (position < text.length() && random.nextBoolean())
+          generate(user, new DeleteOperation(position, text.substring(position, position + 1)));
+        else generate(user, new InsertOperation(position, "" + (char) ('a' + random.nextInt(26))));
+
+      } else if (action < 6) {
+        transform(user);
+      } else {
+        receive(user);
+      }
+    }
+
+    transformAll();
+    receiveAll();
+
+    assertTrue(sentAcknowledgements > 0);
+    assertEqualDocuments();
+  }
+
+  private void generate(User user, Operation op) {
+    documents.get(user).execOperation(op);
+    toServer.get(user).add(clients.get(user).generateJupiterActivity(op, user, path));
+  }
+
+  private void transform(User user) throws TransformationException {
+    JupiterActivity activity = toServer.get(user).poll();
+
+    if (activity == null) return;
+
+    for (Map.Entry<User, JupiterActivity> entry :
+        server.transformJupiterActivity(activity).entrySet())
+      fromServer.get(entry.getKey()).add(entry.getValue());
+  }
+
+  private void receive(User user) throws TransformationException {
+    JupiterActivity activity = fromServer.get(user).poll();
+
+    if (activity == null) return;
+
+    Jupiter jupiter = clients.get(user);
+
+    documents.get(user).execOperation(jupiter.receiveJupiterActivity(activity));
+
+    if (jupiter.isAcknowledgementRequired()) {
+      toServer.get(user).add(jupiter.generateAcknowledgement(user, path));
+      sentAcknowledgements++;
+    }
+
+    assertFalse(jupiter.isAcknowledgementRequired());
+  }
+
+  private void transformAll() throws TransformationException {
+    for (User user : toServer.keySet()) while (!toServer.get(user).isEmpty()) transform(user);
+  }
+
+  private void receiveAll() throws TransformationException {
+    while (true) {
+      boolean received = false;
+
+      for (User user : fromServer.keySet()) {
+        while (!fromServer.get(user).isEmpty()) {
+          receive(user);
+          received = true;
+        }
+      }
+
+      // acknowledgements of the clients
+      transformAll();
+
+      if (!received) return;
+    }
+  }
+
+  private void assertEqualDocuments() {
+    String expected = documents.get(host).getDocument();
+
+    for (Map.Entry<User, Document> entry : documents.entrySet())
+      assertEquals(entry.getKey().toString(), expected, entry.getValue().getDocument());
+  }
+}
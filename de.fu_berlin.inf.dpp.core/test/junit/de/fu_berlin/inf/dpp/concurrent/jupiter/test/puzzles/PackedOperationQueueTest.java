@@ -0,0 +1,169 @@
+package de.fu_berlin.inf.dpp.concurrent.jupiter.test.puzzles;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import de.fu_berlin.inf.dpp.concurrent.jupiter.InclusionTransformation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.Operation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.DeleteOperation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.GOTOInclusionTransformation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.InsertOperation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.NoOperation;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.PackedOperationQueue;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.SplitOperation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Compares the transformations of the {@link PackedOperationQueue} with the transformations of the
+ * {@link GOTOInclusionTransformation}.
+ */
+public class PackedOperationQueueTest {
+
+  private final InclusionTransformation inclusion = new GOTOInclusionTransformation();
+
+  @Test
+  public void testUnchangedOperationIsReturned() {
+    PackedOperationQueue queue = new PackedOperationQueue();
+    queue.add(new InsertOperation(10, "abc"), 0);
+    queue.add(new DeleteOperation(20, "def"), 1);
+
+    Operation op = new InsertOperation(5, "x");
+
+    assertSame(op, queue.transform(op, true));
+    assertEquals(new InsertOperation(11, "abc", 10), queue.getOperation(0));
+    assertEquals(new DeleteOperation(21, "def"), queue.getOperation(1));
+  }
+
+  @Test
+  public void testSplitDelete() {
+    PackedOperationQueue queue = new PackedOperationQueue();
+    queue.add(new DeleteOperation(2, "2345"), 0);
+
+    Operation op = queue.transform(new InsertOperation(4, "ab"), true);
+
+    assertEquals(new InsertOperation(2, "ab", 4), op);
+    assertEquals(
+        new SplitOperation(new DeleteOperation(2, "23"), new DeleteOperation(4, "45")),
+        queue.getOperation(0));
+
+    // the split operation is transformed by the GOTO functions
+    op = queue.transform(new DeleteOperation(0, "01"), true);
+
+    assertEquals(new DeleteOperation(0, "01"), op);
+    assertEquals(
+        new SplitOperation(new DeleteOperation(0, "23"), new DeleteOperation(2, "45")),
+        queue.getOperation(0));
+  }
+
+  @Test
+  public void testOverlappingDeletes() {
+    PackedOperationQueue queue = new PackedOperationQueue();
+    queue.add(new DeleteOperation(2, "234567"), 0);
+
+    Operation op = queue.transform(new DeleteOperation(4, "45"), false);
+
+    assertTrue(op instanceof NoOperation);
+    assertEquals(new DeleteOperation(2, "2367"), queue.getOperation(0));
+  }
+
+  @Test
+  public void testRemoveAcknowledged() {
+    PackedOperationQueue queue = new PackedOperationQueue();
+
+    for (int i = 0; i < 100; i++) {
+      queue.add(new InsertOperation(i, "x"), i);
+
+      if (i % 10 == 9) queue.removeAcknowledged(i - 4);
+    }
+
+    assertEquals(5, queue.size());
+
+    for (int i = 0; i < queue.size(); i++) {
+      assertEquals(95 + i, queue.getLocalOperationCount(i));
+      assertEquals(new InsertOperation(95 + i, "x"), queue.getOperation(i));
+    }
+
+    queue.removeAcknowledged(100);
+
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  public void testRandomTransformationsMatchGOTO() {
+    Random random = new Random(4711);
+
+    for (int run = 0; run < 200; run++) {
+      PackedOperationQueue queue = new PackedOperationQueue();
+      List<Operation> expectedQueue = new ArrayList<Operation>();
+
+      boolean privileged = random.nextBoolean();
+
+      for (int step = 0; step < 100; step++) {
+        if (random.nextInt(3) == 0) {
+          Operation op = randomOperation(random);
+
+          queue.add(op, step);
+          expectedQueue.add(op);
+          continue;
+        }
+
+        if (random.nextInt(10) == 0 && !expectedQueue.isEmpty()) {
+          int remove = random.nextInt(expectedQueue.size()) + 1;
+
+          queue.removeAcknowledged(queue.getLocalOperationCount(remove - 1) + 1);
+          expectedQueue.subList(0, remove).clear();
+        }
+
+        Operation op = randomOperation(random);
+        Operation expected = op;
+
+        for (int i = 0; i < expectedQueue.size(); i++) {
+          Operation existing = expectedQueue.get(i);
+
+          Operation transformed = inclusion.transform(expected, existing, privileged);
+          expectedQueue.set(i, inclusion.transform(existing, expected, !privileged));
+          expected = transformed;
+        }
+
+        assertEquals(expected, queue.transform(op, privileged));
+        assertEquals(expectedQueue.size(), queue.size());
+
+        for (int i = 0; i < expectedQueue.size(); i++)
+          assertEquals(expectedQueue.get(i), queue.getOperation(i));
+      }
+    }
+  }
+
+  private static Operation randomOperation(Random random) {
+    int position = random.nextInt(20);
+
+    switch (random.nextInt(10)) {
+      case 0:
+        return new NoOperation();
+      case 1:
+        return new SplitOperation(
+            new DeleteOperation(position, randomText(random)),
+            new DeleteOperation(position + random.nextInt(5), randomText(random)));
+      case 2:
+      case 3:
+      case 4:
+      case 5:
+        return new InsertOperation(position, randomText(random), random.nextInt(20));
+      default:
+        return new DeleteOperation(position, randomText(random));
+    }
+  }
+
+  private static String randomText(Random random) {
+    StringBuilder builder = new StringBuilder();
+
+    for (int i = random.nextInt(5) + 1; i > 0; i--)
+      builder.append((char) ('a' + random.nextInt(26)));
+
+    return builder.toString();
+  }
+}
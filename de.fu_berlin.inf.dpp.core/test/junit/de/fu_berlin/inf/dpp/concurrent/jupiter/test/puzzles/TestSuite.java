@@ -5,11 +5,13 @@ import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
+  AcknowledgementTest.class,
   ConvergenceProblemTest.class,
   CounterExampleTest.class,
   DOptPuzzleTest.class,
   GOTOInclusionTransformationTest.class,
   InclusionTransformationTest.class,
+  PackedOperationQueueTest.class,
   SimpleClientServerTest.class,
   SimpleJupiterDocumentTest.class,
   SimpleServerProxyTest.class
@@ -0,0 +1,123 @@
+package de.fu_berlin.inf.dpp.concurrent.watchdog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import de.fu_berlin.inf.dpp.activities.SPath;
+import java.util.Random;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DocumentChecksumTest {
+
+  private DocumentChecksum checksum;
+
+  @Before
+  public void setUp() {
+    checksum = new DocumentChecksum(EasyMock.createNiceMock(SPath.class));
+  }
+
+  @Test
+  public void testUpdateWithContent() {
+    checksum.update("Hello World");
+
+    assertFalse(checksum.isDirty());
+    assertEquals("Hello World".length(), checksum.getLength());
+    assertEquals("Hello World".hashCode(), checksum.getHash());
+
+    checksum.markDirty();
+    checksum.update(null);
+
+    assertEquals(DocumentChecksum.NOT_AVAILABLE, checksum.getLength());
+    assertEquals(DocumentChecksum.NOT_AVAILABLE, checksum.getHash());
+  }
+
+  @Test
+  public void testUpdateWithEdits() {
+    checksum.update("Hello World");
+
+    assertTrue(checksum.update(5, "", ","));
+    assertTrue(checksum.update(7, "World", "Saros"));
+    assertTrue(checksum.update(0, "Hello, ", ""));
+
+    assertFalse(checksum.isDirty());
+    assertEquals("Saros".length(), checksum.getLength());
+    assertEquals("Saros".hashCode(), checksum.getHash());
+
+    assertTrue(checksum.update(0, "Saros", ""));
+    assertEquals("".hashCode(), checksum.getHash());
+
+    assertTrue(checksum.update(0, "", "foo"));
+    assertEquals("foo".hashCode(), checksum.getHash());
+  }
+
+  @Test
+  public void testEditsBeforeFirstUpdateMarkDirty() {
+    assertFalse(checksum.update(0, "", "foo"));
+    assertTrue(checksum.isDirty());
+  }
+
+  @Test
+  public void testMismatchingEditMarksDirty() {
+    checksum.update("Hello World");
+
+    assertFalse(checksum.update(6, "Earth", "Saros"));
+    assertTrue(checksum.isDirty());
+
+    // the last known values are kept until the checksum is calculated again
+    assertEquals("Hello World".hashCode(), checksum.getHash());
+
+    // further edits are ignored
+    assertFalse(checksum.update(6, "World", "Saros"));
+
+    checksum.update("Hello Saros");
+
+    assertFalse(checksum.isDirty());
+    assertEquals("Hello Saros".hashCode(), checksum.getHash());
+  }
+
+  @Test
+  public void testOutOfBoundsEditMarksDirty() {
+    checksum.update("foo");
+
+    assertFalse(checksum.update(2, "oo", ""));
+    assertTrue(checksum.isDirty());
+  }
+
+  @Test
+  public void testRandomEdits() {
+    final Random random = new Random(4711);
+
+    StringBuilder content = new StringBuilder(randomText(random, 50000));
+    checksum.update(content.toString());
+
+    for (int i = 0; i < 5000; i++) {
+      final int offset = random.nextInt(content.length() + 1);
+
+      final int replacedLength =
+          Math.min(random.nextInt(4) == 0 ? random.nextInt(5000) : 1, content.length() - offset);
+
+      final String replacedText = content.substring(offset, offset + replacedLength);
+      final String text = randomText(random, random.nextInt(10) == 0 ? random.nextInt(5000) : 1);
+
+      content.replace(offset, offset + replacedLength, text);
+
+      assertTrue(checksum.update(offset, replacedText, text));
+      assertEquals(content.length(), checksum.getLength());
+
+      if (i % 100 == 0) assertEquals(content.toString().hashCode(), checksum.getHash());
+    }
+
+    assertEquals(content.toString().hashCode(), checksum.getHash());
+  }
+
+  private static String randomText(Random random, int length) {
+    char[] chars = new char[length];
+
+    for (int i = 0; i < length; i++) chars[i] = (char) ('a' + random.nextInt(26));
+
+    return new String(chars);
+  }
+}
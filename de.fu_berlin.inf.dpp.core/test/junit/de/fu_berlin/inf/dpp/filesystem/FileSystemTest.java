@@ -0,0 +1,73 @@
+package de.fu_berlin.inf.dpp.filesystem;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.Adler32;
+import org.apache.commons.io.FileUtils;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileSystemTest {
+
+  private File tempFile;
+
+  @Before
+  public void setUp() throws IOException {
+    tempFile = File.createTempFile("checksum", ".bin");
+  }
+
+  @After
+  public void tearDown() {
+    tempFile.delete();
+  }
+
+  @Test
+  public void testChecksumOfSmallFile() throws IOException {
+    assertChecksum(createContent(1000));
+  }
+
+  @Test
+  public void testChecksumOfLargeFile() throws IOException {
+    // larger than the channel threshold and not a multiple of the buffer size
+    assertChecksum(createContent(3 * 1024 * 1024 + 4711));
+  }
+
+  private void assertChecksum(final byte[] content) throws IOException {
+    FileUtils.writeByteArrayToFile(tempFile, content);
+
+    final IPath location = EasyMock.createMock(IPath.class);
+    EasyMock.expect(location.toFile()).andStubReturn(tempFile);
+    EasyMock.replay(location);
+
+    final IFile file = EasyMock.createMock(IFile.class);
+    EasyMock.expect(file.getLocation()).andStubReturn(location);
+    EasyMock.expect(file.getContents())
+        .andStubAnswer(
+            new IAnswer<InputStream>() {
+              @Override
+              public InputStream answer() throws Throwable {
+                return new ByteArrayInputStream(content);
+              }
+            });
+    EasyMock.replay(file);
+
+    final Adler32 expected = new Adler32();
+    expected.update(content);
+
+    assertEquals(expected.getValue(), FileSystem.checksum(file));
+  }
+
+  private static byte[] createContent(int size) {
+    final byte[] content = new byte[size];
+    new Random(4711).nextBytes(content);
+    return content;
+  }
+}
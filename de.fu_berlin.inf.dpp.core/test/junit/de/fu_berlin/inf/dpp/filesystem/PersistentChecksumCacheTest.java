@@ -0,0 +1,154 @@
+package de.fu_berlin.inf.dpp.filesystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.apache.commons.io.FileUtils;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PersistentChecksumCacheTest {
+
+  private File directory;
+  private File indexFile;
+
+  private File localFile;
+  private IFile file;
+
+  private IFileContentChangedListener listener;
+
+  private IFileContentChangedNotifier notifier =
+      new IFileContentChangedNotifier() {
+
+        @Override
+        public void addFileContentChangedListener(IFileContentChangedListener listener) {
+          PersistentChecksumCacheTest.this.listener = listener;
+        }
+
+        @Override
+        public void removeFileContentChangedListener(IFileContentChangedListener listener) {
+          // NOP
+        }
+      };
+
+  @Before
+  public void setUp() throws IOException {
+    directory = File.createTempFile("checksums", "");
+    directory.delete();
+    directory.mkdir();
+
+    indexFile = new File(directory, "checksums.dat");
+
+    localFile = new File(directory, "foo.txt");
+    writeFile(localFile, "foo");
+
+    file = createFileMock(localFile);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(directory);
+  }
+
+  @Test
+  public void testChecksumSurvivesRestart() {
+    PersistentChecksumCache cache = createCache();
+
+    assertNull(cache.getChecksum(file));
+
+    cache.addChecksum(file, 42);
+    assertEquals(Long.valueOf(42), cache.getChecksum(file));
+    cache.stop();
+
+    cache = createCache();
+    assertEquals(Long.valueOf(42), cache.getChecksum(file));
+    cache.stop();
+  }
+
+  @Test
+  public void testModifiedFileIsNotFound() throws IOException {
+    PersistentChecksumCache cache = createCache();
+    cache.addChecksum(file, 42);
+    cache.stop();
+
+    writeFile(localFile, "foobar");
+
+    cache = createCache();
+    assertNull(cache.getChecksum(file));
+    cache.stop();
+  }
+
+  @Test
+  public void testChangedFileIsRemoved() {
+    PersistentChecksumCache cache = createCache();
+    cache.addChecksum(file, 42);
+
+    listener.fileContentChanged(file);
+    assertNull(cache.getChecksum(file));
+    cache.stop();
+
+    cache = createCache();
+    assertNull(cache.getChecksum(file));
+    cache.stop();
+  }
+
+  @Test
+  public void testRecentlyModifiedFileIsNotStored() {
+    localFile.setLastModified(System.currentTimeMillis());
+
+    PersistentChecksumCache cache = createCache();
+    cache.addChecksum(file, 42);
+
+    assertNull(cache.getChecksum(file));
+    cache.stop();
+  }
+
+  @Test
+  public void testTruncatedIndexFile() throws IOException {
+    PersistentChecksumCache cache = createCache();
+    cache.addChecksum(file, 42);
+    cache.stop();
+
+    FileOutputStream out = new FileOutputStream(indexFile, true);
+    out.write(new byte[] {1, 2, 3});
+    out.close();
+
+    cache = createCache();
+    assertEquals(Long.valueOf(42), cache.getChecksum(file));
+    cache.stop();
+
+    // the index file was repaired
+    assertEquals(4 + 41, indexFile.length());
+  }
+
+  private PersistentChecksumCache createCache() {
+    return new PersistentChecksumCache(new NullChecksumCache(), notifier, indexFile);
+  }
+
+  private static void writeFile(File file, String content) throws IOException {
+    FileUtils.writeStringToFile(file, content);
+
+    // pretend the file was modified some time ago
+    file.setLastModified(System.currentTimeMillis() - 60 * 1000);
+  }
+
+  private static IFile createFileMock(File localFile) {
+    final IPath location = EasyMock.createMock(IPath.class);
+
+    EasyMock.expect(location.toFile()).andStubReturn(localFile);
+    EasyMock.expect(location.toOSString()).andStubReturn(localFile.getAbsolutePath());
+    EasyMock.replay(location);
+
+    final IFile file = EasyMock.createMock(IFile.class);
+
+    EasyMock.expect(file.getLocation()).andStubReturn(location);
+    EasyMock.replay(file);
+
+    return file;
+  }
+}
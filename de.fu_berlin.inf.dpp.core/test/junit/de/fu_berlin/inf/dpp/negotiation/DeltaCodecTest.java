@@ -0,0 +1,132 @@
+package de.fu_berlin.inf.dpp.negotiation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DeltaCodecTest {
+
+  private File oldFile;
+
+  private Random random;
+
+  @Before
+  public void setUp() throws IOException {
+    oldFile = File.createTempFile("delta", null);
+    random = new Random(4711);
+  }
+
+  @After
+  public void tearDown() {
+    oldFile.delete();
+  }
+
+  @Test
+  public void testUnchangedContent() throws IOException {
+    final byte[] content = randomBytes(1024 * 1024);
+
+    final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+
+    assertEquals(0, writeDelta(content, content, delta));
+    assertTrue("delta too large: " + delta.size(), delta.size() < 64);
+
+    assertArrayEquals(content, applyDelta(content, delta.toByteArray()));
+  }
+
+  @Test
+  public void testInsertionsAndDeletions() throws IOException {
+    final byte[] oldContent = randomBytes(2 * 1024 * 1024);
+
+    final ByteArrayOutputStream builder = new ByteArrayOutputStream();
+
+    // insert, delete and replace a few bytes at ten positions
+    for (int i = 0; i < 10; i++) {
+      final int start = i * oldContent.length / 10;
+      final int end = (i + 1) * oldContent.length / 10;
+
+      builder.write(randomBytes(i % 3 == 0 ? 100 : 0));
+      builder.write(
+          oldContent, start + (i % 3 == 1 ? 100 : 0), end - start - (i % 3 == 1 ? 100 : 0));
+    }
+
+    final byte[] newContent = builder.toByteArray();
+
+    for (int i = 0; i < 10; i += 3) newContent[i * newContent.length / 10 + 5000] ^= 0x55;
+
+    final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+
+    final long literalBytes = writeDelta(oldContent, newContent, delta);
+
+    // each edit only invalidates the chunks around it
+    assertTrue("too many literal bytes: " + literalBytes, literalBytes < newContent.length / 8);
+
+    assertTrue("delta too large: " + delta.size(), delta.size() < literalBytes + 1024);
+
+    assertArrayEquals(newContent, applyDelta(oldContent, delta.toByteArray()));
+  }
+
+  @Test
+  public void testEmptyContent() throws IOException {
+    final byte[] content = randomBytes(300000);
+
+    final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+
+    writeDelta(content, new byte[0], delta);
+    assertArrayEquals(new byte[0], applyDelta(content, delta.toByteArray()));
+
+    delta.reset();
+
+    writeDelta(new byte[0], content, delta);
+    assertArrayEquals(content, applyDelta(new byte[0], delta.toByteArray()));
+  }
+
+  @Test(expected = IOException.class)
+  public void testModifiedOldFile() throws IOException {
+    final byte[] oldContent = randomBytes(1024 * 1024);
+    final byte[] newContent = Arrays.copyOf(oldContent, oldContent.length + 1);
+
+    final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+
+    writeDelta(oldContent, newContent, delta);
+
+    final byte[] modifiedOldContent = oldContent.clone();
+    modifiedOldContent[oldContent.length / 2] ^= 0x55;
+
+    applyDelta(modifiedOldContent, delta.toByteArray());
+  }
+
+  private long writeDelta(byte[] oldContent, byte[] newContent, ByteArrayOutputStream delta)
+      throws IOException {
+
+    final byte[] signature = DeltaCodec.createSignature(new ByteArrayInputStream(oldContent));
+
+    return DeltaCodec.writeDelta(new ByteArrayInputStream(newContent), signature, delta);
+  }
+
+  private byte[] applyDelta(byte[] oldContent, byte[] delta) throws IOException {
+    FileUtils.writeByteArrayToFile(oldFile, oldContent);
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    DeltaCodec.applyDelta(oldFile, new ByteArrayInputStream(delta), out);
+
+    return out.toByteArray();
+  }
+
+  private byte[] randomBytes(int length) {
+    final byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+}
@@ -82,6 +82,116 @@ public class FileListTest {
     assertEquals("not all encodings were fetched", expectedEncodings, fileList.getEncodings());
   }
 
+  @Test
+  public void testParallelCreationEqualsSequentialCreation() throws IOException {
+    final IProject project = EasyMock.createMock(IProject.class);
+    final Random random = new Random(4711);
+
+    final List<IResource> folders = new ArrayList<IResource>();
+
+    for (int i = 0; i < 10; i++) {
+      final IResource[] files = new IResource[50];
+
+      for (int j = 0; j < files.length; j++) {
+        files[j] =
+            createFileMock(
+                project, "folder" + i + "/file" + j, String.valueOf(random.nextLong()), "UTF-8");
+      }
+
+      folders.add(createFolderMock(project, "folder" + i, files));
+    }
+
+    EasyMock.expect(project.getName()).andStubReturn("foo");
+    EasyMock.replay(project);
+
+    final FileList sequential = FileListFactory.createFileList(project, folders, null, null, 1);
+    final FileList parallel = FileListFactory.createFileList(project, folders, null, null, 4);
+
+    assertEquals(500, sequential.getPaths().size());
+    assertEquals(sequential, parallel);
+  }
+
+  @Test
+  public void testLookupInWideFolder() throws Exception {
+    final FileList list = new FileList();
+
+    for (int i = 0; i < 1000; i++) {
+      final FileList.MetaData data = new FileList.MetaData();
+      data.checksum = i;
+      list.addPath("foo/bar" + i + ".txt", data, false);
+    }
+
+    list.addPath("foo/bar/baz.txt");
+
+    final FileList listFromXml = fromXML(toXML(list));
+
+    for (FileList fileList : Arrays.asList(list, listFromXml)) {
+      assertEquals(1001, fileList.getPaths().size());
+      assertTrue(fileList.contains("foo/bar0.txt"));
+      assertTrue(fileList.contains("foo/bar/baz.txt"));
+      assertFalse(fileList.contains("foo/bar1000.txt"));
+      assertFalse(fileList.contains("bar0.txt"));
+      assertEquals(999, fileList.getMetaData("foo/bar999.txt").checksum);
+    }
+
+    assertEquals(list, listFromXml);
+  }
+
+  @Test
+  public void testCollapseAndExpandWithEqualFileList() throws Exception {
+    final FileList list = createDeepFileList(0);
+
+    final FileList collapsed = fromXML(toXML(list.collapse(2)));
+
+    assertEquals(
+        Arrays.asList("a0/b0", "a0/b1", "a1/b0", "a1/b1"), collapsed.getCollapsedFolders());
+    assertEquals(list.getEncodings(), collapsed.getEncodings());
+    assertFalse(list.equals(collapsed));
+
+    assertEquals(4, collapsed.expand(createDeepFileList(0)));
+    assertTrue(collapsed.getCollapsedFolders().isEmpty());
+    assertEquals(list, collapsed);
+    assertEquals(list.getPaths().size(), collapsed.getPaths().size());
+  }
+
+  @Test
+  public void testExpandWithRequestedSubtrees() throws Exception {
+    final FileList remote = createDeepFileList(1);
+    final FileList local = createDeepFileList(0);
+
+    final FileList collapsed = fromXML(toXML(remote.collapse(1)));
+    collapsed.expand(local);
+
+    assertEquals(Arrays.asList("a1"), collapsed.getCollapsedFolders());
+
+    int rounds = 0;
+
+    while (!collapsed.getCollapsedFolders().isEmpty()) {
+      final FileList subtrees =
+          fromXML(toXML(remote.getSubtrees(collapsed.getCollapsedFolders(), 1)));
+
+      assertTrue(collapsed.expand(subtrees) > 0);
+      collapsed.expand(local);
+      rounds++;
+    }
+
+    assertEquals(3, rounds);
+    assertEquals(remote, collapsed);
+    assertEquals(0xDEADL, collapsed.getMetaData("a1/b1/c1/file0.txt").checksum);
+  }
+
+  @Test
+  public void testCollapseWithoutChecksums() {
+    final List<String> paths = new ArrayList<String>();
+
+    for (int i = 0; i < 100; i++) paths.add("foo/bar/file" + i + ".txt");
+
+    final FileList list = FileListFactory.createFileList(paths);
+
+    assertTrue(list.collapse(1).getCollapsedFolders().isEmpty());
+    assertEquals(list, list.collapse(1));
+  }
+
   @Test
   public void testToXmlAndBack() throws Exception {
     List<String> files = new ArrayList<String>();
@@ -106,6 +216,36 @@ public class FileListTest {
     assertEquals(list, listFromXml);
   }
 
+  /**
+   * Creates a file list with three folder levels below the project root and 20 files in each of the
+   * deepest folders. The given number of files in a1/b1/c1 gets a different checksum.
+   */
+  private static FileList createDeepFileList(int alteredFiles) {
+    final FileList list = new FileList();
+
+    for (int a = 0; a < 2; a++) {
+      for (int b = 0; b < 2; b++) {
+        for (int c = 0; c < 2; c++) {
+          final String folder = "a" + a + "/b" + b + "/c" + c + "/";
+
+          for (int i = 0; i < 20; i++) {
+            final FileList.MetaData data = new FileList.MetaData();
+            data.checksum = folder.hashCode() + i;
+
+            if (folder.equals("a1/b1/c1/") && i < alteredFiles) data.checksum = 0xDEAD;
+
+            list.addPath(folder + "file" + i + ".txt", data, false);
+          }
+        }
+      }
+    }
+
+    list.addPath("a0/empty/", null, true);
+    list.addEncoding("UTF-8");
+
+    return list;
+  }
+
   private static IProject createProjectLayout() {
 
     final IProject project = EasyMock.createMock(IProject.class);
@@ -151,6 +291,7 @@ public class FileListTest {
     EasyMock.expect(fileMock.isDerived()).andStubReturn(false);
     EasyMock.expect(fileMock.exists()).andStubReturn(true);
     EasyMock.expect(fileMock.getType()).andStubReturn(IResource.FILE);
+    EasyMock.expect(fileMock.getLocation()).andStubReturn(null);
 
     // only used for UI feedback
     EasyMock.expect(fileMock.getName()).andStubReturn("");
@@ -165,6 +306,7 @@ public class FileListTest {
                 }
               });
       EasyMock.expect(fileMock.getCharset()).andStubReturn(encoding);
+      EasyMock.expect(fileMock.getSize()).andStubReturn((long) content.getBytes().length);
     } catch (IOException e) {
       // cannot happen as the mock is in recording mode
     }
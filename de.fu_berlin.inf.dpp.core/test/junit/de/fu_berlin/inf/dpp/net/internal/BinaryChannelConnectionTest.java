@@ -2,18 +2,22 @@ package de.fu_berlin.inf.dpp.net.internal;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import de.fu_berlin.inf.dpp.net.internal.BinaryChannelConnection.IDPool;
+import de.fu_berlin.inf.dpp.net.internal.BinaryChannelConnection.Priority;
 import de.fu_berlin.inf.dpp.net.stream.ByteStream;
 import de.fu_berlin.inf.dpp.net.stream.StreamMode;
 import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -187,6 +191,75 @@ public class BinaryChannelConnectionTest {
         bobJID.toString(), extensions.get(1).getTransferDescription().getRecipient().toString());
   }
 
+  @Test
+  public void testSequenceNumberIsTransferredInHeader() throws Exception {
+
+    final List<BinaryXMPPExtension> extensions = new ArrayList<BinaryXMPPExtension>();
+
+    final CountDownLatch received = new CountDownLatch(2);
+
+    BinaryChannelConnection alice =
+        new BinaryChannelConnection(
+            aliceJID,
+            bobJID,
+            "junit",
+            aliceStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener() {
+              @Override
+              public void receive(final BinaryXMPPExtension extension) {
+                // NOP
+              }
+            });
+
+    BinaryChannelConnection bob =
+        new BinaryChannelConnection(
+            bobJID,
+            aliceJID,
+            "junit",
+            bobStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener() {
+              @Override
+              public void receive(final BinaryXMPPExtension extension) {
+                extensions.add(extension);
+                received.countDown();
+              }
+            });
+
+    alice.initialize();
+    bob.initialize();
+
+    final byte[] bytesToSend = new byte[] {1, 2, 3};
+
+    try {
+      TransferDescription description = TransferDescription.newDescription();
+      description.setNamespace("foo-namespace");
+      description.setElementName("bar");
+      description.setSequenceNumber(4711);
+
+      alice.send(description, bytesToSend);
+
+      description = TransferDescription.newDescription();
+      description.setNamespace("foo-namespace");
+      description.setElementName("bar");
+
+      alice.send(description, bytesToSend);
+
+      received.await(10000, TimeUnit.MILLISECONDS);
+    } finally {
+      alice.close();
+      bob.close();
+    }
+
+    assertTrue(extensions.get(0).getTransferDescription().hasSequenceNumber());
+    assertEquals(4711, extensions.get(0).getTransferDescription().getSequenceNumber());
+    assertArrayEquals(bytesToSend, extensions.get(0).getPayload());
+
+    assertFalse(extensions.get(1).getTransferDescription().hasSequenceNumber());
+    assertArrayEquals(bytesToSend, extensions.get(1).getPayload());
+  }
+
   @Test
   public void testFragmentationOnLargeDataToBeSend() throws Exception {
 
@@ -248,6 +321,83 @@ public class BinaryChannelConnectionTest {
     assertArrayEquals("fragmentation error", bytesToSend, receivedBytes);
   }
 
+  @Test
+  public void testPayloadIsReadIntoOneBuffer() throws Exception {
+
+    final List<BinaryXMPPExtension> extensions =
+        Collections.synchronizedList(new ArrayList<BinaryXMPPExtension>());
+
+    final CountDownLatch received = new CountDownLatch(2);
+
+    BinaryChannelConnection alice =
+        new BinaryChannelConnection(
+            aliceJID,
+            bobJID,
+            "junit",
+            aliceStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener() {
+              @Override
+              public void receive(final BinaryXMPPExtension extension) {
+                // NOP
+              }
+            });
+
+    BinaryChannelConnection bob =
+        new BinaryChannelConnection(
+            bobJID,
+            aliceJID,
+            "junit",
+            bobStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener() {
+              @Override
+              public void receive(final BinaryXMPPExtension extension) {
+                extensions.add(extension);
+                received.countDown();
+              }
+            });
+
+    alice.initialize();
+    bob.initialize();
+
+    TransferDescription description = TransferDescription.newDescription();
+
+    description.setNamespace("foo-namespace");
+    description.setElementName("bar");
+
+    final byte[] small = new byte[100];
+    final byte[] large = new byte[200 * 1000];
+
+    for (int i = 0; i < large.length; i++) large[i] = (byte) (i * 31);
+
+    try {
+      alice.send(description, small);
+      alice.send(description, large);
+      received.await(10000, TimeUnit.MILLISECONDS);
+    } finally {
+      alice.close();
+      bob.close();
+    }
+
+    assertEquals("not all packets were received", 0, received.getCount());
+
+    final BinaryXMPPExtension smallExtension = extensions.get(0);
+    final BinaryXMPPExtension largeExtension = extensions.get(1);
+
+    assertEquals(small.length, smallExtension.getPayloadBuffer().array().length);
+
+    assertEquals(large.length, largeExtension.getPayloadLength());
+    assertEquals(large.length, largeExtension.getPayloadBuffer().remaining());
+
+    final byte[] payload = new byte[large.length];
+    final InputStream in = largeExtension.getPayloadInputStream();
+
+    assertEquals(large.length, in.read(payload));
+    assertEquals(-1, in.read());
+    assertArrayEquals("fragmentation error", large, payload);
+  }
+
   @Test
   @Ignore(
       "this test consumes much CPU resources and should only executed manually when making changes")
@@ -321,6 +471,168 @@ public class BinaryChannelConnectionTest {
     assertArrayEquals("fragmentation error", bytesToSend, receivedBytes);
   }
 
+  @Test
+  public void testHighPriorityPacketPreemptsBulkPacket() throws Exception {
+
+    final CountDownLatch bulkTransferStarted = new CountDownLatch(1);
+    final CountDownLatch resumeBulkTransfer = new CountDownLatch(1);
+    final CountDownLatch received = new CountDownLatch(2);
+
+    final List<Integer> receivedSizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+    /* blocks the sender after the first chunk of the bulk packet was written */
+    final ByteStream blockingAliceStream =
+        new PipedBytestreamSession(null, null) {
+          private final OutputStream out =
+              new FilterOutputStream(aliceStream.getOutputStream()) {
+                private int written;
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                  out.write(b, off, len);
+                  written += len;
+
+                  if (written < 64 * 1024) return;
+
+                  bulkTransferStarted.countDown();
+
+                  try {
+                    resumeBulkTransfer.await(10000, TimeUnit.MILLISECONDS);
+                  } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                  }
+                }
+              };
+
+          @Override
+          public InputStream getInputStream() throws IOException {
+            return aliceStream.getInputStream();
+          }
+
+          @Override
+          public OutputStream getOutputStream() throws IOException {
+            return out;
+          }
+
+          @Override
+          public void close() throws IOException {
+            aliceStream.close();
+          }
+        };
+
+    final BinaryChannelConnection alice =
+        new BinaryChannelConnection(
+            aliceJID,
+            bobJID,
+            "junit",
+            blockingAliceStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener() {
+              @Override
+              public void receive(final BinaryXMPPExtension extension) {
+                // NOP
+              }
+            });
+
+    BinaryChannelConnection bob =
+        new BinaryChannelConnection(
+            bobJID,
+            aliceJID,
+            "junit",
+            bobStream,
+            StreamMode.SOCKS5_DIRECT,
+            new StreamConnectionListener() {
+              @Override
+              public void receive(final BinaryXMPPExtension extension) {
+                receivedSizes.add(extension.getPayload().length);
+                received.countDown();
+              }
+            });
+
+    alice.initialize();
+    bob.initialize();
+
+    final TransferDescription description = TransferDescription.newDescription();
+
+    description.setNamespace("foo-namespace");
+    description.setElementName("bar");
+
+    final byte[] bulkBytes = new byte[512 * 1024];
+    final byte[] highPriorityBytes = new byte[128];
+
+    final List<Exception> errors = Collections.synchronizedList(new ArrayList<Exception>());
+
+    Thread bulkSender =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                try {
+                  alice.send(description, bulkBytes);
+                } catch (Exception e) {
+                  errors.add(e);
+                }
+              }
+            });
+
+    Thread highPrioritySender =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                try {
+                  alice.send(description, highPriorityBytes);
+                } catch (Exception e) {
+                  errors.add(e);
+                }
+              }
+            });
+
+    try {
+      bulkSender.start();
+
+      assertTrue(bulkTransferStarted.await(10000, TimeUnit.MILLISECONDS));
+
+      highPrioritySender.start();
+
+      long timeout = System.currentTimeMillis() + 10000;
+
+      while (alice.getWaitingWrites(Priority.HIGH) == 0 && System.currentTimeMillis() < timeout)
+        Thread.sleep(10);
+
+      resumeBulkTransfer.countDown();
+
+      bulkSender.join(10000);
+      highPrioritySender.join(10000);
+
+      received.await(10000, TimeUnit.MILLISECONDS);
+    } finally {
+      resumeBulkTransfer.countDown();
+      alice.close();
+      bob.close();
+    }
+
+    assertTrue("errors: " + errors, errors.isEmpty());
+
+    assertEquals(
+        "high priority packet was not sent before the bulk packet",
+        asList(highPriorityBytes.length, bulkBytes.length),
+        receivedSizes);
+
+    assertEquals(1, alice.getWrites(Priority.HIGH));
+    // the transfer description and 17 chunks
+    assertEquals(1 + 17, alice.getWrites(Priority.BULK));
+    assertTrue(alice.getMaxQueueingDelay(Priority.HIGH) > 0);
+    assertTrue(
+        alice.getTotalQueueingDelay(Priority.HIGH) >= alice.getMaxQueueingDelay(Priority.HIGH));
+  }
+
+  private static List<Integer> asList(Integer... values) {
+    List<Integer> result = new ArrayList<Integer>();
+    Collections.addAll(result, values);
+    return result;
+  }
+
   @Test
   public void testIDPool() {
 
@@ -3,6 +3,8 @@ package de.fu_berlin.inf.dpp.net.internal;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import de.fu_berlin.inf.dpp.net.ConnectionState;
@@ -15,8 +17,11 @@ import de.fu_berlin.inf.dpp.net.xmpp.XMPPConnectionService;
 import de.fu_berlin.inf.dpp.test.util.TestThread;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -124,6 +129,7 @@ public class DataTransferManagerTest {
     private IByteStreamConnectionListener listener;
     private volatile boolean closed;
     private volatile int sendPackets;
+    private volatile byte[] sendContent;
 
     public ChannelConnection(JID to, StreamMode mode, IByteStreamConnectionListener listener) {
       this.to = to;
@@ -150,6 +156,7 @@ public class DataTransferManagerTest {
     @Override
     public void send(TransferDescription data, byte[] content) throws IOException {
       sendPackets++;
+      sendContent = content;
     }
 
     @Override
@@ -161,6 +168,10 @@ public class DataTransferManagerTest {
       return sendPackets;
     }
 
+    public byte[] getSendContent() {
+      return sendContent;
+    }
+
     @Override
     public String getConnectionID() {
       return null;
@@ -394,6 +405,51 @@ public class DataTransferManagerTest {
     dtm.sendData("foo", description, new byte[0]);
   }
 
+  @Test
+  public void testSendToMultipleRecipientsCompressesOnce() throws Exception {
+    Transport mainTransport = new Transport(StreamMode.SOCKS5_DIRECT);
+
+    DataTransferManager dtm =
+        new DataTransferManager(connectionServiceStub, null, mainTransport, null);
+
+    connectionListener.getValue().connectionStateChanged(connectionMock, ConnectionState.CONNECTED);
+
+    JID bob = new JID("bob@bar.com");
+    JID carl = new JID("carl@bar.com");
+    JID dave = new JID("dave@bar.com");
+
+    dtm.connect("foo", bob);
+    dtm.connect("foo", carl);
+
+    List<TransferDescription> descriptions = new ArrayList<TransferDescription>();
+
+    for (JID recipient : Arrays.asList(bob, carl, dave))
+      descriptions.add(
+          TransferDescription.newDescription()
+              .setRecipient(recipient)
+              .setElementName("foo")
+              .setCompressContent(true));
+
+    byte[] data = new byte[4096];
+
+    Map<JID, IOException> errors = dtm.sendData("foo", descriptions, data);
+
+    assertEquals("only dave should be unreachable", Collections.singleton(dave), errors.keySet());
+
+    List<ChannelConnection> connections = mainTransport.getEstablishedConnections();
+
+    assertEquals(2, connections.size());
+    assertEquals(1, connections.get(0).getSendPacketsCount());
+    assertEquals(1, connections.get(1).getSendPacketsCount());
+
+    assertSame(
+        "payload was compressed more than once",
+        connections.get(0).getSendContent(),
+        connections.get(1).getSendContent());
+
+    assertTrue(connections.get(0).getSendContent().length < data.length);
+  }
+
   @Test(timeout = 30000)
   public void testConcurrentConnections() throws Exception {
 
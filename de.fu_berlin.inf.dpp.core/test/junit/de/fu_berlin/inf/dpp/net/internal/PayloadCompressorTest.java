@@ -0,0 +1,128 @@
+package de.fu_berlin.inf.dpp.net.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PayloadCompressorTest {
+
+  private static final byte[] XML =
+      ("<ados xmlns=\"de.fu_berlin.inf.dpp\"><payload class=\"ADOS\" v=\"SPXV1\" sid=\"42\" seq=\"7\">"
+              + "<jupiterActivity source=\"alice%40example.com%2FSaros\"><p i=\"42\" p=\"Foo.java\"/>"
+              + "<t class=\"vectorTime\" local=\"2\" remote=\"3\"/>"
+              + "<o class=\"insertOp\" position=\"10\" origin=\"10\"><text>a</text></o>"
+              + "</jupiterActivity></payload></ados>")
+          .getBytes();
+
+  private PayloadCompressor compressor;
+
+  @Before
+  public void setUp() {
+    compressor = new PayloadCompressor();
+  }
+
+  @Test
+  public void testCompressAndDecompress() throws IOException {
+    final byte[] payload = new byte[256 * 1024];
+
+    for (int i = 0; i < payload.length; i++) payload[i] = (byte) (i % 61);
+
+    final byte[] compressed = compressor.compress("foo", payload, false);
+
+    assertNotNull("payload was not compressed", compressed);
+    assertTrue(compressed.length < payload.length);
+    assertArrayEquals(payload, compressor.decompress(compressed));
+  }
+
+  @Test
+  public void testSmallXMLIsCompressedWithDictionary() throws IOException {
+    final byte[] compressed = compressor.compress("ados", XML, true);
+
+    assertNotNull("payload was not compressed", compressed);
+    assertTrue(
+        "dictionary did not improve compression: " + compressed.length,
+        compressed.length < deflate(XML).length);
+
+    assertArrayEquals(XML, compressor.decompress(compressed));
+  }
+
+  @Test
+  public void testDecompressWithoutDictionary() throws IOException {
+    assertArrayEquals(XML, compressor.decompress(deflate(XML)));
+  }
+
+  @Test
+  public void testIncompressiblePayloadIsSkipped() {
+    final byte[] payload = new byte[4096];
+    new Random(4711).nextBytes(payload);
+
+    assertNull(compressor.compress("random", payload, false));
+
+    final PayloadCompressor.Statistics statistics = compressor.getStatistics("random");
+
+    assertEquals(1, statistics.getCompressedPackets());
+
+    // skipped without compressing it until the next sample
+    for (int i = 0; i < 20; i++) assertNull(compressor.compress("random", payload, false));
+
+    assertEquals(21, statistics.getPackets());
+    assertEquals(1, statistics.getCompressedPackets());
+    assertEquals(payload.length, statistics.getCompressedBytes());
+
+    // other elements are not affected
+    assertNotNull(compressor.compress("ados", XML, true));
+  }
+
+  @Test
+  public void testIncompressibleElementIsSampled() {
+    final byte[] random = new byte[4096];
+    new Random(4711).nextBytes(random);
+
+    assertNull(compressor.compress("foo", random, false));
+
+    final byte[] compressible = new byte[4096];
+
+    int packets = 0;
+
+    while (compressor.compress("foo", compressible, false) == null) {
+      assertTrue("element was never sampled again", ++packets < 1000);
+    }
+
+    assertEquals(2, compressor.getStatistics("foo").getCompressedPackets());
+  }
+
+  @Test(expected = IOException.class)
+  public void testDecompressTruncatedPayload() throws IOException {
+    final byte[] compressed = compressor.compress("ados", XML, true);
+    compressor.decompress(Arrays.copyOf(compressed, compressed.length / 2));
+  }
+
+  @Test(expected = IOException.class)
+  public void testDecompressCorruptedPayload() throws IOException {
+    compressor.decompress(XML);
+  }
+
+  private static byte[] deflate(byte[] input) {
+    final Deflater deflater = new Deflater(Deflater.DEFLATED);
+    deflater.setInput(input);
+    deflater.finish();
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[1024];
+
+    while (!deflater.finished()) out.write(buffer, 0, deflater.deflate(buffer));
+
+    deflater.end();
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,261 @@
+package de.fu_berlin.inf.dpp.net.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import de.fu_berlin.inf.dpp.net.DispatchThreadContext;
+import de.fu_berlin.inf.dpp.net.stream.StreamMode;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import de.fu_berlin.inf.dpp.net.xmpp.XMPPConnectionService;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.easymock.EasyMock;
+import org.jivesoftware.smack.PacketListener;
+import org.jivesoftware.smack.filter.PacketFilter;
+import org.jivesoftware.smack.packet.DefaultPacketExtension;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smack.packet.Packet;
+import org.jivesoftware.smack.packet.PacketExtension;
+import org.jivesoftware.smack.provider.PacketExtensionProvider;
+import org.jivesoftware.smack.provider.ProviderManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParser;
+
+public class XMPPReceiverTest {
+
+  private static final String ELEMENT = "xmppreceivertest";
+  private static final String NAMESPACE = "de.fu_berlin.inf.dpp.test";
+
+  private static final String BLOCKING_VALUE = "block";
+
+  private static final JID ALICE = new JID("alice@example.com/Saros");
+  private static final JID BOB = new JID("bob@example.com/Saros");
+  private static final JID CARL = new JID("carl@example.com/Saros");
+
+  private DispatchThreadContext dispatchThreadContext;
+  private XMPPReceiver receiver;
+
+  private final CountDownLatch unblockDeserialization = new CountDownLatch(1);
+  private final CountDownLatch deserializationBlocked = new CountDownLatch(1);
+
+  private final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+
+  @Before
+  public void setUp() {
+    ProviderManager.getInstance()
+        .addExtensionProvider(
+            ELEMENT,
+            NAMESPACE,
+            new PacketExtensionProvider() {
+              @Override
+              public PacketExtension parseExtension(XmlPullParser parser) throws Exception {
+                DefaultPacketExtension extension = new DefaultPacketExtension(ELEMENT, NAMESPACE);
+
+                String value = parser.nextText();
+
+                if (value.equals(BLOCKING_VALUE)) {
+                  deserializationBlocked.countDown();
+                  unblockDeserialization.await(10, TimeUnit.SECONDS);
+                }
+
+                extension.setValue("value", value);
+                return extension;
+              }
+            });
+
+    XMPPConnectionService connectionService = EasyMock.createNiceMock(XMPPConnectionService.class);
+    EasyMock.replay(connectionService);
+
+    dispatchThreadContext = new DispatchThreadContext();
+    receiver = new XMPPReceiver(dispatchThreadContext, connectionService, 4);
+
+    receiver.addPacketListener(
+        new PacketListener() {
+          @Override
+          public void processPacket(Packet packet) {
+            DefaultPacketExtension extension =
+                (DefaultPacketExtension) packet.getExtension(ELEMENT, NAMESPACE);
+
+            received.add(packet.getFrom() + ":" + extension.getValue("value"));
+          }
+        },
+        null);
+  }
+
+  @After
+  public void tearDown() {
+    unblockDeserialization.countDown();
+    receiver.dispose();
+    dispatchThreadContext.dispose();
+    ProviderManager.getInstance().removeExtensionProvider(ELEMENT, NAMESPACE);
+  }
+
+  @Test
+  public void testPacketsOfSenderAreForwardedInOrder() throws Exception {
+    List<String> expected = new ArrayList<String>();
+
+    for (int i = 0; i < 1000; i++) {
+      receiver.processBinaryXMPPExtension(createExtension(ALICE, "" + i));
+      expected.add(ALICE + ":" + i);
+    }
+
+    awaitReceived(expected.size());
+
+    assertEquals(expected, received);
+  }
+
+  @Test
+  public void testBlockedSenderDoesNotDelayOtherSenders() throws Exception {
+    receiver.processBinaryXMPPExtension(createExtension(ALICE, BLOCKING_VALUE));
+    receiver.processBinaryXMPPExtension(createExtension(ALICE, "1"));
+
+    assertTrue(deserializationBlocked.await(10, TimeUnit.SECONDS));
+
+    receiver.processBinaryXMPPExtension(createExtension(BOB, "1"));
+    receiver.processBinaryXMPPExtension(createExtension(BOB, "2"));
+
+    awaitReceived(2);
+
+    assertEquals(list(BOB + ":1", BOB + ":2"), received);
+
+    unblockDeserialization.countDown();
+
+    awaitReceived(4);
+
+    assertEquals(
+        list(BOB + ":1", BOB + ":2", ALICE + ":" + BLOCKING_VALUE, ALICE + ":1"), received);
+  }
+
+  @Test
+  public void testPacketsDoNotOvertakeBinaryPacketsOfSender() throws Exception {
+    receiver.processBinaryXMPPExtension(createExtension(ALICE, BLOCKING_VALUE));
+
+    assertTrue(deserializationBlocked.await(10, TimeUnit.SECONDS));
+
+    receiver.processPacket(createPacket(ALICE, "1"));
+    receiver.processBinaryXMPPExtension(createExtension(ALICE, "2"));
+    receiver.processPacket(createPacket(ALICE, "3"));
+    receiver.processPacket(createPacket(BOB, "1"));
+
+    awaitReceived(1);
+
+    assertEquals(list(BOB + ":1"), received);
+
+    unblockDeserialization.countDown();
+
+    awaitReceived(5);
+
+    assertEquals(
+        list(BOB + ":1", ALICE + ":" + BLOCKING_VALUE, ALICE + ":1", ALICE + ":2", ALICE + ":3"),
+        received);
+
+    receiver.processPacket(createPacket(ALICE, "4"));
+
+    awaitReceived(6);
+
+    assertEquals(ALICE + ":4", received.get(5));
+  }
+
+  @Test
+  public void testFailedDeserializationDoesNotBlockSender() throws Exception {
+    receiver.processBinaryXMPPExtension(createExtension(CARL, "<broken", "1"));
+    receiver.processBinaryXMPPExtension(createExtension(CARL, "2"));
+
+    awaitReceived(1);
+
+    assertEquals(list(CARL + ":2"), received);
+  }
+
+  @Test
+  public void testRemovedListenerIsNotCalled() throws Exception {
+    final List<Packet> packets = Collections.synchronizedList(new ArrayList<Packet>());
+
+    PacketListener listener =
+        new PacketListener() {
+          @Override
+          public void processPacket(Packet packet) {
+            packets.add(packet);
+          }
+        };
+
+    receiver.addPacketListener(
+        listener,
+        new PacketFilter() {
+          @Override
+          public boolean accept(Packet packet) {
+            return packet.getFrom().equals(BOB.toString());
+          }
+        });
+
+    receiver.processBinaryXMPPExtension(createExtension(ALICE, "1"));
+    receiver.processBinaryXMPPExtension(createExtension(BOB, "1"));
+
+    awaitReceived(2);
+
+    receiver.removePacketListener(listener);
+
+    receiver.processBinaryXMPPExtension(createExtension(BOB, "2"));
+
+    awaitReceived(3);
+
+    assertEquals(1, packets.size());
+    assertEquals(BOB.toString(), packets.get(0).getFrom());
+  }
+
+  private void awaitReceived(int count) throws InterruptedException {
+    long timeout = System.currentTimeMillis() + 10000;
+
+    while (received.size() < count && System.currentTimeMillis() < timeout) Thread.sleep(10);
+
+    // give the receiver the chance to forward more packets than expected
+    Thread.sleep(50);
+
+    assertEquals(count, received.size());
+  }
+
+  private static BinaryXMPPExtension createExtension(JID sender, String value)
+      throws UnsupportedEncodingException {
+    return createExtension(sender, "<" + ELEMENT + " xmlns='" + NAMESPACE + "'>", value);
+  }
+
+  private static BinaryXMPPExtension createExtension(JID sender, String startTag, String value)
+      throws UnsupportedEncodingException {
+
+    TransferDescription description =
+        TransferDescription.newDescription()
+            .setElementName(ELEMENT)
+            .setNamespace(NAMESPACE)
+            .setSender(sender)
+            .setRecipient(new JID("host@example.com/Saros"));
+
+    byte[] payload = (startTag + value + "</" + ELEMENT + ">").getBytes("UTF-8");
+
+    BinaryXMPPExtension extension = new BinaryXMPPExtension(StreamMode.NONE, description, 1);
+    extension.isLastChunk();
+    extension.setPayload(payload.length, payload);
+
+    return extension;
+  }
+
+  private static Packet createPacket(JID sender, String value) {
+    DefaultPacketExtension extension = new DefaultPacketExtension(ELEMENT, NAMESPACE);
+    extension.setValue("value", value);
+
+    Packet packet = new Message();
+    packet.setFrom(sender.toString());
+    packet.addExtension(extension);
+    return packet;
+  }
+
+  private static List<String> list(String... values) {
+    List<String> result = new ArrayList<String>();
+    Collections.addAll(result, values);
+    return result;
+  }
+}
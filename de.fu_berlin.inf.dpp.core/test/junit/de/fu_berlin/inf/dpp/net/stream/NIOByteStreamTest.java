@@ -0,0 +1,152 @@
+package de.fu_berlin.inf.dpp.net.stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NIOByteStreamTest {
+
+  // small buffers to force a lot of queuing
+  private static final int BUFFER_SIZE = 1024;
+
+  private SelectorPool selectorPool;
+  private DirectBufferPool bufferPool;
+
+  private NIOByteStream aliceStream;
+  private NIOByteStream bobStream;
+
+  @Before
+  public void setUp() throws IOException {
+    selectorPool = new SelectorPool("NIOByteStreamTest-Selector", 2);
+    selectorPool.start();
+
+    bufferPool = new DirectBufferPool(BUFFER_SIZE, 16);
+
+    final ServerSocketChannel server = ServerSocketChannel.open();
+
+    try {
+      server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+      final SocketChannel alice =
+          SocketChannel.open(
+              new InetSocketAddress(
+                  InetAddress.getLoopbackAddress(), server.socket().getLocalPort()));
+
+      final SocketChannel bob = server.accept();
+
+      aliceStream = new NIOByteStream(alice, selectorPool, bufferPool);
+      bobStream = new NIOByteStream(bob, selectorPool, bufferPool);
+    } finally {
+      server.close();
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    aliceStream.close();
+    bobStream.close();
+    selectorPool.stop();
+  }
+
+  @Test
+  public void testTransferInBothDirections() throws Exception {
+    final byte[] aliceData = createData(1024 * 1024);
+    final byte[] bobData = createData(512 * 1024 + 17);
+
+    final Thread aliceWriter = write(aliceStream.getOutputStream(), aliceData);
+    final Thread bobWriter = write(bobStream.getOutputStream(), bobData);
+
+    assertArrayEquals(bobData, read(aliceStream.getInputStream(), bobData.length));
+    assertArrayEquals(aliceData, read(bobStream.getInputStream(), aliceData.length));
+
+    aliceWriter.join(10000);
+    bobWriter.join(10000);
+  }
+
+  @Test
+  public void testCloseWritesQueuedData() throws Exception {
+    final byte[] data = createData(64 * 1024);
+
+    final OutputStream out = aliceStream.getOutputStream();
+
+    out.write(data);
+    out.flush();
+    aliceStream.close();
+
+    final InputStream in = bobStream.getInputStream();
+
+    assertArrayEquals(data, read(in, data.length));
+    assertEquals("expected end of stream", -1, in.read());
+  }
+
+  @Test(expected = SocketTimeoutException.class)
+  public void testReadTimeout() throws Exception {
+    bobStream.setReadTimeout(100);
+    bobStream.getInputStream().read();
+  }
+
+  @Test(expected = IOException.class)
+  public void testWriteFailsIfSelectorPoolIsStopped() throws Exception {
+    selectorPool.stop();
+
+    final OutputStream out = aliceStream.getOutputStream();
+
+    out.write(1);
+    out.flush();
+  }
+
+  private static Thread write(final OutputStream out, final byte[] data) {
+    final Thread writer =
+        new Thread() {
+          @Override
+          public void run() {
+            try {
+              final Random random = new Random(data.length);
+
+              int offset = 0;
+
+              while (offset < data.length) {
+                final int length = Math.min(data.length - offset, 1 + random.nextInt(5000));
+
+                out.write(data, offset, length);
+                offset += length;
+
+                if (random.nextBoolean()) out.flush();
+              }
+
+              out.flush();
+            } catch (IOException e) {
+              throw new RuntimeException(e);
+            }
+          }
+        };
+
+    writer.start();
+    return writer;
+  }
+
+  private static byte[] read(InputStream in, int length) throws IOException {
+    final byte[] data = new byte[length];
+    new DataInputStream(in).readFully(data);
+    return data;
+  }
+
+  private static byte[] createData(int length) {
+    final byte[] data = new byte[length];
+    new Random(length).nextBytes(data);
+    return data;
+  }
+}
@@ -0,0 +1,224 @@
+package de.fu_berlin.inf.dpp.net.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import de.fu_berlin.inf.dpp.net.internal.BinaryXMPPExtension;
+import de.fu_berlin.inf.dpp.net.internal.IByteStreamConnection;
+import de.fu_berlin.inf.dpp.net.internal.IByteStreamConnectionListener;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.jivesoftware.smack.Connection;
+import org.jivesoftware.smack.ConnectionConfiguration;
+import org.jivesoftware.smack.Roster;
+import org.jivesoftware.smack.packet.Packet;
+import org.jivesoftware.smack.packet.Presence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TCPTransportTest {
+
+  private static final JID ALICE = new JID("alice@example.com/Saros");
+  private static final JID BOB = new JID("bob@example.com/Saros");
+
+  /** Delivers the sent packets to the packet listeners of the connection of the recipient. */
+  private static class LoopbackConnection extends Connection {
+
+    private static final ExecutorService DELIVERY = Executors.newSingleThreadExecutor();
+
+    private final JID user;
+
+    private LoopbackConnection peer;
+
+    private LoopbackConnection(JID user) {
+      super(new ConnectionConfiguration("localhost", 5222, "example.com"));
+      this.user = user;
+    }
+
+    @Override
+    public void sendPacket(final Packet packet) {
+      packet.setFrom(user.toString());
+
+      DELIVERY.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              for (ListenerWrapper listener : peer.getPacketListeners().values())
+                listener.notifyListener(packet);
+            }
+          });
+    }
+
+    @Override
+    public String getUser() {
+      return user.toString();
+    }
+
+    @Override
+    public String getConnectionID() {
+      return null;
+    }
+
+    @Override
+    public boolean isConnected() {
+      return true;
+    }
+
+    @Override
+    public boolean isAuthenticated() {
+      return true;
+    }
+
+    @Override
+    public boolean isAnonymous() {
+      return false;
+    }
+
+    @Override
+    public boolean isSecureConnection() {
+      return false;
+    }
+
+    @Override
+    public boolean isUsingCompression() {
+      return false;
+    }
+
+    @Override
+    public void connect() {
+      // NOP
+    }
+
+    @Override
+    public void login(String username, String password, String resource) {
+      // NOP
+    }
+
+    @Override
+    public void loginAnonymously() {
+      // NOP
+    }
+
+    @Override
+    public Roster getRoster() {
+      return null;
+    }
+
+    @Override
+    public void disconnect(Presence unavailablePresence) {
+      // NOP
+    }
+  }
+
+  private static class ConnectionListener implements IByteStreamConnectionListener {
+
+    private final BlockingQueue<IByteStreamConnection> incomingConnections =
+        new LinkedBlockingQueue<IByteStreamConnection>();
+
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    @Override
+    public void receive(BinaryXMPPExtension extension) {
+      // NOP
+    }
+
+    @Override
+    public void connectionClosed(String connectionID, IByteStreamConnection connection) {
+      closed.countDown();
+    }
+
+    @Override
+    public void connectionChanged(
+        String connectionID, IByteStreamConnection connection, boolean incomingRequest) {
+      if (incomingRequest) incomingConnections.add(connection);
+    }
+  }
+
+  private TCPTransport aliceTransport;
+  private TCPTransport bobTransport;
+
+  private ConnectionListener aliceListener;
+  private ConnectionListener bobListener;
+
+  @Before
+  public void setUp() {
+    LoopbackConnection aliceConnection = new LoopbackConnection(ALICE);
+    LoopbackConnection bobConnection = new LoopbackConnection(BOB);
+
+    aliceConnection.peer = bobConnection;
+    bobConnection.peer = aliceConnection;
+
+    aliceListener = new ConnectionListener();
+    bobListener = new ConnectionListener();
+
+    aliceTransport = new TCPTransport();
+    bobTransport = new TCPTransport();
+
+    aliceTransport.initialize(aliceConnection, aliceListener);
+    bobTransport.initialize(bobConnection, bobListener);
+  }
+
+  @After
+  public void tearDown() {
+    aliceTransport.uninitialize();
+    bobTransport.uninitialize();
+  }
+
+  @Test
+  public void testConnectAndClose() throws Exception {
+    IByteStreamConnection alice = aliceTransport.connect("junit", BOB);
+
+    IByteStreamConnection bob = bobListener.incomingConnections.poll(10, TimeUnit.SECONDS);
+
+    assertNotNull("connection was not accepted", bob);
+
+    assertEquals(StreamMode.TCP, alice.getMode());
+    assertEquals("junit", bob.getConnectionID());
+    assertTrue(ALICE.strictlyEquals(bob.getRemoteAddress()));
+
+    alice.initialize();
+    bob.initialize();
+
+    assertTrue(alice.isConnected());
+    assertTrue(bob.isConnected());
+
+    alice.close();
+
+    assertTrue(
+        "connection was not closed on the remote side",
+        bobListener.closed.await(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testConnectionWithUnknownTokenIsRejected() throws Exception {
+    Socket socket = new Socket(InetAddress.getLoopbackAddress(), bobTransport.getLocalPort());
+
+    try {
+      socket.setSoTimeout(10000);
+
+      DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+
+      out.writeInt(0x53524F53);
+      out.writeUTF("4711");
+      out.writeUTF(ALICE.toString());
+      out.flush();
+
+      assertEquals(0, new DataInputStream(socket.getInputStream()).read());
+    } finally {
+      socket.close();
+    }
+
+    assertTrue(bobListener.incomingConnections.isEmpty());
+  }
+}
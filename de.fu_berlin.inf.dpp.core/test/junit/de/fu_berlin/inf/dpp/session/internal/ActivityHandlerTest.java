@@ -30,10 +30,12 @@ import de.fu_berlin.inf.dpp.activities.ViewportActivity;
 import de.fu_berlin.inf.dpp.concurrent.management.ConcurrentDocumentClient;
 import de.fu_berlin.inf.dpp.concurrent.management.ConcurrentDocumentServer;
 import de.fu_berlin.inf.dpp.filesystem.IProject;
+import de.fu_berlin.inf.dpp.session.FolderMoveNegotiationHook;
 import de.fu_berlin.inf.dpp.session.IActivityHandlerCallback;
 import de.fu_berlin.inf.dpp.session.ISarosSession;
 import de.fu_berlin.inf.dpp.session.User;
 import de.fu_berlin.inf.dpp.test.fakes.synchonize.NonUISynchronizer;
+import de.fu_berlin.inf.dpp.test.util.MemoryPreferenceStore;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -73,6 +75,9 @@ public class ActivityHandlerTest {
   // Needed to compare localActivities
   private volatile CountDownLatch gate;
 
+  // Needed to compare activities that are transformed by another Thread
+  private volatile CountDownLatch sendGate;
+
   // Roles of the Users in this Test
   private User target;
   private User source;
@@ -88,6 +93,10 @@ public class ActivityHandlerTest {
           willBeSent = true;
           targets = recipients;
           transformedActivity = activity;
+
+          CountDownLatch gateToCountdown = sendGate;
+
+          if (gateToCountdown != null) gateToCountdown.countDown();
         }
 
         @Override
@@ -102,6 +111,8 @@ public class ActivityHandlerTest {
       };
   private SPath path;
 
+  private ISarosSession sessionMock;
+
   @Before
   public void setUp() {
 
@@ -136,10 +147,19 @@ public class ActivityHandlerTest {
     for (IActivity activity : activities) {
 
       willBeSent = false;
+      sendGate = new CountDownLatch(1);
 
       // SUT-CALL
       handler.handleOutgoingActivities(Collections.singletonList(activity));
 
+      // As text edits are held back to merge them with further text edits
+      // we have to wait for them to be sent
+      try {
+        sendGate.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        fail("Interupted");
+      }
+
       if (!willBeSent) {
         fail("Activity: " + activity + " was not send.");
       } else if (targets.size() == 0) {
@@ -173,10 +193,19 @@ public class ActivityHandlerTest {
     for (IActivity activity : activities) {
 
       willBeSent = false;
+      sendGate = new CountDownLatch(1);
 
       // SUT-CALL
       handler.handleIncomingActivities(Collections.singletonList(activity));
 
+      // As the transformation of document related activities is performed
+      // by a different Thread we have to wait for it to send the activity
+      try {
+        sendGate.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        fail("Interupted");
+      }
+
       if (!willBeSent) {
         fail("Activity: " + activity + " was not send.");
       } else if (activity instanceof ITargetedActivity) {
@@ -268,6 +297,169 @@ public class ActivityHandlerTest {
     }
   }
 
+  /**
+   * This tests if the handleOutgoingActivities-method merges contiguous text edits and sends the
+   * selections made in between afterwards.
+   */
+  @Test
+  public void ClientCoalesceTextEditsTest() throws InterruptedException {
+
+    final List<IActivity> sent = Collections.synchronizedList(new ArrayList<IActivity>());
+    final CountDownLatch sentGate = new CountDownLatch(3);
+
+    final IActivityHandlerCallback recordingCallback =
+        new IActivityHandlerCallback() {
+          @Override
+          public void send(List<User> recipients, IActivity activity) {
+            sent.add(activity);
+            sentGate.countDown();
+          }
+
+          @Override
+          public void execute(IActivity activity) {
+            // NOP
+          }
+        };
+
+    // transformation results in the activity itself
+    ConcurrentDocumentClient client = EasyMock.createNiceMock(ConcurrentDocumentClient.class);
+    EasyMock.expect(client.transformToJupiter(EasyMock.anyObject(IActivity.class)))
+        .andAnswer(
+            new IAnswer<IActivity>() {
+              @Override
+              public IActivity answer() throws Throwable {
+                return (IActivity) EasyMock.getCurrentArguments()[0];
+              }
+            })
+        .anyTimes();
+    EasyMock.replay(client);
+
+    ActivityHandler coalescingHandler =
+        new ActivityHandler(
+            sessionMock,
+            recordingCallback,
+            EasyMock.createNiceMock(ConcurrentDocumentServer.class),
+            client,
+            synchronizer,
+            0,
+            100);
+
+    coalescingHandler.start();
+
+    try {
+      TextSelectionActivity selection = new TextSelectionActivity(alice, 3, 0, path);
+
+      for (int i = 0; i < 3; i++) {
+        coalescingHandler.handleOutgoingActivities(
+            Collections.<IActivity>singletonList(
+                new TextEditActivity(alice, i, String.valueOf((char) ('a' + i)), "", path)));
+
+        coalescingHandler.handleOutgoingActivities(
+            Collections.<IActivity>singletonList(new TextSelectionActivity(alice, i + 1, 0, path)));
+      }
+
+      coalescingHandler.handleOutgoingActivities(
+          Collections.<IActivity>singletonList(new TextEditActivity(alice, 10, "x", "", path)));
+
+      assertTrue("activities were not sent", sentGate.await(10, TimeUnit.SECONDS));
+
+      assertEquals(new TextEditActivity(alice, 0, "abc", "", path), sent.get(0));
+      assertEquals(selection, sent.get(1));
+      assertEquals(new TextEditActivity(alice, 10, "x", "", path), sent.get(2));
+    } finally {
+      coalescingHandler.stop();
+    }
+  }
+
+  /**
+   * This tests that the timeout of a text edit which was already sent does not send the next text
+   * edit before its own coalescing window elapsed.
+   */
+  @Test
+  public void ClientCoalescingTimeoutOfSentTextEditTest() throws InterruptedException {
+    final List<IActivity> sent = Collections.synchronizedList(new ArrayList<IActivity>());
+
+    ActivityHandler coalescingHandler = createCoalescingHandler(sent, 1000);
+
+    coalescingHandler.start();
+
+    try {
+      coalescingHandler.handleOutgoingActivities(
+          Collections.<IActivity>singletonList(new TextEditActivity(alice, 0, "a", "", path)));
+
+      Thread.sleep(500);
+
+      // not contiguous, sends the first text edit
+      coalescingHandler.handleOutgoingActivities(
+          Collections.<IActivity>singletonList(new TextEditActivity(alice, 10, "x", "", path)));
+
+      // the timeout of the first text edit elapsed, but not the one of the second
+      Thread.sleep(700);
+
+      assertEquals(Collections.singletonList(new TextEditActivity(alice, 0, "a", "", path)), sent);
+    } finally {
+      coalescingHandler.stop();
+    }
+  }
+
+  /** This tests that a held back text edit is sent when the handler is stopped. */
+  @Test
+  public void ClientSendPendingTextEditOnStopTest() {
+    final List<IActivity> sent = Collections.synchronizedList(new ArrayList<IActivity>());
+
+    ActivityHandler coalescingHandler = createCoalescingHandler(sent, 60000);
+
+    coalescingHandler.start();
+
+    coalescingHandler.handleOutgoingActivities(
+        Collections.<IActivity>singletonList(new TextEditActivity(alice, 0, "a", "", path)));
+
+    assertTrue("text edit was not held back", sent.isEmpty());
+
+    coalescingHandler.stop();
+
+    assertEquals(Collections.singletonList(new TextEditActivity(alice, 0, "a", "", path)), sent);
+  }
+
+  private ActivityHandler createCoalescingHandler(
+      final List<IActivity> sent, long coalescingWindow) {
+
+    final IActivityHandlerCallback recordingCallback =
+        new IActivityHandlerCallback() {
+          @Override
+          public void send(List<User> recipients, IActivity activity) {
+            sent.add(activity);
+          }
+
+          @Override
+          public void execute(IActivity activity) {
+            // NOP
+          }
+        };
+
+    // transformation results in the activity itself
+    ConcurrentDocumentClient client = EasyMock.createNiceMock(ConcurrentDocumentClient.class);
+    EasyMock.expect(client.transformToJupiter(EasyMock.anyObject(IActivity.class)))
+        .andAnswer(
+            new IAnswer<IActivity>() {
+              @Override
+              public IActivity answer() throws Throwable {
+                return (IActivity) EasyMock.getCurrentArguments()[0];
+              }
+            })
+        .anyTimes();
+    EasyMock.replay(client);
+
+    return new ActivityHandler(
+        sessionMock,
+        recordingCallback,
+        EasyMock.createNiceMock(ConcurrentDocumentServer.class),
+        client,
+        synchronizer,
+        0,
+        coalescingWindow);
+  }
+
   /**
    * Specifies the roles of participants in the session. Should be called at the start of every test
    * case
@@ -322,7 +514,7 @@ public class ActivityHandlerTest {
     synchronizer = new NonUISynchronizer();
 
     // Create SessionMock
-    ISarosSession sessionMock = EasyMock.createMock(ISarosSession.class);
+    sessionMock = EasyMock.createMock(ISarosSession.class);
     EasyMock.expect(sessionMock.getLocalUser()).andStubReturn(alice);
     EasyMock.expect(sessionMock.getHost()).andStubReturn(alice);
     // read host-Variable at runtime.
@@ -345,6 +537,11 @@ public class ActivityHandlerTest {
 
     EasyMock.expect(sessionMock.getUsers()).andStubReturn(participants);
     EasyMock.expect(sessionMock.getRemoteUsers()).andStubReturn(remoteUsers);
+
+    MemoryPreferenceStore userProperties = new MemoryPreferenceStore();
+    userProperties.setValue(FolderMoveNegotiationHook.KEY_FOLDER_MOVE, true);
+    EasyMock.expect(sessionMock.getUserProperties(EasyMock.isA(User.class)))
+        .andStubReturn(userProperties);
     EasyMock.replay(sessionMock);
 
     // create ActivityMocks
@@ -400,6 +597,11 @@ public class ActivityHandlerTest {
       if (activity instanceof IResourceActivity) {
         EasyMock.expect(((IResourceActivity) activity).getPath()).andStubReturn(path);
       }
+
+      if (activity instanceof TextEditActivity) {
+        EasyMock.expect(((TextEditActivity) activity).getText()).andStubReturn("a");
+        EasyMock.expect(((TextEditActivity) activity).getReplacedText()).andStubReturn("");
+      }
       EasyMock.replay(activity);
     }
 
@@ -1,12 +1,19 @@
 package de.fu_berlin.inf.dpp.session.internal;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import de.fu_berlin.inf.dpp.activities.FileActivity;
 import de.fu_berlin.inf.dpp.activities.IActivity;
 import de.fu_berlin.inf.dpp.activities.NOPActivity;
+import de.fu_berlin.inf.dpp.activities.SPath;
+import de.fu_berlin.inf.dpp.communication.extensions.FileContentExtension;
+import de.fu_berlin.inf.dpp.filesystem.IPath;
+import de.fu_berlin.inf.dpp.filesystem.IProject;
+import de.fu_berlin.inf.dpp.misc.binary.BinaryCodecManager;
 import de.fu_berlin.inf.dpp.net.IReceiver;
 import de.fu_berlin.inf.dpp.net.ITransmitter;
 import de.fu_berlin.inf.dpp.net.xmpp.JID;
@@ -251,6 +258,147 @@ public class ActivitySequencerTest {
     }
   }
 
+  @Test(timeout = 30000)
+  public void testMulticastKeepsSequenceNumbersOfEveryRecipient() {
+
+    final JID carlJID = new JID("carl@test/Saros");
+
+    int activityCount = 1000;
+
+    FakeConnectionFactoryResult result =
+        FakeConnectionFactory.createConnections(ALICE_JID, BOB_JID, carlJID)
+            .withStrictJIDLookup()
+            .get();
+
+    SequencerSessionStub sessionStubCarl = new SequencerSessionStub();
+    sessionStubCarl.setLocalUser(new User(carlJID, false, true, 0, 0));
+
+    aliceSequencer =
+        new ActivitySequencer(
+            sessionStubAlice,
+            result.getTransmitter(ALICE_JID),
+            result.getReceiver(ALICE_JID),
+            null);
+
+    bobSequencer =
+        new ActivitySequencer(
+            sessionStubBob, result.getTransmitter(BOB_JID), result.getReceiver(BOB_JID), null);
+
+    ActivitySequencer carlSequencer =
+        new ActivitySequencer(
+            sessionStubCarl, result.getTransmitter(carlJID), result.getReceiver(carlJID), null);
+
+    aliceSequencer.start();
+    bobSequencer.start();
+    carlSequencer.start();
+
+    try {
+      User bobUserInAliceSession = new User(BOB_JID, false, false, 0, 0);
+      User carlUserInAliceSession = new User(carlJID, false, false, 0, 0);
+      User aliceUserInBobSession = new User(ALICE_JID, true, false, 0, 0);
+      User aliceUserInCarlSession = new User(ALICE_JID, true, false, 0, 0);
+
+      sessionStubBob.addUser(aliceUserInBobSession, new PreferenceStore());
+      sessionStubCarl.addUser(aliceUserInCarlSession, new PreferenceStore());
+
+      aliceSequencer.registerUser(bobUserInAliceSession);
+      aliceSequencer.registerUser(carlUserInAliceSession);
+      bobSequencer.registerUser(aliceUserInBobSession);
+      carlSequencer.registerUser(aliceUserInCarlSession);
+
+      // let the sequence numbers of Bob and Carl diverge
+      aliceSequencer.sendActivity(
+          Collections.singletonList(bobUserInAliceSession),
+          new NOPActivity(aliceUser, bobUserInAliceSession, -1));
+
+      aliceSequencer.flush(bobUserInAliceSession);
+
+      List<User> recipients = new ArrayList<User>();
+      recipients.add(bobUserInAliceSession);
+      recipients.add(carlUserInAliceSession);
+
+      for (int i = 0; i < activityCount; i++)
+        aliceSequencer.sendActivity(recipients, new NOPActivity(aliceUser, aliceUser, i));
+
+      aliceSequencer.flush(bobUserInAliceSession);
+      aliceSequencer.flush(carlUserInAliceSession);
+
+      assertTrue("Bob is not registered", aliceSequencer.isUserRegistered(bobUserInAliceSession));
+      assertTrue("Carl is not registered", aliceSequencer.isUserRegistered(carlUserInAliceSession));
+
+      List<IActivity> bobActivities = sessionStubBob.getReceivedActivities();
+      List<IActivity> carlActivities = sessionStubCarl.getReceivedActivities();
+
+      assertEquals("not all activies received by Bob", activityCount + 1, bobActivities.size());
+      assertEquals("not all activies received by Carl", activityCount, carlActivities.size());
+
+      for (int i = 0; i < activityCount; i++) {
+        assertEquals(
+            "activity is out of order", i, ((NOPActivity) bobActivities.get(i + 1)).getID());
+        assertEquals("activity is out of order", i, ((NOPActivity) carlActivities.get(i)).getID());
+      }
+    } finally {
+      carlSequencer.stop();
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testSendAndReceiveFileContentSeparately() {
+
+    BinaryCodecManager codecManager = new BinaryCodecManager();
+    codecManager.setRemoteCodecs(BOB_JID, FileContentExtension.CODEC.getName());
+
+    aliceSequencer =
+        new ActivitySequencer(
+            sessionStubAlice, aliceTransmitter, aliceReceiver, null, codecManager);
+
+    bobSequencer = new ActivitySequencer(sessionStubBob, bobTransmitter, bobReceiver, null);
+
+    aliceSequencer.start();
+    bobSequencer.start();
+
+    User bobUserInAliceSession = new User(BOB_JID, false, false, 0, 0);
+    User aliceUserInBobSession = new User(ALICE_JID, true, false, 0, 0);
+
+    sessionStubAlice.addUser(bobUserInAliceSession, new PreferenceStore());
+    sessionStubBob.addUser(aliceUserInBobSession, new PreferenceStore());
+
+    aliceSequencer.registerUser(bobUserInAliceSession);
+    bobSequencer.registerUser(aliceUserInBobSession);
+
+    byte[] content = new byte[FileContentChannel.CONTENT_THRESHOLD + 4711];
+
+    for (int i = 0; i < content.length; i++) content[i] = (byte) i;
+
+    FileActivity fileActivity =
+        new FileActivity(
+            aliceUser,
+            FileActivity.Type.CREATED,
+            FileActivity.Purpose.ACTIVITY,
+            new SPath(EasyMock.createMock(IProject.class), EasyMock.createMock(IPath.class)),
+            null,
+            content,
+            "UTF-8");
+
+    NOPActivity nopActivity = new NOPActivity(aliceUser, bobUserInAliceSession, 0);
+
+    aliceSequencer.sendActivity(Collections.singletonList(bobUserInAliceSession), fileActivity);
+
+    aliceSequencer.sendActivity(Collections.singletonList(bobUserInAliceSession), nopActivity);
+
+    aliceSequencer.flush(bobUserInAliceSession);
+
+    List<IActivity> receivedActivities = sessionStubBob.getReceivedActivities();
+
+    assertEquals("not all activies received", 2, receivedActivities.size());
+
+    FileActivity receivedFileActivity = (FileActivity) receivedActivities.get(0);
+
+    assertEquals(null, receivedFileActivity.getContentReference());
+    assertArrayEquals(content, receivedFileActivity.getContent());
+    assertEquals(nopActivity, receivedActivities.get(1));
+  }
+
   @Test(timeout = 30000)
   public void testSendWithoutRegisteredUser() {
 
@@ -0,0 +1,237 @@
+package de.fu_berlin.inf.dpp.session.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import de.fu_berlin.inf.dpp.activities.FileActivity;
+import de.fu_berlin.inf.dpp.activities.FileActivity.Purpose;
+import de.fu_berlin.inf.dpp.activities.FileActivity.Type;
+import de.fu_berlin.inf.dpp.activities.IActivity;
+import de.fu_berlin.inf.dpp.activities.JupiterActivity;
+import de.fu_berlin.inf.dpp.activities.NOPActivity;
+import de.fu_berlin.inf.dpp.activities.SPath;
+import de.fu_berlin.inf.dpp.communication.extensions.FileContentExtension;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.JupiterVectorTime;
+import de.fu_berlin.inf.dpp.concurrent.jupiter.internal.text.NoOperation;
+import de.fu_berlin.inf.dpp.filesystem.IPath;
+import de.fu_berlin.inf.dpp.filesystem.IProject;
+import de.fu_berlin.inf.dpp.misc.binary.BinaryCodecManager;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import de.fu_berlin.inf.dpp.session.User;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class FileContentChannelTest {
+
+  private static final int CHUNK_SIZE = FileContentChannel.CHUNK_SIZE;
+
+  private static final JID ALICE_JID = new JID("alice@test/Saros");
+  private static final JID BOB_JID = new JID("bob@test/Saros");
+  private static final JID CARL_JID = new JID("carl@test/Saros");
+
+  private static final User ALICE = new User(ALICE_JID, true, true, 0, 0);
+  private static final User BOB = new User(BOB_JID, false, true, 0, 0);
+
+  private static SPath FOO_PATH;
+  private static SPath BAR_PATH;
+
+  private BinaryCodecManager codecManager;
+
+  private FileContentChannel sender;
+  private FileContentChannel receiver;
+
+  @BeforeClass
+  public static void prepare() {
+    IProject project = EasyMock.createMock(IProject.class);
+
+    FOO_PATH = new SPath(project, EasyMock.createMock(IPath.class));
+    BAR_PATH = new SPath(project, EasyMock.createMock(IPath.class));
+  }
+
+  @Before
+  public void setUp() {
+    codecManager = new BinaryCodecManager();
+    codecManager.setRemoteCodecs(BOB_JID, FileContentExtension.CODEC.getName());
+    codecManager.setRemoteCodecs(CARL_JID, FileContentExtension.CODEC.getName());
+
+    sender = new FileContentChannel("4711", codecManager);
+    receiver = new FileContentChannel("4711", null);
+  }
+
+  @Test
+  public void testSmallContentIsNotReferenced() {
+    FileActivity activity = createFileActivity(FOO_PATH, FileContentChannel.CONTENT_THRESHOLD - 1);
+
+    assertSame(activity, sender.offer(BOB_JID, activity));
+    assertNull(sender.nextChunk());
+  }
+
+  @Test
+  public void testContentIsNotReferencedIfCodecIsUnsupported() {
+    FileActivity activity = createFileActivity(FOO_PATH, FileContentChannel.CONTENT_THRESHOLD);
+
+    codecManager.setRemoteCodecs(BOB_JID, null);
+
+    assertSame(activity, sender.offer(BOB_JID, activity));
+    assertSame(activity, new FileContentChannel("4711", null).offer(CARL_JID, activity));
+    assertNull(sender.nextChunk());
+  }
+
+  @Test
+  public void testContentIsTransferredInChunks() {
+    FileActivity activity = createLargeFileActivity(FOO_PATH);
+
+    FileActivity referenced = (FileActivity) sender.offer(BOB_JID, activity);
+
+    assertNull(referenced.getContent());
+    assertNotNull(referenced.getContentReference());
+    assertTrue(sender.hasPendingContent(BOB_JID));
+
+    assertTrue(receiver.receiveActivities(ALICE_JID, list(referenced)).isEmpty());
+
+    List<IActivity> received = transferChunks(BOB_JID);
+
+    assertFalse(sender.hasPendingContent(BOB_JID));
+    assertEquals(list(activity), received);
+    assertArrayEquals(activity.getContent(), ((FileActivity) received.get(0)).getContent());
+  }
+
+  @Test
+  public void testChunksOfRecipientsAreSentAlternately() {
+    FileActivity activity = createLargeFileActivity(FOO_PATH);
+
+    sender.offer(BOB_JID, activity);
+    sender.offer(CARL_JID, activity);
+
+    List<JID> recipients = new ArrayList<JID>();
+
+    FileContentChannel.Chunk chunk;
+
+    while ((chunk = sender.nextChunk()) != null) recipients.add(chunk.recipient);
+
+    assertEquals(
+        Arrays.asList(BOB_JID, CARL_JID, BOB_JID, CARL_JID, BOB_JID, CARL_JID, BOB_JID, CARL_JID),
+        recipients);
+  }
+
+  @Test
+  public void testActivitiesAreHeldUntilContentIsReceived() {
+    FileActivity activity = createLargeFileActivity(FOO_PATH);
+
+    IActivity nop = new NOPActivity(ALICE, BOB, 0);
+    IActivity jupiterFoo = createJupiterActivity(FOO_PATH);
+    IActivity jupiterBar = createJupiterActivity(BAR_PATH);
+
+    IActivity referenced = sender.offer(BOB_JID, activity);
+
+    assertEquals(
+        list(jupiterBar),
+        receiver.receiveActivities(ALICE_JID, list(referenced, jupiterFoo, jupiterBar, nop)));
+
+    // the NOP activity is not allowed to overtake other activities
+    assertTrue(receiver.receiveActivities(ALICE_JID, list(jupiterBar)).isEmpty());
+
+    assertEquals(list(activity, jupiterFoo, nop, jupiterBar), transferChunks(BOB_JID));
+
+    assertEquals(list(jupiterFoo), receiver.receiveActivities(ALICE_JID, list(jupiterFoo)));
+  }
+
+  @Test
+  public void testContentReceivedBeforeActivity() {
+    FileActivity activity = createLargeFileActivity(FOO_PATH);
+
+    IActivity referenced = sender.offer(BOB_JID, activity);
+
+    assertTrue(transferChunks(BOB_JID).isEmpty());
+
+    assertEquals(list(activity), receiver.receiveActivities(ALICE_JID, list(referenced)));
+  }
+
+  @Test
+  public void testCorruptedContentIsDiscarded() {
+    FileActivity activity = createLargeFileActivity(FOO_PATH);
+    IActivity nop = new NOPActivity(ALICE, BOB, 0);
+
+    FileActivity referenced = (FileActivity) sender.offer(BOB_JID, activity);
+    FileActivity corrupted =
+        activity.withContentReference(
+            referenced.getContentReference(), referenced.getContentChecksum() + 1);
+
+    assertTrue(receiver.receiveActivities(ALICE_JID, list(corrupted, nop)).isEmpty());
+
+    assertEquals(list(nop), transferChunks(BOB_JID));
+  }
+
+  @Test
+  public void testRemoveUser() {
+    FileActivity activity = createLargeFileActivity(FOO_PATH);
+
+    IActivity referenced = sender.offer(BOB_JID, activity);
+
+    assertTrue(receiver.receiveActivities(ALICE_JID, list(referenced)).isEmpty());
+
+    sender.removeUser(BOB_JID);
+    receiver.removeUser(ALICE_JID);
+
+    assertFalse(sender.hasPendingContent(BOB_JID));
+    assertNull(sender.nextChunk());
+
+    IActivity nop = new NOPActivity(ALICE, BOB, 0);
+
+    assertEquals(list(nop), receiver.receiveActivities(ALICE_JID, list(nop)));
+  }
+
+  /** Sends all pending chunks of the recipient and returns the released activities */
+  private List<IActivity> transferChunks(JID recipient) {
+    List<IActivity> released = new ArrayList<IActivity>();
+
+    FileContentChannel.Chunk chunk;
+
+    while ((chunk = sender.nextChunk()) != null) {
+      assertEquals(recipient, chunk.recipient);
+      assertTrue(chunk.extension.getData().length <= CHUNK_SIZE);
+
+      released.addAll(receiver.receiveContent(ALICE_JID, chunk.extension));
+    }
+
+    return released;
+  }
+
+  private static FileActivity createLargeFileActivity(SPath path) {
+    int size = Math.max(FileContentChannel.CONTENT_THRESHOLD, 3 * CHUNK_SIZE + CHUNK_SIZE / 2);
+
+    assertEquals("test expects 4 chunks", 4, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+
+    byte[] content = new byte[size];
+    new Random(size).nextBytes(content);
+
+    return new FileActivity(ALICE, Type.CREATED, Purpose.ACTIVITY, path, null, content, "UTF-8");
+  }
+
+  private static FileActivity createFileActivity(SPath path, int size) {
+    return new FileActivity(
+        ALICE, Type.CREATED, Purpose.ACTIVITY, path, null, new byte[size], "UTF-8");
+  }
+
+  private static IActivity createJupiterActivity(SPath path) {
+    return new JupiterActivity(new JupiterVectorTime(0, 0), new NoOperation(), ALICE, path);
+  }
+
+  private static List<IActivity> list(IActivity... activities) {
+    List<IActivity> result = new ArrayList<IActivity>();
+    Collections.addAll(result, activities);
+    return result;
+  }
+}
@@ -0,0 +1,215 @@
+package de.fu_berlin.inf.dpp.session.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import de.fu_berlin.inf.dpp.activities.FileActivity;
+import de.fu_berlin.inf.dpp.activities.FolderCreatedActivity;
+import de.fu_berlin.inf.dpp.activities.FolderDeletedActivity;
+import de.fu_berlin.inf.dpp.activities.FolderMovedActivity;
+import de.fu_berlin.inf.dpp.activities.IActivity;
+import de.fu_berlin.inf.dpp.activities.IResourceActivity;
+import de.fu_berlin.inf.dpp.activities.SPath;
+import de.fu_berlin.inf.dpp.filesystem.IFile;
+import de.fu_berlin.inf.dpp.filesystem.IFolder;
+import de.fu_berlin.inf.dpp.filesystem.IPath;
+import de.fu_berlin.inf.dpp.filesystem.IProject;
+import de.fu_berlin.inf.dpp.filesystem.IResource;
+import de.fu_berlin.inf.dpp.session.User;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FolderMoveFallbackTest {
+
+  private IProject project;
+  private User user;
+
+  @Before
+  public void setUp() throws Exception {
+    project = EasyMock.createNiceMock(IProject.class);
+    user = EasyMock.createNiceMock(User.class);
+    EasyMock.replay(user);
+
+    IFile x = createFile("src/a/X.java");
+    IFile y = createFile("src/a/b/Y.java");
+    IFolder b = createFolder("src/a/b", y);
+    IFolder a = createFolder("src/a", x, b);
+
+    EasyMock.expect(project.getFolder(path("src/a"))).andStubReturn(a);
+    EasyMock.expect(project.getFolder(path("src/c"))).andStubReturn(createFolder("src/c"));
+    EasyMock.replay(project);
+  }
+
+  @Test
+  public void testFolderMoveIsReplacedInDepthOrder() {
+    FolderMovedActivity move =
+        new FolderMovedActivity(user, new SPath(project, path("src/a")), spath("src/c"));
+
+    List<IActivity> activities = FolderMoveFallback.createActivities(move);
+
+    assertEquals(6, activities.size());
+
+    assertFolderCreated("src/c", activities.get(0));
+    assertFileMoved("src/a/X.java", "src/c/X.java", activities.get(1));
+    assertFolderCreated("src/c/b", activities.get(2));
+    assertFileMoved("src/a/b/Y.java", "src/c/b/Y.java", activities.get(3));
+    assertFolderDeleted("src/a/b", activities.get(4));
+    assertFolderDeleted("src/a", activities.get(5));
+  }
+
+  private void assertFolderCreated(String path, IActivity activity) {
+    assertEquals(FolderCreatedActivity.class, activity.getClass());
+    assertEquals(spath(path), ((IResourceActivity) activity).getPath());
+  }
+
+  private void assertFolderDeleted(String path, IActivity activity) {
+    assertEquals(FolderDeletedActivity.class, activity.getClass());
+    assertEquals(spath(path), ((IResourceActivity) activity).getPath());
+  }
+
+  private void assertFileMoved(String oldPath, String newPath, IActivity activity) {
+    assertEquals(FileActivity.class, activity.getClass());
+
+    FileActivity fileActivity = (FileActivity) activity;
+
+    assertEquals(FileActivity.Type.MOVED, fileActivity.getType());
+    assertEquals(spath(oldPath), fileActivity.getOldPath());
+    assertEquals(spath(newPath), fileActivity.getPath());
+    assertEquals("UTF-8", fileActivity.getEncoding());
+  }
+
+  private SPath spath(String path) {
+    return new SPath(project, path(path));
+  }
+
+  private static IFile createFile(String path) throws Exception {
+    IFile file = EasyMock.createNiceMock(IFile.class);
+    EasyMock.expect(file.getType()).andStubReturn(IResource.FILE);
+    EasyMock.expect(file.getProjectRelativePath()).andStubReturn(path(path));
+    EasyMock.expect(file.getCharset()).andStubReturn("UTF-8");
+    EasyMock.replay(file);
+    return file;
+  }
+
+  private static IFolder createFolder(String path, IResource... members) throws Exception {
+    IFolder folder = EasyMock.createNiceMock(IFolder.class);
+    EasyMock.expect(folder.getType()).andStubReturn(IResource.FOLDER);
+    EasyMock.expect(folder.getProjectRelativePath()).andStubReturn(path(path));
+    EasyMock.expect(folder.exists()).andStubReturn(true);
+    EasyMock.expect(folder.members()).andStubReturn(members);
+    EasyMock.replay(folder);
+    return folder;
+  }
+
+  private static IPath path(String path) {
+    return new PathStub(Arrays.asList(path.split("/")));
+  }
+
+  /** Relative path that only supports the operations needed to replicate a folder move. */
+  private static class PathStub implements IPath {
+
+    private final List<String> segments;
+
+    private PathStub(List<String> segments) {
+      this.segments = segments;
+    }
+
+    @Override
+    public IPath append(IPath path) {
+      List<String> appended = new ArrayList<String>(segments);
+      appended.addAll(Arrays.asList(path.segments()));
+      return new PathStub(appended);
+    }
+
+    @Override
+    public String segment(int index) {
+      return segments.get(index);
+    }
+
+    @Override
+    public String lastSegment() {
+      return segments.get(segments.size() - 1);
+    }
+
+    @Override
+    public boolean isPrefixOf(IPath path) {
+      return segments.equals(Arrays.asList(path.segments()).subList(0, segments.size()));
+    }
+
+    @Override
+    public int segmentCount() {
+      return segments.size();
+    }
+
+    @Override
+    public IPath removeFirstSegments(int count) {
+      return new PathStub(segments.subList(count, segments.size()));
+    }
+
+    @Override
+    public IPath removeLastSegments(int count) {
+      return new PathStub(segments.subList(0, segments.size() - count));
+    }
+
+    @Override
+    public String[] segments() {
+      return segments.toArray(new String[0]);
+    }
+
+    @Override
+    public IPath append(String path) {
+      return append(path(path));
+    }
+
+    @Override
+    public IPath makeAbsolute() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isAbsolute() {
+      return false;
+    }
+
+    @Override
+    public String toPortableString() {
+      return toString();
+    }
+
+    @Override
+    public String toOSString() {
+      return toString();
+    }
+
+    @Override
+    public File toFile() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof PathStub && segments.equals(((PathStub) obj).segments);
+    }
+
+    @Override
+    public int hashCode() {
+      return segments.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder builder = new StringBuilder();
+
+      for (String segment : segments) {
+        if (builder.length() > 0) builder.append('/');
+        builder.append(segment);
+      }
+
+      return builder.toString();
+    }
+  }
+}
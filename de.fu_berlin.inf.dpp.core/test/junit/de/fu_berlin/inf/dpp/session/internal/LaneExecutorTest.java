@@ -0,0 +1,177 @@
+package de.fu_berlin.inf.dpp.session.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LaneExecutorTest {
+
+  private LaneExecutor executor;
+
+  @Before
+  public void setUp() {
+    executor = new LaneExecutor("lane-executor-test-", 4);
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    executor.shutdown(10000);
+  }
+
+  @Test
+  public void testTasksOfLaneAreExecutedInOrder() throws InterruptedException {
+    final int lanes = 8;
+    final int tasks = 1000;
+
+    final List<List<Integer>> results = new ArrayList<List<Integer>>();
+
+    for (int lane = 0; lane < lanes; lane++)
+      results.add(Collections.synchronizedList(new ArrayList<Integer>()));
+
+    for (int i = 0; i < tasks; i++) {
+      for (int lane = 0; lane < lanes; lane++) {
+        final List<Integer> result = results.get(lane);
+        final int value = i;
+
+        executor.execute(
+            "lane" + lane,
+            new Runnable() {
+              @Override
+              public void run() {
+                result.add(value);
+              }
+            });
+      }
+    }
+
+    executor.awaitIdle();
+
+    for (final List<Integer> result : results) {
+      assertEquals(tasks, result.size());
+
+      for (int i = 0; i < tasks; i++) assertEquals(i, result.get(i).intValue());
+    }
+  }
+
+  @Test
+  public void testLanesAreExecutedInParallel() throws InterruptedException {
+    final CountDownLatch blockedLaneStarted = new CountDownLatch(1);
+    final CountDownLatch unblockLane = new CountDownLatch(1);
+    final CountDownLatch otherLaneExecuted = new CountDownLatch(1);
+
+    executor.execute(
+        "blocked",
+        new Runnable() {
+          @Override
+          public void run() {
+            blockedLaneStarted.countDown();
+
+            try {
+              unblockLane.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        });
+
+    assertTrue(blockedLaneStarted.await(10, TimeUnit.SECONDS));
+
+    executor.execute(
+        "other",
+        new Runnable() {
+          @Override
+          public void run() {
+            otherLaneExecuted.countDown();
+          }
+        });
+
+    assertTrue("lane was blocked by another lane", otherLaneExecuted.await(10, TimeUnit.SECONDS));
+
+    unblockLane.countDown();
+
+    executor.awaitIdle();
+  }
+
+  @Test
+  public void testFailingTaskDoesNotStopLane() throws InterruptedException {
+    final AtomicInteger executed = new AtomicInteger();
+
+    executor.execute(
+        "lane",
+        new Runnable() {
+          @Override
+          public void run() {
+            throw new IllegalStateException("expected failure");
+          }
+        });
+
+    executor.execute(
+        "lane",
+        new Runnable() {
+          @Override
+          public void run() {
+            executed.incrementAndGet();
+          }
+        });
+
+    executor.awaitIdle();
+
+    assertEquals(1, executed.get());
+  }
+
+  @Test
+  public void testShutdownDiscardsPendingTasks() throws InterruptedException {
+    final CountDownLatch blockedLaneStarted = new CountDownLatch(1);
+    final AtomicInteger executed = new AtomicInteger();
+
+    executor.execute(
+        "lane",
+        new Runnable() {
+          @Override
+          public void run() {
+            blockedLaneStarted.countDown();
+
+            try {
+              new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        });
+
+    executor.execute(
+        "lane",
+        new Runnable() {
+          @Override
+          public void run() {
+            executed.incrementAndGet();
+          }
+        });
+
+    assertTrue(blockedLaneStarted.await(10, TimeUnit.SECONDS));
+
+    assertTrue(executor.shutdown(10000));
+
+    executor.execute(
+        "lane",
+        new Runnable() {
+          @Override
+          public void run() {
+            executed.incrementAndGet();
+          }
+        });
+
+    executor.awaitIdle();
+
+    assertEquals(0, executed.get());
+  }
+}
@@ -8,6 +8,9 @@ import org.junit.runners.Suite;
   ActivityHandlerTest.class,
   ActivityQueuerTest.class,
   ActivitySequencerTest.class,
+  FileContentChannelTest.class,
+  FolderMoveFallbackTest.class,
+  LaneExecutorTest.class,
   SharedProjectMapperTest.class,
   UserInformationHandlerTest.class
 })
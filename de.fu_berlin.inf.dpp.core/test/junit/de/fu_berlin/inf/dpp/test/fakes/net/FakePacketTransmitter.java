@@ -4,6 +4,7 @@ import de.fu_berlin.inf.dpp.net.IReceiver;
 import de.fu_berlin.inf.dpp.net.ITransmitter;
 import de.fu_berlin.inf.dpp.net.xmpp.JID;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import org.jivesoftware.smack.packet.Message;
@@ -53,6 +54,52 @@ class FakePacketTransmitter implements ITransmitter {
     sendPacketExtension(recipient, extension);
   }
 
+  @Override
+  public Map<JID, IOException> send(
+      String connectionID, Collection<JID> recipients, PacketExtension extension) {
+    Map<JID, IOException> errors = new HashMap<JID, IOException>();
+
+    for (JID recipient : recipients) {
+      Message message = new Message();
+      message.addExtension(extension);
+      message.setTo(recipient.toString());
+
+      try {
+        sendPacket(message);
+      } catch (IOException e) {
+        errors.put(recipient, e);
+      }
+    }
+
+    return errors;
+  }
+
+  @Override
+  public Map<JID, IOException> send(
+      String connectionID, Map<JID, Integer> sequenceNumbers, PacketExtension extension) {
+    Map<JID, IOException> errors = new HashMap<JID, IOException>();
+
+    for (Map.Entry<JID, Integer> entry : sequenceNumbers.entrySet()) {
+      Message message = new Message();
+      message.addExtension(extension);
+      message.setTo(entry.getKey().toString());
+      message.setProperty(SEQUENCE_NUMBER_PROPERTY, entry.getValue());
+
+      try {
+        sendPacket(message);
+      } catch (IOException e) {
+        errors.put(entry.getKey(), e);
+      }
+    }
+
+    return errors;
+  }
+
+  @Override
+  public boolean supportsSequenceNumbers(JID recipient) {
+    return true;
+  }
+
   @Override
   public void sendPacketExtension(JID jid, PacketExtension extension) {
     Message message = new Message();
@@ -22,7 +22,10 @@
 package de.fu_berlin.inf.dpp.versioning;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import de.fu_berlin.inf.dpp.communication.extensions.ActivitiesExtension;
+import de.fu_berlin.inf.dpp.misc.binary.BinaryCodecManager;
 import de.fu_berlin.inf.dpp.net.IReceiver;
 import de.fu_berlin.inf.dpp.net.ITransmitter;
 import de.fu_berlin.inf.dpp.net.xmpp.JID;
@@ -171,4 +174,25 @@ public class VersionManagerTest {
 
     assertEquals(resultLocal.getCompatibility(), resultRemote.getCompatibility());
   }
+
+  @Test
+  public void testBinaryCodecsAreExchanged() {
+    Version version = Version.parseVersion("1.1.1.r1");
+
+    BinaryCodecManager aliceCodecs = new BinaryCodecManager();
+    BinaryCodecManager bobCodecs = new BinaryCodecManager();
+
+    versionManagerLocal =
+        new VersionManager(version.toString(), aliceReceiver, aliceTransmitter, aliceCodecs);
+
+    versionManagerRemote =
+        new VersionManager(version.toString(), bobReceiver, bobTransmitter, bobCodecs);
+
+    VersionCompatibilityResult result = versionManagerLocal.determineVersionCompatibility(bobJID);
+
+    assertEquals(Compatibility.OK, result.getCompatibility());
+
+    assertTrue(aliceCodecs.getRemoteCodecs(bobJID).contains(ActivitiesExtension.CODEC.getName()));
+    assertTrue(bobCodecs.getRemoteCodecs(aliceJID).contains(ActivitiesExtension.CODEC.getName()));
+  }
 }
@@ -182,10 +182,10 @@ public class EditorManager extends AbstractActivityProducer implements IEditorMa
          *
          * <p>
          *
-         * <p>If the given operation is an <code>InsertOperation</code>, a <code>
-         * ContributionAnnotation</code> is added for the inserted text and all existing annotations
+         * <p>If the given operation is an <code>InsertOperation</code>, all existing annotations
          * for the file are adjusted through {@link
-         * AnnotationManager#moveAnnotationsAfterAddition(IFile, int, int)}.
+         * AnnotationManager#moveAnnotationsAfterAddition(IFile, int, int)} and a contribution
+         * annotation is added for the inserted text.
          *
          * <p>If the given operation is a <code>DeleteOperation</code>, all existing annotations for
          * the file are adjusted through {@link
@@ -210,13 +210,11 @@ public class EditorManager extends AbstractActivityProducer implements IEditorMa
                     int end = textOperation.getPosition() + textOperation.getTextLength();
 
                     if (textOperation instanceof InsertOperation) {
-                      if (editor == null) {
-                        annotationManager.moveAnnotationsAfterAddition(file, start, end);
-                      }
+                      annotationManager.moveAnnotationsAfterAddition(file, start, end);
 
                       annotationManager.addContributionAnnotation(user, file, start, end, editor);
 
-                    } else if (textOperation instanceof DeleteOperation && editor == null) {
+                    } else if (textOperation instanceof DeleteOperation) {
 
                       annotationManager.moveAnnotationsAfterDeletion(file, start, end);
                     }
@@ -704,6 +702,15 @@ public class EditorManager extends AbstractActivityProducer implements IEditorMa
     TextEditActivity textEdit =
         new TextEditActivity(session.getLocalUser(), offset, newText, replacedText, path);
 
+    /*
+     * The contribution annotations are not tracked through their range
+     * highlighters and have to be adjusted for every change of the document.
+     */
+    IFile file = path.getFile();
+
+    annotationManager.moveAnnotationsAfterDeletion(file, offset, offset + replacedText.length());
+    annotationManager.moveAnnotationsAfterAddition(file, offset, offset + newText.length());
+
     if (!hasWriteAccess || isLocked) {
       /*
        * TODO If we don't have {@link User.Permission#WRITE_ACCESS}, then
@@ -3,7 +3,9 @@ package de.fu_berlin.inf.dpp.intellij.editor.annotations;
 import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.event.VisibleAreaListener;
 import com.intellij.openapi.editor.markup.HighlighterLayer;
 import com.intellij.openapi.editor.markup.HighlighterTargetArea;
 import com.intellij.openapi.editor.markup.RangeHighlighter;
@@ -12,15 +14,30 @@ import de.fu_berlin.inf.dpp.filesystem.IFile;
 import de.fu_berlin.inf.dpp.intellij.editor.colorstorage.ColorManager;
 import de.fu_berlin.inf.dpp.session.User;
 import java.awt.Color;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 import org.apache.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-/** Annotation manager used to create, delete and manage annotations for a Saros session. */
+/**
+ * Annotation manager used to create, delete and manage annotations for a Saros session.
+ *
+ * <p>Contribution annotations are stored as coalesced ranges in a {@link ContributionRangeTree} per
+ * file. The ranges are adjusted for every edit, whether the file is open or not, and
+ * RangeHighlighters are only created for the ranges located in or near the visible area of an open
+ * editor. The contribution ranges must only be accessed from the UI thread.
+ */
 // TODO save local selection before editor is closed
 // TODO move saved local selections affected by changes while editor is closed
 // TODO adjust position of local selection when editor is re-opened
@@ -38,13 +55,16 @@ public class AnnotationManager {
       Integer.getInteger("saros.intellij.MAX_CONTRIBUTION_ANNOTATIONS", 50);
 
   private final AnnotationStore<SelectionAnnotation> selectionAnnotationStore;
-  private final AnnotationQueue<ContributionAnnotation> contributionAnnotationQueue;
+  private final Map<IFile, FileContributions> contributions;
+
+  /** The sequence number of the last added contribution. */
+  private long contributionSequenceNumber;
 
   private final Application application;
 
   public AnnotationManager() {
     this.selectionAnnotationStore = new AnnotationStore<>();
-    this.contributionAnnotationQueue = new AnnotationQueue<>(MAX_CONTRIBUTION_ANNOTATIONS);
+    this.contributions = new HashMap<>();
 
     this.application = ApplicationManager.getApplication();
   }
@@ -103,12 +123,20 @@ public class AnnotationManager {
   }
 
   /**
-   * Applies a contribution annotations to the given editor with the given parameters and stores it.
+   * Adds a contribution annotation with the given parameters to the given file and stores it. The
+   * contribution replaces all contribution annotations in the given range and is merged with
+   * adjacent contribution annotations of the same user.
+   *
+   * <p>The added text must already be accounted for through {@link
+   * #moveAnnotationsAfterAddition(IFile, int, int)}.
    *
    * <p>If no valid editor is given, the method assumes that the file the annotation belongs to is
    * not open locally. The annotation will still be stored so that it can be applied if the given
    * file is opened later on.
    *
+   * <p>Only the annotations of the last <code>MAX_CONTRIBUTION_ANNOTATIONS</code> contributions are
+   * kept. A merged annotation counts as part of its most recent contribution.
+   *
    * <p>The given start position must not be after the given end position: start <= end
    *
    * @param user the user the annotation belongs to
@@ -126,62 +154,60 @@ public class AnnotationManager {
       return;
     }
 
-    List<AnnotationRange> annotationRanges = new ArrayList<>();
+    executeInUIThreadSynchronous(
+        () -> {
+          FileContributions fileContributions =
+              contributions.computeIfAbsent(file, FileContributions::new);
 
-    for (int i = 0; i < end - start; i++) {
-      int currentStart = start + i;
-      int currentEnd = start + i + 1;
+          if (editor != null && fileContributions.editor != editor) {
+            attachEditor(fileContributions, editor);
+          }
 
-      AnnotationRange annotationRange;
+          long sequenceNumber = ++contributionSequenceNumber;
 
-      if (editor != null) {
-        RangeHighlighter rangeHighlighter =
-            addRangeHighlighter(
-                user,
-                currentStart,
-                currentEnd,
-                editor,
-                AnnotationType.CONTRIBUTION_ANNOTATION,
-                file);
+          fileContributions.ranges.add(
+              user, start, end, sequenceNumber, fileContributions.removedHighlighters);
 
-        if (rangeHighlighter == null) {
-          return;
-        }
+          removeOldContributions(sequenceNumber - MAX_CONTRIBUTION_ANNOTATIONS);
 
-        annotationRange = new AnnotationRange(currentStart, currentEnd, rangeHighlighter);
+          refreshRangeHighlighters(fileContributions, true);
+        });
+  }
 
-      } else {
-        annotationRange = new AnnotationRange(currentStart, currentEnd);
+  /**
+   * Removes the contribution annotations whose most recent contribution has a sequence number less
+   * than or equal to the given one from all files.
+   *
+   * @param sequenceNumber the sequence number of the last contribution to remove
+   */
+  private void removeOldContributions(long sequenceNumber) {
+    for (FileContributions fileContributions : contributions.values()) {
+      if (fileContributions.ranges.getMinSequenceNumber() > sequenceNumber) {
+        continue;
       }
 
-      annotationRanges.add(annotationRange);
-    }
-
-    ContributionAnnotation contributionAnnotation =
-        new ContributionAnnotation(user, file, editor, annotationRanges);
-
-    ContributionAnnotation dequeuedAnnotation = contributionAnnotationQueue.removeIfFull();
+      fileContributions.ranges.removeUpTo(sequenceNumber, fileContributions.removedHighlighters);
 
-    if (dequeuedAnnotation != null) {
-      removeRangeHighlighter(dequeuedAnnotation);
+      scheduleRangeHighlighterUpdate(fileContributions);
     }
-
-    contributionAnnotationQueue.addAnnotation(contributionAnnotation);
   }
 
   /**
    * Moves all annotations for the given file back by the length of the addition if they are located
-   * behind the added text. Elongates the annotations by the length of the addition if they overlap
-   * with the added text.
+   * behind the added text. Elongates the selection annotations by the length of the addition if
+   * they overlap with the added text. Contribution annotations overlapping with the added text are
+   * split as the added text is not part of the contribution.
    *
-   * <p>If a RangeHighlighter is present, this will all be done automatically by the internal
-   * Intellij logic. This is why {@link AnnotationManager#updateAnnotationStore(IFile)} should
-   * <b>always</b> be called before an editor is closed to synchronize the boundaries of the saved
-   * annotations with the currently displayed boundaries in the editor annotation model and remove
-   * invalid annotations from the annotation store.
+   * <p>If a RangeHighlighter is present for a selection annotation, this will all be done
+   * automatically by the internal Intellij logic. This is why {@link
+   * AnnotationManager#updateAnnotationStore(IFile)} should <b>always</b> be called before an editor
+   * is closed to synchronize the boundaries of the saved annotations with the currently displayed
+   * boundaries in the editor annotation model and remove invalid annotations from the annotation
+   * store.
    *
-   * <p>This method should be used to adjust the position of all annotations after text was added to
-   * a currently closed file.
+   * <p>Contribution annotations are not tracked through their RangeHighlighters. This method must
+   * therefore be called for every addition to a shared file, local or remote, whether the file is
+   * currently open or not.
    *
    * @param file the file text was added to
    * @param start the start position of added text
@@ -196,7 +222,20 @@ public class AnnotationManager {
     checkRange(start, end);
 
     moveAnnotationsAfterAddition(selectionAnnotationStore.getAnnotations(file), start, end);
-    moveAnnotationsAfterAddition(contributionAnnotationQueue.getAnnotations(file), start, end);
+
+    executeInUIThreadSynchronous(
+        () -> {
+          FileContributions fileContributions = contributions.get(file);
+
+          if (fileContributions == null) {
+            return;
+          }
+
+          fileContributions.ranges.insert(
+              start, end - start, fileContributions.removedHighlighters);
+
+          scheduleRangeHighlighterUpdate(fileContributions);
+        });
   }
 
   /**
@@ -256,14 +295,16 @@ public class AnnotationManager {
    * located behind the removed text. Shortens the annotations if they partially overlap with the
    * removed text. Removes all annotations that were completely contained in the removed text.
    *
-   * <p>If a RangeHighlighter is present, this will all be done automatically by the internal
-   * Intellij logic. This is why {@link AnnotationManager#updateAnnotationStore(IFile)} should
-   * <b>always</b> be called before an editor is closed to synchronize the boundaries of the saved
-   * annotations with the currently displayed boundaries in the editor annotation model and remove
-   * invalid annotations from the annotation store.
+   * <p>If a RangeHighlighter is present for a selection annotation, this will all be done
+   * automatically by the internal Intellij logic. This is why {@link
+   * AnnotationManager#updateAnnotationStore(IFile)} should <b>always</b> be called before an editor
+   * is closed to synchronize the boundaries of the saved annotations with the currently displayed
+   * boundaries in the editor annotation model and remove invalid annotations from the annotation
+   * store.
    *
-   * <p>This method should be used to adjust the position of all annotations after text was added to
-   * a currently closed file.
+   * <p>Contribution annotations are not tracked through their RangeHighlighters. This method must
+   * therefore be called for every removal from a shared file, local or remote, whether the file is
+   * currently open or not.
    *
    * @param file the file text was removed from
    * @param start the start position of removed text
@@ -282,10 +323,18 @@ public class AnnotationManager {
 
     emptySelectionAnnotations.forEach(selectionAnnotationStore::removeAnnotation);
 
-    List<ContributionAnnotation> emptyContributionAnnotations =
-        moveAnnotationsAfterDeletion(contributionAnnotationQueue.getAnnotations(file), start, end);
+    executeInUIThreadSynchronous(
+        () -> {
+          FileContributions fileContributions = contributions.get(file);
+
+          if (fileContributions == null) {
+            return;
+          }
+
+          fileContributions.ranges.delete(start, end, fileContributions.removedHighlighters);
 
-    emptyContributionAnnotations.forEach(contributionAnnotationQueue::removeAnnotation);
+          scheduleRangeHighlighterUpdate(fileContributions);
+        });
   }
 
   /**
@@ -383,7 +432,18 @@ public class AnnotationManager {
 
     addLocalRepresentationToAnnotations(selectionAnnotationStore.getAnnotations(file), editor);
 
-    addLocalRepresentationToAnnotations(contributionAnnotationQueue.getAnnotations(file), editor);
+    executeInUIThreadSynchronous(
+        () -> {
+          FileContributions fileContributions = contributions.get(file);
+
+          if (fileContributions == null || editor.isDisposed()) {
+            return;
+          }
+
+          attachEditor(fileContributions, editor);
+
+          refreshRangeHighlighters(fileContributions, true);
+        });
   }
 
   /**
@@ -405,9 +465,6 @@ public class AnnotationManager {
           if (annotation instanceof SelectionAnnotation) {
             annotationType = AnnotationType.SELECTION_ANNOTATION;
 
-          } else if (annotation instanceof ContributionAnnotation) {
-            annotationType = AnnotationType.CONTRIBUTION_ANNOTATION;
-
           } else {
             throw new IllegalArgumentException("Unknown annotation type " + annotation.getClass());
           }
@@ -435,10 +492,11 @@ public class AnnotationManager {
   }
 
   /**
-   * Updates all annotations for the given file in all annotation stores by checking if an editor
-   * for the annotation is present and then updating the stored annotation range if it has changed.
-   * If the annotation is marked as not valid by the editor, it is removed from the annotation
-   * store.
+   * Updates all selection annotations for the given file by checking if an editor for the
+   * annotation is present and then updating the stored annotation range if it has changed. If the
+   * annotation is marked as not valid by the editor, it is removed from the annotation store.
+   *
+   * <p>Contribution annotations do not need to be updated as they are adjusted for every edit.
    *
    * <p>This method must be called <b>before</b> the editor is closed.
    *
@@ -450,7 +508,6 @@ public class AnnotationManager {
   public void updateAnnotationStore(@NotNull IFile file) {
 
     updateAnnotationStore(selectionAnnotationStore, file);
-    updateAnnotationStore(contributionAnnotationQueue, file);
   }
 
   /**
@@ -497,9 +554,20 @@ public class AnnotationManager {
         .getAnnotations(file)
         .forEach(AbstractEditorAnnotation::removeLocalRepresentation);
 
-    contributionAnnotationQueue
-        .getAnnotations(file)
-        .forEach(AbstractEditorAnnotation::removeLocalRepresentation);
+    executeInUIThreadSynchronous(
+        () -> {
+          FileContributions fileContributions = contributions.get(file);
+
+          if (fileContributions == null) {
+            return;
+          }
+
+          detachEditor(fileContributions);
+
+          if (fileContributions.ranges.isEmpty()) {
+            contributions.remove(file);
+          }
+        });
   }
 
   /**
@@ -515,7 +583,20 @@ public class AnnotationManager {
 
     selectionAnnotationStore.removeAnnotations(user).forEach(this::removeRangeHighlighter);
 
-    contributionAnnotationQueue.removeAnnotations(user).forEach(this::removeRangeHighlighter);
+    executeInUIThreadSynchronous(
+        () -> {
+          for (Iterator<FileContributions> it = contributions.values().iterator(); it.hasNext(); ) {
+            FileContributions fileContributions = it.next();
+
+            fileContributions.ranges.removeAll(user, fileContributions.removedHighlighters);
+
+            refreshRangeHighlighters(fileContributions, true);
+
+            if (fileContributions.ranges.isEmpty() && fileContributions.editor == null) {
+              it.remove();
+            }
+          }
+        });
   }
 
   /**
@@ -534,12 +615,14 @@ public class AnnotationManager {
       selectionAnnotationStore.removeAnnotation(selectionAnnotation);
     }
 
-    for (ContributionAnnotation contributionAnnotation :
-        contributionAnnotationQueue.getAnnotations(file)) {
+    executeInUIThreadSynchronous(
+        () -> {
+          FileContributions fileContributions = contributions.remove(file);
 
-      removeRangeHighlighter(contributionAnnotation);
-      contributionAnnotationQueue.removeAnnotation(contributionAnnotation);
-    }
+          if (fileContributions != null) {
+            detachEditor(fileContributions);
+          }
+        });
   }
 
   /**
@@ -549,7 +632,11 @@ public class AnnotationManager {
   public void removeAllAnnotations() {
     selectionAnnotationStore.removeAllAnnotations().forEach(this::removeRangeHighlighter);
 
-    contributionAnnotationQueue.removeAllAnnotations().forEach(this::removeRangeHighlighter);
+    executeInUIThreadSynchronous(
+        () -> {
+          contributions.values().forEach(this::detachEditor);
+          contributions.clear();
+        });
   }
 
   /**
@@ -575,9 +662,15 @@ public class AnnotationManager {
 
     selectionAnnotationStore.updateAnnotationPath(oldFile, newFile);
 
-    updateAnnotationPath(newFile, contributionAnnotationQueue.getAnnotations(oldFile));
+    executeInUIThreadSynchronous(
+        () -> {
+          FileContributions fileContributions = contributions.remove(oldFile);
 
-    contributionAnnotationQueue.updateAnnotationPath(oldFile, newFile);
+          if (fileContributions != null) {
+            fileContributions.file = newFile;
+            contributions.put(newFile, fileContributions);
+          }
+        });
   }
 
   /**
@@ -748,4 +841,223 @@ public class AnnotationManager {
               ModalityState.defaultModalityState());
         });
   }
+
+  /**
+   * Displays the contribution annotations of the given file in the given editor. The annotations
+   * are removed from the editor they were displayed in before.
+   *
+   * @param fileContributions the contribution annotations of a file
+   * @param editor the editor to display the annotations in
+   */
+  private void attachEditor(@NotNull FileContributions fileContributions, @NotNull Editor editor) {
+
+    detachEditor(fileContributions);
+
+    VisibleAreaListener visibleAreaListener =
+        event -> refreshRangeHighlighters(fileContributions, false);
+
+    editor.getScrollingModel().addVisibleAreaListener(visibleAreaListener);
+
+    fileContributions.editor = editor;
+    fileContributions.visibleAreaListener = visibleAreaListener;
+  }
+
+  /**
+   * Removes the contribution annotations of a file from the editor they are displayed in.
+   *
+   * @param fileContributions the contribution annotations of a file
+   */
+  private void detachEditor(@NotNull FileContributions fileContributions) {
+
+    Editor editor = fileContributions.editor;
+
+    if (editor == null) {
+      return;
+    }
+
+    editor.getScrollingModel().removeVisibleAreaListener(fileContributions.visibleAreaListener);
+
+    fileContributions.removedHighlighters.addAll(fileContributions.ranges.detachHighlighters());
+
+    removeRangeHighlighters(editor, fileContributions.removedHighlighters);
+
+    fileContributions.editor = null;
+    fileContributions.visibleAreaListener = null;
+  }
+
+  /**
+   * Schedules the update of the RangeHighlighters for the given contribution annotations. Several
+   * updates are merged into one.
+   *
+   * <p>This is used to adjust the RangeHighlighters after an edit as the edit might not have been
+   * applied to the document yet.
+   *
+   * @param fileContributions the contribution annotations of a file
+   */
+  private void scheduleRangeHighlighterUpdate(@NotNull FileContributions fileContributions) {
+
+    if (fileContributions.editor == null || fileContributions.updateScheduled) {
+      return;
+    }
+
+    fileContributions.updateScheduled = true;
+
+    application.invokeLater(
+        () -> {
+          fileContributions.updateScheduled = false;
+
+          refreshRangeHighlighters(fileContributions, true);
+        },
+        ModalityState.defaultModalityState());
+  }
+
+  /**
+   * Removes the RangeHighlighters of the given contribution annotations that are no longer valid
+   * and creates RangeHighlighters for the annotations located in or near the visible area of the
+   * editor. RangeHighlighters of annotations that are far away from the visible area are removed.
+   *
+   * <p>The area around the visible area that is highlighted as well is as large as the visible area
+   * itself in both directions, so that scrolling by less than one page does not require any
+   * changes. Unless <code>force</code> is set, nothing is done if the visible area is still located
+   * in the highlighted area.
+   *
+   * @param fileContributions the contribution annotations of a file
+   * @param force whether to update the RangeHighlighters even if the visible area is already
+   *     highlighted
+   */
+  private void refreshRangeHighlighters(
+      @NotNull FileContributions fileContributions, boolean force) {
+
+    Editor editor = fileContributions.editor;
+
+    removeRangeHighlighters(editor, fileContributions.removedHighlighters);
+
+    if (editor == null) {
+      return;
+    }
+
+    if (editor.isDisposed()) {
+      fileContributions.ranges.detachHighlighters();
+      return;
+    }
+
+    Document document = editor.getDocument();
+    int lineCount = document.getLineCount();
+
+    if (lineCount == 0) {
+      return;
+    }
+
+    Rectangle visibleArea = editor.getScrollingModel().getVisibleArea();
+
+    int firstLine = editor.xyToLogicalPosition(visibleArea.getLocation()).line;
+    int lastLine =
+        editor.xyToLogicalPosition(new Point(visibleArea.x, visibleArea.y + visibleArea.height))
+            .line;
+
+    firstLine = Math.max(0, Math.min(firstLine, lineCount - 1));
+    lastLine = Math.max(firstLine, Math.min(lastLine, lineCount - 1));
+
+    if (!force
+        && document.getLineStartOffset(firstLine) >= fileContributions.highlightedStart
+        && document.getLineEndOffset(lastLine) <= fileContributions.highlightedEnd) {
+
+      return;
+    }
+
+    int margin = lastLine - firstLine + 1;
+
+    int start = document.getLineStartOffset(Math.max(0, firstLine - margin));
+    int end = document.getLineEndOffset(Math.min(lineCount - 1, lastLine + margin));
+
+    ContributionRangeTree ranges = fileContributions.ranges;
+
+    Set<ContributionRangeTree.Range> highlightedRanges =
+        Collections.newSetFromMap(new IdentityHashMap<>());
+
+    ranges.forEachRange(
+        start,
+        end,
+        (range, rangeStart, rangeEnd) -> {
+          highlightedRanges.add(range);
+
+          if (range.getRangeHighlighter() != null) {
+            return;
+          }
+
+          RangeHighlighter rangeHighlighter =
+              addRangeHighlighter(
+                  range.getUser(),
+                  rangeStart,
+                  rangeEnd,
+                  editor,
+                  AnnotationType.CONTRIBUTION_ANNOTATION,
+                  fileContributions.file);
+
+          ranges.setRangeHighlighter(range, rangeHighlighter);
+        });
+
+    for (ContributionRangeTree.Range range : ranges.getHighlightedRanges()) {
+      if (!highlightedRanges.contains(range)) {
+        fileContributions.removedHighlighters.add(range.getRangeHighlighter());
+        ranges.setRangeHighlighter(range, null);
+      }
+    }
+
+    removeRangeHighlighters(editor, fileContributions.removedHighlighters);
+
+    fileContributions.highlightedStart = start;
+    fileContributions.highlightedEnd = end;
+  }
+
+  /**
+   * Removes the given RangeHighlighters from the given editor and clears the given collection.
+   *
+   * @param editor the editor the RangeHighlighters belong to or <code>null</code> if it was already
+   *     closed
+   * @param rangeHighlighters the RangeHighlighters to remove
+   */
+  private void removeRangeHighlighters(
+      @Nullable Editor editor, @NotNull Collection<RangeHighlighter> rangeHighlighters) {
+
+    if (editor != null && !editor.isDisposed()) {
+      for (RangeHighlighter rangeHighlighter : rangeHighlighters) {
+        if (rangeHighlighter.isValid()) {
+          editor.getMarkupModel().removeHighlighter(rangeHighlighter);
+        }
+      }
+    }
+
+    rangeHighlighters.clear();
+  }
+
+  private void executeInUIThreadSynchronous(@NotNull Runnable runnable) {
+    application.invokeAndWait(runnable, ModalityState.defaultModalityState());
+  }
+
+  /** The contribution annotations of a file and the editor they are displayed in. */
+  private static final class FileContributions {
+    private final ContributionRangeTree ranges;
+
+    /** The RangeHighlighters of changed or removed annotations that still have to be removed. */
+    private final List<RangeHighlighter> removedHighlighters;
+
+    private IFile file;
+
+    private Editor editor;
+    private VisibleAreaListener visibleAreaListener;
+
+    private boolean updateScheduled;
+
+    /** The section of text RangeHighlighters were last created for. */
+    private int highlightedStart;
+
+    private int highlightedEnd;
+
+    private FileContributions(@NotNull IFile file) {
+      this.ranges = new ContributionRangeTree();
+      this.removedHighlighters = new ArrayList<>();
+      this.file = file;
+    }
+  }
 }
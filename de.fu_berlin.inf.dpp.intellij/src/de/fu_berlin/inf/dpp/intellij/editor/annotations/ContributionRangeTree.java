@@ -0,0 +1,584 @@
+package de.fu_berlin.inf.dpp.intellij.editor.annotations;
+
+import com.intellij.openapi.editor.markup.RangeHighlighter;
+import de.fu_berlin.inf.dpp.session.User;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Stores the contribution ranges of one file, i.e. the sections of text that were added by other
+ * participants. Adjacent text added by the same user is coalesced into one range and the ranges
+ * never overlap, the most recent contribution to a section of text wins.
+ *
+ * <p>The ranges are kept in a balanced binary tree (a treap) in document order. Instead of absolute
+ * offsets, every range stores its distance to the previous range and every node the length of the
+ * text covered by its subtree. This way an edit only has to update the nodes on the path to the
+ * edited position, i.e. adjusting the ranges after an edit takes <i>O(log n)</i> time instead of
+ * shifting every range behind the edited position.
+ *
+ * <p>Every range may hold the {@link RangeHighlighter} that displays it. A <code>RangeHighlighter
+ * </code> is moved by Intellij when the text before it changes, so it is kept if a range is only
+ * moved. If the length or owner of a range changes or the range is removed, the highlighter is
+ * detached from the range and handed to the caller, who is responsible for removing it from the
+ * editor.
+ *
+ * <p>This class is not thread safe.
+ */
+class ContributionRangeTree {
+
+  /** A coalesced section of text that was added by one user. */
+  static final class Range {
+    private final User user;
+
+    private int gap;
+    private int length;
+    private long sequenceNumber;
+
+    private RangeHighlighter rangeHighlighter;
+
+    private final int priority;
+
+    private Range left;
+    private Range right;
+
+    private int size;
+    private long minSequenceNumber;
+
+    private Range(User user, int gap, int length, long sequenceNumber, int priority) {
+      this.user = user;
+      this.gap = gap;
+      this.length = length;
+      this.sequenceNumber = sequenceNumber;
+      this.priority = priority;
+
+      update(this);
+    }
+
+    @NotNull
+    User getUser() {
+      return user;
+    }
+
+    /**
+     * Returns the sequence number of the most recent contribution that is part of this range.
+     *
+     * @return the sequence number of the most recent contribution
+     */
+    long getSequenceNumber() {
+      return sequenceNumber;
+    }
+
+    @Nullable
+    RangeHighlighter getRangeHighlighter() {
+      return rangeHighlighter;
+    }
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName()
+          + "[user="
+          + user
+          + ", gap="
+          + gap
+          + ", length="
+          + length
+          + ", sequenceNumber="
+          + sequenceNumber
+          + ", rangeHighlighter="
+          + rangeHighlighter
+          + "]";
+    }
+  }
+
+  /** Callback for {@link #forEachRange(int, int, RangeVisitor)}. */
+  interface RangeVisitor {
+
+    /**
+     * Visits the given range.
+     *
+     * @param range the range
+     * @param start the current start offset of the range
+     * @param end the current end offset of the range
+     */
+    void visit(@NotNull Range range, int start, int end);
+  }
+
+  private final Random random = new Random();
+
+  private final Set<Range> highlightedRanges =
+      Collections.newSetFromMap(new IdentityHashMap<Range, Boolean>());
+
+  private Range root;
+
+  // results of split(Range, int, Collection)
+  private Range splitLeft;
+  private Range splitRight;
+
+  // result of removeFirst(Range) and removeLast(Range)
+  private Range removed;
+
+  /**
+   * Adds a contribution of the given user. The contribution replaces all ranges that intersect the
+   * given section of text and is coalesced with adjacent ranges of the same user.
+   *
+   * <p>This method does <b>not</b> move any ranges, the text of the contribution must already be
+   * accounted for, see {@link #insert(int, int, Collection)}.
+   *
+   * @param user the user who added the text
+   * @param start the start offset of the added text
+   * @param end the end offset of the added text
+   * @param sequenceNumber the sequence number of the contribution
+   * @param removedHighlighters collects the highlighters that have to be removed
+   */
+  void add(
+      @NotNull User user,
+      int start,
+      int end,
+      long sequenceNumber,
+      @NotNull Collection<RangeHighlighter> removedHighlighters) {
+
+    checkRange(start, end);
+
+    replace(start, end, end - start, user, sequenceNumber, removedHighlighters);
+  }
+
+  /**
+   * Moves the ranges behind the given offset by the length of the inserted text. A range that
+   * contains the offset is split as the inserted text does not belong to the contribution.
+   *
+   * @param offset the offset the text was inserted at
+   * @param length the length of the inserted text
+   * @param removedHighlighters collects the highlighters that have to be removed
+   */
+  void insert(int offset, int length, @NotNull Collection<RangeHighlighter> removedHighlighters) {
+    checkRange(offset, offset + length);
+
+    replace(offset, offset, length, null, 0, removedHighlighters);
+  }
+
+  /**
+   * Moves the ranges behind the removed text by the length of the removed text. Ranges that
+   * intersect the removed text are shortened or removed.
+   *
+   * @param start the start offset of the removed text
+   * @param end the end offset of the removed text
+   * @param removedHighlighters collects the highlighters that have to be removed
+   */
+  void delete(int start, int end, @NotNull Collection<RangeHighlighter> removedHighlighters) {
+    checkRange(start, end);
+
+    replace(start, end, 0, null, 0, removedHighlighters);
+  }
+
+  /**
+   * Removes all ranges whose most recent contribution has a sequence number less than or equal to
+   * the given one.
+   *
+   * @param sequenceNumber the sequence number of the last contribution to remove
+   * @param removedHighlighters collects the highlighters that have to be removed
+   */
+  void removeUpTo(long sequenceNumber, @NotNull Collection<RangeHighlighter> removedHighlighters) {
+    while (root != null && root.minSequenceNumber <= sequenceNumber) {
+      Range node = root;
+      int base = 0;
+
+      while (true) {
+        if (node.left != null && node.left.minSequenceNumber <= sequenceNumber) {
+          node = node.left;
+          continue;
+        }
+
+        final int start = base + size(node.left) + node.gap;
+
+        if (node.sequenceNumber <= sequenceNumber) {
+          replace(start, start + node.length, node.length, null, 0, removedHighlighters);
+          break;
+        }
+
+        base = start + node.length;
+        node = node.right;
+      }
+    }
+  }
+
+  /**
+   * Removes all ranges of the given user.
+   *
+   * @param user the user whose ranges to remove
+   * @param removedHighlighters collects the highlighters that have to be removed
+   */
+  void removeAll(@NotNull User user, @NotNull Collection<RangeHighlighter> removedHighlighters) {
+    final List<int[]> ranges = new ArrayList<>();
+
+    forEachRange(
+        0,
+        Integer.MAX_VALUE,
+        (range, start, end) -> {
+          if (range.user.equals(user)) ranges.add(new int[] {start, end});
+        });
+
+    for (int[] range : ranges) {
+      replace(range[0], range[1], range[1] - range[0], null, 0, removedHighlighters);
+    }
+  }
+
+  /**
+   * Removes all ranges.
+   *
+   * @param removedHighlighters collects the highlighters that have to be removed
+   */
+  void clear(@NotNull Collection<RangeHighlighter> removedHighlighters) {
+    detachAll(root, removedHighlighters);
+    root = null;
+  }
+
+  /**
+   * Visits all ranges that intersect the given section of text in document order.
+   *
+   * @param from the start offset of the section
+   * @param to the end offset of the section
+   * @param visitor the visitor to call for every range
+   */
+  void forEachRange(int from, int to, @NotNull RangeVisitor visitor) {
+    forEachRange(root, 0, from, to, visitor);
+  }
+
+  /**
+   * Sets the highlighter that displays the given range. The highlighter must match the current
+   * position of the range.
+   *
+   * @param range a range of this tree
+   * @param rangeHighlighter the highlighter or <code>null</code>
+   */
+  void setRangeHighlighter(@NotNull Range range, @Nullable RangeHighlighter rangeHighlighter) {
+    range.rangeHighlighter = rangeHighlighter;
+
+    if (rangeHighlighter != null) highlightedRanges.add(range);
+    else highlightedRanges.remove(range);
+  }
+
+  /**
+   * Returns the ranges that currently hold a highlighter.
+   *
+   * @return a copy of the ranges that hold a highlighter
+   */
+  @NotNull
+  List<Range> getHighlightedRanges() {
+    return new ArrayList<>(highlightedRanges);
+  }
+
+  /**
+   * Detaches the highlighters from all ranges without removing the ranges.
+   *
+   * @return the detached highlighters
+   */
+  @NotNull
+  List<RangeHighlighter> detachHighlighters() {
+    final List<RangeHighlighter> rangeHighlighters = new ArrayList<>();
+
+    for (Range range : highlightedRanges) {
+      rangeHighlighters.add(range.rangeHighlighter);
+      range.rangeHighlighter = null;
+    }
+
+    highlightedRanges.clear();
+
+    return rangeHighlighters;
+  }
+
+  boolean isEmpty() {
+    return root == null;
+  }
+
+  /**
+   * Returns the minimum sequence number of all ranges.
+   *
+   * @return the minimum sequence number or {@link Long#MAX_VALUE} if there are no ranges
+   */
+  long getMinSequenceNumber() {
+    return root == null ? Long.MAX_VALUE : root.minSequenceNumber;
+  }
+
+  /**
+   * Replaces the text between the given offsets with text of the given length that belongs to the
+   * given user or to no user if the user is <code>null</code>.
+   */
+  private void replace(
+      int start,
+      int end,
+      int newLength,
+      @Nullable User user,
+      long sequenceNumber,
+      @NotNull Collection<RangeHighlighter> removedHighlighters) {
+
+    split(root, start, removedHighlighters);
+
+    Range left = splitLeft;
+    final Range rest = splitRight;
+
+    // the text between the end of the last range on the left and the start offset
+    final int gap = start - size(left);
+
+    split(rest, end - start, removedHighlighters);
+
+    final Range middle = splitLeft;
+    Range right = splitRight;
+
+    detachAll(middle, removedHighlighters);
+
+    if (user == null || newLength == 0) {
+      if (right != null) right = addGap(right, gap + newLength);
+
+      // joins the ranges around removed text if they belong to the same user
+      if (gap + newLength == 0 && left != null && right != null) {
+        final Range last = last(left);
+        final Range first = first(right);
+
+        if (first.gap == 0 && last.user.equals(first.user)) {
+          left = removeLast(left);
+          right = removeFirst(right);
+
+          final Range joined =
+              createRange(
+                  last.user,
+                  last.gap,
+                  last.length + first.length,
+                  Math.max(last.sequenceNumber, first.sequenceNumber));
+
+          detach(last, removedHighlighters);
+          detach(first, removedHighlighters);
+
+          left = merge(left, joined);
+        }
+      }
+
+      root = merge(left, right);
+      return;
+    }
+
+    int rangeGap = gap;
+    int rangeLength = newLength;
+    long rangeSequenceNumber = sequenceNumber;
+
+    if (left != null && gap == 0 && last(left).user.equals(user)) {
+      left = removeLast(left);
+
+      rangeGap = removed.gap;
+      rangeLength += removed.length;
+      rangeSequenceNumber = Math.max(rangeSequenceNumber, removed.sequenceNumber);
+
+      detach(removed, removedHighlighters);
+    }
+
+    if (right != null && first(right).gap == 0 && first(right).user.equals(user)) {
+      right = removeFirst(right);
+
+      rangeLength += removed.length;
+      rangeSequenceNumber = Math.max(rangeSequenceNumber, removed.sequenceNumber);
+
+      detach(removed, removedHighlighters);
+    }
+
+    root = merge(merge(left, createRange(user, rangeGap, rangeLength, rangeSequenceNumber)), right);
+  }
+
+  /**
+   * Splits the given subtree at the given offset (relative to the subtree) into the ranges before
+   * the offset ({@link #splitLeft}) and the ranges after the offset ({@link #splitRight}). A range
+   * containing the offset is split into two ranges.
+   */
+  private void split(
+      @Nullable Range node, int offset, @NotNull Collection<RangeHighlighter> removedHighlighters) {
+
+    if (node == null) {
+      splitLeft = null;
+      splitRight = null;
+      return;
+    }
+
+    final int leftSize = size(node.left);
+
+    if (offset <= leftSize) {
+      split(node.left, offset, removedHighlighters);
+      node.left = splitRight;
+      update(node);
+      splitRight = node;
+      return;
+    }
+
+    final int start = leftSize + node.gap;
+    final int end = start + node.length;
+
+    if (offset >= end) {
+      split(node.right, offset - end, removedHighlighters);
+      node.right = splitLeft;
+      update(node);
+      splitLeft = node;
+      return;
+    }
+
+    if (offset <= start) {
+      // the offset is located in the text between the previous range and this range
+      final Range left = node.left;
+
+      node.left = null;
+      node.gap = start - offset;
+      update(node);
+
+      splitLeft = left;
+      splitRight = node;
+      return;
+    }
+
+    final Range tail = createRange(node.user, 0, end - offset, node.sequenceNumber);
+    final Range right = node.right;
+
+    detach(node, removedHighlighters);
+
+    node.length = offset - start;
+    node.right = null;
+    update(node);
+
+    splitLeft = node;
+    splitRight = merge(tail, right);
+  }
+
+  /** Merges the given subtrees, all ranges of the first one are located before the second one. */
+  private static Range merge(@Nullable Range first, @Nullable Range second) {
+    if (first == null) return second;
+
+    if (second == null) return first;
+
+    if (first.priority > second.priority) {
+      first.right = merge(first.right, second);
+      update(first);
+      return first;
+    }
+
+    second.left = merge(first, second.left);
+    update(second);
+    return second;
+  }
+
+  /** Removes the first range of the given subtree, the range is stored in {@link #removed}. */
+  private Range removeFirst(@NotNull Range node) {
+    if (node.left == null) {
+      removed = node;
+      final Range right = node.right;
+      node.right = null;
+      update(node);
+      return right;
+    }
+
+    node.left = removeFirst(node.left);
+    update(node);
+    return node;
+  }
+
+  /** Removes the last range of the given subtree, the range is stored in {@link #removed}. */
+  private Range removeLast(@NotNull Range node) {
+    if (node.right == null) {
+      removed = node;
+      final Range left = node.left;
+      node.left = null;
+      update(node);
+      return left;
+    }
+
+    node.right = removeLast(node.right);
+    update(node);
+    return node;
+  }
+
+  private static Range addGap(@NotNull Range node, int gap) {
+    if (node.left != null) node.left = addGap(node.left, gap);
+    else node.gap += gap;
+
+    update(node);
+    return node;
+  }
+
+  private static Range first(@NotNull Range node) {
+    while (node.left != null) node = node.left;
+
+    return node;
+  }
+
+  private static Range last(@NotNull Range node) {
+    while (node.right != null) node = node.right;
+
+    return node;
+  }
+
+  private static void forEachRange(
+      @Nullable Range node, int base, int from, int to, @NotNull RangeVisitor visitor) {
+
+    while (node != null) {
+      final int leftSize = size(node.left);
+
+      if (base + leftSize > from) forEachRange(node.left, base, from, to, visitor);
+
+      final int start = base + leftSize + node.gap;
+      final int end = start + node.length;
+
+      if (start >= to) return;
+
+      if (end > from) visitor.visit(node, start, end);
+
+      base = end;
+      node = node.right;
+    }
+  }
+
+  private Range createRange(User user, int gap, int length, long sequenceNumber) {
+    return new Range(user, gap, length, sequenceNumber, random.nextInt());
+  }
+
+  private void detach(@NotNull Range range, @NotNull Collection<RangeHighlighter> highlighters) {
+    if (range.rangeHighlighter == null) return;
+
+    highlighters.add(range.rangeHighlighter);
+    setRangeHighlighter(range, null);
+  }
+
+  private void detachAll(
+      @Nullable Range node, @NotNull Collection<RangeHighlighter> removedHighlighters) {
+
+    if (node == null) return;
+
+    detachAll(node.left, removedHighlighters);
+    detach(node, removedHighlighters);
+    detachAll(node.right, removedHighlighters);
+  }
+
+  private static int size(@Nullable Range node) {
+    return node == null ? 0 : node.size;
+  }
+
+  private static void update(@NotNull Range node) {
+    node.size = size(node.left) + node.gap + node.length + size(node.right);
+
+    long minSequenceNumber = node.sequenceNumber;
+
+    if (node.left != null)
+      minSequenceNumber = Math.min(minSequenceNumber, node.left.minSequenceNumber);
+
+    if (node.right != null)
+      minSequenceNumber = Math.min(minSequenceNumber, node.right.minSequenceNumber);
+
+    node.minSequenceNumber = minSequenceNumber;
+  }
+
+  private static void checkRange(int start, int end) {
+    if (start < 0 || start > end) {
+      throw new IllegalArgumentException("invalid range: start=" + start + ", end=" + end);
+    }
+  }
+}
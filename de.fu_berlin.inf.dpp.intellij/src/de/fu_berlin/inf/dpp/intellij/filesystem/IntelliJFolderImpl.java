@@ -182,9 +182,62 @@ public final class IntelliJFolderImpl extends IntelliJResourceImpl implements IF
         ModalityState.defaultModalityState());
   }
 
+  /**
+   * Moves this folder including all contained resources to the given destination.
+   *
+   * <p><b>Note:</b> The force flag is not supported. Folders can only be moved inside their module.
+   *
+   * @param destination the new path of the folder, either absolute starting with the module name or
+   *     relative to the parent of this folder
+   * @param force not supported
+   * @throws IOException if this folder or the parent of the destination does not exist or if the
+   *     destination is located in a different module
+   */
   @Override
   public void move(final IPath destination, final boolean force) throws IOException {
-    throw new IOException("NYI");
+
+    final IPath destinationPath;
+
+    if (!destination.isAbsolute()) {
+      destinationPath = path.removeLastSegments(1).append(destination);
+
+    } else if (destination.segmentCount() > 1 && project.getName().equals(destination.segment(0))) {
+      destinationPath = destination.removeFirstSegments(1);
+
+    } else {
+      throw new IOException("cannot move " + this + " out of its module to " + destination);
+    }
+
+    Filesystem.runWriteAction(
+        new ThrowableComputable<Void, IOException>() {
+
+          @Override
+          public Void compute() throws IOException {
+
+            final VirtualFile file = project.findVirtualFile(path);
+
+            if (file == null || !file.isDirectory())
+              throw new FileNotFoundException(
+                  IntelliJFolderImpl.this + " does not exist or is derived");
+
+            final VirtualFile parentFile =
+                project.findVirtualFile(destinationPath.removeLastSegments(1));
+
+            if (parentFile == null)
+              throw new FileNotFoundException(
+                  "parent of " + destinationPath + " does not exist or is derived");
+
+            if (!parentFile.equals(file.getParent()))
+              file.move(IntelliJFolderImpl.this, parentFile);
+
+            final String name = destinationPath.lastSegment();
+
+            if (!name.equals(file.getName())) file.rename(IntelliJFolderImpl.this, name);
+
+            return null;
+          }
+        },
+        ModalityState.defaultModalityState());
   }
 
   @NotNull
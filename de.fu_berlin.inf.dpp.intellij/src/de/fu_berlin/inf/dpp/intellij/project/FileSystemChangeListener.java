@@ -20,6 +20,7 @@ import de.fu_berlin.inf.dpp.activities.FileActivity;
 import de.fu_berlin.inf.dpp.activities.FileActivity.Type;
 import de.fu_berlin.inf.dpp.activities.FolderCreatedActivity;
 import de.fu_berlin.inf.dpp.activities.FolderDeletedActivity;
+import de.fu_berlin.inf.dpp.activities.FolderMovedActivity;
 import de.fu_berlin.inf.dpp.activities.IActivity;
 import de.fu_berlin.inf.dpp.activities.SPath;
 import de.fu_berlin.inf.dpp.filesystem.IPath;
@@ -31,12 +32,15 @@ import de.fu_berlin.inf.dpp.intellij.editor.annotations.AnnotationManager;
 import de.fu_berlin.inf.dpp.intellij.filesystem.VirtualFileConverter;
 import de.fu_berlin.inf.dpp.intellij.project.filesystem.IntelliJPathImpl;
 import de.fu_berlin.inf.dpp.intellij.project.filesystem.IntelliJWorkspaceImpl;
+import de.fu_berlin.inf.dpp.session.FolderMoveNegotiationHook;
 import de.fu_berlin.inf.dpp.session.ISarosSession;
 import de.fu_berlin.inf.dpp.session.User;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import org.apache.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
@@ -366,7 +370,9 @@ public class FileSystemChangeListener extends AbstractStoppableListener
    *       are dispatched.
    *   <li>If only the target directory is shared, only creation activities for the new resources
    *       are dispatched.
-   *   <li>If both directories are shared, the resources are moved as follows:
+   *   <li>If both directories are shared and the host supports it, a single folder move activity is
+   *       dispatched, see {@link #generateBulkFolderMove(VirtualFile, SPath, SPath)}.
+   *   <li>Otherwise, if both directories are shared, the resources are moved as follows:
    *       <p>Creation activities for the new directories (located in the target directory) and move
    *       activities for the contained files are dispatched in increasing depth order. Then,
    *       deletion activities for the old directories (in the source directory) are dispatched in
@@ -414,6 +420,15 @@ public class FileSystemChangeListener extends AbstractStoppableListener
       return;
     }
 
+    if (oldPathIsShared && newPathIsShared) {
+      SPath newPath =
+          new SPath(
+              newParentPath.getProject(),
+              newParentPath.getProjectRelativePath().append(folderName));
+
+      if (generateBulkFolderMove(oldFile, oldPath, newPath)) return;
+    }
+
     Deque<IActivity> queuedDeletionActivities = new ConcurrentLinkedDeque<>();
 
     /*
@@ -488,6 +503,92 @@ public class FileSystemChangeListener extends AbstractStoppableListener
     }
   }
 
+  /**
+   * Dispatches a single activity moving the given shared directory including all contained
+   * resources to a shared location. Subsequently updates the paths of any editors and annotations
+   * held for the contained files.
+   *
+   * <p>This is only possible if the host of the session supports folder moves, the directory is
+   * moved inside its completely shared module and the directory does not contain resources of other
+   * modules. Otherwise nothing is done and the move has to be replicated resource by resource.
+   *
+   * @param oldFile the directory that is about to be moved
+   * @param oldPath the old path of the directory
+   * @param newPath the new path of the directory
+   * @return <code>true</code> if the folder move was dispatched, <code>false</code> otherwise
+   * @see FolderMoveNegotiationHook
+   */
+  private boolean generateBulkFolderMove(
+      @NotNull VirtualFile oldFile, @NotNull SPath oldPath, @NotNull SPath newPath) {
+
+    if (!FolderMoveNegotiationHook.canSendFolderMoves(session)
+        || !oldPath.getProject().equals(newPath.getProject())
+        || !session.isCompletelyShared(oldPath.getProject())) {
+
+      return false;
+    }
+
+    Module baseModule = ModuleUtil.findModuleForFile(oldFile, project);
+
+    if (baseModule == null) {
+      return false;
+    }
+
+    List<VirtualFile> files = new ArrayList<>();
+
+    boolean containsOnlyBaseModule =
+        VfsUtilCore.iterateChildrenRecursively(
+            oldFile,
+            null,
+            fileOrDir -> {
+              if (!baseModule.equals(ModuleUtil.findModuleForFile(fileOrDir, project))) {
+                return false;
+              }
+
+              if (!fileOrDir.isDirectory()) {
+                files.add(fileOrDir);
+              }
+
+              return true;
+            });
+
+    if (!containsOnlyBaseModule) {
+      return false;
+    }
+
+    User user = session.getLocalUser();
+
+    fireActivity(new FolderMovedActivity(user, oldPath, newPath));
+
+    for (VirtualFile file : files) {
+      IPath relativePath = getRelativePath(oldFile, file);
+
+      if (relativePath == null) {
+        continue;
+      }
+
+      SPath oldFilePath =
+          new SPath(oldPath.getProject(), oldPath.getProjectRelativePath().append(relativePath));
+
+      SPath newFilePath =
+          new SPath(newPath.getProject(), newPath.getProjectRelativePath().append(relativePath));
+
+      editorManager.replaceAllEditorsForPath(oldFilePath, newFilePath);
+
+      annotationManager.updateAnnotationPath(oldFilePath.getFile(), newFilePath.getFile());
+
+      if (projectAPI.isOpen(file)) {
+        fireActivity(new EditorActivity(user, EditorActivity.Type.CLOSED, oldFilePath));
+
+        fireActivity(new EditorActivity(user, EditorActivity.Type.ACTIVATED, newFilePath));
+      }
+
+      // TODO reset the vector time for the old file
+    }
+
+    return true;
+  }
+
   /**
    * How the moved file is handled depends on whether the source and target directory are shared:
    *
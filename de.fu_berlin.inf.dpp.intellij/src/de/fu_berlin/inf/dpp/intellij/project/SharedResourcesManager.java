@@ -5,11 +5,14 @@ import com.intellij.openapi.application.ModalityState;
 import de.fu_berlin.inf.dpp.activities.FileActivity;
 import de.fu_berlin.inf.dpp.activities.FolderCreatedActivity;
 import de.fu_berlin.inf.dpp.activities.FolderDeletedActivity;
+import de.fu_berlin.inf.dpp.activities.FolderMovedActivity;
 import de.fu_berlin.inf.dpp.activities.IActivity;
 import de.fu_berlin.inf.dpp.activities.IFileSystemModificationActivity;
 import de.fu_berlin.inf.dpp.activities.SPath;
 import de.fu_berlin.inf.dpp.filesystem.IFile;
 import de.fu_berlin.inf.dpp.filesystem.IFolder;
+import de.fu_berlin.inf.dpp.filesystem.IPath;
+import de.fu_berlin.inf.dpp.filesystem.IResource;
 import de.fu_berlin.inf.dpp.intellij.editor.EditorManager;
 import de.fu_berlin.inf.dpp.intellij.editor.LocalEditorHandler;
 import de.fu_berlin.inf.dpp.intellij.editor.LocalEditorManipulator;
@@ -25,6 +28,8 @@ import de.fu_berlin.inf.dpp.session.ISarosSession;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.picocontainer.Startable;
@@ -137,6 +142,15 @@ public class SharedResourcesManager extends AbstractActivityProducer implements
             LOG.error("Failed to execute activity: " + activity, e);
           }
         }
+
+        @Override
+        public void receive(FolderMovedActivity activity) {
+          try {
+            handleFolderMove(activity);
+          } catch (IOException e) {
+            LOG.error("Failed to execute activity: " + activity, e);
+          }
+        }
       };
 
   private void handleFileActivity(@NotNull FileActivity activity) throws IOException {
@@ -365,6 +379,112 @@ public class SharedResourcesManager extends AbstractActivityProducer implements
     }
   }
 
+  /**
+   * Applies the given FolderMovedActivity by moving the folder including all contained resources.
+   * Subsequently cleans up the EditorPool and AnnotationManager for the contained files.
+   *
+   * @param activity the FolderMovedActivity to execute
+   * @throws IOException if the folder move fails
+   */
+  private void handleFolderMove(@NotNull FolderMovedActivity activity) throws IOException {
+
+    SPath oldPath = activity.getPath();
+    SPath newPath = activity.getDestination();
+
+    IFolder oldFolder = oldPath.getFolder();
+
+    if (!oldFolder.exists()) {
+      LOG.warn(
+          "Could not move folder "
+              + oldFolder
+              + " as it does not exist."
+              + " destination: "
+              + newPath.getFolder());
+
+      return;
+    }
+
+    List<IPath> files = new ArrayList<>();
+
+    collectFiles(oldFolder, oldPath.getProjectRelativePath().segmentCount(), files);
+
+    List<IPath> openFiles = new ArrayList<>();
+
+    SelectedEditorState selectedEditorState = null;
+
+    for (IPath relativePath : files) {
+      SPath oldFilePath = append(oldPath, relativePath);
+
+      if (localEditorHandler.isOpenEditor(oldFilePath)) {
+        if (selectedEditorState == null) {
+          selectedEditorState = new SelectedEditorState();
+          selectedEditorState.captureState();
+        }
+
+        localEditorManipulator.closeEditor(oldFilePath);
+
+        openFiles.add(relativePath);
+      }
+
+      annotationManager.updateAnnotationPath(
+          oldFilePath.getFile(), append(newPath, relativePath).getFile());
+    }
+
+    try {
+      fileSystemListener.setEnabled(false);
+
+      for (IPath relativePath : openFiles) {
+        localEditorHandler.saveDocument(append(oldPath, relativePath));
+      }
+
+      oldFolder.move(newPath.getFullPath().makeAbsolute(), FORCE);
+
+      for (IPath relativePath : openFiles) {
+        SPath newFilePath = append(newPath, relativePath);
+
+        localEditorManipulator.openEditor(newFilePath, false);
+
+        try {
+          selectedEditorState.replaceSelectedFile(
+              append(oldPath, relativePath).getFile(), newFilePath.getFile());
+        } catch (IllegalStateException e) {
+          LOG.warn("Failed to update the captured selected editor state", e);
+        }
+      }
+
+      if (selectedEditorState != null) {
+        selectedEditorState.applyCapturedState();
+      }
+
+    } finally {
+      fileSystemListener.setEnabled(true);
+    }
+
+    // TODO reset the vector time for the old files
+  }
+
+  /**
+   * Adds the paths of all files contained in the given folder relative to the moved base folder to
+   * the given list.
+   */
+  private static void collectFiles(
+      @NotNull IFolder folder, int baseSegmentCount, @NotNull List<IPath> files)
+      throws IOException {
+
+    for (IResource member : folder.members()) {
+      if (member.getType() == IResource.FOLDER) {
+        collectFiles((IFolder) member, baseSegmentCount, files);
+      } else if (member.getType() == IResource.FILE) {
+        files.add(member.getProjectRelativePath().removeFirstSegments(baseSegmentCount));
+      }
+    }
+  }
+
+  @NotNull
+  private static SPath append(@NotNull SPath folder, @NotNull IPath relativePath) {
+    return new SPath(folder.getProject(), folder.getProjectRelativePath().append(relativePath));
+  }
+
   void internalFireActivity(IActivity activity) {
     // HACK for now
     if (fileReplacementInProgressObservable.isReplacementInProgress()) {
@@ -15,6 +15,7 @@ import com.intellij.openapi.roots.ModuleRootManager;
 import com.intellij.openapi.util.ThrowableComputable;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.ui.UIUtil;
+import de.fu_berlin.inf.dpp.exceptions.SarosCancellationException;
 import de.fu_berlin.inf.dpp.filesystem.IChecksumCache;
 import de.fu_berlin.inf.dpp.filesystem.IProject;
 import de.fu_berlin.inf.dpp.filesystem.IWorkspace;
@@ -597,7 +598,13 @@ public class AddProjectToSessionWizard extends Wizard {
                 checksumCache,
                 new SubProgressMonitor(monitor, 1, SubProgressMonitor.SUPPRESS_SETTASKNAME));
 
-        final FileListDiff diff = FileListDiff.diff(localFileList, data.getFileList(), false);
+        final FileList remoteFileList =
+            negotiation.getRemoteFileList(
+                projectID,
+                localFileList,
+                new SubProgressMonitor(monitor, 0, SubProgressMonitor.SUPPRESS_SETTASKNAME));
+
+        final FileListDiff diff = FileListDiff.diff(localFileList, remoteFileList, false);
 
         if (!diff.getRemovedFolders().isEmpty()
             || !diff.getRemovedFiles().isEmpty()
@@ -610,6 +617,8 @@ public class AddProjectToSessionWizard extends Wizard {
 
       } catch (IOException e) {
         LOG.warn("could not refresh project: " + project, e);
+      } catch (SarosCancellationException e) {
+        LOG.warn("could not receive remote file list of project: " + project, e);
       }
     }
     return modifiedResources;
@@ -0,0 +1,79 @@
+package de.fu_berlin.inf.dpp.intellij.editor.annotations;
+
+import com.intellij.openapi.editor.markup.RangeHighlighter;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import de.fu_berlin.inf.dpp.session.User;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link ContributionRangeTree} with the one character wide annotation ranges that
+ * were used for contribution annotations before. Each invocation receives a large paste of <code>
+ * pasteSize</code> characters followed by <code>edits</code> single character insertions in front
+ * of the pasted text, as they occur while the file is closed or while the other participant keeps
+ * typing above the pasted text.
+ *
+ * <p>The one character wide ranges additionally required one RangeHighlighter per character while
+ * the file was open, which is not part of this benchmark as it needs a running IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContributionRangeTreeBenchmark {
+
+  @Param({"1024", "65536"})
+  public int pasteSize;
+
+  @Param({"100"})
+  public int edits;
+
+  private final User user = new User(new JID("alice@saros.org"), false, false, 0, -1);
+
+  @Benchmark
+  public Object rangeTree() {
+    final ContributionRangeTree tree = new ContributionRangeTree();
+    final List<RangeHighlighter> removedHighlighters = new ArrayList<>();
+
+    tree.insert(0, pasteSize, removedHighlighters);
+    tree.add(user, 0, pasteSize, 0, removedHighlighters);
+
+    for (int i = 1; i <= edits; i++) {
+      tree.insert(0, 1, removedHighlighters);
+      tree.add(user, 0, 1, i, removedHighlighters);
+    }
+
+    return tree;
+  }
+
+  @Benchmark
+  public Object perCharacterRanges() {
+    final List<AnnotationRange> ranges = new ArrayList<>();
+
+    for (int i = 0; i < pasteSize; i++) ranges.add(new AnnotationRange(i, i + 1));
+
+    for (int i = 1; i <= edits; i++) {
+      for (int j = 0; j < ranges.size(); j++) {
+        final AnnotationRange range = ranges.get(j);
+        ranges.set(j, new AnnotationRange(range.getStart() + 1, range.getEnd() + 1));
+      }
+
+      ranges.add(new AnnotationRange(0, 1));
+    }
+
+    return ranges;
+  }
+}
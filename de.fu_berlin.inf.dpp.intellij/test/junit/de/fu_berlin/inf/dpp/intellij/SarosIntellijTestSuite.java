@@ -7,6 +7,7 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
   de.fu_berlin.inf.dpp.intellij.context.TestSuite.class,
   de.fu_berlin.inf.dpp.intellij.editor.TestSuite.class,
+  de.fu_berlin.inf.dpp.intellij.editor.annotations.TestSuite.class,
   de.fu_berlin.inf.dpp.intellij.project.filesystem.TestSuite.class,
   de.fu_berlin.inf.dpp.intellij.ui.swt_browser.TestSuite.class,
 })
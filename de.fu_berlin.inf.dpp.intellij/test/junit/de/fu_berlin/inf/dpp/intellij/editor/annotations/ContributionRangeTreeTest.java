@@ -0,0 +1,243 @@
+package de.fu_berlin.inf.dpp.intellij.editor.annotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.intellij.openapi.editor.markup.RangeHighlighter;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import de.fu_berlin.inf.dpp.session.User;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ContributionRangeTreeTest {
+
+  private final User alice = new User(new JID("alice@saros.org"), false, false, 0, -1);
+  private final User bob = new User(new JID("bob@saros.org"), false, false, 1, -1);
+
+  private ContributionRangeTree tree;
+
+  private List<RangeHighlighter> removedHighlighters;
+
+  @Before
+  public void setUp() {
+    tree = new ContributionRangeTree();
+    removedHighlighters = new ArrayList<>();
+  }
+
+  @Test
+  public void testAdjacentContributionsAreCoalesced() {
+    for (int i = 0; i < 100; i++) {
+      tree.insert(10 + i, 1, removedHighlighters);
+      tree.add(alice, 10 + i, 11 + i, i, removedHighlighters);
+    }
+
+    assertRanges("alice:10-110");
+    assertEquals(99, getOnlyRange().getSequenceNumber());
+  }
+
+  @Test
+  public void testInsertMovesAndSplitsRanges() {
+    tree.add(alice, 5, 10, 1, removedHighlighters);
+    tree.add(bob, 20, 25, 2, removedHighlighters);
+
+    tree.insert(0, 3, removedHighlighters);
+    assertRanges("alice:8-13", "bob:23-28");
+
+    tree.insert(10, 2, removedHighlighters);
+    assertRanges("alice:8-10", "alice:12-15", "bob:25-30");
+
+    // inserting at the end of a range does not elongate it
+    tree.insert(15, 1, removedHighlighters);
+    assertRanges("alice:8-10", "alice:12-15", "bob:26-31");
+  }
+
+  @Test
+  public void testDeleteShortensAndJoinsRanges() {
+    tree.add(alice, 0, 10, 1, removedHighlighters);
+    tree.add(bob, 10, 20, 2, removedHighlighters);
+    tree.add(alice, 20, 30, 3, removedHighlighters);
+
+    tree.delete(5, 15, removedHighlighters);
+    assertRanges("alice:0-5", "bob:5-10", "alice:10-20");
+
+    // removing the contribution of bob joins the adjacent ranges of alice
+    tree.delete(5, 10, removedHighlighters);
+    assertRanges("alice:0-15");
+    assertEquals(3, getOnlyRange().getSequenceNumber());
+
+    tree.delete(0, 20, removedHighlighters);
+    assertTrue(tree.isEmpty());
+  }
+
+  @Test
+  public void testContributionReplacesOverlappedRanges() {
+    tree.add(alice, 0, 10, 1, removedHighlighters);
+    tree.add(bob, 3, 6, 2, removedHighlighters);
+
+    assertRanges("alice:0-3", "bob:3-6", "alice:6-10");
+
+    tree.add(alice, 2, 8, 3, removedHighlighters);
+
+    assertRanges("alice:0-10");
+  }
+
+  @Test
+  public void testRemoveUpTo() {
+    tree.add(alice, 0, 5, 1, removedHighlighters);
+    tree.add(bob, 10, 15, 2, removedHighlighters);
+    tree.add(alice, 20, 25, 3, removedHighlighters);
+    tree.add(bob, 30, 35, 4, removedHighlighters);
+
+    tree.removeUpTo(2, removedHighlighters);
+
+    assertRanges("alice:20-25", "bob:30-35");
+    assertEquals(3, tree.getMinSequenceNumber());
+
+    tree.removeUpTo(4, removedHighlighters);
+
+    assertTrue(tree.isEmpty());
+  }
+
+  @Test
+  public void testRemoveAllOfUser() {
+    tree.add(alice, 0, 5, 1, removedHighlighters);
+    tree.add(bob, 5, 10, 2, removedHighlighters);
+    tree.add(alice, 10, 15, 3, removedHighlighters);
+
+    tree.removeAll(alice, removedHighlighters);
+
+    assertRanges("bob:5-10");
+  }
+
+  @Test
+  public void testHighlighterIsOnlyKeptForMovedRanges() {
+    tree.add(alice, 0, 5, 1, removedHighlighters);
+    tree.add(bob, 10, 15, 2, removedHighlighters);
+
+    RangeHighlighter aliceHighlighter = EasyMock.createMock(RangeHighlighter.class);
+    RangeHighlighter bobHighlighter = EasyMock.createMock(RangeHighlighter.class);
+
+    List<ContributionRangeTree.Range> ranges = getRanges();
+
+    tree.setRangeHighlighter(ranges.get(0), aliceHighlighter);
+    tree.setRangeHighlighter(ranges.get(1), bobHighlighter);
+
+    tree.insert(7, 3, removedHighlighters);
+
+    assertTrue(removedHighlighters.isEmpty());
+    assertSame(bobHighlighter, getRanges().get(1).getRangeHighlighter());
+
+    tree.insert(2, 1, removedHighlighters);
+
+    assertEquals(Arrays.asList(aliceHighlighter), removedHighlighters);
+    assertNull(getRanges().get(0).getRangeHighlighter());
+    assertSame(bobHighlighter, getRanges().get(2).getRangeHighlighter());
+
+    removedHighlighters.clear();
+    tree.clear(removedHighlighters);
+
+    assertEquals(Arrays.asList(bobHighlighter), removedHighlighters);
+    assertTrue(tree.getHighlightedRanges().isEmpty());
+  }
+
+  @Test
+  public void testForEachRangeOnlyVisitsIntersectingRanges() {
+    for (int i = 0; i < 100; i++)
+      tree.add(i % 2 == 0 ? alice : bob, i * 10, i * 10 + 5, i, removedHighlighters);
+
+    List<Integer> starts = new ArrayList<>();
+
+    tree.forEachRange(503, 531, (range, start, end) -> starts.add(start));
+
+    assertEquals(Arrays.asList(500, 510, 520, 530), starts);
+  }
+
+  @Test
+  public void testRandomEditsMatchCharacterModel() {
+    Random random = new Random(4711);
+    User[] users = {alice, bob};
+
+    // the owner of every character, -1 if the character is not annotated
+    List<Integer> model = new ArrayList<>();
+
+    for (int i = 0; i < 2000; i++) {
+      int length = model.size();
+      int start = random.nextInt(length + 1);
+      int end = start + random.nextInt(Math.min(length - start, 20) + 1);
+
+      switch (random.nextInt(3)) {
+        case 0:
+          int inserted = 1 + random.nextInt(10);
+
+          tree.insert(start, inserted, removedHighlighters);
+
+          for (int j = 0; j < inserted; j++) model.add(start, -1);
+
+          break;
+
+        case 1:
+          tree.delete(start, end, removedHighlighters);
+
+          model.subList(start, end).clear();
+          break;
+
+        default:
+          int user = random.nextInt(users.length);
+
+          tree.add(users[user], start, end, i, removedHighlighters);
+
+          for (int j = start; j < end; j++) model.set(j, user);
+      }
+
+      List<Integer> actual = new ArrayList<>();
+
+      for (int j = 0; j < model.size(); j++) actual.add(-1);
+
+      tree.forEachRange(
+          0,
+          Integer.MAX_VALUE,
+          (range, rangeStart, rangeEnd) -> {
+            for (int j = rangeStart; j < rangeEnd; j++)
+              actual.set(j, Arrays.asList(users).indexOf(range.getUser()));
+          });
+
+      assertEquals(model, actual);
+    }
+  }
+
+  private ContributionRangeTree.Range getOnlyRange() {
+    List<ContributionRangeTree.Range> ranges = getRanges();
+
+    assertEquals(1, ranges.size());
+
+    return ranges.get(0);
+  }
+
+  private List<ContributionRangeTree.Range> getRanges() {
+    List<ContributionRangeTree.Range> ranges = new ArrayList<>();
+
+    tree.forEachRange(0, Integer.MAX_VALUE, (range, start, end) -> ranges.add(range));
+
+    return ranges;
+  }
+
+  private void assertRanges(String... expected) {
+    List<String> actual = new ArrayList<>();
+
+    tree.forEachRange(
+        0,
+        Integer.MAX_VALUE,
+        (range, start, end) ->
+            actual.add(
+                (range.getUser().equals(alice) ? "alice" : "bob") + ":" + start + "-" + end));
+
+    assertEquals(Arrays.asList(expected), actual);
+  }
+}
@@ -0,0 +1,11 @@
+package de.fu_berlin.inf.dpp.intellij.editor.annotations;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses({ContributionRangeTreeTest.class})
+public class TestSuite {
+  // the class remains completely empty,
+  // being used only as a holder for the above annotations
+}
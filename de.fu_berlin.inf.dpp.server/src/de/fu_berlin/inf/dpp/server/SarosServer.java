@@ -1,6 +1,8 @@
 package de.fu_berlin.inf.dpp.server;
 
+import de.fu_berlin.inf.dpp.server.console.EditorStatisticsCommand;
 import de.fu_berlin.inf.dpp.server.console.ServerConsole;
+import de.fu_berlin.inf.dpp.session.ISarosSessionManager;
 import java.net.URL;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
@@ -32,7 +34,10 @@ public class SarosServer {
   }
 
   public void initConsole(ServerConsole console) {
-    // no commands (yet) to register
+    ISarosSessionManager sessionManager =
+        lifecycle.getSarosContext().getComponent(ISarosSessionManager.class);
+
+    console.registerCommand(new EditorStatisticsCommand(sessionManager));
   }
 
   public void stop() {
@@ -10,6 +10,14 @@ public class ServerConfig {
   private static final String PASSWORD_KEY = "de.fu_berlin.inf.dpp.server.password";
   private static final String WORKSPACE_PATH_KEY = "de.fu_berlin.inf.dpp.server.workspace";
   private static final String INTERACTIVE_KEY = "de.fu_berlin.inf.dpp.server.interactive";
+  private static final String EDITOR_FLUSH_INTERVAL_KEY =
+      "de.fu_berlin.inf.dpp.server.editor.flushInterval";
+  private static final String EDITOR_CACHE_SIZE_KEY =
+      "de.fu_berlin.inf.dpp.server.editor.cacheSize";
+  private static final String EDITOR_DOCUMENT_KEY = "de.fu_berlin.inf.dpp.server.editor.document";
+
+  private static final long DEFAULT_EDITOR_FLUSH_INTERVAL = 1000;
+  private static final long DEFAULT_EDITOR_CACHE_SIZE = 64 * 1024 * 1024;
 
   /**
    * Returns the JID that the Saros server should use to connect to the XMPP network.
@@ -52,4 +60,34 @@ public class ServerConfig {
         || value.equalsIgnoreCase("yes")
         || value.equalsIgnoreCase("y");
   }
+
+  /**
+   * Returns the interval in milliseconds in which modified editors are written to disk. A value of
+   * zero or less means that every text edit is written to disk immediately.
+   *
+   * @return the editor flush interval, defaults to one second
+   */
+  public static long getEditorFlushInterval() {
+    return Long.getLong(EDITOR_FLUSH_INTERVAL_KEY, DEFAULT_EDITOR_FLUSH_INTERVAL);
+  }
+
+  /**
+   * Returns the approximate amount of memory in bytes the open editors may occupy. If it is
+   * exceeded, the least recently used editors are closed.
+   *
+   * @return the editor cache size, defaults to 64 MiB
+   */
+  public static long getEditorCacheSize() {
+    return Long.getLong(EDITOR_CACHE_SIZE_KEY, DEFAULT_EDITOR_CACHE_SIZE);
+  }
+
+  /**
+   * Returns the document implementation the editors should use. Supported values are <code>rope
+   * </code> and <code>gapbuffer</code>.
+   *
+   * @return the editor document type, defaults to <code>rope</code>
+   */
+  public static String getEditorDocumentType() {
+    return System.getProperty(EDITOR_DOCUMENT_KEY, "rope");
+  }
 }
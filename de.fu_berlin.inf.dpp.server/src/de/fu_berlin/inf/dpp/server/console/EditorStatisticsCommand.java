@@ -0,0 +1,53 @@
+package de.fu_berlin.inf.dpp.server.console;
+
+import de.fu_berlin.inf.dpp.server.editor.ServerEditorManager;
+import de.fu_berlin.inf.dpp.session.ISarosSession;
+import de.fu_berlin.inf.dpp.session.ISarosSessionManager;
+import java.io.PrintStream;
+
+/** Prints the cache and flush statistics of the {@link ServerEditorManager}. */
+public class EditorStatisticsCommand extends ConsoleCommand {
+
+  private final ISarosSessionManager sessionManager;
+
+  public EditorStatisticsCommand(ISarosSessionManager sessionManager) {
+    this.sessionManager = sessionManager;
+  }
+
+  @Override
+  public String identifier() {
+    return "editors";
+  }
+
+  @Override
+  public String help() {
+    return "editors - Print statistics of the open editors";
+  }
+
+  @Override
+  public void execute(String command, PrintStream out) {
+    ISarosSession session = sessionManager.getSession();
+
+    ServerEditorManager editorManager =
+        session == null ? null : session.getComponent(ServerEditorManager.class);
+
+    if (editorManager == null) {
+      out.println("No session running");
+      return;
+    }
+
+    out.printf(
+        "open editors: %d, memory: %d of %d bytes%n",
+        editorManager.getOpenEditorCount(),
+        editorManager.getCacheSize(),
+        editorManager.getCacheCapacity());
+    out.printf(
+        "cache hits: %d, misses: %d, evictions: %d%n",
+        editorManager.getCacheHitCount(),
+        editorManager.getCacheMissCount(),
+        editorManager.getCacheEvictionCount());
+    out.printf(
+        "pending flush: %d characters, last flush: %d ms%n",
+        editorManager.getPendingFlushLength(), editorManager.getLastFlushDuration());
+  }
+}
@@ -48,13 +48,17 @@ public class ServerConsole implements Runnable {
         output.println("help - Print this help");
         output.println("quit - Quit Saros Server");
       } else {
+        boolean known = false;
         for (ConsoleCommand command : commands) {
           if (command.matches(line)) {
             command.execute(line, output);
+            known = true;
             break;
           }
         }
-        output.printf("Command '%s' is not known. (Type 'help' for available commands)", line);
+        if (!known) {
+          output.printf("Command '%s' is not known. (Type 'help' for available commands)%n", line);
+        }
       }
     }
   }
@@ -0,0 +1,42 @@
+package de.fu_berlin.inf.dpp.server.editor;
+
+/**
+ * Mutable text content of an {@link Editor}. Implementations do not need to be thread safe, the
+ * {@link Editor} takes care of the synchronization.
+ */
+public interface Document {
+
+  /**
+   * Inserts text at the given position.
+   *
+   * @param pos the position to insert the text at
+   * @param text the text to insert
+   */
+  public void insert(int pos, String text);
+
+  /**
+   * Deletes text starting at the given position.
+   *
+   * @param pos the position of the first character to delete
+   * @param len the number of characters to delete
+   */
+  public void delete(int pos, int len);
+
+  /** Returns the number of characters of the document. */
+  public int length();
+
+  /**
+   * Returns the content of the document. Later modifications of the document do not affect the
+   * returned snapshot, so it can be read without holding a lock.
+   *
+   * @return immutable view of the current content
+   */
+  public CharSequence snapshot();
+
+  /** Returns the approximate number of bytes the document occupies in memory. */
+  public long getMemoryFootprint();
+
+  /** Returns the content of the document. */
+  @Override
+  public String toString();
+}
@@ -2,22 +2,64 @@ package de.fu_berlin.inf.dpp.server.editor;
 
 import de.fu_berlin.inf.dpp.activities.TextEditActivity;
 import de.fu_berlin.inf.dpp.filesystem.IFile;
+import de.fu_berlin.inf.dpp.server.ServerConfig;
 import java.io.IOException;
 import java.io.InputStream;
 import org.apache.commons.io.IOUtils;
 
-/** Representation of an open file on the server. Used by {@link ServerEditorManager}. */
+/**
+ * Representation of an open file on the server. Used by {@link ServerEditorManager}.
+ *
+ * <p>Edits are only applied in memory and mark the editor as {@linkplain #isDirty() dirty} until
+ * the content is written to disk by calling {@link #save}. It is safe to call {@link #save} from a
+ * different thread than the one applying the edits.
+ */
 public class Editor {
 
-  private IFile file;
-  private GapBuffer content;
+  /** Document type for {@link GapBuffer} */
+  static final String GAP_BUFFER = "gapbuffer";
+
+  private final IFile file;
+  private Document content;
+
+  /** Number of modifications applied to the content */
+  private long modifications;
+
+  /** Number of modifications the content on disk reflects */
+  private long savedModifications;
+
+  /** Whether the editor was closed, a closed editor is never written to disk again */
+  private boolean closed;
+
+  /**
+   * Ensures that concurrent saves do not overtake each other and that the editor is not closed
+   * while it is saved
+   */
+  private final Object saveLock = new Object();
 
   public Editor(IFile file) throws IOException {
+    this(file, ServerConfig.getEditorDocumentType());
+  }
+
+  /**
+   * Creates an editor for the given file.
+   *
+   * @param file the file to open
+   * @param documentType the {@link Document} implementation to use, either <code>rope</code> or
+   *     <code>gapbuffer</code>
+   * @throws IOException if reading the file fails
+   */
+  Editor(IFile file, String documentType) throws IOException {
     this.file = file;
 
+    final String text;
+
     try (InputStream input = file.getContents()) {
-      content = new GapBuffer(IOUtils.toString(input));
+      text = IOUtils.toString(input);
     }
+
+    if (GAP_BUFFER.equalsIgnoreCase(documentType)) content = new GapBuffer(text);
+    else content = new RopeDocument(text);
   }
 
   /**
@@ -29,6 +71,18 @@ public class Editor {
     return file;
   }
 
+  /**
+   * Closes the editor, so its content is not written to disk anymore, e.g. because the file is
+   * about to be deleted or moved. Waits until a save that is currently in progress is finished.
+   */
+  void close() {
+    synchronized (saveLock) {
+      synchronized (this) {
+        closed = true;
+      }
+    }
+  }
+
   /**
    * Returns the editor's text content. Depending on whether any text edits have been applied, the
    * content may differ from that of the associated file on disk.
@@ -36,7 +90,18 @@ public class Editor {
    * @return editor's content
    */
   public String getContent() {
-    return content.toString();
+    return getSnapshot().toString();
+  }
+
+  /**
+   * Returns an immutable snapshot of the editor's text content. Depending on the document
+   * implementation this does not copy the content, so it is cheap to read large documents without
+   * blocking further edits.
+   *
+   * @return snapshot of the editor's content
+   */
+  public synchronized CharSequence getSnapshot() {
+    return content.snapshot();
   }
 
   /**
@@ -46,13 +111,41 @@ public class Editor {
    *
    * @param edit the text edit operation to apply
    */
-  public void applyTextEdit(TextEditActivity edit) {
+  public synchronized void applyTextEdit(TextEditActivity edit) {
     if (edit.getReplacedText().length() > 0) {
       content.delete(edit.getOffset(), edit.getReplacedText().length());
     }
     if (edit.getText().length() > 0) {
       content.insert(edit.getOffset(), edit.getText());
     }
+    modifications++;
+  }
+
+  /**
+   * Returns whether the editor's content contains modifications that were not written to disk yet.
+   *
+   * @return <code>true</code> if the editor is dirty
+   */
+  public synchronized boolean isDirty() {
+    return modifications != savedModifications;
+  }
+
+  /**
+   * Returns the length of the editor's content in characters.
+   *
+   * @return length of the content
+   */
+  public synchronized int getLength() {
+    return content.length();
+  }
+
+  /**
+   * Returns the approximate number of bytes the editor's content occupies in memory.
+   *
+   * @return estimated memory footprint of the content
+   */
+  public synchronized long getMemoryFootprint() {
+    return content.getMemoryFootprint();
   }
 
   /**
@@ -60,9 +153,32 @@ public class Editor {
    * guaranteed to be atomic - it either succeeds completely or doesn't change the workspace at all
    * (in case an exception is thrown).
    *
+   * <p>Edits may be applied while the content is being written. They are not part of the saved
+   * content and leave the editor dirty.
+   *
+   * @return the number of characters written, or <code>0</code> if the editor was not dirty or is
+   *     closed
    * @throws IOException if writing the file fails
    */
-  public void save() throws IOException {
-    getFile().setContents(IOUtils.toInputStream(content.toString()), true, true);
+  public int save() throws IOException {
+    synchronized (saveLock) {
+      final CharSequence text;
+      final long snapshot;
+
+      synchronized (this) {
+        if (closed || !isDirty()) return 0;
+
+        text = content.snapshot();
+        snapshot = modifications;
+      }
+
+      file.setContents(IOUtils.toInputStream(text.toString()), true, true);
+
+      synchronized (this) {
+        savedModifications = snapshot;
+      }
+
+      return text.length();
+    }
   }
 }
@@ -0,0 +1,253 @@
+package de.fu_berlin.inf.dpp.server.editor;
+
+import de.fu_berlin.inf.dpp.activities.SPath;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.log4j.Logger;
+
+/**
+ * Cache for the {@link Editor}s of the {@link ServerEditorManager}. The cache is bounded by the
+ * estimated {@linkplain Editor#getMemoryFootprint() memory footprint} of its editors instead of
+ * their number. If the capacity is exceeded, the least recently used editors are evicted.
+ *
+ * <p>Dirty editors are saved before they are evicted. If saving fails, the editor is kept even if
+ * this exceeds the capacity.
+ *
+ * <p>This class is thread safe. Lookups do not block each other.
+ */
+class EditorCache {
+
+  private static final Logger LOG = Logger.getLogger(EditorCache.class);
+
+  private static class Entry {
+    private final Editor editor;
+    private volatile long lastAccess;
+
+    private Entry(Editor editor, long lastAccess) {
+      this.editor = editor;
+      this.lastAccess = lastAccess;
+    }
+  }
+
+  private final ConcurrentHashMap<SPath, Entry> entries = new ConcurrentHashMap<>();
+
+  private final long capacity;
+
+  private final AtomicLong clock = new AtomicLong();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  private final Lock evictionLock = new ReentrantLock();
+
+  /**
+   * Creates an EditorCache.
+   *
+   * @param capacity the maximum estimated memory footprint of all cached editors in bytes
+   */
+  EditorCache(long capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Returns the editor for the given path.
+   *
+   * @param path the path of the editor
+   * @return the cached editor or <code>null</code> if there is no editor for the path
+   */
+  Editor get(SPath path) {
+    final Entry entry = entries.get(path);
+
+    if (entry == null) {
+      misses.increment();
+      return null;
+    }
+
+    hits.increment();
+    entry.lastAccess = clock.incrementAndGet();
+    return entry.editor;
+  }
+
+  /**
+   * Adds an editor for the given path unless there is already one. Adding an editor may cause other
+   * editors to be evicted.
+   *
+   * @param path the path of the editor
+   * @param editor the editor to add
+   * @return the editor that is now cached for the path, this is either the given or the already
+   *     existing editor
+   */
+  Editor putIfAbsent(SPath path, Editor editor) {
+    final Entry existing = entries.putIfAbsent(path, new Entry(editor, clock.incrementAndGet()));
+
+    if (existing != null) {
+      existing.lastAccess = clock.incrementAndGet();
+      return existing.editor;
+    }
+
+    evict(path);
+    return editor;
+  }
+
+  /**
+   * Adds or replaces the editor for the given path. Adding an editor may cause other editors to be
+   * evicted.
+   *
+   * @param path the path of the editor
+   * @param editor the editor to add
+   */
+  void put(SPath path, Editor editor) {
+    entries.put(path, new Entry(editor, clock.incrementAndGet()));
+    evict(path);
+  }
+
+  /**
+   * Removes the editor for the given path. The editor is <b>not</b> saved.
+   *
+   * @param path the path of the editor
+   * @return the removed editor or <code>null</code> if there was no editor for the path
+   */
+  Editor remove(SPath path) {
+    final Entry entry = entries.remove(path);
+    return entry == null ? null : entry.editor;
+  }
+
+  /**
+   * Returns whether the given editor is cached for the given path. This does not count as an
+   * access.
+   */
+  boolean contains(SPath path, Editor editor) {
+    final Entry entry = entries.get(path);
+    return entry != null && entry.editor == editor;
+  }
+
+  /** Returns a live view of the paths of all cached editors. */
+  Set<SPath> paths() {
+    return entries.keySet();
+  }
+
+  /** Returns a snapshot of all cached editors. */
+  Map<SPath, Editor> editors() {
+    final Map<SPath, Editor> editors = new HashMap<>();
+
+    for (Map.Entry<SPath, Entry> entry : entries.entrySet())
+      editors.put(entry.getKey(), entry.getValue().editor);
+
+    return editors;
+  }
+
+  /** Returns the maximum estimated memory footprint of all cached editors in bytes. */
+  long getCapacity() {
+    return capacity;
+  }
+
+  /** Returns the current estimated memory footprint of all cached editors in bytes. */
+  long getSize() {
+    long size = 0;
+
+    for (Entry entry : entries.values()) size += entry.editor.getMemoryFootprint();
+
+    return size;
+  }
+
+  /** Returns the number of lookups that found an editor. */
+  long getHitCount() {
+    return hits.sum();
+  }
+
+  /** Returns the number of lookups that did not find an editor. */
+  long getMissCount() {
+    return misses.sum();
+  }
+
+  /** Returns the number of editors that were evicted because the capacity was exceeded. */
+  long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  /**
+   * Evicts the least recently used editors until the size is within the capacity.
+   *
+   * @param keep path of an editor which must not be evicted
+   */
+  private void evict(SPath keep) {
+    // one evicting thread is enough, the others can continue immediately
+    if (!evictionLock.tryLock()) return;
+
+    try {
+      long size = getSize();
+
+      if (size <= capacity) return;
+
+      final List<Map.Entry<SPath, Entry>> candidates = new ArrayList<>(entries.entrySet());
+
+      final Map<Entry, Long> accesses = new HashMap<>();
+
+      for (Map.Entry<SPath, Entry> candidate : candidates)
+        accesses.put(candidate.getValue(), candidate.getValue().lastAccess);
+
+      Collections.sort(
+          candidates,
+          new Comparator<Map.Entry<SPath, Entry>>() {
+            @Override
+            public int compare(Map.Entry<SPath, Entry> a, Map.Entry<SPath, Entry> b) {
+              return Long.compare(accesses.get(a.getValue()), accesses.get(b.getValue()));
+            }
+          });
+
+      for (Map.Entry<SPath, Entry> candidate : candidates) {
+        if (size <= capacity) break;
+
+        final SPath path = candidate.getKey();
+        final Editor editor = candidate.getValue().editor;
+
+        if (path.equals(keep)) continue;
+
+        /*
+         * Save before removing, otherwise a concurrent lookup could miss
+         * and read the outdated content from disk.
+         */
+        try {
+          editor.save();
+        } catch (IOException e) {
+          LOG.error("could not save " + path + ", keeping its editor in the cache", e);
+          continue;
+        }
+
+        if (!entries.remove(path, candidate.getValue())) continue;
+
+        // catch edits that were applied while saving
+        if (editor.isDirty()) save(path, editor);
+
+        size -= editor.getMemoryFootprint();
+        evictions.increment();
+      }
+
+      if (size > capacity)
+        LOG.warn(
+            "editor cache exceeds its capacity of " + capacity + " bytes, current size: " + size);
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  private static void save(SPath path, Editor editor) {
+    try {
+      editor.save();
+    } catch (IOException e) {
+      LOG.error("could not save evicted editor of " + path, e);
+    }
+  }
+}
@@ -1,7 +1,11 @@
 package de.fu_berlin.inf.dpp.server.editor;
 
-/** Gap buffer implementation used by {@link Editor} for performant text edits. */
-public class GapBuffer {
+/**
+ * Gap buffer implementation used by {@link Editor} for performant text edits. Edits close to each
+ * other are cheap, but moving the gap over a long distance copies the text in between and every
+ * snapshot copies the whole text.
+ */
+public class GapBuffer implements Document {
   // Buffer
   private char[] content;
 
@@ -21,6 +25,7 @@ public class GapBuffer {
     gapLength = initialGap;
   }
 
+  @Override
   public void insert(int pos, String s) {
     int len = s.length();
     moveGap(pos, len);
@@ -29,15 +34,28 @@ public class GapBuffer {
     gapLength -= len;
   }
 
+  @Override
   public void delete(int pos, int len) {
     moveGap(pos, 0);
     gapLength += len;
   }
 
+  @Override
   public int length() {
     return content.length - gapLength;
   }
 
+  @Override
+  public CharSequence snapshot() {
+    return toString();
+  }
+
+  @Override
+  public long getMemoryFootprint() {
+    return (long) content.length * Character.BYTES;
+  }
+
+  @Override
   public String toString() {
     char[] result = new char[length()];
     // copy before & after the gap
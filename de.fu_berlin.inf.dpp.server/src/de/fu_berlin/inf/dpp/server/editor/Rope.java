@@ -0,0 +1,325 @@
+package de.fu_berlin.inf.dpp.server.editor;
+
+/**
+ * Immutable text representation based on a height balanced binary tree whose leaves hold chunks of
+ * the text. Inserting and deleting text takes <i>O(log n)</i> time and returns a new rope that
+ * shares most of its nodes with the original one. This makes a rope a cheap snapshot of a document.
+ */
+public final class Rope implements CharSequence {
+
+  /** Maximum number of characters per leaf */
+  static final int MAX_LEAF_LENGTH = 512;
+
+  /** Estimated memory overhead of a leaf including its concatenation node */
+  private static final int NODE_OVERHEAD = 96;
+
+  /** The empty rope. */
+  public static final Rope EMPTY = new Rope(Leaf.EMPTY);
+
+  private abstract static class Node {
+    final int length;
+    final int height;
+    final int leaves;
+
+    Node(int length, int height, int leaves) {
+      this.length = length;
+      this.height = height;
+      this.leaves = leaves;
+    }
+
+    abstract char charAt(int index);
+
+    /** Copies the characters in the range [start, end) to the array. */
+    abstract void getChars(int start, int end, char[] dst, int dstBegin);
+  }
+
+  private static final class Leaf extends Node {
+    static final Leaf EMPTY = new Leaf("");
+
+    final String text;
+
+    Leaf(String text) {
+      super(text.length(), 0, 1);
+      this.text = text;
+    }
+
+    @Override
+    char charAt(int index) {
+      return text.charAt(index);
+    }
+
+    @Override
+    void getChars(int start, int end, char[] dst, int dstBegin) {
+      text.getChars(start, end, dst, dstBegin);
+    }
+  }
+
+  private static final class Concat extends Node {
+    final Node left;
+    final Node right;
+
+    Concat(Node left, Node right) {
+      super(
+          left.length + right.length,
+          Math.max(left.height, right.height) + 1,
+          left.leaves + right.leaves);
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    char charAt(int index) {
+      return index < left.length ? left.charAt(index) : right.charAt(index - left.length);
+    }
+
+    @Override
+    void getChars(int start, int end, char[] dst, int dstBegin) {
+      if (start < left.length) left.getChars(start, Math.min(end, left.length), dst, dstBegin);
+
+      if (end > left.length)
+        right.getChars(
+            Math.max(start - left.length, 0),
+            end - left.length,
+            dst,
+            dstBegin + Math.max(left.length - start, 0));
+    }
+  }
+
+  private final Node root;
+
+  private Rope(Node root) {
+    this.root = root;
+  }
+
+  /**
+   * Creates a rope containing the given text.
+   *
+   * @param text the text
+   * @return rope with the given text
+   */
+  public static Rope of(CharSequence text) {
+    return text.length() == 0 ? EMPTY : new Rope(build(text, 0, text.length()));
+  }
+
+  /**
+   * Returns a rope where the given text is inserted at the given position.
+   *
+   * @param pos the position to insert the text at
+   * @param text the text to insert
+   * @return the new rope
+   * @throws IndexOutOfBoundsException if the position is out of bounds
+   */
+  public Rope insert(int pos, CharSequence text) {
+    checkRange(pos, pos);
+
+    if (text.length() == 0) return this;
+
+    final Node[] parts = split(root, pos);
+
+    return create(join(join(parts[0], build(text, 0, text.length())), parts[1]));
+  }
+
+  /**
+   * Returns a rope where the given range of characters is removed.
+   *
+   * @param pos the position of the first character to delete
+   * @param len the number of characters to delete
+   * @return the new rope
+   * @throws IndexOutOfBoundsException if the range is out of bounds
+   */
+  public Rope delete(int pos, int len) {
+    checkRange(pos, pos + len);
+
+    if (len == 0) return this;
+
+    final Node[] head = split(root, pos);
+    final Node[] tail = split(head[1], len);
+
+    return create(join(head[0], tail[1]));
+  }
+
+  @Override
+  public int length() {
+    return root.length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= root.length)
+      throw new IndexOutOfBoundsException("index: " + index + ", length: " + root.length);
+
+    return root.charAt(index);
+  }
+
+  @Override
+  public Rope subSequence(int start, int end) {
+    checkRange(start, end);
+
+    if (start == 0 && end == root.length) return this;
+
+    return create(split(split(root, end)[0], start)[1]);
+  }
+
+  /**
+   * Copies the characters in the range [start, end) to the given array.
+   *
+   * @param start the index of the first character to copy
+   * @param end the index after the last character to copy
+   * @param dst the destination array
+   * @param dstBegin the start offset in the destination array
+   */
+  public void getChars(int start, int end, char[] dst, int dstBegin) {
+    checkRange(start, end);
+
+    if (start < end) root.getChars(start, end, dst, dstBegin);
+  }
+
+  /** Returns the approximate number of bytes this rope occupies in memory. */
+  public long getMemoryFootprint() {
+    return (long) root.length * Character.BYTES + (long) root.leaves * NODE_OVERHEAD;
+  }
+
+  /** Returns the height of the tree, for testing purposes. */
+  int getHeight() {
+    return root.height;
+  }
+
+  /** Returns the number of leaves of the tree, for testing purposes. */
+  int getLeafCount() {
+    return root.leaves;
+  }
+
+  @Override
+  public String toString() {
+    final char[] chars = new char[root.length];
+    root.getChars(0, root.length, chars, 0);
+    return new String(chars);
+  }
+
+  private void checkRange(int start, int end) {
+    if (start < 0 || end > root.length || start > end)
+      throw new IndexOutOfBoundsException(
+          "start: " + start + ", end: " + end + ", length: " + root.length);
+  }
+
+  /**
+   * Creates a rope for the given tree. Edits in the middle of leaves split them, so the leaves get
+   * smaller over time. If they become too fragmented, the tree is rebuilt with full leaves. This
+   * keeps the memory overhead bounded at an amortized constant cost per edit.
+   */
+  private static Rope create(Node root) {
+    if (root.length == 0) return EMPTY;
+
+    if (root.leaves > 16 + root.length / (MAX_LEAF_LENGTH / 4)) {
+      final char[] chars = new char[root.length];
+      root.getChars(0, root.length, chars, 0);
+      root = build(new String(chars), 0, chars.length);
+    }
+
+    return new Rope(root);
+  }
+
+  /** Builds a balanced tree with full leaves for the given range of the text. */
+  private static Node build(CharSequence text, int start, int end) {
+    final int length = end - start;
+
+    if (length <= MAX_LEAF_LENGTH) return new Leaf(text.subSequence(start, end).toString());
+
+    final int chunks = (length + MAX_LEAF_LENGTH - 1) / MAX_LEAF_LENGTH;
+    final int middle = start + (chunks / 2) * MAX_LEAF_LENGTH;
+
+    return new Concat(build(text, start, middle), build(text, middle, end));
+  }
+
+  /** Splits the tree at the given position. */
+  private static Node[] split(Node node, int pos) {
+    if (pos == 0) return new Node[] {Leaf.EMPTY, node};
+
+    if (pos == node.length) return new Node[] {node, Leaf.EMPTY};
+
+    if (node instanceof Leaf) {
+      final String text = ((Leaf) node).text;
+      return new Node[] {new Leaf(text.substring(0, pos)), new Leaf(text.substring(pos))};
+    }
+
+    final Concat concat = (Concat) node;
+
+    if (pos == concat.left.length) return new Node[] {concat.left, concat.right};
+
+    if (pos < concat.left.length) {
+      final Node[] parts = split(concat.left, pos);
+      return new Node[] {parts[0], join(parts[1], concat.right)};
+    }
+
+    final Node[] parts = split(concat.right, pos - concat.left.length);
+    return new Node[] {join(concat.left, parts[0]), parts[1]};
+  }
+
+  /** Concatenates the trees while keeping them balanced. */
+  private static Node join(Node left, Node right) {
+    if (left.length == 0) return right;
+
+    if (right.length == 0) return left;
+
+    if (left instanceof Leaf && right instanceof Leaf) {
+      if (left.length + right.length <= MAX_LEAF_LENGTH)
+        return new Leaf(((Leaf) left).text + ((Leaf) right).text);
+
+      return new Concat(left, right);
+    }
+
+    if (left.height > right.height + 1) {
+      final Concat concat = (Concat) left;
+      return balance(concat.left, join(concat.right, right));
+    }
+
+    if (right.height > left.height + 1) {
+      final Concat concat = (Concat) right;
+      return balance(join(left, concat.left), concat.right);
+    }
+
+    // merge small leaves at the seam, this is what happens when typing
+    if (right instanceof Leaf && ((Concat) left).right instanceof Leaf) {
+      final Concat concat = (Concat) left;
+
+      if (concat.right.length + right.length <= MAX_LEAF_LENGTH)
+        return balance(concat.left, join(concat.right, right));
+    }
+
+    if (left instanceof Leaf && ((Concat) right).left instanceof Leaf) {
+      final Concat concat = (Concat) right;
+
+      if (left.length + concat.left.length <= MAX_LEAF_LENGTH)
+        return balance(join(left, concat.left), concat.right);
+    }
+
+    return new Concat(left, right);
+  }
+
+  /** Creates a node for the subtrees, whose heights may differ by two, using AVL rotations. */
+  private static Node balance(Node left, Node right) {
+    if (left.height > right.height + 1) {
+      final Concat concat = (Concat) left;
+
+      if (concat.left.height >= concat.right.height)
+        return new Concat(concat.left, new Concat(concat.right, right));
+
+      final Concat inner = (Concat) concat.right;
+
+      return new Concat(new Concat(concat.left, inner.left), new Concat(inner.right, right));
+    }
+
+    if (right.height > left.height + 1) {
+      final Concat concat = (Concat) right;
+
+      if (concat.right.height >= concat.left.height)
+        return new Concat(new Concat(left, concat.left), concat.right);
+
+      final Concat inner = (Concat) concat.left;
+
+      return new Concat(new Concat(left, inner.left), new Concat(inner.right, concat.right));
+    }
+
+    return new Concat(left, right);
+  }
+}
@@ -0,0 +1,44 @@
+package de.fu_berlin.inf.dpp.server.editor;
+
+/**
+ * {@link Document} based on a {@link Rope}. Edits take <i>O(log n)</i> time regardless of where
+ * they happen, and snapshots are free because the rope itself is immutable.
+ */
+public class RopeDocument implements Document {
+
+  private Rope rope;
+
+  public RopeDocument(String content) {
+    rope = Rope.of(content);
+  }
+
+  @Override
+  public void insert(int pos, String text) {
+    rope = rope.insert(pos, text);
+  }
+
+  @Override
+  public void delete(int pos, int len) {
+    rope = rope.delete(pos, len);
+  }
+
+  @Override
+  public int length() {
+    return rope.length();
+  }
+
+  @Override
+  public Rope snapshot() {
+    return rope;
+  }
+
+  @Override
+  public long getMemoryFootprint() {
+    return rope.getMemoryFootprint();
+  }
+
+  @Override
+  public String toString() {
+    return rope.toString();
+  }
+}
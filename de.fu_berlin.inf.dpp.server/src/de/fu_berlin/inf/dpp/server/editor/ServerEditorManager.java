@@ -9,26 +9,105 @@ import de.fu_berlin.inf.dpp.editor.text.TextSelection;
 import de.fu_berlin.inf.dpp.filesystem.IFile;
 import de.fu_berlin.inf.dpp.filesystem.IProject;
 import de.fu_berlin.inf.dpp.filesystem.IResource;
+import de.fu_berlin.inf.dpp.server.ServerConfig;
 import de.fu_berlin.inf.dpp.session.User;
+import de.fu_berlin.inf.dpp.util.NamedThreadFactory;
 import java.io.IOException;
 import java.nio.file.NoSuchFileException;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
-import org.apache.commons.collections4.map.LRUMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Logger;
+import org.picocontainer.Startable;
 
-/** Server implementation of the {@link IEditorManager} interface */
-public class ServerEditorManager implements IEditorManager {
+/**
+ * Server implementation of the {@link IEditorManager} interface.
+ *
+ * <p>Text edits are applied to the in-memory content of the editors only. Dirty editors are written
+ * to disk periodically (see {@link ServerConfig#getEditorFlushInterval()}), when they are closed or
+ * evicted, when {@link #saveEditors} is called and when the session stops.
+ *
+ * <p>The open editors are kept in a cache whose size is limited by the memory the editors occupy
+ * (see {@link ServerConfig#getEditorCacheSize()}).
+ */
+public class ServerEditorManager implements IEditorManager, Startable {
 
   private static final Logger LOG = Logger.getLogger(ServerEditorManager.class);
 
-  private Map<SPath, Editor> openEditors = Collections.synchronizedMap(new LRUMap(10));
+  private static final long TERMINATION_TIMEOUT = 10000;
+
+  private final EditorCache openEditors;
   private List<ISharedEditorListener> listeners = new CopyOnWriteArrayList<>();
 
+  private final long flushInterval;
+
+  private volatile long lastFlushDuration;
+
+  private ScheduledThreadPoolExecutor flushExecutor;
+  private ScheduledFuture<?> flushFuture;
+
+  private final Runnable flush =
+      new Runnable() {
+        @Override
+        public void run() {
+          flushEditors(null);
+        }
+      };
+
+  public ServerEditorManager() {
+    this(ServerConfig.getEditorFlushInterval(), ServerConfig.getEditorCacheSize());
+  }
+
+  /**
+   * Creates a ServerEditorManager.
+   *
+   * @param flushInterval the interval in milliseconds in which dirty editors are written to disk,
+   *     zero or less to write every text edit immediately
+   * @param cacheSize the approximate memory in bytes the open editors may occupy
+   */
+  ServerEditorManager(long flushInterval, long cacheSize) {
+    this.flushInterval = flushInterval;
+    this.openEditors = new EditorCache(cacheSize);
+  }
+
+  @Override
+  public void start() {
+    if (flushInterval <= 0) return;
+
+    flushExecutor =
+        new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("Server-Editor-Flush", false));
+
+    flushExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
+    flushFuture =
+        flushExecutor.scheduleWithFixedDelay(
+            flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void stop() {
+    if (flushExecutor != null) {
+      flushFuture.cancel(false);
+      flushExecutor.shutdown();
+
+      try {
+        if (!flushExecutor.awaitTermination(TERMINATION_TIMEOUT, TimeUnit.MILLISECONDS))
+          LOG.warn("timed out waiting for the editor flush to terminate");
+      } catch (InterruptedException e) {
+        LOG.warn("interrupted while waiting for the editor flush to terminate");
+        Thread.currentThread().interrupt();
+      }
+
+      flushExecutor = null;
+    }
+
+    flushEditors(null);
+  }
+
   @Override
   public void openEditor(SPath path, boolean activate) {
     try {
@@ -40,7 +119,7 @@ public class ServerEditorManager implements IEditorManager {
 
   @Override
   public Set<SPath> getOpenEditors() {
-    return openEditors.keySet();
+    return openEditors.paths();
   }
 
   @Override
@@ -54,9 +133,7 @@ public class ServerEditorManager implements IEditorManager {
 
   @Override
   public void saveEditors(IProject project) {
-    // do nothing?
-    // we do not keep dirty editors,
-    // because the LRUMap might close Editors at any time
+    flushEditors(project);
   }
 
   @Override
@@ -80,8 +157,8 @@ public class ServerEditorManager implements IEditorManager {
   }
 
   /**
-   * Get an existing or create a new Editor for a given path. May remove the least recently used
-   * Editor to free memory.
+   * Get an existing or create a new Editor for a given path. May evict the least recently used
+   * Editors to free memory.
    *
    * @param path of the file to open
    * @return Editor of the file
@@ -100,14 +177,14 @@ public class ServerEditorManager implements IEditorManager {
         throw new IOException("Not a file: " + path);
       }
 
-      editor = new Editor(file);
-      openEditors.put(path, editor);
+      editor = openEditors.putIfAbsent(path, new Editor(file));
     }
     return editor;
   }
 
   /**
-   * Executes a text edit activity on the matching editor.
+   * Executes a text edit activity on the matching editor. The change is written to disk with the
+   * next flush of the dirty editors.
    *
    * @param activity the activity describing the text edit to apply
    */
@@ -116,7 +193,10 @@ public class ServerEditorManager implements IEditorManager {
     try {
       Editor editor = getOrCreateEditor(path);
       editor.applyTextEdit(activity);
-      editor.save();
+      // the editor may have been evicted in the meantime
+      if (flushInterval <= 0 || !openEditors.contains(path, editor)) {
+        editor.save();
+      }
       for (ISharedEditorListener listener : listeners) {
         listener.textEdited(activity);
       }
@@ -126,38 +206,174 @@ public class ServerEditorManager implements IEditorManager {
   }
 
   /**
-   * Updates the mapping of an open editor to a new file path
-   *
-   * @param oldPath the old file path
-   * @param newPath the new file path
+   * Closes the editor of the given path after writing its pending changes to disk. The editor is
+   * not written to disk anymore afterwards, even if a concurrent flush already picked it up, so the
+   * file may be moved safely once this method returns.
    */
-  public void updateMapping(SPath oldPath, SPath newPath) {
-    Editor oldEditor = openEditors.remove(oldPath);
-    openEditors.put(newPath, oldEditor);
-  }
-
   @Override
   public void closeEditor(SPath path) {
-    openEditors.remove(path);
+    Editor editor = openEditors.remove(path);
+
+    if (editor == null) return;
+
+    save(editor);
+    editor.close();
   }
 
   /**
-   * Close all editors of files in a specific folder. Helpful if a folder gets deleted.
+   * Closes the editor of the given path without writing its pending changes to disk. Helpful if the
+   * file gets deleted. Must be called before the file is deleted, otherwise a concurrent flush may
+   * recreate it.
+   *
+   * @param path the path of the editor to discard
+   */
+  public void discardEditor(SPath path) {
+    Editor editor = openEditors.remove(path);
+
+    if (editor != null) editor.close();
+  }
+
+  /**
+   * Close all editors of files in a specific folder without writing their pending changes to disk.
+   * Helpful if a folder gets deleted. Must be called before the folder is deleted, otherwise a
+   * concurrent flush may recreate files in it.
    *
    * @param folder path of the folder
    */
   public void closeEditorsInFolder(SPath folder) {
-    synchronized (openEditors) {
-      Set<SPath> keys = openEditors.keySet();
-      Set<SPath> invalidKeys = new HashSet<>();
-      for (SPath path : keys) {
-        if (folder.getFullPath().isPrefixOf(path.getFullPath())) {
-          invalidKeys.add(path);
-        }
+    for (SPath path : openEditors.paths()) {
+      if (folder.getFullPath().isPrefixOf(path.getFullPath())) {
+        discardEditor(path);
       }
-      for (SPath path : invalidKeys) {
+    }
+  }
+
+  /**
+   * Close all editors of files in a specific folder after writing their pending changes to disk.
+   * Helpful if a folder gets moved. Must be called before the folder is moved, see {@link
+   * #closeEditor(SPath)}.
+   *
+   * @param folder path of the folder
+   */
+  public void saveAndCloseEditorsInFolder(SPath folder) {
+    for (SPath path : openEditors.paths()) {
+      if (folder.getFullPath().isPrefixOf(path.getFullPath())) {
         closeEditor(path);
       }
     }
   }
+
+  /**
+   * Returns the total length in characters of all editors which have changes that are not written
+   * to disk yet.
+   *
+   * @return number of characters pending to be written
+   */
+  public long getPendingFlushLength() {
+    long length = 0;
+
+    for (Editor editor : openEditors.editors().values()) {
+      if (editor.isDirty()) length += editor.getLength();
+    }
+
+    return length;
+  }
+
+  /**
+   * Returns the duration of the last flush of dirty editors.
+   *
+   * @return duration in milliseconds
+   */
+  public long getLastFlushDuration() {
+    return lastFlushDuration;
+  }
+
+  /** Returns the number of open editors. */
+  public int getOpenEditorCount() {
+    return openEditors.paths().size();
+  }
+
+  /** Returns the approximate memory in bytes occupied by the open editors. */
+  public long getCacheSize() {
+    return openEditors.getSize();
+  }
+
+  /** Returns the approximate memory in bytes the open editors may occupy. */
+  public long getCacheCapacity() {
+    return openEditors.getCapacity();
+  }
+
+  /** Returns how often an editor was requested which was already open. */
+  public long getCacheHitCount() {
+    return openEditors.getHitCount();
+  }
+
+  /** Returns how often an editor was requested which had to be opened. */
+  public long getCacheMissCount() {
+    return openEditors.getMissCount();
+  }
+
+  /** Returns how many editors were closed to stay within the memory budget. */
+  public long getCacheEvictionCount() {
+    return openEditors.getEvictionCount();
+  }
+
+  /**
+   * Writes all dirty editors to disk.
+   *
+   * @param project only flush editors of this project, or <code>null</code> to flush all editors
+   */
+  private void flushEditors(IProject project) {
+    final long start = System.nanoTime();
+
+    int flushed = 0;
+    long length = 0;
+
+    for (Map.Entry<SPath, Editor> entry : openEditors.editors().entrySet()) {
+      if (project != null && !project.equals(entry.getKey().getProject())) continue;
+
+      Editor editor = entry.getValue();
+
+      if (!editor.isDirty()) continue;
+
+      length += save(editor);
+      flushed++;
+    }
+
+    if (flushed == 0) return;
+
+    final long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    lastFlushDuration = duration;
+
+    if (flushInterval > 0 && duration > flushInterval)
+      LOG.warn(
+          "flushing "
+              + flushed
+              + " editor(s) with "
+              + length
+              + " characters took "
+              + duration
+              + " ms, which is longer than the flush interval of "
+              + flushInterval
+              + " ms");
+    else if (LOG.isDebugEnabled())
+      LOG.debug(
+          "flushed "
+              + flushed
+              + " editor(s) with "
+              + length
+              + " characters in "
+              + duration
+              + " ms");
+  }
+
+  private static int save(Editor editor) {
+    try {
+      return editor.save();
+    } catch (IOException e) {
+      LOG.error("Could not save " + editor.getFile(), e);
+      return 0;
+    }
+  }
 }
@@ -24,7 +24,7 @@ public class FileActivityExecutor extends AbstractActivityConsumer implements St
    * Creates a FileActivityExecutor.
    *
    * @param session the current session
-   * @param editorManager the editor manager to update the file mapping on a file move
+   * @param editorManager the editor manager to close the editors of moved or removed files
    */
   public FileActivityExecutor(ISarosSession session, ServerEditorManager editorManager) {
 
@@ -74,19 +74,24 @@ public class FileActivityExecutor extends AbstractActivityConsumer implements St
     IFile oldFile = oldPath.getFile();
     SPath newPath = activity.getPath();
     IFile newFile = newPath.getFile();
-    oldFile.move(activity.getPath().getFullPath(), true);
     byte[] content = activity.getContent();
+    /*
+     * the editor must not write to the old file anymore once it is moved,
+     * if the content is replaced the editor's content is outdated anyway
+     */
+    if (content != null) editorManager.discardEditor(oldPath);
+    else editorManager.closeEditor(oldPath);
+
+    oldFile.move(activity.getPath().getFullPath(), true);
     if (content != null) {
       newFile.setContents(new ByteArrayInputStream(content), true, true);
     }
-    // only update if all previous operations are successful
-    editorManager.updateMapping(oldPath, newPath);
   }
 
   private void executeFileRemoval(FileActivity activity) throws IOException {
     SPath path = activity.getPath();
     IFile file = path.getFile();
-    editorManager.closeEditor(path);
+    editorManager.discardEditor(path);
     file.delete(IResource.NONE);
   }
 }
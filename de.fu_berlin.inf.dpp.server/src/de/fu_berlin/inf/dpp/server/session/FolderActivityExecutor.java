@@ -2,6 +2,7 @@ package de.fu_berlin.inf.dpp.server.session;
 
 import de.fu_berlin.inf.dpp.activities.FolderCreatedActivity;
 import de.fu_berlin.inf.dpp.activities.FolderDeletedActivity;
+import de.fu_berlin.inf.dpp.activities.FolderMovedActivity;
 import de.fu_berlin.inf.dpp.activities.SPath;
 import de.fu_berlin.inf.dpp.filesystem.IFolder;
 import de.fu_berlin.inf.dpp.filesystem.IResource;
@@ -60,6 +61,15 @@ public class FolderActivityExecutor extends AbstractActivityConsumer implements
     }
   }
 
+  @Override
+  public void receive(FolderMovedActivity activity) {
+    try {
+      executeFolderMove(activity);
+    } catch (IOException e) {
+      LOG.error("Could not execute " + activity, e);
+    }
+  }
+
   private void executeFolderCreation(FolderCreatedActivity activity) throws IOException {
 
     IFolder folder = activity.getPath().getFolder();
@@ -70,7 +80,17 @@ public class FolderActivityExecutor extends AbstractActivityConsumer implements
 
     SPath path = activity.getPath();
     IFolder folder = path.getFolder();
-    folder.delete(IResource.NONE);
+    // the editors must not write to the folder anymore once it is deleted
     editorManager.closeEditorsInFolder(path);
+    folder.delete(IResource.NONE);
+  }
+
+  private void executeFolderMove(FolderMovedActivity activity) throws IOException {
+
+    SPath oldPath = activity.getPath();
+    SPath newPath = activity.getDestination();
+    // the editors must not write to the old location anymore once the folder is moved
+    editorManager.saveAndCloseEditorsInFolder(oldPath);
+    oldPath.getFolder().move(newPath.getFullPath(), true);
   }
 }
@@ -0,0 +1,106 @@
+package de.fu_berlin.inf.dpp.server.editor;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link Document} implementations of the server editor. The edit traces keep the
+ * document size constant by pairing each insertion with a deletion.
+ *
+ * <ul>
+ *   <li><i>randomOffsetEdit</i>: edits at random positions, e.g. a search and replace
+ *   <li><i>multiCursorEdit</i>: several users typing at distant positions in turn
+ *   <li><i>snapshot</i>: taking a snapshot and reading from it, as done by the consistency watchdog
+ *       and the project negotiation
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocumentBenchmark {
+
+  private static final int TRACE_LENGTH = 1 << 16;
+
+  private static final int CURSORS = 6;
+
+  @Param({"gapbuffer", "rope"})
+  public String type;
+
+  @Param({"100000", "5000000"})
+  public int size;
+
+  private Document document;
+
+  private int[] randomOffsets;
+  private int[] cursors;
+
+  private int step;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    final Random random = new Random(4711);
+    final char[] text = new char[size];
+
+    for (int i = 0; i < size; i++) text[i] = (char) ('a' + random.nextInt(26));
+
+    document =
+        Editor.GAP_BUFFER.equals(type)
+            ? new GapBuffer(new String(text))
+            : new RopeDocument(new String(text));
+
+    randomOffsets = new int[TRACE_LENGTH];
+
+    for (int i = 0; i < TRACE_LENGTH; i++) randomOffsets[i] = random.nextInt(size);
+
+    cursors = new int[CURSORS];
+
+    for (int i = 0; i < CURSORS; i++) cursors[i] = (int) ((long) size * i / CURSORS);
+
+    step = 0;
+  }
+
+  @Benchmark
+  public int randomOffsetEdit() {
+    final int offset = randomOffsets[step++ & (TRACE_LENGTH - 1)];
+
+    document.insert(offset, "x");
+    document.delete(randomOffsets[step & (TRACE_LENGTH - 1)], 1);
+
+    return document.length();
+  }
+
+  @Benchmark
+  public int multiCursorEdit() {
+    final int cursor = step++ % CURSORS;
+    final int offset = cursors[cursor];
+
+    // overwrite mode, i.e. the cursors of the other users stay valid
+    document.insert(offset, "x");
+    document.delete(offset + 1, 1);
+
+    cursors[cursor] = (offset + 1) % (size - 1);
+
+    return document.length();
+  }
+
+  @Benchmark
+  public char snapshot() {
+    final CharSequence snapshot = document.snapshot();
+    return snapshot.charAt(snapshot.length() / 2);
+  }
+}
@@ -0,0 +1,136 @@
+package de.fu_berlin.inf.dpp.server.editor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class RopeTest {
+
+  @Test
+  public void testInsertAndDelete() {
+    Rope rope = Rope.of("Hello World");
+
+    rope = rope.insert(5, ",");
+    rope = rope.insert(rope.length(), "!");
+    rope = rope.delete(0, 1);
+    rope = rope.insert(0, "h");
+
+    assertEquals("hello, World!", rope.toString());
+    assertEquals(13, rope.length());
+    assertEquals('W', rope.charAt(7));
+    assertEquals("World", rope.subSequence(7, 12).toString());
+  }
+
+  @Test
+  public void testSnapshotsAreImmutable() {
+    Rope original = Rope.of("foo");
+    Rope modified = original.insert(3, "bar").delete(0, 1);
+
+    assertEquals("foo", original.toString());
+    assertEquals("oobar", modified.toString());
+  }
+
+  @Test
+  public void testEmpty() {
+    assertSame(Rope.EMPTY, Rope.of(""));
+    assertSame(Rope.EMPTY, Rope.of("foo").delete(0, 3));
+    assertEquals("", Rope.EMPTY.toString());
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testInsertOutOfBounds() {
+    Rope.of("foo").insert(4, "bar");
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testDeleteOutOfBounds() {
+    Rope.of("foo").delete(2, 2);
+  }
+
+  @Test
+  public void testRandomEdits() {
+    Random random = new Random(4711);
+
+    StringBuilder expected = new StringBuilder(randomText(random, 100000));
+    Rope rope = Rope.of(expected);
+
+    for (int i = 0; i < 20000; i++) {
+      int pos = random.nextInt(expected.length() + 1);
+
+      if (random.nextInt(3) == 0 && pos < expected.length()) {
+        int len = Math.min(random.nextInt(200) + 1, expected.length() - pos);
+        expected.delete(pos, pos + len);
+        rope = rope.delete(pos, len);
+      } else {
+        String text = randomText(random, random.nextInt(10) == 0 ? 3000 : 1);
+        expected.insert(pos, text);
+        rope = rope.insert(pos, text);
+      }
+
+      assertEquals(expected.length(), rope.length());
+
+      if (i % 1000 == 0) assertEquals(expected.toString(), rope.toString());
+    }
+
+    assertEquals(expected.toString(), rope.toString());
+
+    int pos = expected.length() / 2;
+    assertEquals(expected.charAt(pos), rope.charAt(pos));
+    assertEquals(expected.substring(pos, pos + 700), rope.subSequence(pos, pos + 700).toString());
+
+    assertBalanced(rope);
+  }
+
+  @Test
+  public void testTyping() {
+    Rope rope = Rope.of("");
+    StringBuilder expected = new StringBuilder();
+
+    for (int i = 0; i < 50000; i++) {
+      // two users typing at different positions
+      int pos = i % 2 == 0 ? expected.length() : expected.length() / 2;
+      String text = String.valueOf((char) ('a' + i % 26));
+
+      expected.insert(pos, text);
+      rope = rope.insert(pos, text);
+    }
+
+    assertEquals(expected.toString(), rope.toString());
+    assertBalanced(rope);
+
+    // typed characters must end up in shared leaves instead of one leaf per character
+    assertTrue(
+        "too many leaves: " + rope.getLeafCount(),
+        rope.getLeafCount() <= 16 + rope.length() / (Rope.MAX_LEAF_LENGTH / 4));
+  }
+
+  @Test
+  public void testGetChars() {
+    Rope rope = Rope.of(randomText(new Random(42), 5000)).insert(1000, "xyz");
+    String expected = rope.toString();
+
+    char[] chars = new char[10];
+    rope.getChars(998, 1006, chars, 1);
+
+    assertEquals(expected.substring(998, 1006), new String(chars, 1, 8));
+  }
+
+  private static void assertBalanced(Rope rope) {
+    // an AVL tree with n leaves is at most 1.44 * log2(n + 2) high
+    double maxHeight = 1.44 * Math.log(rope.getLeafCount() + 2) / Math.log(2);
+
+    assertTrue(
+        "height " + rope.getHeight() + " exceeds " + maxHeight, rope.getHeight() <= maxHeight);
+  }
+
+  private static String randomText(Random random, int length) {
+    char[] chars = new char[length];
+
+    for (int i = 0; i < length; i++) chars[i] = (char) ('a' + random.nextInt(26));
+
+    return new String(chars);
+  }
+}
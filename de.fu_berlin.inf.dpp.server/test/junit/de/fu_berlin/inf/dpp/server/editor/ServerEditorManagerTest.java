@@ -0,0 +1,356 @@
+package de.fu_berlin.inf.dpp.server.editor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import de.fu_berlin.inf.dpp.activities.SPath;
+import de.fu_berlin.inf.dpp.activities.TextEditActivity;
+import de.fu_berlin.inf.dpp.filesystem.IFile;
+import de.fu_berlin.inf.dpp.filesystem.IPath;
+import de.fu_berlin.inf.dpp.filesystem.IProject;
+import de.fu_berlin.inf.dpp.filesystem.IWorkspace;
+import de.fu_berlin.inf.dpp.net.xmpp.JID;
+import de.fu_berlin.inf.dpp.server.filesystem.ServerPathImpl;
+import de.fu_berlin.inf.dpp.server.filesystem.ServerWorkspaceImpl;
+import de.fu_berlin.inf.dpp.session.User;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ServerEditorManagerTest {
+
+  private final User alice = new User(new JID("alice@test/Saros"), true, true, 0, 0);
+
+  private Path workspaceFolder;
+  private IProject project;
+
+  private ServerEditorManager editorManager;
+
+  @Before
+  public void setUp() throws Exception {
+    workspaceFolder = Files.createTempDirectory("saros-test-workspace");
+
+    IWorkspace workspace =
+        new ServerWorkspaceImpl(ServerPathImpl.fromString(workspaceFolder.toString()));
+
+    project = workspace.getProject("project");
+
+    Files.createDirectories(workspaceFolder.resolve("project"));
+  }
+
+  @After
+  public void cleanUp() {
+    if (editorManager != null) editorManager.stop();
+
+    FileUtils.deleteQuietly(workspaceFolder.toFile());
+  }
+
+  @Test
+  public void testWriteThrough() throws Exception {
+    SPath path = createFile("file.txt", "foo");
+
+    startEditorManager(0);
+
+    editorManager.applyTextEdit(insert(path, 3, "bar"));
+
+    assertEquals("foobar", read("file.txt"));
+  }
+
+  @Test
+  public void testWriteBehindOnSave() throws Exception {
+    SPath path = createFile("file.txt", "foo");
+
+    startEditorManager(Long.MAX_VALUE);
+
+    editorManager.applyTextEdit(insert(path, 3, "bar"));
+    editorManager.applyTextEdit(insert(path, 0, "_"));
+
+    assertEquals("foo", read("file.txt"));
+    assertEquals("_foobar", editorManager.getContent(path));
+    assertEquals(7, editorManager.getPendingFlushLength());
+
+    editorManager.saveEditors(project);
+
+    assertEquals("_foobar", read("file.txt"));
+    assertEquals(0, editorManager.getPendingFlushLength());
+  }
+
+  @Test
+  public void testWriteBehindOnStop() throws Exception {
+    SPath path = createFile("file.txt", "foo");
+
+    startEditorManager(Long.MAX_VALUE);
+
+    editorManager.applyTextEdit(insert(path, 0, "bar"));
+    editorManager.stop();
+    editorManager = null;
+
+    assertEquals("barfoo", read("file.txt"));
+  }
+
+  @Test
+  public void testWriteBehindOnClose() throws Exception {
+    SPath path = createFile("file.txt", "foo");
+
+    startEditorManager(Long.MAX_VALUE);
+
+    editorManager.applyTextEdit(insert(path, 0, "bar"));
+    editorManager.closeEditor(path);
+
+    assertEquals("barfoo", read("file.txt"));
+  }
+
+  @Test
+  public void testWriteBehindOnEviction() throws Exception {
+    SPath path = createFile("file.txt", "foo");
+
+    startEditorManager(Long.MAX_VALUE, 250);
+
+    editorManager.applyTextEdit(insert(path, 0, "bar"));
+
+    for (int i = 0; i < 2; i++)
+      editorManager.openEditor(createFile(i + ".txt", "0123456789"), false);
+
+    assertFalse(editorManager.getOpenEditors().contains(path));
+    assertEquals("barfoo", read("file.txt"));
+  }
+
+  @Test
+  public void testCacheIsBoundedByMemory() throws Exception {
+    startEditorManager(Long.MAX_VALUE, 250);
+
+    SPath first = createFile("first.txt", "0123456789");
+    SPath second = createFile("second.txt", "0123456789");
+    SPath third = createFile("third.txt", "0123456789");
+
+    editorManager.openEditor(first, false);
+    editorManager.openEditor(second, false);
+    editorManager.getContent(first);
+    editorManager.openEditor(third, false);
+
+    assertTrue(editorManager.getCacheSize() <= 250);
+    assertEquals(new HashSet<>(Arrays.asList(first, third)), editorManager.getOpenEditors());
+
+    assertEquals(1, editorManager.getCacheEvictionCount());
+    assertEquals(1, editorManager.getCacheHitCount());
+    assertEquals(3, editorManager.getCacheMissCount());
+  }
+
+  @Test
+  public void testEditorIsKeptIfItCannotBeSaved() throws Exception {
+    SPath path = createFile("file.txt", "foo");
+
+    startEditorManager(Long.MAX_VALUE, 250);
+
+    editorManager.applyTextEdit(insert(path, 0, "bar"));
+
+    // replace the file with a folder so that saving the editor fails
+    Files.delete(workspaceFolder.resolve("project/file.txt"));
+    Files.createDirectories(workspaceFolder.resolve("project/file.txt/sub"));
+
+    for (int i = 0; i < 5; i++)
+      editorManager.openEditor(createFile(i + ".txt", "0123456789"), false);
+
+    assertTrue(editorManager.getOpenEditors().contains(path));
+    assertEquals("barfoo", editorManager.getContent(path));
+  }
+
+  @Test
+  public void testWriteBehindOnInterval() throws Exception {
+    SPath path = createFile("file.txt", "foo");
+
+    startEditorManager(10);
+
+    editorManager.applyTextEdit(insert(path, 0, "bar"));
+
+    for (int i = 0; i < 500 && editorManager.getPendingFlushLength() > 0; i++) Thread.sleep(10);
+
+    assertEquals("barfoo", read("file.txt"));
+  }
+
+  @Test
+  public void testDiscardedEditorIsNotSaved() throws Exception {
+    SPath path = createFile("file.txt", "foo");
+
+    startEditorManager(Long.MAX_VALUE);
+
+    editorManager.applyTextEdit(insert(path, 0, "bar"));
+    editorManager.discardEditor(path);
+    editorManager.saveEditors(null);
+
+    assertEquals("foo", read("file.txt"));
+  }
+
+  @Test
+  public void testDiscardWaitsForRunningFlush() throws Exception {
+    final BlockingFile file = new BlockingFile();
+    final SPath path = file.getPath();
+
+    startEditorManager(10);
+
+    editorManager.applyTextEdit(insert(path, 0, "bar"));
+
+    assertTrue("flush did not start", file.writing.await(10, TimeUnit.SECONDS));
+
+    // the file is deleted right after the editor is discarded
+    Thread discard =
+        startThread(
+            new Runnable() {
+              @Override
+              public void run() {
+                editorManager.discardEditor(path);
+              }
+            });
+
+    assertStillRunning(discard);
+
+    file.release.countDown();
+    discard.join(10000);
+
+    assertFalse(file.isWriting());
+
+    Thread.sleep(100);
+
+    assertEquals(1, file.writes.get());
+  }
+
+  @Test
+  public void testCloseWaitsForRunningFlush() throws Exception {
+    final BlockingFile file = new BlockingFile();
+    final SPath path = file.getPath();
+
+    startEditorManager(10);
+
+    editorManager.applyTextEdit(insert(path, 0, "bar"));
+
+    assertTrue("flush did not start", file.writing.await(10, TimeUnit.SECONDS));
+
+    editorManager.applyTextEdit(insert(path, 0, "_"));
+
+    // the file is moved right after the editor is closed
+    Thread close =
+        startThread(
+            new Runnable() {
+              @Override
+              public void run() {
+                editorManager.closeEditor(path);
+              }
+            });
+
+    assertStillRunning(close);
+
+    file.release.countDown();
+    close.join(10000);
+
+    assertFalse(file.isWriting());
+    assertEquals("_barfoo", file.content);
+
+    Thread.sleep(100);
+
+    assertEquals(2, file.writes.get());
+  }
+
+  private void startEditorManager(long flushInterval) {
+    startEditorManager(flushInterval, Long.MAX_VALUE);
+  }
+
+  private void startEditorManager(long flushInterval, long cacheSize) {
+    editorManager = new ServerEditorManager(flushInterval, cacheSize);
+    editorManager.start();
+  }
+
+  private SPath createFile(String name, String content) throws IOException {
+    Files.write(workspaceFolder.resolve("project").resolve(name), content.getBytes("UTF-8"));
+    return new SPath(project, ServerPathImpl.fromString(name));
+  }
+
+  private String read(String name) throws IOException {
+    return new String(
+        Files.readAllBytes(workspaceFolder.resolve("project").resolve(name)), "UTF-8");
+  }
+
+  private TextEditActivity insert(SPath path, int offset, String text) {
+    return new TextEditActivity(alice, offset, text, "", path);
+  }
+
+  private static Thread startThread(Runnable runnable) {
+    Thread thread = new Thread(runnable);
+    thread.start();
+    return thread;
+  }
+
+  private static void assertStillRunning(Thread thread) throws InterruptedException {
+    thread.join(100);
+    assertTrue("editor was closed while it was saved", thread.isAlive());
+  }
+
+  /** A file whose first write blocks until it is released. */
+  private static class BlockingFile {
+    private final CountDownLatch writing = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger writes = new AtomicInteger();
+    private final AtomicBoolean inProgress = new AtomicBoolean();
+
+    private volatile String content = "foo";
+
+    private final IProject project = EasyMock.createNiceMock(IProject.class);
+    private final IFile file = EasyMock.createNiceMock(IFile.class);
+
+    private BlockingFile() throws IOException {
+      EasyMock.expect(project.findMember(EasyMock.<IPath>anyObject())).andStubReturn(file);
+      EasyMock.expect(file.getAdapter(IFile.class)).andStubReturn(file);
+      EasyMock.expect(file.getContents())
+          .andStubAnswer(
+              new IAnswer<InputStream>() {
+                @Override
+                public InputStream answer() {
+                  return IOUtils.toInputStream(content);
+                }
+              });
+
+      file.setContents(EasyMock.<InputStream>anyObject(), EasyMock.eq(true), EasyMock.eq(true));
+      EasyMock.expectLastCall()
+          .andStubAnswer(
+              new IAnswer<Object>() {
+                @Override
+                public Object answer() throws Throwable {
+                  inProgress.set(true);
+                  try {
+                    writing.countDown();
+                    release.await();
+                    content = IOUtils.toString((InputStream) EasyMock.getCurrentArguments()[0]);
+                    writes.incrementAndGet();
+                  } finally {
+                    inProgress.set(false);
+                  }
+                  return null;
+                }
+              });
+
+      EasyMock.replay(project, file);
+    }
+
+    private SPath getPath() {
+      return new SPath(project, ServerPathImpl.fromString("file.txt"));
+    }
+
+    private boolean isWriting() {
+      return inProgress.get();
+    }
+  }
+}
@@ -2,6 +2,7 @@ package de.fu_berlin.inf.dpp.whiteboard.gef.commands;
 
 import de.fu_berlin.inf.dpp.whiteboard.gef.model.LayoutElementRecord;
 import de.fu_berlin.inf.dpp.whiteboard.gef.model.SVGPolylineRecord;
+import de.fu_berlin.inf.dpp.whiteboard.gef.util.PointListUtils;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.records.IRecord;
 import java.util.List;
 import org.apache.batik.util.SVGConstants;
@@ -14,6 +15,15 @@ import org.eclipse.draw2d.geometry.PointList;
  */
 public class PolylineRecordCreateCommand extends AbstractElementRecordCreateCommand {
 
+  /**
+   * maximal distance in pixel of a drawn point to the simplified stroke, 0 disables the
+   * simplification
+   */
+  private static final double SIMPLIFICATION_TOLERANCE =
+      Double.parseDouble(
+          System.getProperty(
+              "de.fu_berlin.inf.dpp.whiteboard.POLYLINE_SIMPLIFICATION_TOLERANCE", "1"));
+
   private PointList points;
 
   public PolylineRecordCreateCommand() {
@@ -26,7 +36,8 @@ public class PolylineRecordCreateCommand extends AbstractElementRecordCreateComm
 
   @Override
   protected List<IRecord> getAttributeRecords(LayoutElementRecord child) {
-    return ((SVGPolylineRecord) getNewChild()).createPointsRecord(points);
+    return ((SVGPolylineRecord) getNewChild())
+        .createPointsRecord(PointListUtils.simplify(points, SIMPLIFICATION_TOLERANCE));
   }
 
   @Override
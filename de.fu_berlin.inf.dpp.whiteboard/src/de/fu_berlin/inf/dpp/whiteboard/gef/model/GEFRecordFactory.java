@@ -2,10 +2,8 @@ package de.fu_berlin.inf.dpp.whiteboard.gef.model;
 
 import de.fu_berlin.inf.dpp.whiteboard.sxe.records.DocumentRecord;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.records.ElementRecord;
-import de.fu_berlin.inf.dpp.whiteboard.sxe.records.IRecord;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.records.SXEDefaultRecordFactory;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.records.serializable.RecordDataObject;
-import de.fu_berlin.inf.dpp.whiteboard.sxe.util.SXEUtils;
 import java.util.List;
 import org.apache.batik.util.SVGConstants;
 import org.apache.log4j.Logger;
@@ -24,9 +22,8 @@ public class GEFRecordFactory extends SXEDefaultRecordFactory {
 
   @Override
   public ElementRecord createElementRecord(DocumentRecord documentRecord, String ns, String tag) {
-    if (documentRecord != null) {
-      List<IRecord> state = documentRecord.getState();
-      List<RecordDataObject> list = SXEUtils.toDataObjects(state);
+    if (documentRecord != null && log.isDebugEnabled()) {
+      List<RecordDataObject> list = documentRecord.getCompactedState();
       log.debug("new Documentstate: " + list);
       // log.info(state.get(state.size() - 1).getRecordDataObject()
       // .getValuePairs().keySet());
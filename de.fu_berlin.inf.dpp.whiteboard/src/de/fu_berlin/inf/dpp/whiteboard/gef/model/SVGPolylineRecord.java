@@ -14,7 +14,8 @@ import org.eclipse.draw2d.geometry.Rectangle;
 
 /**
  * This class maintains a cache of the SVG points attribute. Parsing the String on every access
- * would be pretty expensive because this attribute quickly grows to some thousand points.
+ * would be pretty expensive because this attribute quickly grows to some thousand points. If points
+ * were only appended, only the new ones are parsed.
  *
  * @author jurke
  */
@@ -63,21 +64,69 @@ public class SVGPolylineRecord extends LayoutElementRecord {
     return points;
   }
 
-  /** initializes the local PointList cache */
+  /** initializes or updates the local PointList cache */
   protected void generatePointList() {
-    if (points != null)
-      if (rawPoints == getAttributeValue(SVGConstants.SVG_POINTS_ATTRIBUTE)) return;
-
-    points = new PointList();
-    rawPoints = getAttributeValue(SVGConstants.SVG_POINTS_ATTRIBUTE);
-    if (rawPoints == null) return;
-
-    String[] rawList = rawPoints.split(" ");
-    String[] tmpPoint = null;
-    for (String s : rawList) {
-      tmpPoint = s.split(",");
-      if (tmpPoint.length > 1)
-        points.addPoint(Integer.parseInt(tmpPoint[0]), Integer.parseInt(tmpPoint[1]));
+    String newRawPoints = getAttributeValue(SVGConstants.SVG_POINTS_ATTRIBUTE);
+
+    if (points != null && rawPoints == newRawPoints) return;
+
+    PointList newPoints = new PointList();
+    int parsed = 0;
+
+    /*
+     * The previous list must not be changed as it may be still in use, i.e.
+     * by a Polyline figure.
+     */
+    if (points != null
+        && rawPoints != null
+        && newRawPoints != null
+        && newRawPoints.length() > rawPoints.length()
+        && rawPoints.endsWith(" ")
+        && newRawPoints.startsWith(rawPoints)) {
+      // points were appended
+      newPoints.addAll(points);
+      parsed = rawPoints.length();
+    }
+
+    rawPoints = newRawPoints;
+
+    if (rawPoints != null) parsePoints(rawPoints, parsed, newPoints);
+
+    points = newPoints;
+  }
+
+  /**
+   * Parses a SVG points attribute of the form <code>x1,y1 x2,y2 ...</code> and adds the points to
+   * the given list.
+   *
+   * @param raw the points attribute
+   * @param offset the index to start parsing at
+   * @param points the list to add the points to
+   */
+  protected static void parsePoints(String raw, int offset, PointList points) {
+    final int length = raw.length();
+
+    int i = offset;
+
+    while (i < length) {
+      int end = raw.indexOf(' ', i);
+
+      if (end == -1) end = length;
+
+      // tokens without a comma are skipped
+      int comma = raw.indexOf(',', i);
+
+      if (comma != -1 && comma < end) {
+        int yEnd = raw.indexOf(',', comma + 1);
+
+        if (yEnd == -1 || yEnd > end) yEnd = end;
+
+        points.addPoint(
+            Integer.parseInt(raw.substring(i, comma)),
+            Integer.parseInt(raw.substring(comma + 1, yEnd)));
+      }
+
+      i = end + 1;
     }
   }
 
@@ -109,7 +158,7 @@ public class SVGPolylineRecord extends LayoutElementRecord {
    */
   protected static String generatePointsAttribute(PointList points) {
     int[] rawInts = points.toIntArray();
-    StringBuilder sb = new StringBuilder();
+    StringBuilder sb = new StringBuilder(rawInts.length * 5);
     for (int i = 0; i < rawInts.length; i++) {
       sb.append(rawInts[i]);
       if (isOdd(i)) sb.append(" ");
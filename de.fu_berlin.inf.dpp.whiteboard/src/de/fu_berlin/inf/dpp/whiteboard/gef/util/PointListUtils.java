@@ -0,0 +1,113 @@
+package de.fu_berlin.inf.dpp.whiteboard.gef.util;
+
+import java.util.Arrays;
+import org.eclipse.draw2d.geometry.PointList;
+
+public class PointListUtils {
+
+  /**
+   * Simplifies the point list of a freehand stroke with the Douglas-Peucker algorithm. Points that
+   * differ less than the tolerance from the simplified line are removed, the first and last point
+   * are always kept.
+   *
+   * @param points the points to simplify
+   * @param tolerance the maximal distance in pixel of a removed point to the resulting line, a
+   *     value <= 0 disables the simplification
+   * @return the simplified point list
+   */
+  public static PointList simplify(PointList points, double tolerance) {
+    return new PointList(simplify(points.toIntArray(), tolerance));
+  }
+
+  /**
+   * Simplifies the raw points (x1, y1, x2, y2, ...) with the Douglas-Peucker algorithm.
+   *
+   * @see #simplify(PointList, double)
+   */
+  public static int[] simplify(int[] raw, double tolerance) {
+    final int size = raw.length / 2;
+
+    if (tolerance <= 0 || size < 3) return raw.clone();
+
+    final boolean[] keep = new boolean[size];
+    keep[0] = true;
+    keep[size - 1] = true;
+
+    final double squaredTolerance = tolerance * tolerance;
+
+    // ranges of (first, last) point indices that still have to be simplified
+    int[] ranges = new int[64];
+    int top = 0;
+
+    ranges[top++] = 0;
+    ranges[top++] = size - 1;
+
+    while (top > 0) {
+      final int last = ranges[--top];
+      final int first = ranges[--top];
+
+      double maxDistance = -1;
+      int index = -1;
+
+      for (int i = first + 1; i < last; i++) {
+        double distance = squaredSegmentDistance(raw, i, first, last);
+
+        if (distance > maxDistance) {
+          maxDistance = distance;
+          index = i;
+        }
+      }
+
+      if (index == -1 || maxDistance <= squaredTolerance) continue;
+
+      keep[index] = true;
+
+      if (top + 4 > ranges.length) ranges = Arrays.copyOf(ranges, ranges.length * 2);
+
+      ranges[top++] = first;
+      ranges[top++] = index;
+      ranges[top++] = index;
+      ranges[top++] = last;
+    }
+
+    int kept = 0;
+
+    for (boolean k : keep) if (k) kept++;
+
+    final int[] result = new int[kept * 2];
+
+    for (int i = 0, j = 0; i < size; i++) {
+      if (!keep[i]) continue;
+
+      result[j++] = raw[i * 2];
+      result[j++] = raw[i * 2 + 1];
+    }
+
+    return result;
+  }
+
+  /** Returns the squared distance of point p to the segment from point a to point b. */
+  private static double squaredSegmentDistance(int[] raw, int p, int a, int b) {
+    final double px = raw[p * 2], py = raw[p * 2 + 1];
+    final double ax = raw[a * 2], ay = raw[a * 2 + 1];
+    final double dx = raw[b * 2] - ax, dy = raw[b * 2 + 1] - ay;
+
+    final double lengthSquared = dx * dx + dy * dy;
+
+    double x = ax, y = ay;
+
+    if (lengthSquared > 0) {
+      final double t = ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+
+      if (t >= 1) {
+        x += dx;
+        y += dy;
+      } else if (t > 0) {
+        x += t * dx;
+        y += t * dy;
+      }
+    }
+
+    return (px - x) * (px - x) + (py - y) * (py - y);
+  }
+}
@@ -18,8 +18,10 @@ import de.fu_berlin.inf.dpp.whiteboard.sxe.net.SXEIncomingSynchronizationProcess
 import de.fu_berlin.inf.dpp.whiteboard.sxe.net.SXEMessage;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.records.serializable.RecordDataObject;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import org.apache.log4j.Logger;
@@ -123,9 +125,20 @@ public class SarosSXETransmitter implements ISXETransmitter {
 
     try {
       if (msg.getTo() == null) {
-        for (User u : sarosSession.getRemoteUsers()) {
-          transmitter.send(u.getJID(), extension);
-        }
+        final List<JID> recipients = new ArrayList<JID>();
+
+        for (User u : sarosSession.getRemoteUsers()) recipients.add(u.getJID());
+
+        // serialize the message only once for all participants
+        final Map<JID, IOException> errors = transmitter.send((String) null, recipients, extension);
+
+        for (Map.Entry<JID, IOException> error : errors.entrySet())
+          log.error(
+              prefix()
+                  + "sending whiteboard message to "
+                  + error.getKey()
+                  + " failed because of an network error",
+              error.getValue());
       } else {
         JID jid = new JID(msg.getTo());
         transmitter.send(jid, extension);
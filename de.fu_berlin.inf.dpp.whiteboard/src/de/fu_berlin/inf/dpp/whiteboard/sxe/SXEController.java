@@ -1,5 +1,6 @@
 package de.fu_berlin.inf.dpp.whiteboard.sxe;
 
+import de.fu_berlin.inf.dpp.whiteboard.sxe.constants.RecordEntry;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.constants.RecordType;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.constants.SXEMessageType;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.exceptions.MissingRecordException;
@@ -10,13 +11,16 @@ import de.fu_berlin.inf.dpp.whiteboard.sxe.net.SXESession;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.records.DocumentRecord;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.records.IRecord;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.records.ISXERecordFactory;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.NodeRecord;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.records.SetRecord;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.records.serializable.RecordDataObject;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.util.SXEUtils;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import org.apache.log4j.Logger;
 
 /**
@@ -119,7 +123,9 @@ public class SXEController extends AbstractSXEMessageHandler {
    * Accepts a remote state and applies it to this controller, discarding the previous content.
    * </br>
    *
-   * <p>Queues messages will be applied afterwards and the lists is cleared.
+   * <p>Queues messages will be applied afterwards and the lists is cleared. Queued SetRecords that
+   * are already contained in the state are discarded, see {@link
+   * #isContainedInState(RecordDataObject, Map)}.
    *
    * @param message the state message
    */
@@ -150,8 +156,15 @@ public class SXEController extends AbstractSXEMessageHandler {
     if (this.unappliedMissingTargetRecords.size() != 0)
       log.warn(prefix() + "Some records couldn't be inserted during start synchronization");
 
+    Map<String, Integer> stateVersions = getVersions(message.getRecords());
+
     for (SXEMessage m : queuedMessagesWhileSynchronizing) {
       for (RecordDataObject rdo : m.getRecords()) {
+        if (isContainedInState(rdo, stateVersions)) {
+          log.debug(prefix() + "Discarding queued record already contained in the state: " + rdo);
+          continue;
+        }
+
         apply(rdo);
       }
     }
@@ -162,6 +175,49 @@ public class SXEController extends AbstractSXEMessageHandler {
     notifyLocalListeners();
   }
 
+  /**
+   * @param state the records of the received state
+   * @return the version of every record of the state right after the state was applied
+   */
+  private Map<String, Integer> getVersions(List<RecordDataObject> state) {
+    Map<String, Integer> versions = new HashMap<String, Integer>();
+
+    for (RecordDataObject rdo : state) {
+      try {
+        NodeRecord record = document.getRecordById(rdo.getTargetRid());
+        versions.put(record.getRid(), record.getVersion());
+      } catch (MissingRecordException e) {
+        // not applied because its parent is missing
+      }
+    }
+
+    return versions;
+  }
+
+  /**
+   * Returns whether a SetRecord received while synchronizing is already contained in the state.
+   *
+   * <p>A compacted state only contains the current version of a record but not the SetRecords
+   * leading to it. Thus, the duplicates of these SetRecords cannot be detected by means of the
+   * target's history and would be applied as conflict, which increments the version once more than
+   * on the peers. Instead, every SetRecord with a version that is already reached by the state is
+   * considered as contained in it.
+   *
+   * @param rdo a record received while synchronizing
+   * @param stateVersions the versions of the records after applying the state
+   * @return whether the record must not be applied anymore
+   */
+  private static boolean isContainedInState(
+      RecordDataObject rdo, Map<String, Integer> stateVersions) {
+
+    if (rdo.getRecordType() != RecordType.SET) return false;
+
+    Integer stateVersion = stateVersions.get(rdo.getString(RecordEntry.TARGET));
+    Integer version = rdo.getInt(RecordEntry.VERSION);
+
+    return stateVersion != null && version != null && version <= stateVersion;
+  }
+
   /**
    * This method attempts to convert a RecordDataObject to the corresponding record that will be
    * applied then.</br>
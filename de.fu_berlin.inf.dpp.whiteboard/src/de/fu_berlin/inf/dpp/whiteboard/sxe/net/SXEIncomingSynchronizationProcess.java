@@ -77,6 +77,7 @@ public class SXEIncomingSynchronizationProcess extends SXESynchronization {
                   });
 
               SXEMessage msg = session.getNextMessage(SXEMessageType.ACCEPT_STATE, peer);
+              msg.setCompactedStateAccepted(true);
 
               log.debug(prefix() + "queue incoming records from now");
 
@@ -19,12 +19,20 @@ public class SXEMessage {
   public static final String SXE_TAG = "sxe";
   public static final String SXE_XMLNS = "urn:xmpp:sxe:0";
 
+  /**
+   * Attribute of the accept-state tag announcing that the joiner can handle a compacted state, see
+   * {@link #isCompactedStateAccepted()}
+   */
+  public static final String COMPACTED_STATE_ATTRIBUTE = "compacted-state";
+
   private final SXESession session;
   private final String msgId;
 
   private SXEMessageType messageType;
   private List<RecordDataObject> records;
 
+  private boolean compactedStateAccepted;
+
   private String from;
   private String to;
 
@@ -51,6 +59,19 @@ public class SXEMessage {
     this.messageType = messageType;
   }
 
+  /**
+   * Returns whether the sender of this accept-state message can handle a compacted state. A
+   * compacted state contains set-records the joiner may already have queued, so only joiners that
+   * discard those can receive it.
+   */
+  public boolean isCompactedStateAccepted() {
+    return compactedStateAccepted;
+  }
+
+  public void setCompactedStateAccepted(boolean compactedStateAccepted) {
+    this.compactedStateAccepted = compactedStateAccepted;
+  }
+
   public String getFrom() {
     return from;
   }
@@ -119,6 +119,12 @@ public class SXEMessageReader {
       if (eventType == XmlPullParser.START_TAG) {
         if (messageType == null) {
           messageType = SXEMessageType.fromString(xpp.getName());
+
+          if (messageType == SXEMessageType.ACCEPT_STATE)
+            message.setCompactedStateAccepted(
+                Boolean.parseBoolean(
+                    xpp.getAttributeValue(null, SXEMessage.COMPACTED_STATE_ATTRIBUTE)));
+
           if (messageType != null && messageType != SXEMessageType.RECORDS) {
             eventType = xpp.next();
             continue;
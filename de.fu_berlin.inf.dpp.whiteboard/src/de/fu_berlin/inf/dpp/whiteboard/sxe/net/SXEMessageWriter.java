@@ -57,7 +57,7 @@ public class SXEMessageWriter {
       writer.startMessage(msg);
       switch (msg.getMessageType()) {
         case ACCEPT_STATE:
-          writer.writeAcceptState();
+          writer.writeAcceptState(msg.isCompactedStateAccepted());
           break;
         case RECORDS:
           writer.writeRecords(rdos);
@@ -142,8 +142,15 @@ public class SXEMessageWriter {
       handler.endElement("", "", "state-offer");
     }
 
-    public void writeAcceptState() throws SAXException {
-      handler.startElement("", "", "accept-state", null);
+    public void writeAcceptState(boolean compactedStateAccepted) throws SAXException {
+      AttributesImpl atts = null;
+
+      if (compactedStateAccepted) {
+        atts = new AttributesImpl();
+        atts.addAttribute("", "", SXEMessage.COMPACTED_STATE_ATTRIBUTE, "CDATA", "true");
+      }
+
+      handler.startElement("", "", "accept-state", atts);
       handler.endElement("", "", "accept-state");
     }
 
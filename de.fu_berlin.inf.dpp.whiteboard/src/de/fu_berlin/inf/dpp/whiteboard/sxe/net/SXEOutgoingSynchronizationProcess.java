@@ -3,7 +3,7 @@ package de.fu_berlin.inf.dpp.whiteboard.sxe.net;
 import de.fu_berlin.inf.dpp.ui.util.SWTUtils;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.SXEController;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.constants.SXEMessageType;
-import de.fu_berlin.inf.dpp.whiteboard.sxe.records.IRecord;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.serializable.RecordDataObject;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.util.SXEUtils;
 import java.io.IOException;
 import java.util.List;
@@ -28,6 +28,15 @@ public class SXEOutgoingSynchronizationProcess extends SXESynchronization {
 
   public static final Logger log = Logger.getLogger(SXEOutgoingSynchronizationProcess.class);
 
+  /**
+   * whether the state is sent as compacted snapshot of the current records or as all records
+   * together with their history. Joiners that do not announce support for the compacted state
+   * always receive the full history.
+   */
+  private static final boolean COMPACT_STATE =
+      Boolean.valueOf(
+          System.getProperty("de.fu_berlin.inf.dpp.whiteboard.sxe.COMPACT_STATE", "true"));
+
   public SXEOutgoingSynchronizationProcess(
       SXEController controller, ISXETransmitter sxe, String to) {
     super(controller, controller.getSession(), to);
@@ -58,21 +67,25 @@ public class SXEOutgoingSynchronizationProcess extends SXESynchronization {
 
         log.debug(prefix() + peer + " accepted state-offer");
 
+        final boolean compact = COMPACT_STATE && answer.isCompactedStateAccepted();
+
         try {
-          List<IRecord> state =
+          List<RecordDataObject> state =
               SWTUtils.runSWTSync(
-                  new Callable<List<IRecord>>() {
+                  new Callable<List<RecordDataObject>>() {
 
                     @Override
-                    public List<IRecord> call() throws Exception {
-                      return controller.getDocumentRecord().getState();
+                    public List<RecordDataObject> call() throws Exception {
+                      if (compact) return controller.getDocumentRecord().getCompactedState();
+
+                      return SXEUtils.toDataObjects(controller.getDocumentRecord().getState());
                     }
                   });
 
           /* send state */
 
           msg = session.getNextMessage(SXEMessageType.STATE, peer);
-          msg.setRecords(SXEUtils.toDataObjects(state));
+          msg.setRecords(state);
 
           log.debug(prefix() + "Sending state to " + msg.getTo());
 
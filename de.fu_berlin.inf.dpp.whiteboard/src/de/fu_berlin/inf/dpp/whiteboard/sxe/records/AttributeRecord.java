@@ -2,7 +2,9 @@ package de.fu_berlin.inf.dpp.whiteboard.sxe.records;
 
 import com.google.gson.annotations.Expose;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.constants.NodeType;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.constants.RecordEntry;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.exceptions.CommittedRecordException;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.serializable.RecordDataObject;
 
 /**
  * Implementation of a DOM attribute in context of Shared XML Editing XEP-0284 (SXE).
@@ -53,6 +55,13 @@ public class AttributeRecord extends NodeRecord {
     return ar;
   }
 
+  @Override
+  public RecordDataObject getCompactedRecordDataObject() {
+    RecordDataObject rdo = super.getCompactedRecordDataObject();
+    rdo.putValue(RecordEntry.CHDATA, chdata);
+    return rdo;
+  }
+
   public SetRecord createSetRecord(String chdata) {
     if (getNodeType().equals(NodeType.ELEMENT))
       throw new UnsupportedOperationException("Cannot change chdata of an element.");
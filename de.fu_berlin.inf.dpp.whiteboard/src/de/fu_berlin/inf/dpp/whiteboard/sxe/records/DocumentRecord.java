@@ -2,9 +2,15 @@ package de.fu_berlin.inf.dpp.whiteboard.sxe.records;
 
 import de.fu_berlin.inf.dpp.whiteboard.sxe.SXEController;
 import de.fu_berlin.inf.dpp.whiteboard.sxe.exceptions.MissingRecordException;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.serializable.RecordDataObject;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import org.apache.log4j.Logger;
 
 /**
@@ -130,6 +136,59 @@ public class DocumentRecord {
     return records;
   }
 
+  /**
+   * Provides a compacted list of records that defines the current state of this shared XML document
+   * and can be used for start synchronization instead of {@link #getState()}.
+   *
+   * <p>Every NodeRecord is transferred only once as new-record with its current mutable fields and
+   * version instead of its creation values followed by its whole history of SetRecords. Parents are
+   * always contained before their children. Removed records are followed by a single SetRecord that
+   * removes them again, so they can still be recreated by peers, i.e. on undo.
+   *
+   * @return one new-record for every NodeRecord and one set-record for every removed one
+   */
+  public List<RecordDataObject> getCompactedState() {
+    List<RecordDataObject> records = new ArrayList<RecordDataObject>(newRecords.size());
+
+    if (newRecords.isEmpty()) return records;
+
+    Map<String, List<NodeRecord>> childrenByParent = new HashMap<String, List<NodeRecord>>();
+
+    for (NodeRecord r : newRecords.values()) {
+      if (r.getParent() == null) continue;
+
+      List<NodeRecord> children = childrenByParent.get(r.getParent().getRid());
+
+      if (children == null) {
+        children = new ArrayList<NodeRecord>();
+        childrenByParent.put(r.getParent().getRid(), children);
+      }
+
+      children.add(r);
+    }
+
+    Queue<NodeRecord> pending = new ArrayDeque<NodeRecord>();
+    pending.add(getRoot());
+
+    while (!pending.isEmpty()) {
+      NodeRecord r = pending.poll();
+
+      records.add(r.getCompactedRecordDataObject());
+
+      if (!r.isVisible()) {
+        SetRecord remove = new SetRecord(r, r.getVersion());
+        remove.setSetVisibilityTo(false);
+        records.add(remove.getRecordDataObject());
+      }
+
+      List<NodeRecord> children = childrenByParent.get(r.getRid());
+
+      if (children != null) pending.addAll(children);
+    }
+
+    return records;
+  }
+
   public boolean contains(NodeRecord r) {
     return newRecords.containsKey(r.getRid());
   }
@@ -467,6 +467,26 @@ public abstract class NodeRecord extends AbstractRecord implements Comparable<No
     return rdo;
   }
 
+  /**
+   * Returns a new-record that creates this record with its current mutable fields and version, so
+   * that the set-records leading to the current state do not have to be transferred.
+   *
+   * <p>As new-records always create visible nodes, the version of a removed record is decremented
+   * by one. It has to be followed by a SetRecord of the current version that removes it again.
+   *
+   * @return the compacted new-record
+   * @see DocumentRecord#getCompactedState()
+   */
+  public RecordDataObject getCompactedRecordDataObject() {
+    RecordDataObject rdo = getRecordDataObject();
+
+    rdo.putValue(RecordEntry.VERSION, visible ? version : version - 1);
+    rdo.putValue(RecordEntry.VISIBLE, true);
+    rdo.putValue(RecordEntry.PRIMARY_WEIGHT, currentPrimaryWeight);
+
+    return rdo;
+  }
+
   /** @return a new-record as copy of this one, without set-records and with a new RID */
   public abstract NodeRecord getCopy();
 
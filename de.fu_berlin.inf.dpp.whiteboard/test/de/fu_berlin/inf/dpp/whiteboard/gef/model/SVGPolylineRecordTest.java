@@ -0,0 +1,37 @@
+package de.fu_berlin.inf.dpp.whiteboard.gef.model;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.eclipse.draw2d.geometry.PointList;
+import org.junit.Test;
+
+public class SVGPolylineRecordTest {
+
+  @Test
+  public void testParsePoints() {
+    assertArrayEquals(new int[] {1, 2, 3, 4}, parse("1,2 3,4", 0));
+  }
+
+  @Test
+  public void testParsePointsFromOffset() {
+    assertArrayEquals(new int[] {3, 4}, parse("1,2 3,4", 4));
+  }
+
+  @Test
+  public void testParsePointsSkipsTokensWithoutComma() {
+    assertArrayEquals(new int[] {1, 2, 3, 4}, parse("1,2 5 3,4", 0));
+    assertArrayEquals(new int[] {8, 9}, parse("7 8,9", 0));
+    assertArrayEquals(new int[] {}, parse("5", 0));
+  }
+
+  @Test
+  public void testParsePointsSkipsSurplusSpaces() {
+    assertArrayEquals(new int[] {1, 2, 3, 4}, parse("  1,2  3,4 ", 0));
+  }
+
+  private static int[] parse(String raw, int offset) {
+    PointList points = new PointList();
+    SVGPolylineRecord.parsePoints(raw, offset, points);
+    return points.toIntArray();
+  }
+}
@@ -0,0 +1,48 @@
+package de.fu_berlin.inf.dpp.whiteboard.gef.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+
+import org.junit.Test;
+
+public class PointListUtilsTest {
+
+  @Test
+  public void testPointsWithinToleranceAreRemoved() {
+    int[] points = {0, 0, 5, 1, 10, 0, 15, -1, 20, 0};
+
+    assertArrayEquals(new int[] {0, 0, 20, 0}, PointListUtils.simplify(points, 1));
+  }
+
+  @Test
+  public void testPointsExceedingToleranceAreKept() {
+    int[] points = {0, 0, 5, 6, 10, 10, 15, 6, 20, 0};
+
+    assertArrayEquals(new int[] {0, 0, 10, 10, 20, 0}, PointListUtils.simplify(points, 1));
+    assertArrayEquals(points, PointListUtils.simplify(points, 0.5));
+  }
+
+  @Test
+  public void testEndpointsAreKept() {
+    int[] points = {3, 4, 3, 4, 3, 4, 3, 5};
+
+    assertArrayEquals(new int[] {3, 4, 3, 5}, PointListUtils.simplify(points, 10));
+  }
+
+  @Test
+  public void testLessThanThreePointsAreNotSimplified() {
+    int[] points = {0, 0, 1, 1};
+
+    int[] simplified = PointListUtils.simplify(points, 10);
+
+    assertArrayEquals(points, simplified);
+    assertNotSame(points, simplified);
+  }
+
+  @Test
+  public void testNonPositiveToleranceDisablesSimplification() {
+    int[] points = {0, 0, 5, 0, 10, 0};
+
+    assertArrayEquals(points, PointListUtils.simplify(points, 0));
+  }
+}
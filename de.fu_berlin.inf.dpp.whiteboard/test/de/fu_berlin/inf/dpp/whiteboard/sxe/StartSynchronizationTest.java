@@ -0,0 +1,88 @@
+package de.fu_berlin.inf.dpp.whiteboard.sxe;
+
+import static org.junit.Assert.assertEquals;
+
+import de.fu_berlin.inf.dpp.whiteboard.sxe.constants.SXEMessageType;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.net.SXEMessage;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.net.SXENetworkMock;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.net.SXESession;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.AttributeRecord;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.DocumentRecord;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.ElementRecord;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.SXEDefaultRecordFactory;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.SetRecord;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.serializable.RecordDataObject;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class StartSynchronizationTest {
+
+  private static final String HOST = "host";
+
+  private final SXEDefaultRecordFactory recordFactory = new SXEDefaultRecordFactory();
+  private final SXESession session = new SXESession();
+
+  private final DocumentRecord hostDocument = TestUtils.getEmptyDocument(recordFactory);
+
+  @Test
+  public void testSetRecordContainedInCompactedStateIsNotAppliedTwice() throws Exception {
+    AttributeRecord points = createPoints("0,0");
+
+    SXEController joiner = new SXEController(recordFactory);
+    joiner.initNetwork(new SXENetworkMock().getClientMock());
+    joiner.switchToConnectingState(session);
+
+    // edit made by the host after the joiner accepted the state
+    SetRecord edit = points.createSetRecord("0,0 1,1");
+    edit.apply(hostDocument);
+
+    joiner.executeRemoteRecords(createMessage(SXEMessageType.RECORDS, edit.getRecordDataObject()));
+
+    joiner.startSession(createMessage(SXEMessageType.STATE, hostDocument.getCompactedState()));
+
+    AttributeRecord joinerPoints =
+        (AttributeRecord) joiner.getDocumentRecord().getRecordById(points.getRid());
+
+    assertEquals(points.getVersion(), joinerPoints.getVersion());
+    assertEquals("0,0 1,1", joinerPoints.getChdata());
+
+    // later edits must not be reverted as conflict
+    SetRecord nextEdit = points.createSetRecord("0,0 1,1 2,2");
+    nextEdit.apply(hostDocument);
+
+    joiner.executeRemoteRecords(
+        createMessage(SXEMessageType.RECORDS, nextEdit.getRecordDataObject()));
+
+    assertEquals(points.getVersion(), joinerPoints.getVersion());
+    assertEquals("0,0 1,1 2,2", joinerPoints.getChdata());
+  }
+
+  private AttributeRecord createPoints(String chdata) {
+    ElementRecord polyline = recordFactory.createElementRecord(hostDocument, null, "polyline");
+    polyline.setParent(hostDocument.getRoot());
+    polyline.apply(hostDocument);
+
+    AttributeRecord points =
+        recordFactory.createAttributeRecord(hostDocument, null, "points", chdata);
+    points.setName("points");
+    points.setChdata(chdata);
+    points.setParent(polyline);
+    points.apply(hostDocument);
+    return points;
+  }
+
+  private SXEMessage createMessage(SXEMessageType type, RecordDataObject record) {
+    return createMessage(type, Collections.singletonList(record));
+  }
+
+  private SXEMessage createMessage(SXEMessageType type, List<RecordDataObject> records) {
+    SXEMessage message = session.getNextMessage(type);
+
+    for (RecordDataObject rdo : records) rdo.setSenderIfAbsent(HOST);
+
+    message.setRecords(records);
+    message.setFrom(HOST);
+    return message;
+  }
+}
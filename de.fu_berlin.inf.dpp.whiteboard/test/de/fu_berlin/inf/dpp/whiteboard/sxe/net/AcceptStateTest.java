@@ -0,0 +1,57 @@
+package de.fu_berlin.inf.dpp.whiteboard.sxe.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import de.fu_berlin.inf.dpp.whiteboard.sxe.constants.SXEMessageType;
+import java.io.StringReader;
+import org.junit.Test;
+import org.xmlpull.mxp1.MXParser;
+import org.xmlpull.v1.XmlPullParser;
+
+public class AcceptStateTest {
+
+  private final SXEMessageReader reader = new SXEMessageReader();
+  private final SXEMessageWriter writer = new SXEMessageWriter();
+
+  private final SXESession session = new SXESession();
+
+  @Test
+  public void testCompactedStateIsAccepted() throws Exception {
+    SXEMessage msg = session.getNextMessage(SXEMessageType.ACCEPT_STATE);
+    msg.setCompactedStateAccepted(true);
+
+    SXEMessage parsed = parse(writer.getSXEMessageAsString(msg));
+
+    assertEquals(SXEMessageType.ACCEPT_STATE, parsed.getMessageType());
+    assertTrue(parsed.isCompactedStateAccepted());
+  }
+
+  @Test
+  public void testCompactedStateIsNotAcceptedByDefault() throws Exception {
+    SXEMessage msg = session.getNextMessage(SXEMessageType.ACCEPT_STATE);
+
+    SXEMessage parsed = parse(writer.getSXEMessageAsString(msg));
+
+    assertEquals(SXEMessageType.ACCEPT_STATE, parsed.getMessageType());
+    assertFalse(parsed.isCompactedStateAccepted());
+  }
+
+  @Test
+  public void testAcceptStateOfOlderPeer() throws Exception {
+    SXEMessage parsed =
+        parse("<sxe id='1' session='s' xmlns='" + SXEMessage.SXE_XMLNS + "'><accept-state/></sxe>");
+
+    assertEquals(SXEMessageType.ACCEPT_STATE, parsed.getMessageType());
+    assertFalse(parsed.isCompactedStateAccepted());
+  }
+
+  /** Parses the message like Smack does, i.e. starting at the root tag */
+  private SXEMessage parse(String raw) throws Exception {
+    XmlPullParser parser = new MXParser();
+    parser.setInput(new StringReader(raw));
+    parser.next();
+    return reader.parseMessage(parser);
+  }
+}
@@ -0,0 +1,101 @@
+package de.fu_berlin.inf.dpp.whiteboard.sxe.records;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import de.fu_berlin.inf.dpp.whiteboard.sxe.SXEController;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.exceptions.MissingRecordException;
+import de.fu_berlin.inf.dpp.whiteboard.sxe.records.serializable.RecordDataObject;
+import java.util.List;
+import org.junit.Test;
+
+public class CompactedStateTest {
+
+  private final SXEDefaultRecordFactory recordFactory = new SXEDefaultRecordFactory();
+  private final SXEController controller = new SXEController(recordFactory);
+  private final DocumentRecord document = recordFactory.createDocument(controller);
+  private final ElementRecord root = recordFactory.createRoot(document);
+
+  {
+    root.apply(document);
+  }
+
+  @Test
+  public void testCompactedStateContainsOneRecordPerNode() throws Exception {
+
+    ElementRecord polyline = createElement(root, "polyline");
+    AttributeRecord points = createAttribute(polyline, "points", "0,0");
+
+    for (int i = 1; i <= 100; i++) points.createSetRecord("0,0 " + i + "," + i).apply(document);
+
+    ElementRecord rect = createElement(root, "rect");
+    createAttribute(rect, "width", "10");
+    rect.getRemoveRecord().apply(document);
+
+    List<RecordDataObject> state = document.getCompactedState();
+
+    // root, polyline, points, rect, width and the set-record removing the rect
+    assertEquals(6, state.size());
+    assertTrue(state.size() < document.getState().size());
+
+    DocumentRecord copy = applyState(state);
+
+    AttributeRecord copiedPoints = (AttributeRecord) copy.getRecordById(points.getRid());
+
+    assertEquals("0,0 100,100", copiedPoints.getChdata());
+    assertEquals(points.getVersion(), copiedPoints.getVersion());
+    assertTrue(copy.getRecordById(polyline.getRid()).isVisible());
+
+    NodeRecord copiedRect = copy.getRecordById(rect.getRid());
+
+    assertFalse(copiedRect.isVisible());
+    assertEquals(rect.getVersion(), copiedRect.getVersion());
+
+    // set-records created after the synchronization must still apply on both sides
+    SetRecord set = new SetRecord(copiedPoints, points.getVersion() + 1);
+    set.setChdata("1,1");
+
+    assertTrue(set.canApply());
+  }
+
+  @Test
+  public void testCompactedStateContainsMovedRecordsAfterTheirNewParent() throws Exception {
+
+    ElementRecord child = createElement(root, "rect");
+    ElementRecord group = createElement(root, "g");
+
+    child.createMoveRecord(group).apply(document);
+
+    DocumentRecord copy = applyState(document.getCompactedState());
+
+    assertEquals(group.getRid(), copy.getRecordById(child.getRid()).getParent().getRid());
+    assertEquals(child.getPrimaryWeight(), copy.getRecordById(child.getRid()).getPrimaryWeight());
+  }
+
+  private ElementRecord createElement(ElementRecord parent, String name) {
+    ElementRecord element = recordFactory.createElementRecord(document, null, name);
+    element.setParent(parent);
+    element.apply(document);
+    return element;
+  }
+
+  private AttributeRecord createAttribute(ElementRecord parent, String name, String chdata) {
+    AttributeRecord attribute = recordFactory.createAttributeRecord(document, null, name, chdata);
+    attribute.setParent(parent);
+    attribute.apply(document);
+    return attribute;
+  }
+
+  private DocumentRecord applyState(List<RecordDataObject> state) throws MissingRecordException {
+    SXEController remoteController = new SXEController(recordFactory);
+    DocumentRecord remoteDocument = recordFactory.createDocument(remoteController);
+
+    for (RecordDataObject rdo : state)
+      assertTrue(
+          "record could not be applied: " + rdo,
+          rdo.getIRecord(remoteDocument).apply(remoteDocument));
+
+    return remoteDocument;
+  }
+}
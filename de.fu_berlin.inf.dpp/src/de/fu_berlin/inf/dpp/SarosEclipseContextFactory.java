@@ -19,6 +19,7 @@ import de.fu_berlin.inf.dpp.filesystem.IChecksumCache;
 import de.fu_berlin.inf.dpp.filesystem.IPathFactory;
 import de.fu_berlin.inf.dpp.filesystem.IWorkspace;
 import de.fu_berlin.inf.dpp.filesystem.IWorkspaceRoot;
+import de.fu_berlin.inf.dpp.filesystem.PersistentChecksumCache;
 import de.fu_berlin.inf.dpp.monitoring.remote.EclipseRemoteProgressIndicatorFactoryImpl;
 import de.fu_berlin.inf.dpp.monitoring.remote.IRemoteProgressIndicatorFactory;
 import de.fu_berlin.inf.dpp.preferences.EclipsePreferenceStoreAdapter;
@@ -38,6 +39,7 @@ import de.fu_berlin.inf.dpp.ui.eventhandler.SessionStatusRequestHandler;
 import de.fu_berlin.inf.dpp.ui.eventhandler.SessionViewOpener;
 import de.fu_berlin.inf.dpp.ui.eventhandler.UserStatusChangeHandler;
 import de.fu_berlin.inf.dpp.ui.eventhandler.XMPPAuthorizationHandler;
+import java.io.File;
 import java.util.Arrays;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.Platform;
@@ -53,6 +55,8 @@ import org.picocontainer.MutablePicoContainer;
  */
 public class SarosEclipseContextFactory extends AbstractContextFactory {
 
+  private static final String CHECKSUM_INDEX_FILE = "checksums.dat";
+
   private final Saros saros;
 
   /**
@@ -80,14 +84,6 @@ public class SarosEclipseContextFactory extends AbstractContextFactory {
       Component.create(SessionStatusRequestHandler.class),
       Component.create(XMPPAuthorizationHandler.class),
       Component.create(ConnectingFailureHandler.class),
-      // Cache support
-      /*
-       * TODO avoid direct creation as this will become tricky especially
-       * if we are the delegate and depends on components that are only
-       * available after we added all our context stuff or vice versa
-       */
-      Component.create(
-          IChecksumCache.class, new FileSystemChecksumCache(new FileContentNotifierBridge())),
       Component.create(IWorkspace.class, new EclipseWorkspaceImpl(ResourcesPlugin.getWorkspace())),
       Component.create(
           IWorkspaceRoot.class,
@@ -122,6 +118,21 @@ public class SarosEclipseContextFactory extends AbstractContextFactory {
 
     container.addComponent(saros);
 
+    // Cache support
+    /*
+     * TODO avoid direct creation as this will become tricky especially
+     * if we are the delegate and depends on components that are only
+     * available after we added all our context stuff or vice versa
+     */
+    final FileContentNotifierBridge fileContentNotifier = new FileContentNotifierBridge();
+
+    container.addComponent(
+        IChecksumCache.class,
+        new PersistentChecksumCache(
+            new FileSystemChecksumCache(fileContentNotifier),
+            fileContentNotifier,
+            new File(saros.getStateLocation().toFile(), CHECKSUM_INDEX_FILE)));
+
     container.addComponent(Bundle.class, saros.getBundle());
 
     container.addComponent(
@@ -2,6 +2,7 @@ package de.fu_berlin.inf.dpp.project;
 
 import de.fu_berlin.inf.dpp.activities.FolderCreatedActivity;
 import de.fu_berlin.inf.dpp.activities.FolderDeletedActivity;
+import de.fu_berlin.inf.dpp.activities.FolderMovedActivity;
 import de.fu_berlin.inf.dpp.activities.IActivity;
 import de.fu_berlin.inf.dpp.activities.SPath;
 import de.fu_berlin.inf.dpp.filesystem.EclipseFolderImpl;
@@ -39,8 +40,9 @@ public final class FolderActivityConsumer extends AbstractActivityConsumer imple
 
   @Override
   public void exec(IActivity activity) {
-    if (!(activity instanceof FolderCreatedActivity || activity instanceof FolderDeletedActivity))
-      return;
+    if (!(activity instanceof FolderCreatedActivity
+        || activity instanceof FolderDeletedActivity
+        || activity instanceof FolderMovedActivity)) return;
 
     try {
       if (LOG.isTraceEnabled()) LOG.trace("executing folder activity: " + activity);
@@ -84,4 +86,27 @@ public final class FolderActivityConsumer extends AbstractActivityConsumer imple
       LOG.error("failed to execute folder activity: " + activity, e);
     }
   }
+
+  @Override
+  public void receive(FolderMovedActivity activity) {
+
+    SPath path = activity.getPath();
+    SPath destinationPath = activity.getDestination();
+
+    IFolder folder =
+        ((EclipseFolderImpl) path.getProject().getFolder(path.getProjectRelativePath()))
+            .getDelegate();
+
+    IFolder destination =
+        ((EclipseFolderImpl)
+                destinationPath.getProject().getFolder(destinationPath.getProjectRelativePath()))
+            .getDelegate();
+
+    try {
+      FileUtils.mkdirs(destination);
+      FileUtils.move(destination.getFullPath(), folder);
+    } catch (CoreException e) {
+      LOG.error("failed to execute folder activity: " + activity, e);
+    }
+  }
 }
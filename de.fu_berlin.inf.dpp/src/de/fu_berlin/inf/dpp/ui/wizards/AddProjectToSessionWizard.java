@@ -3,6 +3,7 @@ package de.fu_berlin.inf.dpp.ui.wizards;
 import de.fu_berlin.inf.dpp.Saros;
 import de.fu_berlin.inf.dpp.SarosPluginContext;
 import de.fu_berlin.inf.dpp.editor.internal.EditorAPI;
+import de.fu_berlin.inf.dpp.exceptions.SarosCancellationException;
 import de.fu_berlin.inf.dpp.filesystem.IChecksumCache;
 import de.fu_berlin.inf.dpp.filesystem.ResourceAdapterFactory;
 import de.fu_berlin.inf.dpp.monitoring.ProgressMonitorAdapterFactory;
@@ -575,8 +576,26 @@ public class AddProjectToSessionWizard extends Wizard {
 
       final ProjectNegotiationData data = negotiation.getProjectNegotiationData(projectID);
 
-      final FileListDiff diff =
-          FileListDiff.diff(localFileList, data.getFileList(), data.isPartial());
+      final FileList remoteFileList;
+
+      try {
+        remoteFileList =
+            negotiation.getRemoteFileList(
+                projectID,
+                localFileList,
+                ProgressMonitorAdapterFactory.convert(
+                    subMonitor.newChild(0, SubMonitor.SUPPRESS_ALL_LABELS)));
+      } catch (IOException e) {
+        throw new CoreException(
+            new org.eclipse.core.runtime.Status(
+                IStatus.ERROR, Saros.PLUGIN_ID, "failed to receive remote file list", e));
+      } catch (SarosCancellationException e) {
+        throw new CoreException(
+            new org.eclipse.core.runtime.Status(
+                IStatus.ERROR, Saros.PLUGIN_ID, "failed to receive remote file list", e));
+      }
+
+      final FileListDiff diff = FileListDiff.diff(localFileList, remoteFileList, data.isPartial());
 
       if (!diff.getRemovedFolders().isEmpty()
           || !diff.getRemovedFiles().isEmpty()